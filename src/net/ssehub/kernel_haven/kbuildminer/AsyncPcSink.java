@@ -0,0 +1,192 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * A {@link PcSink} that passes the presence conditions to another sink in a separate thread, via a bounded queue.
+ * The conversion runs ahead of the downstream sink by at most the capacity of the queue; if the queue is full,
+ * {@link #accept(File, Formula)} blocks until the downstream sink catches up (backpressure).
+ *
+ * <p>
+ * If the downstream sink fails, the next call to {@link #accept(File, Formula)} or {@link #end()} throws its
+ * exception. Unchecked exceptions of the downstream sink are wrapped into an {@link IOException}.
+ * </p>
+ *
+ * @author Adam
+ */
+public class AsyncPcSink implements PcSink {
+
+    /**
+     * An element of the queue.
+     */
+    private static final class Entry {
+
+        private final @Nullable File file;
+
+        private final @Nullable Formula pc;
+
+        /**
+         * Creates an entry.
+         *
+         * @param file The file; <code>null</code> for the end marker.
+         * @param pc The presence condition; <code>null</code> for the end marker.
+         */
+        private Entry(@Nullable File file, @Nullable Formula pc) {
+            this.file = file;
+            this.pc = pc;
+        }
+
+    }
+
+    private static final @NonNull Entry END = new Entry(null, null);
+
+    /**
+     * The interval in milliseconds in which a blocked producer checks whether the worker thread is still alive.
+     */
+    private static final long POLL_INTERVAL = 100;
+
+    private final @NonNull PcSink downstream;
+
+    private final @NonNull BlockingQueue<@NonNull Entry> queue;
+
+    private final @NonNull Thread worker;
+
+    private volatile @Nullable IOException failure;
+
+    /**
+     * Creates an asynchronous sink and starts its worker thread.
+     *
+     * @param downstream The sink to pass the presence conditions to, in the worker thread.
+     * @param capacity The maximum number of presence conditions that are queued for the downstream sink.
+     */
+    public AsyncPcSink(@NonNull PcSink downstream, int capacity) {
+        this.downstream = downstream;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.worker = new Thread(this::work, "AsyncPcSink");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * The loop of the worker thread: passes the queued entries to the downstream sink until the end marker.
+     */
+    private void work() {
+        boolean done = false;
+        while (!done) {
+            try {
+                Entry entry = queue.take();
+                if (entry == END) {
+                    done = true;
+                    // don't finalize a downstream sink that did not receive all presence conditions
+                    if (failure == null) {
+                        downstream.end();
+                    }
+                } else if (failure == null) {
+                    // after a failure, keep draining the queue so that the producer does not block forever
+                    downstream.accept(notNull(entry.file), notNull(entry.pc));
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (RuntimeException e) {
+                failure = new IOException("Downstream sink failed", e);
+            } catch (InterruptedException e) {
+                failure = new IOException("Interrupted while waiting for presence conditions", e);
+                done = true;
+            }
+        }
+    }
+
+    @Override
+    public void accept(@NonNull File file, @NonNull Formula pc) throws IOException {
+        checkFailure();
+        put(new Entry(file, pc));
+    }
+
+    /**
+     * Waits until the downstream sink has received all presence conditions and its {@link PcSink#end()} method
+     * has finished. If the downstream sink failed before, its {@link PcSink#end()} method is not called.
+     */
+    @Override
+    public void end() throws IOException {
+        put(END);
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the downstream sink", e);
+        }
+        checkFailure();
+    }
+
+    /**
+     * Returns the number of presence conditions that are currently queued.
+     *
+     * @return The queue size.
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * Puts an entry into the queue, blocking while it is full. Gives up if the worker thread terminates, since
+     * nobody would take the entry anymore.
+     *
+     * @param entry The entry.
+     *
+     * @throws IOException If interrupted while waiting, or if the worker thread is no longer alive.
+     */
+    private void put(@NonNull Entry entry) throws IOException {
+        boolean added = false;
+        while (!added) {
+            try {
+                added = queue.offer(entry, POLL_INTERVAL, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the downstream sink", e);
+            }
+            if (!added && !worker.isAlive()) {
+                checkFailure();
+                throw new IOException("The worker thread of the downstream sink terminated unexpectedly");
+            }
+        }
+    }
+
+    /**
+     * Throws the failure of the downstream sink, if any.
+     *
+     * @throws IOException The failure of the downstream sink.
+     */
+    private void checkFailure() throws IOException {
+        IOException failure = this.failure;
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+}
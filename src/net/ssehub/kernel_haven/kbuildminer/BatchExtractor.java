@@ -0,0 +1,389 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Extracts the build models of many independent source trees in one JVM. Jobs run concurrently, but a job is
+ * only admitted if its memory estimate (see {@link BatchJob#getMemoryEstimate()}) fits into the remaining memory
+ * budget and its heap estimate fits into the currently free heap of this JVM. Jobs that start a separate KbuildMiner
+ * JVM are additionally only admitted if the free physical memory of the host can hold that JVM. A single job is
+ * always admitted if nothing else runs, so that jobs larger than the budget still make progress.
+ *
+ * <p>
+ * Each finished build model is passed to a sink and not kept by this class, so that it can be garbage collected
+ * as soon as the sink is done with it. The sink is called by one thread at a time.
+ * </p>
+ *
+ * @author Adam
+ */
+public class BatchExtractor {
+
+    /**
+     * The result of a single {@link BatchJob}.
+     */
+    public static final class Result {
+
+        private final @NonNull BatchJob job;
+
+        private final int numFiles;
+
+        private final long durationNanos;
+
+        private final @Nullable String error;
+
+        /**
+         * Creates a result.
+         *
+         * @param job The job.
+         * @param numFiles The number of files in the build model.
+         * @param durationNanos The time the job ran, without the time waiting for admission.
+         * @param error The error message; <code>null</code> if the job was successful.
+         */
+        private Result(@NonNull BatchJob job, int numFiles, long durationNanos, @Nullable String error) {
+            this.job = job;
+            this.numFiles = numFiles;
+            this.durationNanos = durationNanos;
+            this.error = error;
+        }
+
+        /**
+         * Returns the job.
+         *
+         * @return The job.
+         */
+        public @NonNull BatchJob getJob() {
+            return job;
+        }
+
+        /**
+         * Returns whether the job was successful.
+         *
+         * @return Whether a build model was passed to the sink.
+         */
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        /**
+         * Returns the error of the job.
+         *
+         * @return The error message; <code>null</code> if the job was successful.
+         */
+        public @Nullable String getError() {
+            return error;
+        }
+
+        /**
+         * Returns the number of files in the build model.
+         *
+         * @return The number of files; 0 if the job failed.
+         */
+        public int getNumFiles() {
+            return numFiles;
+        }
+
+        /**
+         * Returns the time the job ran, without the time waiting for admission.
+         *
+         * @return The duration in nanoseconds.
+         */
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        /**
+         * Returns the throughput of the job.
+         *
+         * @return The number of files per second.
+         */
+        public double getFilesPerSecond() {
+            return durationNanos > 0 ? numFiles * 1e9 / durationNanos : 0;
+        }
+
+    }
+
+    private static final Logger LOGGER = Logger.get();
+
+    /**
+     * The interval in milliseconds in which waiting jobs re-check the free memory, since memory freed outside of
+     * this class (e.g. by other processes on the host) is not signaled.
+     */
+    private static final long ADMISSION_RECHECK_INTERVAL = 1000;
+
+    private final @NonNull File resourceDir;
+
+    private final long memoryBudget;
+
+    private final int maxConcurrent;
+
+    private long reserved;
+
+    private int running;
+
+    /**
+     * The index of the next job to admit; jobs are admitted strictly in order.
+     */
+    private int nextAdmission;
+
+    /**
+     * Creates a batch extractor.
+     *
+     * @param resourceDir The resource directory to extract kbuildminer.jar to. Shared by all jobs.
+     * @param memoryBudget The total memory in bytes that concurrently running jobs may use, including the separate
+     *      KbuildMiner JVMs.
+     * @param maxConcurrent The maximum number of concurrently running jobs.
+     */
+    public BatchExtractor(@NonNull File resourceDir, long memoryBudget, int maxConcurrent) {
+        this.resourceDir = resourceDir;
+        this.memoryBudget = memoryBudget;
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    /**
+     * Runs the given jobs and passes each build model to the sink as soon as it is finished.
+     *
+     * @param jobs The jobs to run. Admitted in the given order.
+     * @param sink The consumer of the finished build models. Called by one thread at a time, in order of
+     *      completion.
+     * @return The result of each job, in the order of the jobs.
+     *
+     * @throws InterruptedException If interrupted while waiting for the jobs.
+     */
+    public @NonNull List<@NonNull Result> run(@NonNull List<@NonNull BatchJob> jobs,
+            @NonNull BiConsumer<@NonNull BatchJob, @NonNull BuildModel> sink) throws InterruptedException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(maxConcurrent, jobs.size())));
+        List<@NonNull Result> result = new ArrayList<>(jobs.size());
+        synchronized (this) {
+            nextAdmission = 0;
+        }
+        try {
+            List<Future<@NonNull Result>> futures = new ArrayList<>(jobs.size());
+            for (int i = 0; i < jobs.size(); i++) {
+                BatchJob job = jobs.get(i);
+                int index = i;
+                futures.add(executor.submit(() -> runAdmitted(job, index, sink)));
+            }
+            for (Future<@NonNull Result> future : futures) {
+                try {
+                    result.add(future.get());
+                } catch (ExecutionException e) {
+                    // runJob() turns all exceptions into failed results; only errors end up here
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long totalFiles = 0;
+        for (Result r : result) {
+            totalFiles += r.getNumFiles();
+        }
+        LOGGER.logInfo("Batch extraction finished: " + jobs.size() + " source trees, " + totalFiles + " files");
+        return result;
+    }
+
+    /**
+     * Waits for admission and runs a single job.
+     *
+     * @param job The job to run.
+     * @param index The index of the job in the batch.
+     * @param sink The consumer of the build model.
+     * @return The result of the job.
+     */
+    private @NonNull Result runAdmitted(@NonNull BatchJob job, int index,
+            @NonNull BiConsumer<@NonNull BatchJob, @NonNull BuildModel> sink) {
+
+        Result result;
+        try {
+            admit(job, index);
+            try {
+                result = runJob(job, sink);
+            } finally {
+                release(job);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result = new Result(job, 0, 0, "Interrupted while waiting for admission");
+        }
+        return result;
+    }
+
+    /**
+     * Runs a single, already admitted job and passes the build model to the sink.
+     *
+     * @param job The job to run.
+     * @param sink The consumer of the build model.
+     * @return The result of the job.
+     */
+    private @NonNull Result runJob(@NonNull BatchJob job,
+            @NonNull BiConsumer<@NonNull BatchJob, @NonNull BuildModel> sink) {
+
+        Result result;
+        long start = System.nanoTime();
+        try {
+            BuildModel buildModel = extract(job);
+            synchronized (sink) {
+                sink.accept(job, buildModel);
+            }
+            result = new Result(job, buildModel.getSize(), System.nanoTime() - start, null);
+            LOGGER.logInfo("Extracted " + job + ": " + result.getNumFiles() + " files in "
+                    + result.getDurationNanos() / 1_000_000 + " ms ("
+                    + String.format("%.1f", result.getFilesPerSecond()) + " files/s)");
+
+        } catch (IOException | RuntimeException e) {
+            // a single broken job must not abort the other jobs of the batch
+            LOGGER.logException("Extraction of " + job + " failed", e);
+            result = new Result(job, 0, System.nanoTime() - start, e.getMessage() != null ? e.getMessage()
+                    : e.getClass().getSimpleName());
+        }
+        return result;
+    }
+
+    /**
+     * Blocks until all previous jobs are admitted and the given job fits into the memory budget, the free heap and
+     * (for the KbuildMiner backend) the free physical memory, or nothing else runs.
+     *
+     * @param job The job to admit.
+     * @param index The index of the job in the batch.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private synchronized void admit(@NonNull BatchJob job, int index) throws InterruptedException {
+        while (index != nextAdmission || running > 0 && !fits(job)) {
+            wait(ADMISSION_RECHECK_INTERVAL);
+        }
+        reserved += job.getMemoryEstimate();
+        running++;
+        nextAdmission++;
+        notifyAll();
+        LOGGER.logDebug("Admitted " + job + "; " + running + " running, " + reserved / (1024 * 1024)
+                + " MiB of " + memoryBudget / (1024 * 1024) + " MiB reserved");
+    }
+
+    /**
+     * Releases the memory reserved for the given job and wakes up the waiting jobs.
+     *
+     * @param job The finished job.
+     */
+    private synchronized void release(@NonNull BatchJob job) {
+        reserved -= job.getMemoryEstimate();
+        running--;
+        notifyAll();
+    }
+
+    /**
+     * Checks whether the given job fits into the remaining memory budget, the free heap and (if it starts a separate
+     * KbuildMiner JVM) the free physical memory of the host.
+     *
+     * @param job The job to check.
+     * @return Whether the job can be admitted next to the running jobs.
+     */
+    private boolean fits(@NonNull BatchJob job) {
+        boolean result = reserved + job.getMemoryEstimate() <= memoryBudget
+                && job.getHeapEstimate() <= getFreeHeap();
+        if (result && job.getBackend() == KbuildMinerExtractor.Backend.KBUILDMINER) {
+            result = BatchJob.KBUILDMINER_PROCESS_MEMORY <= getFreePhysicalMemory();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the free physical memory of the host.
+     *
+     * @return The free physical memory in bytes; {@link Long#MAX_VALUE} if the JVM does not provide it.
+     */
+    private static long getFreePhysicalMemory() {
+        long result = Long.MAX_VALUE;
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            result = ((com.sun.management.OperatingSystemMXBean) os).getFreePhysicalMemorySize();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the heap that this JVM can still allocate.
+     *
+     * @return The free heap in bytes.
+     */
+    private static long getFreeHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+    }
+
+    /**
+     * Extracts the build model of a single job.
+     *
+     * @param job The job.
+     * @return The build model.
+     *
+     * @throws IOException If mining or converting fails.
+     */
+    private @NonNull BuildModel extract(@NonNull BatchJob job) throws IOException {
+        String topFolders = job.getTopFolders();
+        if (topFolders == null) {
+            String arch = job.getArch();
+            if (arch == null) {
+                throw new IOException("Neither top folders nor architecture specified for " + job);
+            }
+            topFolders = "arch/" + arch + KbuildMinerExtractor.determineTopFolders(job.getSourceTree());
+        }
+
+        Converter converter = new Converter(job.getVariabilityModel());
+        BuildModel result;
+        if (job.getBackend() == KbuildMinerExtractor.Backend.JAVA) {
+            result = converter.convert(new KbuildMakefileMiner(job.getSourceTree(), topFolders,
+                    Math.max(1, Runtime.getRuntime().availableProcessors() / maxConcurrent)));
+
+        } else {
+            File output = new KbuildMinerWrapper(resourceDir).runKbuildMiner(job.getSourceTree(), topFolders);
+            if (output == null) {
+                throw new IOException("KbuildMiner execution not successful for " + job);
+            }
+            try {
+                if (output.length() == 0) {
+                    throw new IOException("Output of KbuildMiner is an empty file for " + job);
+                }
+                result = converter.convert(output);
+            } finally {
+                Files.deleteIfExists(output.toPath());
+            }
+        }
+        return result;
+    }
+
+}
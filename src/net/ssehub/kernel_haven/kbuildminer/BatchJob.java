@@ -0,0 +1,191 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.io.File;
+
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+
+/**
+ * A single source tree to extract with the {@link BatchExtractor}.
+ *
+ * @author Adam
+ */
+public class BatchJob {
+
+    /**
+     * The default estimate of the heap needed in this JVM to convert and hold the build model of a source tree
+     * (512 MiB).
+     */
+    public static final long DEFAULT_HEAP_ESTIMATE = 512L * 1024 * 1024;
+
+    /**
+     * The memory of the separate KbuildMiner JVM; see the <code>-Xmx</code> option in {@link KbuildMinerWrapper}.
+     */
+    static final long KBUILDMINER_PROCESS_MEMORY = 2L * 1024 * 1024 * 1024;
+
+    private final @NonNull String name;
+
+    private final @NonNull File sourceTree;
+
+    private final @NonNull VariabilityModel varModel;
+
+    private @Nullable String arch;
+
+    private @Nullable String topFolders;
+
+    private KbuildMinerExtractor.@NonNull Backend backend = KbuildMinerExtractor.Backend.KBUILDMINER;
+
+    private long heapEstimate = DEFAULT_HEAP_ESTIMATE;
+
+    /**
+     * Creates a job. Either the architecture or the top folders must be set before running it.
+     *
+     * @param name The name of the job, used in the log and in the results.
+     * @param sourceTree The source tree to extract.
+     * @param varModel The variability model of the source tree.
+     */
+    public BatchJob(@NonNull String name, @NonNull File sourceTree, @NonNull VariabilityModel varModel) {
+        this.name = name;
+        this.sourceTree = sourceTree;
+        this.varModel = varModel;
+    }
+
+    /**
+     * Sets the architecture. If no top folders are set, they are determined automatically like in
+     * {@link KbuildMinerExtractor}.
+     *
+     * @param arch The architecture, e.g. <code>x86</code>.
+     */
+    public void setArch(@Nullable String arch) {
+        this.arch = arch;
+    }
+
+    /**
+     * Sets the top folders to pass to the miner.
+     *
+     * @param topFolders A comma separated list of folders, relative to the source tree.
+     */
+    public void setTopFolders(@Nullable String topFolders) {
+        this.topFolders = topFolders;
+    }
+
+    /**
+     * Sets the implementation that mines the Kbuild files. Default is
+     * {@link KbuildMinerExtractor.Backend#KBUILDMINER}.
+     *
+     * @param backend The backend.
+     */
+    public void setBackend(KbuildMinerExtractor.@NonNull Backend backend) {
+        this.backend = backend;
+    }
+
+    /**
+     * Sets the estimate of the heap needed in this JVM to convert and hold the build model. Default is
+     * {@link #DEFAULT_HEAP_ESTIMATE}.
+     *
+     * @param heapEstimate The estimate in bytes.
+     */
+    public void setHeapEstimate(long heapEstimate) {
+        this.heapEstimate = heapEstimate;
+    }
+
+    /**
+     * Returns the name of this job.
+     *
+     * @return The name.
+     */
+    public @NonNull String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the source tree to extract.
+     *
+     * @return The source tree.
+     */
+    public @NonNull File getSourceTree() {
+        return sourceTree;
+    }
+
+    /**
+     * Returns the variability model of the source tree.
+     *
+     * @return The variability model.
+     */
+    public @NonNull VariabilityModel getVariabilityModel() {
+        return varModel;
+    }
+
+    /**
+     * Returns the architecture.
+     *
+     * @return The architecture; <code>null</code> if not set.
+     */
+    public @Nullable String getArch() {
+        return arch;
+    }
+
+    /**
+     * Returns the top folders.
+     *
+     * @return The top folders; <code>null</code> if they should be determined automatically.
+     */
+    public @Nullable String getTopFolders() {
+        return topFolders;
+    }
+
+    /**
+     * Returns the implementation that mines the Kbuild files.
+     *
+     * @return The backend.
+     */
+    public KbuildMinerExtractor.@NonNull Backend getBackend() {
+        return backend;
+    }
+
+    /**
+     * Returns the estimate of the heap needed in this JVM.
+     *
+     * @return The heap estimate in bytes.
+     */
+    public long getHeapEstimate() {
+        return heapEstimate;
+    }
+
+    /**
+     * Returns the estimate of the total memory needed by this job, i.e. the heap estimate plus the memory of the
+     * separate KbuildMiner JVM, if used.
+     *
+     * @return The memory estimate in bytes.
+     */
+    public long getMemoryEstimate() {
+        long result = heapEstimate;
+        if (backend == KbuildMinerExtractor.Backend.KBUILDMINER) {
+            result += KBUILDMINER_PROCESS_MEMORY;
+        }
+        return result;
+    }
+
+    @Override
+    public @NonNull String toString() {
+        return name + " (" + sourceTree + ")";
+    }
+
+}
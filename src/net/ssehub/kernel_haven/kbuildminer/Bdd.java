@@ -0,0 +1,332 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.util.Arrays;
+
+/**
+ * A small reduced ordered binary decision diagram (BDD) engine. All nodes live in a shared node table of primitive
+ * arrays; a node is identified by its index in this table. Because the BDDs are reduced and share a unique table,
+ * two formulas are equivalent if and only if they are represented by the same node index.
+ *
+ * <p>
+ * Variables are identified by their level in the variable order; lower levels are closer to the root. The
+ * operations are recursive; their recursion depth is bounded by the number of variables in the operands.
+ * </p>
+ *
+ * @author Adam
+ */
+public final class Bdd {
+
+    /**
+     * The node representing the constant <code>false</code>.
+     */
+    public static final int FALSE = 0;
+
+    /**
+     * The node representing the constant <code>true</code>.
+     */
+    public static final int TRUE = 1;
+
+    /**
+     * Thrown if the node table exceeds its configured maximum size.
+     */
+    public static class BddOverflowException extends RuntimeException {
+
+        private static final long serialVersionUID = -1853429627473498424L;
+
+        /**
+         * Creates this exception.
+         *
+         * @param maxNodes The maximum number of nodes that was exceeded.
+         */
+        public BddOverflowException(int maxNodes) {
+            super("BDD exceeds the maximum of " + maxNodes + " nodes");
+        }
+
+    }
+
+    private static final int TERMINAL_LEVEL = Integer.MAX_VALUE;
+
+    private static final int OP_AND = 0;
+
+    private static final int OP_OR = 1;
+
+    private static final int OP_NOT = 2;
+
+    private static final int CACHE_SIZE = 1 << 16;
+
+    private final int maxNodes;
+
+    private int[] level;
+
+    private int[] low;
+
+    private int[] high;
+
+    private int size;
+
+    /**
+     * Open addressing hash table of node indices + 1 (0 marks an empty slot).
+     */
+    private int[] unique;
+
+    private final int[] cacheA = new int[CACHE_SIZE];
+
+    private final int[] cacheB = new int[CACHE_SIZE];
+
+    private final int[] cacheOp = new int[CACHE_SIZE];
+
+    private final int[] cacheResult = new int[CACHE_SIZE];
+
+    /**
+     * Creates an empty BDD engine.
+     *
+     * @param maxNodes The maximum number of nodes in the node table.
+     */
+    public Bdd(int maxNodes) {
+        this.maxNodes = maxNodes;
+
+        int capacity = 1024;
+        level = new int[capacity];
+        low = new int[capacity];
+        high = new int[capacity];
+        unique = new int[capacity * 2];
+
+        // the two terminal nodes
+        level[FALSE] = TERMINAL_LEVEL;
+        level[TRUE] = TERMINAL_LEVEL;
+        size = 2;
+
+        Arrays.fill(cacheOp, -1);
+    }
+
+    /**
+     * Returns the BDD for a single variable.
+     *
+     * @param varLevel The level of the variable in the variable order.
+     * @return The node representing the variable.
+     */
+    public int variable(int varLevel) {
+        return mk(varLevel, FALSE, TRUE);
+    }
+
+    /**
+     * Computes the conjunction of two BDDs.
+     *
+     * @param a The first node.
+     * @param b The second node.
+     * @return The node representing <code>a &amp;&amp; b</code>.
+     */
+    public int and(int a, int b) {
+        int result;
+        if (a == FALSE || b == FALSE) {
+            result = FALSE;
+        } else if (a == TRUE || a == b) {
+            result = b;
+        } else if (b == TRUE) {
+            result = a;
+        } else {
+            result = apply(OP_AND, Math.min(a, b), Math.max(a, b));
+        }
+        return result;
+    }
+
+    /**
+     * Computes the disjunction of two BDDs.
+     *
+     * @param a The first node.
+     * @param b The second node.
+     * @return The node representing <code>a || b</code>.
+     */
+    public int or(int a, int b) {
+        int result;
+        if (a == TRUE || b == TRUE) {
+            result = TRUE;
+        } else if (a == FALSE || a == b) {
+            result = b;
+        } else if (b == FALSE) {
+            result = a;
+        } else {
+            result = apply(OP_OR, Math.min(a, b), Math.max(a, b));
+        }
+        return result;
+    }
+
+    /**
+     * Computes the negation of a BDD.
+     *
+     * @param a The node to negate.
+     * @return The node representing <code>!a</code>.
+     */
+    public int not(int a) {
+        int result;
+        if (a == FALSE) {
+            result = TRUE;
+        } else if (a == TRUE) {
+            result = FALSE;
+        } else {
+            result = apply(OP_NOT, a, a);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of nodes in the node table, including the two terminals.
+     *
+     * @return The number of nodes.
+     */
+    public int getNodeCount() {
+        return size;
+    }
+
+    /**
+     * Applies the given operation recursively (Shannon expansion), using the computed cache.
+     *
+     * @param op The operation.
+     * @param a The first operand.
+     * @param b The second operand (ignored for {@link #OP_NOT}).
+     * @return The resulting node.
+     */
+    private int apply(int op, int a, int b) {
+        int slot = (int) ((a * 0x9E3779B1L + b * 0x85EBCA6BL + op) & (CACHE_SIZE - 1));
+        int result;
+        if (cacheOp[slot] == op && cacheA[slot] == a && cacheB[slot] == b) {
+            result = cacheResult[slot];
+
+        } else {
+            int top = Math.min(level[a], op == OP_NOT ? level[a] : level[b]);
+            int aLow = level[a] == top ? low[a] : a;
+            int aHigh = level[a] == top ? high[a] : a;
+            int bLow = level[b] == top ? low[b] : b;
+            int bHigh = level[b] == top ? high[b] : b;
+
+            if (op == OP_AND) {
+                result = mk(top, and(aLow, bLow), and(aHigh, bHigh));
+            } else if (op == OP_OR) {
+                result = mk(top, or(aLow, bLow), or(aHigh, bHigh));
+            } else {
+                result = mk(top, not(aLow), not(aHigh));
+            }
+
+            cacheOp[slot] = op;
+            cacheA[slot] = a;
+            cacheB[slot] = b;
+            cacheResult[slot] = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the unique node for the given triple, creating it if necessary.
+     *
+     * @param varLevel The level of the variable of the node.
+     * @param lowNode The node for the variable being <code>false</code>.
+     * @param highNode The node for the variable being <code>true</code>.
+     * @return The node.
+     */
+    private int mk(int varLevel, int lowNode, int highNode) {
+        int result;
+        if (lowNode == highNode) {
+            result = lowNode;
+        } else {
+            int mask = unique.length - 1;
+            int slot = hash(varLevel, lowNode, highNode) & mask;
+            while (unique[slot] != 0 && !isNode(unique[slot] - 1, varLevel, lowNode, highNode)) {
+                slot = (slot + 1) & mask;
+            }
+
+            if (unique[slot] != 0) {
+                result = unique[slot] - 1;
+            } else {
+                result = addNode(varLevel, lowNode, highNode);
+                unique[slot] = result + 1;
+                if (size * 2 > unique.length) {
+                    growUnique();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether the given node has the given triple.
+     *
+     * @param node The node.
+     * @param varLevel The expected level.
+     * @param lowNode The expected low child.
+     * @param highNode The expected high child.
+     * @return Whether the node matches.
+     */
+    private boolean isNode(int node, int varLevel, int lowNode, int highNode) {
+        return level[node] == varLevel && low[node] == lowNode && high[node] == highNode;
+    }
+
+    /**
+     * Appends a new node to the node table.
+     *
+     * @param varLevel The level of the variable.
+     * @param lowNode The low child.
+     * @param highNode The high child.
+     * @return The index of the new node.
+     */
+    private int addNode(int varLevel, int lowNode, int highNode) {
+        if (size >= maxNodes) {
+            throw new BddOverflowException(maxNodes);
+        }
+        if (size == level.length) {
+            int capacity = level.length * 2;
+            level = Arrays.copyOf(level, capacity);
+            low = Arrays.copyOf(low, capacity);
+            high = Arrays.copyOf(high, capacity);
+        }
+        level[size] = varLevel;
+        low[size] = lowNode;
+        high[size] = highNode;
+        return size++;
+    }
+
+    /**
+     * Doubles the size of the unique table and re-inserts all nodes.
+     */
+    private void growUnique() {
+        unique = new int[unique.length * 2];
+        int mask = unique.length - 1;
+        for (int node = 2; node < size; node++) {
+            int slot = hash(level[node], low[node], high[node]) & mask;
+            while (unique[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            unique[slot] = node + 1;
+        }
+    }
+
+    /**
+     * Hashes a node triple.
+     *
+     * @param varLevel The level.
+     * @param lowNode The low child.
+     * @param highNode The high child.
+     * @return The hash code.
+     */
+    private static int hash(int varLevel, int lowNode, int highNode) {
+        int h = varLevel * 31 + lowNode;
+        h = h * 0x9E3779B1 + highNode;
+        return h ^ (h >>> 16);
+    }
+
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * The change set between two build models: the files that were added, removed, or whose presence condition
+ * changed. Computed from two {@link BuildModelFingerprint}s with a single lookup per file, so downstream analyses
+ * can process only the changed entries of a new extraction.
+ *
+ * <p>
+ * The change set is stored as a text file with one line per file: <code>A</code>, <code>D</code> or
+ * <code>M</code> (added, deleted, modified), a space, and the path. Lines are sorted by path.
+ * </p>
+ *
+ * @author Adam
+ */
+public class BuildModelDiff {
+
+    private final @NonNull List<@NonNull File> added;
+
+    private final @NonNull List<@NonNull File> removed;
+
+    private final @NonNull List<@NonNull File> changed;
+
+    /**
+     * Creates a change set.
+     *
+     * @param added The added files.
+     * @param removed The removed files.
+     * @param changed The files with a changed presence condition.
+     */
+    private BuildModelDiff(@NonNull List<@NonNull File> added, @NonNull List<@NonNull File> removed,
+            @NonNull List<@NonNull File> changed) {
+        Collections.sort(added);
+        Collections.sort(removed);
+        Collections.sort(changed);
+        this.added = Collections.unmodifiableList(added);
+        this.removed = Collections.unmodifiableList(removed);
+        this.changed = Collections.unmodifiableList(changed);
+    }
+
+    /**
+     * Computes the change set between two fingerprints. Files are compared by their structural hash, so a changed
+     * presence condition is missed only in the unlikely case of a 64 bit hash collision.
+     *
+     * @param oldFingerprint The fingerprint of the old build model.
+     * @param newFingerprint The fingerprint of the new build model.
+     * @return The change set from the old to the new build model.
+     */
+    public static @NonNull BuildModelDiff compare(@NonNull BuildModelFingerprint oldFingerprint,
+            @NonNull BuildModelFingerprint newFingerprint) {
+
+        List<@NonNull File> added = new ArrayList<>();
+        List<@NonNull File> removed = new ArrayList<>();
+        List<@NonNull File> changed = new ArrayList<>();
+
+        for (String path : newFingerprint.getPaths()) {
+            Long oldHash = oldFingerprint.getHash(path);
+            if (oldHash == null) {
+                added.add(new File(path));
+            } else if (!oldHash.equals(newFingerprint.getHash(path))) {
+                changed.add(new File(path));
+            }
+        }
+        for (String path : oldFingerprint.getPaths()) {
+            if (newFingerprint.getHash(path) == null) {
+                removed.add(new File(path));
+            }
+        }
+
+        return new BuildModelDiff(added, removed, changed);
+    }
+
+    /**
+     * Computes the change set between two build models.
+     *
+     * @param oldModel The old build model.
+     * @param newModel The new build model.
+     * @return The change set from the old to the new build model.
+     */
+    public static @NonNull BuildModelDiff compare(@NonNull BuildModel oldModel, @NonNull BuildModel newModel) {
+        return compare(BuildModelFingerprint.create(oldModel), BuildModelFingerprint.create(newModel));
+    }
+
+    /**
+     * Returns the files that are only in the new build model.
+     *
+     * @return The sorted, unmodifiable list of added files.
+     */
+    public @NonNull List<@NonNull File> getAdded() {
+        return added;
+    }
+
+    /**
+     * Returns the files that are only in the old build model.
+     *
+     * @return The sorted, unmodifiable list of removed files.
+     */
+    public @NonNull List<@NonNull File> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * Returns the files that are in both build models, but with a different presence condition.
+     *
+     * @return The sorted, unmodifiable list of changed files.
+     */
+    public @NonNull List<@NonNull File> getChanged() {
+        return changed;
+    }
+
+    /**
+     * Checks whether both build models are equal.
+     *
+     * @return Whether no file was added, removed or changed.
+     */
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+    }
+
+    /**
+     * Writes this change set to the given text file.
+     *
+     * @param file The file to write to.
+     *
+     * @throws IOException If writing fails.
+     */
+    public void write(@NonNull File file) throws IOException {
+        List<@NonNull String> lines = new ArrayList<>(added.size() + removed.size() + changed.size());
+        addLines(lines, 'A', added);
+        addLines(lines, 'D', removed);
+        addLines(lines, 'M', changed);
+        lines.sort((l1, l2) -> l1.substring(2).compareTo(l2.substring(2)));
+
+        try (BufferedWriter out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            for (String line : lines) {
+                out.write(line);
+                out.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Adds a line for each file.
+     *
+     * @param lines The list to add the lines to.
+     * @param kind The kind of change.
+     * @param files The files.
+     */
+    private static void addLines(@NonNull List<@NonNull String> lines, char kind, @NonNull List<@NonNull File> files) {
+        for (File f : files) {
+            lines.add(kind + " " + f.getPath());
+        }
+    }
+
+    /**
+     * Reads a change set that was written by {@link #write(File)}.
+     *
+     * @param file The file to read from.
+     * @return The change set.
+     *
+     * @throws IOException If reading fails or the file is malformed.
+     */
+    public static @NonNull BuildModelDiff read(@NonNull File file) throws IOException {
+        List<@NonNull File> added = new ArrayList<>();
+        List<@NonNull File> removed = new ArrayList<>();
+        List<@NonNull File> changed = new ArrayList<>();
+
+        try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.length() < 3 || line.charAt(1) != ' ') {
+                    throw new IOException("Malformed line in change set " + file + ": " + line);
+                }
+                File path = new File(line.substring(2));
+                char kind = line.charAt(0);
+                if (kind == 'A') {
+                    added.add(path);
+                } else if (kind == 'D') {
+                    removed.add(path);
+                } else if (kind == 'M') {
+                    changed.add(path);
+                } else {
+                    throw new IOException("Malformed line in change set " + file + ": " + line);
+                }
+            }
+        }
+
+        return new BuildModelDiff(added, removed, changed);
+    }
+
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.False;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * A 64 bit structural hash of the presence condition of each file in a build model. Two structurally equal
+ * formulas always have the same hash; the hash only depends on the formula structure and the variable names, so it
+ * is stable across extractions and JVMs. {@link BuildModelDiff} compares two fingerprints in linear time instead
+ * of comparing the formulas.
+ *
+ * <p>
+ * The fingerprint is built by {@link Converter} during conversion (see
+ * {@link Converter#setBuildFingerprint(boolean)}) and can be stored next to the build model via
+ * {@link #write(File)}.
+ * </p>
+ *
+ * @author Adam
+ */
+public class BuildModelFingerprint implements Serializable {
+
+    private static final long serialVersionUID = 3319724658861024937L;
+
+    private static final long FALSE_HASH = 0x5bd1e9955bd1e995L;
+
+    private static final long TRUE_HASH = 0x27d4eb2f165667c5L;
+
+    private static final long VARIABLE_SEED = 0x165667b19e3779f9L;
+
+    private static final long NEGATION_SEED = 0x85ebca77c2b2ae63L;
+
+    private static final long CONJUNCTION_SEED = 0xc2b2ae3d27d4eb4fL;
+
+    private static final long DISJUNCTION_SEED = 0x9e3779b97f4a7c15L;
+
+    private final @NonNull Map<String, Long> hashes = new HashMap<>();
+
+    /**
+     * The hash of the conversion options that the presence conditions were created with; 0 if unknown.
+     */
+    private long optionsHash;
+
+    /**
+     * Creates the fingerprint of an existing build model.
+     *
+     * @param buildModel The build model.
+     * @return The fingerprint of the build model.
+     */
+    public static @NonNull BuildModelFingerprint create(@NonNull BuildModel buildModel) {
+        BuildModelFingerprint result = new BuildModelFingerprint();
+        for (File file : buildModel) {
+            Formula pc = buildModel.getPc(file);
+            if (pc != null) {
+                result.add(file, pc);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds a file with its presence condition. If the file was already added, its hash is replaced.
+     *
+     * @param file The file, relative to the source tree.
+     * @param pc The presence condition of the file.
+     */
+    public void add(@NonNull File file, @NonNull Formula pc) {
+        hashes.put(file.getPath(), hash(pc));
+    }
+
+    /**
+     * Records the conversion options that the presence conditions of this fingerprint were created with. Different
+     * options (e.g. another simplification level) result in structurally different presence conditions, so
+     * fingerprints with different options should not be compared.
+     *
+     * @param options A description of the conversion options; only its hash is stored.
+     */
+    public void setOptions(@NonNull String options) {
+        this.optionsHash = hash(options);
+    }
+
+    /**
+     * Returns the hash of the conversion options that were set with {@link #setOptions(String)}.
+     *
+     * @return The hash of the conversion options; 0 if none were set, e.g. for fingerprints written by older
+     *      versions.
+     */
+    public long getOptionsHash() {
+        return optionsHash;
+    }
+
+    /**
+     * Returns the hash of the presence condition of the given file.
+     *
+     * @param file The file, relative to the source tree.
+     * @return The hash, or <code>null</code> if the file is not in this fingerprint.
+     */
+    public @Nullable Long getHash(@NonNull File file) {
+        return hashes.get(file.getPath());
+    }
+
+    /**
+     * Returns the (normalized) paths of all files in this fingerprint.
+     *
+     * @return An unmodifiable set of the paths.
+     */
+    @NonNull Set<String> getPaths() {
+        return Collections.unmodifiableSet(hashes.keySet());
+    }
+
+    /**
+     * Returns the hash of the given path.
+     *
+     * @param path The (normalized) path.
+     * @return The hash, or <code>null</code> if the path is not in this fingerprint.
+     */
+    @Nullable Long getHash(@NonNull String path) {
+        return hashes.get(path);
+    }
+
+    /**
+     * Returns the number of files in this fingerprint.
+     *
+     * @return The number of files.
+     */
+    public int getSize() {
+        return hashes.size();
+    }
+
+    /**
+     * Computes the structural hash of the given formula.
+     *
+     * @param formula The formula to hash.
+     * @return The 64 bit hash.
+     */
+    public static long hash(@NonNull Formula formula) {
+        long result;
+        if (formula instanceof Variable) {
+            result = combine(VARIABLE_SEED, hash(((Variable) formula).getName()));
+
+        } else if (formula instanceof Negation) {
+            result = combine(NEGATION_SEED, hash(((Negation) formula).getFormula()));
+
+        } else if (formula instanceof Conjunction) {
+            Conjunction conjunction = (Conjunction) formula;
+            result = combine(combine(CONJUNCTION_SEED, hash(conjunction.getLeft())), hash(conjunction.getRight()));
+
+        } else if (formula instanceof Disjunction) {
+            Disjunction disjunction = (Disjunction) formula;
+            result = combine(combine(DISJUNCTION_SEED, hash(disjunction.getLeft())), hash(disjunction.getRight()));
+
+        } else if (formula instanceof True) {
+            result = TRUE_HASH;
+
+        } else if (formula instanceof False) {
+            result = FALSE_HASH;
+
+        } else {
+            throw new IllegalArgumentException("Unknown formula type " + formula.getClass().getName());
+        }
+        return result;
+    }
+
+    /**
+     * Computes the 64 bit FNV-1a hash of the given string.
+     *
+     * @param string The string to hash.
+     * @return The hash.
+     */
+    private static long hash(@NonNull String string) {
+        long result = 0xcbf29ce484222325L;
+        for (int i = 0; i < string.length(); i++) {
+            result ^= string.charAt(i);
+            result *= 0x100000001b3L;
+        }
+        return result;
+    }
+
+    /**
+     * Combines two hashes. Not commutative, so that the order of operands is significant.
+     *
+     * @param hash1 The first hash.
+     * @param hash2 The second hash.
+     * @return The combined hash.
+     */
+    private static long combine(long hash1, long hash2) {
+        // finalizer of SplitMix64
+        long z = hash1 * 0x9e3779b97f4a7c15L + hash2;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Serializes this fingerprint to the given file.
+     *
+     * @param file The file to write to.
+     *
+     * @throws IOException If writing fails.
+     */
+    public void write(@NonNull File file) throws IOException {
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeObject(this);
+        }
+    }
+
+    /**
+     * Reads a fingerprint that was written by {@link #write(File)}.
+     *
+     * @param file The file to read from.
+     * @return The fingerprint.
+     *
+     * @throws IOException If reading fails or the file does not contain a fingerprint.
+     */
+    public static @NonNull BuildModelFingerprint read(@NonNull File file) throws IOException {
+        BuildModelFingerprint result;
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            result = (BuildModelFingerprint) in.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("File does not contain a build model fingerprint: " + file, e);
+        }
+        return result;
+    }
+
+}
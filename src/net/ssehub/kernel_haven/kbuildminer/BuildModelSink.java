@@ -0,0 +1,64 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.io.File;
+
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * A {@link PcSink} that adds all presence conditions to a {@link BuildModel}.
+ *
+ * @author Adam
+ */
+public class BuildModelSink implements PcSink {
+
+    private final @NonNull BuildModel buildModel;
+
+    /**
+     * Creates a sink that adds to a new, empty {@link BuildModel}.
+     */
+    public BuildModelSink() {
+        this(new BuildModel());
+    }
+
+    /**
+     * Creates a sink that adds to the given build model, e.g. a {@link SpillingBuildModel}.
+     *
+     * @param buildModel The build model to add the presence conditions to.
+     */
+    public BuildModelSink(@NonNull BuildModel buildModel) {
+        this.buildModel = buildModel;
+    }
+
+    @Override
+    public void accept(@NonNull File file, @NonNull Formula pc) {
+        buildModel.add(file, pc);
+    }
+
+    /**
+     * Returns the build model that this sink adds to.
+     *
+     * @return The build model.
+     */
+    public @NonNull BuildModel getBuildModel() {
+        return buildModel;
+    }
+
+}
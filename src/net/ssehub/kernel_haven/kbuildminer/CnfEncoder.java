@@ -0,0 +1,399 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.False;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * Encodes presence conditions into a single CNF with the Tseitin transformation. Each {@link Variable} gets a
+ * DIMACS variable; each conjunction gets an auxiliary variable that is equivalent to it, negations are negated
+ * literals, and disjunctions are negated conjunctions of the negated operands. Conjunctions are cached by the
+ * (sorted) literals of their operands, so structurally identical sub-formulas (e.g. shared directory conditions, or
+ * the frequent <code>CONFIG_X || CONFIG_X_MODULE</code>) get a single auxiliary variable across all presence
+ * conditions.
+ *
+ * <p>
+ * Each file is mapped to the literal that is equivalent to its presence condition; a SAT solver can assume this
+ * literal to check a presence condition. The encoding is equisatisfiable for every such assumption. Three-valued
+ * literals of {@link TristateLiterals} are encoded in the two-variable encoding, so the CNF only contains the
+ * variables of the variability model.
+ * </p>
+ *
+ * @author Adam
+ */
+public class CnfEncoder {
+
+    /**
+     * A cached conjunction of two literals.
+     */
+    private static final class Gate {
+
+        private final int left;
+
+        private final int right;
+
+        /**
+         * Creates a gate. The operands are sorted, since the conjunction is commutative.
+         *
+         * @param operand1 The literal of one operand.
+         * @param operand2 The literal of the other operand.
+         */
+        private Gate(int operand1, int operand2) {
+            this.left = Math.min(operand1, operand2);
+            this.right = Math.max(operand1, operand2);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            boolean result = false;
+            if (obj instanceof Gate) {
+                Gate other = (Gate) obj;
+                result = left == other.left && right == other.right;
+            }
+            return result;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * left + right;
+        }
+
+    }
+
+    private final @NonNull Map<String, Integer> variables = new LinkedHashMap<>();
+
+    private final @NonNull Map<Gate, Integer> gates = new HashMap<>();
+
+    private final @NonNull Map<String, Integer> files = new LinkedHashMap<>();
+
+    /**
+     * The clauses, each terminated by 0, like in DIMACS.
+     */
+    private int @NonNull [] clauses = new int[1024];
+
+    private int clausesSize;
+
+    private int numClauses;
+
+    private int numVariables;
+
+    /**
+     * The variable that is constrained to true; 0 if not created yet.
+     */
+    private int trueVariable;
+
+    /**
+     * Encodes the presence condition of the given file. If the file was added before, its literal is replaced; the
+     * clauses of the old presence condition stay in the CNF.
+     *
+     * @param file The file.
+     * @param pc The presence condition of the file.
+     * @return The literal that is equivalent to the presence condition.
+     */
+    public int add(@NonNull File file, @NonNull Formula pc) {
+        int result = encode(pc);
+        files.put(file.getPath(), result);
+        return result;
+    }
+
+    /**
+     * Returns the literal of the given file.
+     *
+     * @param file The file.
+     * @return The literal that is equivalent to the presence condition of the file; 0 if the file was not added.
+     */
+    public int getLiteral(@NonNull File file) {
+        Integer result = files.get(file.getPath());
+        return result != null ? result : 0;
+    }
+
+    /**
+     * Returns the DIMACS variable of the given {@link Variable}.
+     *
+     * @param name The name of the variable.
+     * @return The DIMACS variable; 0 if the variable does not occur in any presence condition.
+     */
+    public int getVariable(@NonNull String name) {
+        Integer result = variables.get(name);
+        return result != null ? result : 0;
+    }
+
+    /**
+     * Returns the number of DIMACS variables, including the auxiliary variables.
+     *
+     * @return The number of variables.
+     */
+    public int getNumVariables() {
+        return numVariables;
+    }
+
+    /**
+     * Returns the number of clauses.
+     *
+     * @return The number of clauses.
+     */
+    public int getNumClauses() {
+        return numClauses;
+    }
+
+    /**
+     * Returns the number of cached gates, i.e. of auxiliary variables.
+     *
+     * @return The number of gates.
+     */
+    public int getNumGates() {
+        return gates.size();
+    }
+
+    /**
+     * Returns the clauses.
+     *
+     * @return The literals of the clauses; each clause is terminated by 0.
+     */
+    public int @NonNull [] getClauses() {
+        return Arrays.copyOf(clauses, clausesSize);
+    }
+
+    /**
+     * Encodes a formula bottom-up. Iterative, so that deep chains don't overflow the stack.
+     *
+     * @param formula The formula to encode.
+     * @return The literal that is equivalent to the formula.
+     */
+    private int encode(@NonNull Formula formula) {
+        List<@NonNull Formula> work = new ArrayList<>();
+        List<Boolean> expanded = new ArrayList<>();
+        int[] literals = new int[16];
+        int top = 0;
+
+        work.add(formula);
+        expanded.add(false);
+        while (!work.isEmpty()) {
+            Formula current = work.remove(work.size() - 1);
+            boolean operandsDone = expanded.remove(expanded.size() - 1);
+
+            if (top + 1 >= literals.length) {
+                literals = Arrays.copyOf(literals, literals.length * 2);
+            }
+            if (current instanceof Variable) {
+                literals[top++] = encodeVariable(((Variable) current).getName());
+            } else if (current instanceof True || current instanceof False) {
+                literals[top++] = current instanceof True ? getTrue() : -getTrue();
+            } else if (!operandsDone) {
+                work.add(current);
+                expanded.add(true);
+                addOperands(current, work, expanded);
+            } else if (current instanceof Negation) {
+                literals[top - 1] = -literals[top - 1];
+            } else {
+                top--;
+                literals[top - 1] = current instanceof Conjunction ? and(literals[top - 1], literals[top])
+                        : -and(-literals[top - 1], -literals[top]);
+            }
+        }
+        return literals[0];
+    }
+
+    /**
+     * Pushes the operands of a negation, conjunction or disjunction on the work stack, so that they are encoded
+     * before the node itself.
+     *
+     * @param formula The formula.
+     * @param work The work stack.
+     * @param expanded Whether the operands of each formula on the work stack are already encoded.
+     */
+    private static void addOperands(@NonNull Formula formula, @NonNull List<@NonNull Formula> work,
+            @NonNull List<Boolean> expanded) {
+
+        if (formula instanceof Negation) {
+            work.add(((Negation) formula).getFormula());
+            expanded.add(false);
+        } else if (formula instanceof Conjunction) {
+            work.add(((Conjunction) formula).getRight());
+            work.add(((Conjunction) formula).getLeft());
+            expanded.add(false);
+            expanded.add(false);
+        } else if (formula instanceof Disjunction) {
+            work.add(((Disjunction) formula).getRight());
+            work.add(((Disjunction) formula).getLeft());
+            expanded.add(false);
+            expanded.add(false);
+        } else {
+            throw new IllegalArgumentException("Unknown formula type " + formula.getClass().getName());
+        }
+    }
+
+    /**
+     * Returns the literal of the conjunction of two literals, creating an auxiliary variable and its clauses if this
+     * conjunction was not encoded before.
+     *
+     * @param left The literal of the left operand.
+     * @param right The literal of the right operand.
+     * @return The literal that is equivalent to the conjunction.
+     */
+    private int and(int left, int right) {
+        Integer result;
+        if (left == right || right == trueVariable) {
+            result = left;
+        } else if (left == trueVariable) {
+            result = right;
+        } else if (left == -right || left == -trueVariable || right == -trueVariable) {
+            result = -getTrue();
+        } else {
+            Gate gate = new Gate(left, right);
+            result = gates.get(gate);
+            if (result == null) {
+                result = ++numVariables;
+                gates.put(gate, result);
+                // g <-> (a && b)
+                addClause(-result, left);
+                addClause(-result, right);
+                addClause(result, -left, -right);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the literal of a {@link Variable}. Three-valued literals (see {@link TristateLiterals}) are encoded
+     * in terms of the variables of the two-variable encoding, since the rest of the model and the variability model
+     * only know these; <code>CONFIG_X={y,m}</code> thus shares its gate with <code>CONFIG_X || CONFIG_X_MODULE</code>.
+     *
+     * @param name The name of the variable.
+     * @return The literal that is equivalent to the variable.
+     */
+    private int encodeVariable(@NonNull String name) {
+        int result;
+        if (TristateLiterals.isLiteral(name)) {
+            List<@NonNull String> names = TristateLiterals.getExpandedNames(name);
+            result = getOrCreateVariable(names.get(0));
+            if (names.size() > 1) {
+                result = -and(-result, -getOrCreateVariable(names.get(1)));
+            }
+        } else {
+            result = getOrCreateVariable(name);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the DIMACS variable for the given name, creating it if necessary.
+     *
+     * @param name The name of the variable.
+     * @return The DIMACS variable.
+     */
+    private int getOrCreateVariable(@NonNull String name) {
+        Integer result = variables.get(name);
+        if (result == null) {
+            result = ++numVariables;
+            variables.put(name, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the variable that is constrained to true, creating it and its unit clause if necessary.
+     *
+     * @return The true variable.
+     */
+    private int getTrue() {
+        if (trueVariable == 0) {
+            trueVariable = ++numVariables;
+            addClause(trueVariable);
+        }
+        return trueVariable;
+    }
+
+    /**
+     * Adds a clause.
+     *
+     * @param literals The literals of the clause.
+     */
+    private void addClause(int... literals) {
+        if (clausesSize + literals.length + 1 > clauses.length) {
+            clauses = Arrays.copyOf(clauses, Math.max(clauses.length * 2, clausesSize + literals.length + 1));
+        }
+        System.arraycopy(literals, 0, clauses, clausesSize, literals.length);
+        clausesSize += literals.length;
+        clauses[clausesSize++] = 0;
+        numClauses++;
+    }
+
+    /**
+     * Writes the CNF in DIMACS format. The names of the variables are written as comment lines
+     * <code>c &lt;variable&gt; &lt;name&gt;</code> before the problem line.
+     *
+     * @param file The file to write to.
+     *
+     * @throws IOException If writing fails.
+     */
+    public void writeDimacs(@NonNull File file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Integer> variable : variables.entrySet()) {
+                out.write("c " + variable.getValue() + " " + variable.getKey() + "\n");
+            }
+            out.write("p cnf " + numVariables + " " + numClauses + "\n");
+
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < clausesSize; i++) {
+                line.append(clauses[i]);
+                if (clauses[i] == 0) {
+                    out.write(line.append('\n').toString());
+                    line.setLength(0);
+                } else {
+                    line.append(' ');
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the mapping from the files to their literals. Each line has the form
+     * <code>&lt;literal&gt; &lt;path&gt;</code>.
+     *
+     * @param file The file to write to.
+     *
+     * @throws IOException If writing fails.
+     */
+    public void writeMapping(@NonNull File file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Integer> entry : files.entrySet()) {
+                out.write(entry.getValue() + " " + entry.getKey() + "\n");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * A build model that keeps its presence conditions in a {@link CompactFormulaStore}, i.e. as postfix
+ * <code>int</code> sequences over an interned variable table. The paths are kept in a sorted array. Presence
+ * conditions can be evaluated without creating {@link Formula} objects; {@link #getPc(File)} creates them on demand.
+ *
+ * @author Adam
+ */
+public class CompactBuildModel implements Iterable<@NonNull File>, Serializable {
+
+    private static final long serialVersionUID = -6185240563017730915L;
+
+    private final @NonNull CompactFormulaStore store;
+
+    /**
+     * The (normalized) paths of the source files, sorted.
+     */
+    private final @NonNull String @NonNull [] paths;
+
+    /**
+     * The handle in {@link #store} of the presence condition of each entry in {@link #paths}.
+     */
+    private final int @NonNull [] handles;
+
+    /**
+     * A {@link PcSink} that encodes each presence condition into a {@link CompactFormulaStore} as soon as it is
+     * received, so that no {@link Formula} trees are kept. {@link #build()} creates the model at the end.
+     */
+    public static final class Builder implements PcSink {
+
+        private final @NonNull CompactFormulaStore store = new CompactFormulaStore();
+
+        /**
+         * The paths in the order they were received.
+         */
+        private final @NonNull List<@NonNull String> paths = new ArrayList<>();
+
+        /**
+         * The handle of each entry in {@link #paths}.
+         */
+        private int @NonNull [] handles = new int[1024];
+
+        @Override
+        public void accept(@NonNull File file, @NonNull Formula pc) {
+            if (paths.size() == handles.length) {
+                handles = Arrays.copyOf(handles, handles.length * 2);
+            }
+            handles[paths.size()] = store.add(pc);
+            paths.add(file.getPath());
+        }
+
+        /**
+         * Creates the model from the presence conditions received so far. If a file was received multiple times,
+         * the last presence condition wins, like in {@link BuildModel}.
+         *
+         * @return The compact model.
+         */
+        public @NonNull CompactBuildModel build() {
+            Integer[] order = new Integer[paths.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            // stable sort, so that duplicates stay in the order they were received
+            Arrays.sort(order, (i1, i2) -> paths.get(i1).compareTo(paths.get(i2)));
+
+            List<@NonNull String> sortedPaths = new ArrayList<>(order.length);
+            int[] sortedHandles = new int[order.length];
+            for (Integer index : order) {
+                String path = paths.get(index);
+                int pos = sortedPaths.size();
+                if (pos > 0 && sortedPaths.get(pos - 1).equals(path)) {
+                    pos--;
+                } else {
+                    sortedPaths.add(path);
+                }
+                sortedHandles[pos] = handles[index];
+            }
+
+            return new CompactBuildModel(store, sortedPaths.toArray(new @NonNull String[sortedPaths.size()]),
+                    Arrays.copyOf(sortedHandles, sortedPaths.size()));
+        }
+
+    }
+
+    /**
+     * Creates a compact model. Use {@link #create(BuildModel)} or a {@link Builder}.
+     *
+     * @param store The store containing the presence conditions.
+     * @param paths The sorted paths.
+     * @param handles The handles of the presence conditions of the paths.
+     */
+    private CompactBuildModel(@NonNull CompactFormulaStore store, @NonNull String @NonNull [] paths,
+            int @NonNull [] handles) {
+        this.store = store;
+        this.paths = paths;
+        this.handles = handles;
+    }
+
+    /**
+     * Creates a compact model from the given build model.
+     *
+     * @param buildModel The build model.
+     * @return The compact model containing the same files.
+     */
+    public static @NonNull CompactBuildModel create(@NonNull BuildModel buildModel) {
+        Builder builder = new Builder();
+        for (File file : buildModel) {
+            Formula pc = buildModel.getPc(file);
+            if (pc != null) {
+                builder.accept(file, pc);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the presence condition of the given file. A new {@link Formula} is created on each call.
+     *
+     * @param file The file, relative to the source tree.
+     * @return The presence condition, or <code>null</code> if the file is not in this model.
+     */
+    public @Nullable Formula getPc(@NonNull File file) {
+        int index = Arrays.binarySearch(paths, file.getPath());
+        return index >= 0 ? store.toFormula(handles[index]) : null;
+    }
+
+    /**
+     * Evaluates the presence condition of the given file under a configuration, without creating {@link Formula}
+     * objects. Variable ids can be looked up with {@link CompactFormulaStore#getVariableId(String)} of
+     * {@link #getStore()}.
+     *
+     * @param file The file, relative to the source tree.
+     * @param assignment The value of each variable, by variable id.
+     * @return Whether the file is present in the given configuration; <code>false</code> if the file is not in this
+     *      model.
+     */
+    public boolean evaluate(@NonNull File file, @NonNull IntPredicate assignment) {
+        int index = Arrays.binarySearch(paths, file.getPath());
+        return index >= 0 && store.evaluate(handles[index], assignment);
+    }
+
+    /**
+     * Returns the handle of the presence condition of the given file in {@link #getStore()}.
+     *
+     * @param file The file, relative to the source tree.
+     * @return The handle, or <code>-1</code> if the file is not in this model.
+     */
+    public int getHandle(@NonNull File file) {
+        int index = Arrays.binarySearch(paths, file.getPath());
+        return index >= 0 ? handles[index] : -1;
+    }
+
+    /**
+     * Returns the store that contains the encoded presence conditions.
+     *
+     * @return The formula store.
+     */
+    public @NonNull CompactFormulaStore getStore() {
+        return store;
+    }
+
+    /**
+     * Checks whether the given file is in this model.
+     *
+     * @param file The file, relative to the source tree.
+     * @return Whether the file is in this model.
+     */
+    public boolean contains(@NonNull File file) {
+        return Arrays.binarySearch(paths, file.getPath()) >= 0;
+    }
+
+    /**
+     * Returns the number of files in this model.
+     *
+     * @return The number of files.
+     */
+    public int getSize() {
+        return paths.length;
+    }
+
+    /**
+     * Converts this model back to a {@link BuildModel}.
+     *
+     * @return A build model with the same presence conditions.
+     */
+    public @NonNull BuildModel toBuildModel() {
+        BuildModel result = new BuildModel();
+        for (int i = 0; i < paths.length; i++) {
+            result.add(new File(paths[i]), store.toFormula(handles[i]));
+        }
+        return result;
+    }
+
+    @Override
+    public @NonNull Iterator<@NonNull File> iterator() {
+        return new Iterator<@NonNull File>() {
+
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < paths.length;
+            }
+
+            @Override
+            public @NonNull File next() {
+                return new File(paths[index++]);
+            }
+
+        };
+    }
+
+}
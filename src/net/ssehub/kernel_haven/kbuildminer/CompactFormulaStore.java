@@ -0,0 +1,348 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.False;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Stores formulas as flat postfix sequences of <code>int</code>s in a single shared array, instead of trees of
+ * {@link Formula} objects. Variables are interned in a table and encoded by their (non-negative) id; the operators
+ * and constants are encoded as negative values. A formula is identified by the handle returned from
+ * {@link #add(Formula)}.
+ *
+ * <p>
+ * Evaluation ({@link #evaluate(int, IntPredicate)}) and traversal ({@link #forEachVariable(int, IntConsumer)}) run
+ * directly on the encoding; {@link #toFormula(int)} creates a {@link Formula} only on demand. A binary node takes
+ * 4 bytes instead of an object with header and two references.
+ * </p>
+ *
+ * @author Adam
+ */
+public class CompactFormulaStore implements Serializable {
+
+    private static final long serialVersionUID = 2806319429431563470L;
+
+    static final int FALSE = -1;
+
+    static final int TRUE = -2;
+
+    static final int NOT = -3;
+
+    static final int AND = -4;
+
+    static final int OR = -5;
+
+    private final @NonNull List<@NonNull String> names = new ArrayList<>();
+
+    private final @NonNull Map<String, Integer> ids = new HashMap<>();
+
+    /**
+     * The postfix sequences of all formulas, back to back.
+     */
+    private int @NonNull [] code = new int[1024];
+
+    private int codeSize;
+
+    /**
+     * The start of each formula in {@link #code}; the formula ends where the next one starts.
+     */
+    private int @NonNull [] starts = new int[64];
+
+    private int numFormulas;
+
+    /**
+     * Shared {@link Variable} instances for {@link #toFormula(int)}; not serialized.
+     */
+    private transient @Nullable Variable @Nullable [] variables;
+
+    /**
+     * Adds a formula to this store. If encoding fails (e.g. for an unknown formula type), the store is left
+     * unchanged, except for interned variable names.
+     *
+     * @param formula The formula to add.
+     * @return The handle of the stored formula.
+     */
+    public synchronized int add(@NonNull Formula formula) {
+        if (numFormulas == starts.length) {
+            starts = Arrays.copyOf(starts, starts.length * 2);
+        }
+        int start = codeSize;
+        starts[numFormulas] = start;
+        boolean encoded = false;
+        try {
+            encode(formula);
+            encoded = true;
+        } finally {
+            if (!encoded) {
+                // the last formula ends at codeSize; don't let the partial encoding extend it
+                codeSize = start;
+            }
+        }
+        return numFormulas++;
+    }
+
+    /**
+     * Appends the postfix encoding of the given formula to {@link #code}.
+     *
+     * @param formula The formula to encode.
+     */
+    private void encode(@NonNull Formula formula) {
+        if (formula instanceof Variable) {
+            emit(getVariableId(((Variable) formula).getName()));
+
+        } else if (formula instanceof Negation) {
+            encode(((Negation) formula).getFormula());
+            emit(NOT);
+
+        } else if (formula instanceof Conjunction) {
+            encode(((Conjunction) formula).getLeft());
+            encode(((Conjunction) formula).getRight());
+            emit(AND);
+
+        } else if (formula instanceof Disjunction) {
+            encode(((Disjunction) formula).getLeft());
+            encode(((Disjunction) formula).getRight());
+            emit(OR);
+
+        } else if (formula instanceof True) {
+            emit(TRUE);
+
+        } else if (formula instanceof False) {
+            emit(FALSE);
+
+        } else {
+            throw new IllegalArgumentException("Unknown formula type " + formula.getClass().getName());
+        }
+    }
+
+    /**
+     * Appends a single value to {@link #code}.
+     *
+     * @param value The value to append.
+     */
+    private void emit(int value) {
+        if (codeSize == code.length) {
+            code = Arrays.copyOf(code, code.length * 2);
+        }
+        code[codeSize++] = value;
+    }
+
+    /**
+     * Returns the id of the given variable name, interning it if necessary.
+     *
+     * @param name The name of the variable.
+     * @return The id of the variable.
+     */
+    public synchronized int getVariableId(@NonNull String name) {
+        Integer result = ids.get(name);
+        if (result == null) {
+            result = names.size();
+            names.add(name);
+            ids.put(name, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the name of the variable with the given id.
+     *
+     * @param id The id of the variable.
+     * @return The name of the variable.
+     *
+     * @throws IndexOutOfBoundsException If no variable with this id exists.
+     */
+    public synchronized @NonNull String getVariableName(int id) {
+        return names.get(id);
+    }
+
+    /**
+     * Returns the number of interned variables. Variable ids are in the range <code>[0, getNumVariables())</code>.
+     *
+     * @return The number of variables.
+     */
+    public synchronized int getNumVariables() {
+        return names.size();
+    }
+
+    /**
+     * Evaluates the formula with the given handle directly on its encoding.
+     *
+     * @param handle The handle of the formula.
+     * @param assignment The value of each variable, by variable id.
+     * @return The value of the formula under the assignment.
+     */
+    public synchronized boolean evaluate(int handle, @NonNull IntPredicate assignment) {
+        int start = starts[handle];
+        int end = end(handle);
+        boolean[] stack = new boolean[end - start];
+        int top = 0;
+
+        for (int i = start; i < end; i++) {
+            int value = code[i];
+            if (value >= 0) {
+                stack[top++] = assignment.test(value);
+            } else if (value == TRUE || value == FALSE) {
+                stack[top++] = value == TRUE;
+            } else if (value == NOT) {
+                stack[top - 1] = !stack[top - 1];
+            } else {
+                top--;
+                stack[top - 1] = value == AND ? stack[top - 1] & stack[top] : stack[top - 1] | stack[top];
+            }
+        }
+        return stack[0];
+    }
+
+    /**
+     * Calls the consumer for each variable occurrence in the formula with the given handle, in postfix order.
+     *
+     * @param handle The handle of the formula.
+     * @param consumer The consumer of the variable ids.
+     */
+    public synchronized void forEachVariable(int handle, @NonNull IntConsumer consumer) {
+        int end = end(handle);
+        for (int i = starts[handle]; i < end; i++) {
+            if (code[i] >= 0) {
+                consumer.accept(code[i]);
+            }
+        }
+    }
+
+    /**
+     * Creates a {@link Formula} object tree for the formula with the given handle. The created formulas share a
+     * single {@link Variable} instance per variable.
+     *
+     * @param handle The handle of the formula.
+     * @return The formula.
+     */
+    public synchronized @NonNull Formula toFormula(int handle) {
+        int start = starts[handle];
+        int end = end(handle);
+        Formula[] stack = new Formula[end - start];
+        int top = 0;
+
+        for (int i = start; i < end; i++) {
+            int value = code[i];
+            if (value >= 0) {
+                stack[top++] = getVariable(value);
+            } else if (value == TRUE) {
+                stack[top++] = True.INSTANCE;
+            } else if (value == FALSE) {
+                stack[top++] = False.INSTANCE;
+            } else if (value == NOT) {
+                stack[top - 1] = new Negation(stack[top - 1]);
+            } else {
+                top--;
+                stack[top - 1] = value == AND ? new Conjunction(stack[top - 1], stack[top])
+                        : new Disjunction(stack[top - 1], stack[top]);
+            }
+        }
+        return stack[0];
+    }
+
+    /**
+     * Returns a copy of the postfix encoding of the formula with the given handle. Values <code>&gt;= 0</code> are
+     * variable ids; negative values are {@link #FALSE}, {@link #TRUE}, {@link #NOT}, {@link #AND} and {@link #OR}.
+     *
+     * @param handle The handle of the formula.
+     * @return The postfix encoding.
+     */
+    synchronized int @NonNull [] getCode(int handle) {
+        return Arrays.copyOfRange(code, starts[handle], end(handle));
+    }
+
+    /**
+     * Returns the number of ints used to encode the formula with the given handle.
+     *
+     * @param handle The handle of the formula.
+     * @return The length of the postfix encoding.
+     */
+    public synchronized int getLength(int handle) {
+        return end(handle) - starts[handle];
+    }
+
+    /**
+     * Returns the number of stored formulas. Handles are in the range <code>[0, getNumFormulas())</code>.
+     *
+     * @return The number of formulas.
+     */
+    public synchronized int getNumFormulas() {
+        return numFormulas;
+    }
+
+    /**
+     * Returns the number of bytes used by the encoded formulas (excluding the variable table).
+     *
+     * @return The number of bytes of the encoding arrays.
+     */
+    public synchronized long getEncodedBytes() {
+        return 4L * code.length + 4L * starts.length;
+    }
+
+    /**
+     * Returns the end (exclusive) of the given formula in {@link #code}.
+     *
+     * @param handle The handle of the formula.
+     * @return The end of the formula.
+     *
+     * @throws IndexOutOfBoundsException If the handle is invalid.
+     */
+    private int end(int handle) {
+        if (handle < 0 || handle >= numFormulas) {
+            throw new IndexOutOfBoundsException("Invalid formula handle " + handle);
+        }
+        return handle + 1 < numFormulas ? starts[handle + 1] : codeSize;
+    }
+
+    /**
+     * Returns the shared {@link Variable} instance for the given id.
+     *
+     * @param id The id of the variable.
+     * @return The variable.
+     */
+    private @NonNull Variable getVariable(int id) {
+        Variable[] variables = this.variables;
+        if (variables == null || variables.length < names.size()) {
+            variables = variables == null ? new Variable[names.size()] : Arrays.copyOf(variables, names.size());
+            this.variables = variables;
+        }
+        Variable result = variables[id];
+        if (result == null) {
+            result = new Variable(names.get(id));
+            variables[id] = result;
+        }
+        return result;
+    }
+
+}
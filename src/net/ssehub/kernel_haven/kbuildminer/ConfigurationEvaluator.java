@@ -0,0 +1,372 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
+
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * Evaluates the presence conditions of a build model for many configurations at once. The presence conditions are
+ * compiled into one flat postfix program (see {@link CompactFormulaStore}); each run of the program evaluates 64
+ * configurations in parallel, with one <code>long</code> bitmask per variable in which bit <i>i</i> is the value
+ * of the variable in the <i>i</i>-th configuration. Blocks of 64 configurations are distributed over
+ * {@link #setThreads(int)} threads.
+ *
+ * <p>
+ * The variables are bound to the options of a {@link KernelConfiguration} like this: <code>CONFIG_X</code> is
+ * true if the option <code>CONFIG_X</code> is <code>y</code> or has a non-tristate value (other than the empty
+ * string), <code>CONFIG_X_MODULE</code> is true if <code>CONFIG_X</code> is <code>m</code>, and three-valued
+ * literals (see {@link TristateLiterals}) are true if one of their expanded variables is. Variables of options that
+ * are not set are false.
+ * </p>
+ *
+ * @author Adam
+ */
+public class ConfigurationEvaluator {
+
+    private static final int VALUE_YES = 1;
+
+    private static final int VALUE_MODULE = 2;
+
+    private static final int VALUE_OTHER = 4;
+
+    private static final @NonNull String MODULE_SUFFIX = "_MODULE";
+
+    /**
+     * The paths of the files, sorted.
+     */
+    private final @NonNull String @NonNull [] paths;
+
+    /**
+     * The postfix programs of all presence conditions, back to back, in the order of {@link #paths}.
+     */
+    private final int @NonNull [] code;
+
+    /**
+     * The start of the program of each file in {@link #code}; has one additional element for the end.
+     */
+    private final int @NonNull [] starts;
+
+    private final int numVariables;
+
+    /**
+     * The length of the longest program, i.e. the maximum stack size that is needed.
+     */
+    private final int maxLength;
+
+    /**
+     * For each option name, the variables that depend on it: pairs of variable id and a bitmask of the values
+     * (<code>VALUE_*</code>) of the option that make the variable true.
+     */
+    private final @NonNull Map<String, int @NonNull []> bindings = new HashMap<>();
+
+    private int threads = 1;
+
+    /**
+     * Compiles the presence conditions of the given build model.
+     *
+     * @param model The build model.
+     */
+    public ConfigurationEvaluator(@NonNull CompactBuildModel model) {
+        CompactFormulaStore store = model.getStore();
+        List<@NonNull String> paths = new ArrayList<>(model.getSize());
+        starts = new int[model.getSize() + 1];
+        int[] code = new int[1024];
+        int length = 0;
+        int maxLength = 1;
+        for (File file : model) {
+            int[] program = store.getCode(model.getHandle(file));
+            if (length + program.length > code.length) {
+                code = Arrays.copyOf(code, Math.max(code.length * 2, length + program.length));
+            }
+            System.arraycopy(program, 0, code, length, program.length);
+            length += program.length;
+            maxLength = Math.max(maxLength, program.length);
+            paths.add(file.getPath());
+            starts[paths.size()] = length;
+        }
+
+        this.paths = paths.toArray(new @NonNull String[paths.size()]);
+        this.code = Arrays.copyOf(code, length);
+        this.maxLength = maxLength;
+        this.numVariables = store.getNumVariables();
+        for (int id = 0; id < numVariables; id++) {
+            bindVariable(id, store.getVariableName(id));
+        }
+    }
+
+    /**
+     * Records which option values make the given variable true.
+     *
+     * @param id The id of the variable.
+     * @param name The name of the variable.
+     */
+    private void bindVariable(int id, @NonNull String name) {
+        for (String expanded : TristateLiterals.getExpandedNames(name)) {
+            addBinding(expanded, id, VALUE_YES | VALUE_OTHER);
+            if (expanded.endsWith(MODULE_SUFFIX)) {
+                addBinding(expanded.substring(0, expanded.length() - MODULE_SUFFIX.length()), id, VALUE_MODULE);
+            }
+        }
+    }
+
+    /**
+     * Adds a binding of a variable to an option.
+     *
+     * @param option The name of the option.
+     * @param id The id of the variable.
+     * @param values The values of the option that make the variable true.
+     */
+    private void addBinding(@NonNull String option, int id, int values) {
+        int[] existing = bindings.get(option);
+        int[] binding = existing != null ? Arrays.copyOf(existing, existing.length + 2) : new int[2];
+        binding[binding.length - 2] = id;
+        binding[binding.length - 1] = values;
+        bindings.put(option, binding);
+    }
+
+    /**
+     * Sets the number of threads to evaluate with. Default is 1.
+     *
+     * @param threads The number of threads.
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Evaluates the presence conditions of all files for all given configurations.
+     *
+     * @param configurations The configurations.
+     * @return For each configuration, the files that are compiled.
+     */
+    public @NonNull Result evaluate(@NonNull List<@NonNull KernelConfiguration> configurations) {
+        long start = System.nanoTime();
+        int numBlocks = (configurations.size() + 63) / 64;
+        long[] masks = new long[paths.length * numBlocks];
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(ForkJoinTask.adapt(() -> IntStream.range(0, numBlocks).parallel()
+                    .forEach(block -> evaluateBlock(configurations, block, numBlocks, masks))));
+        } finally {
+            pool.shutdown();
+        }
+
+        return new Result(paths, configurations.size(), numBlocks, masks, System.nanoTime() - start);
+    }
+
+    /**
+     * Evaluates the presence conditions of all files for one block of up to 64 configurations.
+     *
+     * @param configurations All configurations.
+     * @param block The index of the block.
+     * @param numBlocks The total number of blocks.
+     * @param masks The array to store the results in: for each file, one bitmask per block.
+     */
+    private void evaluateBlock(@NonNull List<@NonNull KernelConfiguration> configurations, int block, int numBlocks,
+            long @NonNull [] masks) {
+
+        long[] assignment = new long[numVariables];
+        int first = block * 64;
+        int count = Math.min(64, configurations.size() - first);
+        for (int i = 0; i < count; i++) {
+            assign(configurations.get(first + i), 1L << i, assignment);
+        }
+        long valid = count == 64 ? -1L : (1L << count) - 1;
+
+        long[] stack = new long[maxLength];
+        for (int file = 0; file < paths.length; file++) {
+            int top = 0;
+            for (int i = starts[file]; i < starts[file + 1]; i++) {
+                int value = code[i];
+                if (value >= 0) {
+                    stack[top++] = assignment[value];
+                } else if (value == CompactFormulaStore.TRUE || value == CompactFormulaStore.FALSE) {
+                    stack[top++] = value == CompactFormulaStore.TRUE ? -1L : 0L;
+                } else if (value == CompactFormulaStore.NOT) {
+                    stack[top - 1] = ~stack[top - 1];
+                } else {
+                    top--;
+                    stack[top - 1] = value == CompactFormulaStore.AND ? stack[top - 1] & stack[top]
+                            : stack[top - 1] | stack[top];
+                }
+            }
+            masks[file * numBlocks + block] = stack[0] & valid;
+        }
+    }
+
+    /**
+     * Sets the bit of a configuration in the masks of all variables that are true in it.
+     *
+     * @param configuration The configuration.
+     * @param bit The bit of the configuration in its block.
+     * @param assignment The bitmask of each variable, by variable id.
+     */
+    private void assign(@NonNull KernelConfiguration configuration, long bit, long @NonNull [] assignment) {
+        for (Map.Entry<String, @NonNull String> entry : configuration.getValues().entrySet()) {
+            int[] binding = bindings.get(entry.getKey());
+            if (binding != null) {
+                int value = classify(entry.getValue());
+                for (int i = 0; i < binding.length; i += 2) {
+                    if ((binding[i + 1] & value) != 0) {
+                        assignment[binding[i]] |= bit;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Classifies the value of an option.
+     *
+     * @param value The value of the option.
+     * @return One of the <code>VALUE_*</code> constants, or 0 if the option is disabled.
+     */
+    private static int classify(@NonNull String value) {
+        int result;
+        if (value.equals("y")) {
+            result = VALUE_YES;
+        } else if (value.equals("m")) {
+            result = VALUE_MODULE;
+        } else if (value.equals("n") || value.isEmpty()) {
+            result = 0;
+        } else {
+            result = VALUE_OTHER;
+        }
+        return result;
+    }
+
+    /**
+     * The files that are compiled in each of the evaluated configurations.
+     */
+    public static final class Result {
+
+        private final @NonNull String @NonNull [] paths;
+
+        private final int numConfigurations;
+
+        private final int numBlocks;
+
+        /**
+         * For each file, one bitmask per block of 64 configurations.
+         */
+        private final long @NonNull [] masks;
+
+        private final long durationNanos;
+
+        /**
+         * Creates a result.
+         *
+         * @param paths The sorted paths of the files.
+         * @param numConfigurations The number of configurations.
+         * @param numBlocks The number of blocks of 64 configurations.
+         * @param masks For each file, one bitmask per block.
+         * @param durationNanos The duration of the evaluation.
+         */
+        private Result(@NonNull String @NonNull [] paths, int numConfigurations, int numBlocks,
+                long @NonNull [] masks, long durationNanos) {
+            this.paths = paths;
+            this.numConfigurations = numConfigurations;
+            this.numBlocks = numBlocks;
+            this.masks = masks;
+            this.durationNanos = durationNanos;
+        }
+
+        /**
+         * Returns the number of evaluated configurations.
+         *
+         * @return The number of configurations.
+         */
+        public int getNumConfigurations() {
+            return numConfigurations;
+        }
+
+        /**
+         * Returns whether the given file is compiled in the given configuration.
+         *
+         * @param configuration The index of the configuration in the list passed to
+         *      {@link ConfigurationEvaluator#evaluate(List)}.
+         * @param file The file, relative to the source tree.
+         * @return Whether the file is compiled; <code>false</code> if it is not in the build model.
+         */
+        public boolean isCompiled(int configuration, @NonNull File file) {
+            int index = Arrays.binarySearch(paths, file.getPath());
+            return index >= 0 && isCompiled(configuration, index);
+        }
+
+        /**
+         * Returns the files that are compiled in the given configuration.
+         *
+         * @param configuration The index of the configuration in the list passed to
+         *      {@link ConfigurationEvaluator#evaluate(List)}.
+         * @return The compiled files, sorted by path.
+         */
+        public @NonNull List<@NonNull File> getFiles(int configuration) {
+            List<@NonNull File> result = new ArrayList<>();
+            for (int i = 0; i < paths.length; i++) {
+                if (isCompiled(configuration, i)) {
+                    result.add(new File(paths[i]));
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Returns whether the file with the given index is compiled in the given configuration.
+         *
+         * @param configuration The index of the configuration.
+         * @param index The index of the file in {@link #paths}.
+         * @return Whether the file is compiled.
+         */
+        private boolean isCompiled(int configuration, int index) {
+            if (configuration < 0 || configuration >= numConfigurations) {
+                throw new IndexOutOfBoundsException("Invalid configuration " + configuration);
+            }
+            return (masks[index * numBlocks + configuration / 64] & (1L << (configuration % 64))) != 0;
+        }
+
+        /**
+         * Returns how long the evaluation took.
+         *
+         * @return The duration in nanoseconds.
+         */
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        /**
+         * Returns the throughput of the evaluation.
+         *
+         * @return The number of configurations evaluated per second.
+         */
+        public double getConfigurationsPerSecond() {
+            return durationNanos > 0 ? numConfigurations * 1e9 / durationNanos : 0;
+        }
+
+    }
+
+}
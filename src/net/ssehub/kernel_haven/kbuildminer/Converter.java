@@ -21,8 +21,10 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.LineNumberReader;
+import java.io.UncheckedIOException;
 
 import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.kbuildminer.KbuildMinerEvents.ConversionBatch;
 import net.ssehub.kernel_haven.util.Logger;
 import net.ssehub.kernel_haven.util.logic.Conjunction;
 import net.ssehub.kernel_haven.util.logic.Disjunction;
@@ -34,6 +36,7 @@ import net.ssehub.kernel_haven.util.logic.parser.ExpressionFormatException;
 import net.ssehub.kernel_haven.util.logic.parser.Parser;
 import net.ssehub.kernel_haven.util.logic.parser.VariableCache;
 import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
 import net.ssehub.kernel_haven.variability_model.VariabilityModel;
 import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
 
@@ -48,7 +51,46 @@ public class Converter {
     
     private static final Logger LOGGER = Logger.get();
     
-    private @NonNull VariabilityModel varModel;
+    /**
+     * The number of lines that are grouped into a single {@link ConversionBatch} event.
+     */
+    private static final int BATCH_SIZE = 10000;
+    
+    private @Nullable VariabilityModel varModel;
+    
+    private @NonNull ExtractionMetrics metrics = new ExtractionMetrics();
+    
+    private @NonNull ParseErrorReport errors = new ParseErrorReport();
+    
+    private @NonNull PcSimplifier simplifier = new PcSimplifier(PcSimplifier.Level.MINIMAL);
+    
+    private boolean canonicalize;
+    
+    private @Nullable PcCanonicalizer canonicalizer;
+    
+    private boolean buildVariableIndex;
+    
+    private @Nullable VariableIndex variableIndex;
+    
+    private boolean buildFingerprint;
+    
+    private @Nullable BuildModelFingerprint fingerprint;
+    
+    private boolean buildCnf;
+    
+    private @Nullable CnfEncoder cnf;
+    
+    private long heapBudget;
+    
+    private @NonNull PathFilter pathFilter = PathFilter.ACCEPT_ALL;
+    
+    private boolean tristateLiterals;
+    
+    private boolean balance;
+    
+    private @Nullable TristateLiterals literals;
+    
+    private @Nullable File spillDirectory;
 
     /**
      * Creates a new converter with the given variability model.
@@ -59,6 +101,153 @@ public class Converter {
         this.varModel = varModel;
     }
     
+    /**
+     * Creates a new converter without a variability model. Such a converter can only be used for the two-stage
+     * conversion via {@link #parse(File)} and {@link #finish(ParsedBuildModel, VariabilityModel)}.
+     */
+    public Converter() {
+    }
+    
+    /**
+     * Sets the metrics that the counters of this converter are recorded in.
+     * 
+     * @param metrics The metrics to record to.
+     */
+    public void setMetrics(@NonNull ExtractionMetrics metrics) {
+        this.metrics = metrics;
+    }
+    
+    /**
+     * Sets the level of simplification that is applied to each presence condition after the tristate rewriting.
+     * Default is {@link PcSimplifier.Level#MINIMAL}, which keeps the presence conditions of earlier versions.
+     * 
+     * @param level The simplification level.
+     */
+    public void setSimplificationLevel(PcSimplifier.@NonNull Level level) {
+        this.simplifier = new PcSimplifier(level);
+    }
+    
+    /**
+     * Sets whether equivalent presence conditions should be mapped to a single canonical {@link Formula} instance
+     * via {@link PcCanonicalizer}. Default is <code>false</code>.
+     * 
+     * @param canonicalize Whether to canonicalize the presence conditions.
+     */
+    public void setCanonicalize(boolean canonicalize) {
+        this.canonicalize = canonicalize;
+    }
+    
+    /**
+     * Sets whether {@link #convert(File)} and {@link #finish(ParsedBuildModel, VariabilityModel)} should build a
+     * {@link VariableIndex} from variables to files while converting. Default is <code>false</code>.
+     * 
+     * @param buildVariableIndex Whether to build the variable index.
+     */
+    public void setBuildVariableIndex(boolean buildVariableIndex) {
+        this.buildVariableIndex = buildVariableIndex;
+    }
+    
+    /**
+     * Sets a heap budget for the converted presence conditions. Beyond this budget, presence conditions are
+     * written to spill files in the given directory (see {@link SpillingBuildModel}). Half of the budget is used
+     * for the result of {@link #parse(File)}, the other half for the result of
+     * {@link #finish(ParsedBuildModel, VariabilityModel)}. Default is 0, which means no budget.
+     * 
+     * @param heapBudget The heap budget in bytes; 0 for no budget.
+     * @param spillDirectory The directory to create the spill files in.
+     */
+    public void setHeapBudget(long heapBudget, @NonNull File spillDirectory) {
+        this.heapBudget = heapBudget;
+        this.spillDirectory = spillDirectory;
+    }
+    
+    /**
+     * Sets whether tristate comparisons should be represented as single three-valued literals (see
+     * {@link TristateLiterals}) instead of two variables. Default is <code>false</code>.
+     * 
+     * @param tristateLiterals Whether to use three-valued literals.
+     */
+    public void setTristateLiterals(boolean tristateLiterals) {
+        this.tristateLiterals = tristateLiterals;
+    }
+    
+    /**
+     * Sets whether chains of conjunctions and disjunctions should be rebuilt as balanced trees (see
+     * {@link PcBalancer}). Default is <code>false</code>.
+     * 
+     * @param balance Whether to balance the presence conditions.
+     */
+    public void setBalance(boolean balance) {
+        this.balance = balance;
+    }
+    
+    /**
+     * Sets a filter for the files to convert. Lines of files that are not accepted are skipped before parsing.
+     * Default is {@link PathFilter#ACCEPT_ALL}.
+     * 
+     * @param pathFilter The filter for the paths of the files.
+     */
+    public void setPathFilter(@NonNull PathFilter pathFilter) {
+        this.pathFilter = pathFilter;
+    }
+    
+    /**
+     * Sets whether this converter should compute a {@link BuildModelFingerprint} of the presence conditions while
+     * converting. Default is <code>false</code>.
+     * 
+     * @param buildFingerprint Whether to compute the fingerprint.
+     */
+    public void setBuildFingerprint(boolean buildFingerprint) {
+        this.buildFingerprint = buildFingerprint;
+    }
+    
+    /**
+     * Returns the {@link BuildModelFingerprint} computed by the last conversion.
+     * 
+     * @return The fingerprint; <code>null</code> if {@link #setBuildFingerprint(boolean)} was not enabled.
+     */
+    public @Nullable BuildModelFingerprint getFingerprint() {
+        return fingerprint;
+    }
+    
+    /**
+     * Sets whether this converter should encode the presence conditions into a CNF with a {@link CnfEncoder} while
+     * converting. Default is <code>false</code>.
+     * 
+     * @param buildCnf Whether to build the CNF.
+     */
+    public void setBuildCnf(boolean buildCnf) {
+        this.buildCnf = buildCnf;
+    }
+    
+    /**
+     * Returns the {@link CnfEncoder} with the CNF of the presence conditions of the last conversion.
+     * 
+     * @return The CNF; <code>null</code> if {@link #setBuildCnf(boolean)} was not enabled.
+     */
+    public @Nullable CnfEncoder getCnf() {
+        return cnf;
+    }
+    
+    /**
+     * Returns the {@link VariableIndex} built by the last conversion.
+     * 
+     * @return The variable index; <code>null</code> if {@link #setBuildVariableIndex(boolean)} was not enabled.
+     */
+    public @Nullable VariableIndex getVariableIndex() {
+        return variableIndex;
+    }
+    
+    /**
+     * Returns the report of malformed presence conditions found by the last call to {@link #convert(File)} or
+     * {@link #parse(File)}.
+     * 
+     * @return The error report of the last conversion.
+     */
+    public @NonNull ParseErrorReport getErrorReport() {
+        return errors;
+    }
+    
     /**
      * Replaces _MODULE variables that are not part of a tristate representation with {@link False}.
      * If the new {@link False} parts are part of a disjunction, then this is simplified via
@@ -85,7 +274,7 @@ public class Converter {
                     removeNonTristateModules(conjunction.getRight()));
             
         } else if (formula instanceof Negation) {
-            result = removeNonTristateModules(((Negation) formula).getFormula());
+            result = new Negation(removeNonTristateModules(((Negation) formula).getFormula()));
             
         } else if (formula instanceof Variable) {
             Variable var = (Variable) formula;
@@ -93,10 +282,11 @@ public class Converter {
                 // get the base name of the variable, without _MODULE.
                 String baseName = var.getName().substring(0, var.getName().length() - "_MODULE".length());
                 
-                VariabilityVariable varVariable = varModel.getVariableMap().get(baseName);
+                VariabilityVariable varVariable = requireVarModel().getVariableMap().get(baseName);
                 
                 if (varVariable != null && !varVariable.getType().equals("tristate")) {
                     result = False.INSTANCE;
+                    metrics.incModuleRewrites();
                 }
             }
         }
@@ -126,7 +316,13 @@ public class Converter {
     
     /**
      * Converts the given output file of KbuildMiner to {@link BuildModel}. Invalid presence
-     * conditions get the presence condition {@link False}.
+     * conditions get the presence condition {@link False}; they are not logged individually, but summarized in
+     * the {@link #getErrorReport()} that is logged at the end of the conversion.
+     * 
+     * <p>
+     * This is a shortcut for {@link #parse(File)} followed by {@link #finish(ParsedBuildModel, VariabilityModel)}
+     * and requires that this converter was created with a {@link VariabilityModel}.
+     * </p>
      * 
      * @param file The file that contains the output of KbuildMiner.
      * @return The {@link BuildModel}.
@@ -134,39 +330,499 @@ public class Converter {
      * @throws IOException If reading the file fails.
      */
     public @NonNull BuildModel convert(@NonNull File file) throws IOException {
-        BuildModel result = new BuildModel();
-        
-        VariableCache cache = new VariableCache();
-        Parser<@NonNull Formula> pcParser = new Parser<>(new KbuildMinerPcGrammar(cache));
+        return finish(parse(file), requireVarModel());
+    }
+    
+    /**
+     * Runs the given {@link KbuildMakefileMiner} and converts its results to a {@link BuildModel}. The presence
+     * conditions computed by the miner get the same tristate rewriting, simplification and canonicalization as the
+     * output of KbuildMiner. Requires that this converter was created with a {@link VariabilityModel}.
+     * 
+     * @param miner The miner to run.
+     * @return The {@link BuildModel}.
+     * 
+     * @throws IOException If the miner fails to read the Kbuild files.
+     */
+    public @NonNull BuildModel convert(@NonNull KbuildMakefileMiner miner) throws IOException {
+        return finish(parse(miner), requireVarModel());
+    }
+    
+    /**
+     * The first stage of the conversion: parses the given output file of KbuildMiner, without the tristate
+     * rewriting. This does not need the {@link VariabilityModel}, so it can run while the variability model is
+     * still being extracted. Invalid presence conditions are summarized in the {@link #getErrorReport()}.
+     * 
+     * @param file The file that contains the output of KbuildMiner.
+     * @return The parsed presence conditions; pass these to {@link #finish(ParsedBuildModel, VariabilityModel)}.
+     * 
+     * @throws IOException If reading the file fails.
+     */
+    public @NonNull ParsedBuildModel parse(@NonNull File file) throws IOException {
+        ParsedBuildModel result = createParsedModel();
+        readOutput(file, false, result::add);
+        return result;
+    }
+    
+    /**
+     * Converts the given output file of KbuildMiner in a single pass and pushes each presence condition to the
+     * sink as soon as it is converted. The converter itself does not collect the presence conditions. However, the
+     * canonicalization, the {@link VariableIndex}, the {@link BuildModelFingerprint} and the {@link CnfEncoder}
+     * keep state for each presence condition, so with any of these enabled, the memory usage still grows with the
+     * size of the file. The presence conditions are the same as those of {@link #convert(File)}. Requires that this
+     * converter was created with a {@link VariabilityModel}.
+     * 
+     * @param file The file that contains the output of KbuildMiner.
+     * @param sink The sink to push the presence conditions to. {@link PcSink#end()} is called at the end.
+     * 
+     * @throws IOException If reading the file or the sink fails.
+     */
+    public void convert(@NonNull File file, @NonNull PcSink sink) throws IOException {
+        startRewriting(requireVarModel());
+        readOutput(file, true, (path, pc) -> emit(path, pc, sink));
+        logCanonicalization();
+        sink.end();
+    }
+    
+    /**
+     * Runs the given {@link KbuildMakefileMiner} and pushes each converted presence condition to the sink as soon
+     * as it is mined. Requires that this converter was created with a {@link VariabilityModel}.
+     * 
+     * @param miner The miner to run.
+     * @param sink The sink to push the presence conditions to. Never called concurrently. {@link PcSink#end()} is
+     *      called at the end.
+     * 
+     * @throws IOException If the miner fails to read the Kbuild files or the sink fails.
+     */
+    public void convert(@NonNull KbuildMakefileMiner miner, @NonNull PcSink sink) throws IOException {
+        startConversion();
+        startRewriting(requireVarModel());
+        miner.run((file, pc) -> {
+            if (pathFilter.accepts(file.getPath())) {
+                metrics.incPcsParsed();
+                try {
+                    emit(file, rewrite(pc, true), sink);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+        logCanonicalization();
+        sink.end();
+    }
+    
+    /**
+     * Reads the given output file of KbuildMiner line by line and pushes each presence condition to the sink.
+     * Invalid presence conditions are summarized in the {@link #getErrorReport()}.
+     * 
+     * @param file The file that contains the output of KbuildMiner.
+     * @param rewrite Whether to apply the tristate rewriting, simplification and canonicalization; otherwise, the
+     *      presence conditions are only parsed.
+     * @param sink The sink for the presence conditions. {@link PcSink#end()} is not called.
+     * 
+     * @throws IOException If reading the file or the sink fails.
+     */
+    private void readOutput(@NonNull File file, boolean rewrite, @NonNull PcSink sink) throws IOException {
+        Parser<@NonNull Formula> pcParser = startConversion();
         
-        LineNumberReader in = new LineNumberReader(new BufferedReader(new FileReader(file)));
-        String line;
-        while ((line = in.readLine()) != null) {
-            String filename = line.substring(0, line.indexOf(':'));
-            
-            File sourceFile = new File(filename);
-            result.add(sourceFile, False.INSTANCE);
-            
-            String pc = line.substring(filename.length() + 2);
-            
-            if (pc.contains("InvalidExpression()")) {
-                LOGGER.logWarning("Presence condition for file " + filename + " in line " + in.getLineNumber()
-                    + " is invalid");
+        try (LineNumberReader in = new LineNumberReader(new BufferedReader(new FileReader(file)))) {
+            ConversionBatch batch = beginBatch(1);
+            String line;
+            while ((line = in.readLine()) != null) {
+                metrics.incLinesRead();
+                String path = line.substring(0, line.indexOf(':'));
+                if (pathFilter.accepts(path)) {
+                    Formula pc = rewrite ? toPresenceCondition(line, in.getLineNumber(), pcParser)
+                            : parseLine(line, in.getLineNumber(), pcParser);
+                    sink.accept(new File(path), pc);
+                }
                 
-            } else {
-                try {
-                    Formula presenceCondition = pcParser.parse(pc);
-                    presenceCondition = removeNonTristateModules(presenceCondition);
-                    result.add(sourceFile, presenceCondition);
-                } catch (ExpressionFormatException e) {
-                    LOGGER.logException("Couldn't parse expression \"" + pc + "\" in line " + in.getLineNumber(), e);
+                if (in.getLineNumber() % BATCH_SIZE == 0) {
+                    commitBatch(batch, BATCH_SIZE);
+                    batch = beginBatch(in.getLineNumber() + 1);
                 }
             }
+            commitBatch(batch, in.getLineNumber() % BATCH_SIZE);
         }
         
-        in.close();
+        errors.log(LOGGER);
+    }
+    
+    /**
+     * The first stage of the conversion for the {@link KbuildMakefileMiner}: runs the miner and collects its
+     * presence conditions, without the tristate rewriting.
+     * 
+     * @param miner The miner to run.
+     * @return The mined presence conditions; pass these to {@link #finish(ParsedBuildModel, VariabilityModel)}.
+     * 
+     * @throws IOException If the miner fails to read the Kbuild files.
+     */
+    public @NonNull ParsedBuildModel parse(@NonNull KbuildMakefileMiner miner) throws IOException {
+        ParsedBuildModel result = createParsedModel();
+        startConversion();
+        miner.run((file, pc) -> {
+            if (pathFilter.accepts(file.getPath())) {
+                metrics.incPcsParsed();
+                result.add(file, pc);
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * The second stage of the conversion: applies the tristate rewriting, simplification and (if enabled)
+     * canonicalization to the parsed presence conditions. The tristate rewriting only visits presence conditions
+     * that contain a <code>_MODULE</code> variable, and is skipped completely if none of these variables belongs to
+     * a non-tristate variable in the variability model. Each parsed presence condition is released as soon as it is
+     * rewritten, so the parsed and the rewritten presence conditions are not both kept in memory. The parsed model is
+     * closed afterwards.
+     * 
+     * @param parsed The result of the first stage.
+     * @param varModel The variability model. This is needed to check which variables are tristate.
+     * @return The {@link BuildModel}.
+     */
+    public @NonNull BuildModel finish(@NonNull ParsedBuildModel parsed, @NonNull VariabilityModel varModel) {
+        File spillDirectory = this.spillDirectory;
+        BuildModel result = heapBudget > 0 && spillDirectory != null
+                ? new SpillingBuildModel(heapBudget / 2, spillDirectory) : new BuildModel();
+        try {
+            finish(parsed, varModel, new BuildModelSink(result));
+        } catch (IOException e) {
+            // can't happen, the BuildModelSink doesn't throw
+            throw new UncheckedIOException(e);
+        }
+        
+        if (result instanceof SpillingBuildModel) {
+            LOGGER.logDebug("Spilled " + ((SpillingBuildModel) result).getNumSpilled() + " of " + result.getSize()
+                    + " presence conditions to disk");
+        }
+        metrics.setBuildModelSize(result.getSize());
         
         return result;
     }
+    
+    /**
+     * The second stage of the conversion, pushing each rewritten presence condition to the given sink instead of
+     * collecting them in a {@link BuildModel}. See {@link #finish(ParsedBuildModel, VariabilityModel)}.
+     * 
+     * @param parsed The result of the first stage. Its presence conditions are released while they are rewritten,
+     *      and it is closed afterwards.
+     * @param varModel The variability model. This is needed to check which variables are tristate.
+     * @param sink The sink to push the presence conditions to. {@link PcSink#end()} is called at the end.
+     * 
+     * @throws IOException If the sink fails.
+     */
+    public void finish(@NonNull ParsedBuildModel parsed, @NonNull VariabilityModel varModel, @NonNull PcSink sink)
+            throws IOException {
+        
+        this.varModel = varModel;
+        startRewriting(varModel);
+        
+        boolean tristateRewrite = false;
+        for (String module : parsed.getModuleVariables()) {
+            VariabilityVariable variable = varModel.getVariableMap()
+                    .get(module.substring(0, module.length() - "_MODULE".length()));
+            if (variable != null && !variable.getType().equals("tristate")) {
+                tristateRewrite = true;
+            }
+        }
+        
+        try {
+            for (int i = 0; i < parsed.getSize(); i++) {
+                emit(parsed.getFile(i), rewrite(parsed.takePc(i), tristateRewrite && parsed.hasModuleVariable(i)),
+                        sink);
+            }
+        } finally {
+            try {
+                parsed.close();
+            } catch (IOException e) {
+                LOGGER.logException("Can't delete spill file", e);
+            }
+        }
+        
+        logCanonicalization();
+        sink.end();
+    }
+    
+    /**
+     * Adds a converted presence condition to the variable index, fingerprint and CNF (if enabled) and pushes it to
+     * the sink.
+     * 
+     * @param file The file.
+     * @param pc The converted presence condition.
+     * @param sink The sink.
+     * 
+     * @throws IOException If the sink fails.
+     */
+    private void emit(@NonNull File file, @NonNull Formula pc, @NonNull PcSink sink) throws IOException {
+        if (variableIndex != null) {
+            variableIndex.add(file, pc);
+        }
+        if (fingerprint != null) {
+            fingerprint.add(file, pc);
+        }
+        if (cnf != null) {
+            cnf.add(file, pc);
+        }
+        sink.accept(file, pc);
+    }
+    
+    /**
+     * Logs the statistics of the canonicalizer, if enabled.
+     */
+    private void logCanonicalization() {
+        if (canonicalizer != null) {
+            LOGGER.logDebug("Canonicalized " + canonicalizer.getNumLookups() + " presence conditions to "
+                    + canonicalizer.getNumCanonical() + " distinct formulas");
+        }
+    }
+    
+    /**
+     * Converts the given output file of KbuildMiner to a {@link HierarchicalBuildModel}, which stores the
+     * conjuncts shared by all files of a directory only once. The presence conditions are added to the model while
+     * they are converted; no flat {@link BuildModel} is created in between. Requires that this converter was created
+     * with a {@link VariabilityModel}.
+     * 
+     * @param file The file that contains the output of KbuildMiner.
+     * @return The {@link HierarchicalBuildModel}.
+     * 
+     * @throws IOException If reading the file fails.
+     */
+    public @NonNull HierarchicalBuildModel convertHierarchical(@NonNull File file) throws IOException {
+        HierarchicalBuildModel result = new HierarchicalBuildModel();
+        convert(file, result::add);
+        metrics.setBuildModelSize(result.getSize());
+        return result;
+    }
+    
+    /**
+     * Converts the given output file of KbuildMiner to a {@link CompactBuildModel}, which stores the presence
+     * conditions as flat postfix <code>int</code> sequences. Each presence condition is encoded as soon as it is
+     * converted (see {@link #convert(File, PcSink)}), so no {@link BuildModel} of {@link Formula} trees is built
+     * in between. Requires that this converter was created with a {@link VariabilityModel}.
+     * 
+     * @param file The file that contains the output of KbuildMiner.
+     * @return The {@link CompactBuildModel}.
+     * 
+     * @throws IOException If reading the file fails.
+     */
+    public @NonNull CompactBuildModel convertCompact(@NonNull File file) throws IOException {
+        CompactBuildModel.Builder builder = new CompactBuildModel.Builder();
+        convert(file, builder);
+        CompactBuildModel result = builder.build();
+        metrics.setBuildModelSize(result.getSize());
+        return result;
+    }
+    
+    /**
+     * Converts the given output file of KbuildMiner to a {@link LazyBuildModel}. This only indexes the file; each
+     * presence condition is parsed when it is first requested. The file must not be deleted while the returned
+     * model is in use. The model uses a snapshot of the current settings of this converter, including the
+     * {@link PathFilter}; later changes or conversions of this converter don't affect it. Requires that this
+     * converter was created with a {@link VariabilityModel}.
+     * 
+     * @param file The file that contains the output of KbuildMiner.
+     * @param maxCached The maximum number of converted presence conditions that are kept in memory.
+     * @return The {@link LazyBuildModel}. Must be closed after use.
+     * 
+     * @throws IOException If reading the file fails.
+     */
+    public @NonNull LazyBuildModel convertLazy(@NonNull File file, int maxCached) throws IOException {
+        Converter snapshot = createSnapshot();
+        Parser<@NonNull Formula> pcParser = snapshot.startConversion();
+        snapshot.startRewriting(snapshot.requireVarModel());
+        return new LazyBuildModel(file, snapshot, pcParser, pathFilter, maxCached);
+    }
+    
+    /**
+     * Creates a converter with the same rewriting settings as this one, for a {@link LazyBuildModel}. The lazy model
+     * converts presence conditions long after {@link #convertLazy(File, int)} returned; with its own converter, later
+     * conversions of this converter don't replace its canonicalizer or error report. The variable index,
+     * fingerprint and CNF are not built for lazily converted presence conditions.
+     * 
+     * @return A new converter with the same variability model, metrics and rewriting settings.
+     */
+    private @NonNull Converter createSnapshot() {
+        Converter result = new Converter(requireVarModel());
+        result.metrics = metrics;
+        result.simplifier = simplifier;
+        result.canonicalize = canonicalize;
+        result.tristateLiterals = tristateLiterals;
+        result.balance = balance;
+        return result;
+    }
+    
+    /**
+     * Returns the variability model of this converter.
+     * 
+     * @return The variability model.
+     * 
+     * @throws IllegalStateException If this converter has no variability model yet.
+     */
+    private @NonNull VariabilityModel requireVarModel() {
+        VariabilityModel result = varModel;
+        if (result == null) {
+            throw new IllegalStateException("Converter has no variability model; use parse() and finish()");
+        }
+        return result;
+    }
+    
+    /**
+     * Creates the model for the result of the first stage, respecting the heap budget.
+     * 
+     * @return An empty parsed model.
+     */
+    private @NonNull ParsedBuildModel createParsedModel() {
+        File spillDirectory = this.spillDirectory;
+        return heapBudget > 0 && spillDirectory != null
+                ? new ParsedBuildModel(heapBudget / 2, spillDirectory) : new ParsedBuildModel();
+    }
+    
+    /**
+     * Resets the per-conversion state of the first stage (error report) and creates a new parser.
+     * 
+     * @return A parser for the presence conditions of this conversion.
+     */
+    private @NonNull Parser<@NonNull Formula> startConversion() {
+        errors = new ParseErrorReport();
+        
+        VariableCache cache = new VariableCache();
+        return new Parser<>(new KbuildMinerPcGrammar(cache));
+    }
+    
+    /**
+     * Resets the per-conversion state of the second stage (canonicalizer, variable index, fingerprint, tristate
+     * literals and CNF).
+     * 
+     * @param varModel The variability model to take the variable order for the canonicalization from.
+     */
+    private void startRewriting(@NonNull VariabilityModel varModel) {
+        canonicalizer = canonicalize ? new PcCanonicalizer(varModel, PcCanonicalizer.DEFAULT_MAX_NODES) : null;
+        variableIndex = buildVariableIndex ? new VariableIndex() : null;
+        BuildModelFingerprint fingerprint = null;
+        if (buildFingerprint) {
+            fingerprint = new BuildModelFingerprint();
+            fingerprint.setOptions("simplification=" + simplifier.getLevel() + ",canonicalize=" + canonicalize
+                    + ",balance=" + balance + ",tristate_literals=" + tristateLiterals);
+        }
+        this.fingerprint = fingerprint;
+        cnf = buildCnf ? new CnfEncoder() : null;
+        // the canonicalization runs after the compaction, so there are no canonical instances to keep shared
+        literals = tristateLiterals ? new TristateLiterals(false) : null;
+    }
+    
+    /**
+     * Parses and rewrites the presence condition of a single line of KbuildMiner output. Malformed presence
+     * conditions are recorded in the error report.
+     * 
+     * @param line The line in the format "file: pc".
+     * @param lineNumber The number of the line, for the error report.
+     * @param pcParser The parser to use for the presence condition.
+     * @return The presence condition; {@link False} if it is malformed.
+     */
+    @NonNull Formula toPresenceCondition(@NonNull String line, int lineNumber,
+            @NonNull Parser<@NonNull Formula> pcParser) {
+        
+        Formula result = parseLine(line, lineNumber, pcParser);
+        if (!(result instanceof False)) {
+            result = rewrite(result, true);
+        }
+        return result;
+    }
+    
+    /**
+     * Parses the presence condition of a single line of KbuildMiner output, without any rewriting. Malformed
+     * presence conditions are recorded in the error report.
+     * 
+     * @param line The line in the format "file: pc".
+     * @param lineNumber The number of the line, for the error report.
+     * @param pcParser The parser to use for the presence condition.
+     * @return The parsed presence condition; {@link False} if it is malformed.
+     */
+    private @NonNull Formula parseLine(@NonNull String line, int lineNumber,
+            @NonNull Parser<@NonNull Formula> pcParser) {
+        
+        String pc = line.substring(line.indexOf(':') + 2);
+        Formula result = False.INSTANCE;
+        
+        PcError error = PcValidator.validate(pc);
+        if (error == PcError.NONE) {
+            try {
+                result = pcParser.parse(pc);
+                metrics.incPcsParsed();
+            } catch (ExpressionFormatException e) {
+                // only happens if the validator and the grammar disagree
+                error = PcError.REJECTED_BY_PARSER;
+            }
+        }
+        
+        if (error == PcError.INVALID_EXPRESSION) {
+            metrics.incInvalidExpressions();
+        } else if (error != PcError.NONE) {
+            metrics.incParseFailures();
+        }
+        if (error != PcError.NONE) {
+            errors.record(error, lineNumber, line);
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Applies the tristate rewriting, the simplification and (if enabled) the tristate literal compaction, the
+     * balancing and the canonicalization to a parsed presence condition. The compaction runs before the balancing,
+     * since the balancing may regroup the <code>CONFIG_X || CONFIG_X_MODULE</code> pairs it looks for.
+     * 
+     * @param pc The parsed presence condition.
+     * @param tristateRewrite Whether the tristate rewriting may change this presence condition.
+     * @return The rewritten presence condition.
+     */
+    private @NonNull Formula rewrite(@NonNull Formula pc, boolean tristateRewrite) {
+        Formula result = tristateRewrite ? removeNonTristateModules(pc) : pc;
+        result = simplifier.simplify(result);
+        if (literals != null) {
+            result = literals.compact(result);
+        }
+        if (balance) {
+            result = PcBalancer.balance(result);
+        }
+        if (canonicalizer != null) {
+            result = canonicalizer.canonicalize(result);
+        }
+        return result;
+    }
+    
+    /**
+     * Begins a new {@link ConversionBatch} event. The current counters are stored in the event,
+     * so that {@link #commitBatch(ConversionBatch, int)} can calculate the differences.
+     * 
+     * @param firstLine The number of the first line in the batch.
+     * @return The started event.
+     */
+    private @NonNull ConversionBatch beginBatch(int firstLine) {
+        ConversionBatch batch = new ConversionBatch();
+        if (batch.isEnabled()) {
+            batch.setFirstLine(firstLine);
+            batch.setParseFailures(metrics.getParseFailures());
+            batch.setInvalidExpressions(metrics.getInvalidExpressions());
+            batch.begin();
+        }
+        return batch;
+    }
+    
+    /**
+     * Commits the given {@link ConversionBatch} event, if a recording is interested in it.
+     * 
+     * @param batch The event started by {@link #beginBatch(int)}.
+     * @param lines The number of lines processed in this batch.
+     */
+    private void commitBatch(@NonNull ConversionBatch batch, int lines) {
+        batch.end();
+        if (lines > 0 && batch.shouldCommit()) {
+            batch.setLines(lines);
+            batch.setParseFailures(metrics.getParseFailures() - batch.getParseFailures());
+            batch.setInvalidExpressions(metrics.getInvalidExpressions() - batch.getInvalidExpressions());
+            batch.commit();
+        }
+    }
 
 }
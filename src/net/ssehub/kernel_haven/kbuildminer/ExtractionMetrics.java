@@ -0,0 +1,313 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * Timing and counter metrics of a single run of the {@link KbuildMinerExtractor}. The extractor calls
+ * {@link #reset()} before each run, so the values never accumulate over several runs. All methods are thread-safe,
+ * so that the metrics can be read via JMX while the extraction is running.
+ *
+ * @author Adam
+ */
+public class ExtractionMetrics implements ExtractionMetricsMXBean {
+
+    /**
+     * The JMX object name under which the metrics are registered.
+     */
+    public static final @NonNull String MBEAN_NAME = "net.ssehub.kernel_haven.kbuildminer:type=ExtractionMetrics";
+
+    /**
+     * The phases of an extraction that are timed.
+     */
+    public static enum Phase {
+
+        /**
+         * Determining the top folders in the source tree.
+         */
+        TOP_FOLDERS,
+
+        /**
+         * Extracting kbuildminer.jar and logback.xml to the resource directory.
+         */
+        RESOURCE_EXTRACTION,
+
+        /**
+         * Running the KbuildMiner child process.
+         */
+        KBUILDMINER,
+
+        /**
+         * Converting the output of KbuildMiner to a build model.
+         */
+        CONVERSION;
+    }
+
+    private final @NonNull AtomicLongArray phaseNanos = new AtomicLongArray(Phase.values().length);
+
+    private final @NonNull AtomicLong linesRead = new AtomicLong();
+
+    private final @NonNull AtomicLong pcsParsed = new AtomicLong();
+
+    private final @NonNull AtomicLong invalidExpressions = new AtomicLong();
+
+    private final @NonNull AtomicLong parseFailures = new AtomicLong();
+
+    private final @NonNull AtomicLong moduleRewrites = new AtomicLong();
+
+    private final @NonNull AtomicLong peakOutputBytes = new AtomicLong();
+
+    private final @NonNull AtomicLong buildModelSize = new AtomicLong();
+
+    /**
+     * Sets all timings and counters back to zero, so that this instance can be reused for the next run.
+     */
+    public void reset() {
+        for (int i = 0; i < phaseNanos.length(); i++) {
+            phaseNanos.set(i, 0);
+        }
+        linesRead.set(0);
+        pcsParsed.set(0);
+        invalidExpressions.set(0);
+        parseFailures.set(0);
+        moduleRewrites.set(0);
+        peakOutputBytes.set(0);
+        buildModelSize.set(0);
+    }
+
+    /**
+     * Adds the given wall time to the given phase.
+     *
+     * @param phase The phase that the time was spent in.
+     * @param nanos The time in nanoseconds.
+     */
+    public void addPhaseTime(@NonNull Phase phase, long nanos) {
+        phaseNanos.addAndGet(phase.ordinal(), nanos);
+    }
+
+    /**
+     * Returns the wall time spent in the given phase.
+     *
+     * @param phase The phase.
+     * @return The time in nanoseconds.
+     */
+    public long getPhaseNanos(@NonNull Phase phase) {
+        return phaseNanos.get(phase.ordinal());
+    }
+
+    /**
+     * Increments the number of lines read.
+     */
+    public void incLinesRead() {
+        linesRead.incrementAndGet();
+    }
+
+    /**
+     * Increments the number of successfully parsed presence conditions.
+     */
+    public void incPcsParsed() {
+        pcsParsed.incrementAndGet();
+    }
+
+    /**
+     * Increments the number of InvalidExpression() lines.
+     */
+    public void incInvalidExpressions() {
+        invalidExpressions.incrementAndGet();
+    }
+
+    /**
+     * Increments the number of presence conditions that could not be parsed.
+     */
+    public void incParseFailures() {
+        parseFailures.incrementAndGet();
+    }
+
+    /**
+     * Increments the number of _MODULE variables that were replaced.
+     */
+    public void incModuleRewrites() {
+        moduleRewrites.incrementAndGet();
+    }
+
+    /**
+     * Records the size of an output file of KbuildMiner. Only the largest size is kept.
+     *
+     * @param bytes The size of the output in bytes.
+     */
+    public void recordOutputSize(long bytes) {
+        peakOutputBytes.accumulateAndGet(bytes, Math::max);
+    }
+
+    /**
+     * Sets the number of entries in the created build model.
+     *
+     * @param size The size of the build model.
+     */
+    public void setBuildModelSize(long size) {
+        buildModelSize.set(size);
+    }
+
+    @Override
+    public @NonNull Map<String, Long> getPhaseMillis() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            result.put(phase.name(), getPhaseNanos(phase) / 1_000_000);
+        }
+        return result;
+    }
+
+    @Override
+    public long getLinesRead() {
+        return linesRead.get();
+    }
+
+    @Override
+    public long getPcsParsed() {
+        return pcsParsed.get();
+    }
+
+    @Override
+    public long getInvalidExpressions() {
+        return invalidExpressions.get();
+    }
+
+    @Override
+    public long getParseFailures() {
+        return parseFailures.get();
+    }
+
+    @Override
+    public long getModuleRewrites() {
+        return moduleRewrites.get();
+    }
+
+    @Override
+    public long getPeakOutputBytes() {
+        return peakOutputBytes.get();
+    }
+
+    @Override
+    public long getBuildModelSize() {
+        return buildModelSize.get();
+    }
+
+    /**
+     * Creates a machine-readable JSON summary of these metrics.
+     *
+     * @return The JSON string.
+     */
+    public @NonNull String toJson() {
+        StringBuilder result = new StringBuilder("{\n  \"phaseMillis\": {");
+
+        boolean first = true;
+        for (Map.Entry<String, Long> entry : getPhaseMillis().entrySet()) {
+            if (!first) {
+                result.append(',');
+            }
+            first = false;
+            result.append("\n    \"").append(entry.getKey()).append("\": ").append(entry.getValue());
+        }
+        result.append("\n  },\n");
+
+        appendJsonField(result, "linesRead", getLinesRead(), false);
+        appendJsonField(result, "pcsParsed", getPcsParsed(), false);
+        appendJsonField(result, "invalidExpressions", getInvalidExpressions(), false);
+        appendJsonField(result, "parseFailures", getParseFailures(), false);
+        appendJsonField(result, "moduleRewrites", getModuleRewrites(), false);
+        appendJsonField(result, "peakOutputBytes", getPeakOutputBytes(), false);
+        appendJsonField(result, "buildModelSize", getBuildModelSize(), true);
+        result.append("}\n");
+
+        return result.toString();
+    }
+
+    /**
+     * Appends a single numeric JSON field.
+     *
+     * @param json The JSON to append to.
+     * @param name The name of the field.
+     * @param value The value of the field.
+     * @param last Whether this is the last field (i.e. no trailing comma).
+     */
+    private static void appendJsonField(@NonNull StringBuilder json, @NonNull String name, long value,
+            boolean last) {
+
+        json.append("  \"").append(name).append("\": ").append(value);
+        if (!last) {
+            json.append(',');
+        }
+        json.append('\n');
+    }
+
+    /**
+     * Writes the JSON summary of these metrics to the given file.
+     *
+     * @param file The file to write to. Overwritten if it already exists.
+     *
+     * @throws IOException If writing the file fails.
+     */
+    public void writeJson(@NonNull File file) throws IOException {
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            out.write(toJson());
+        }
+    }
+
+    /**
+     * Registers these metrics at the platform MBean server under {@link #MBEAN_NAME}. A previously registered
+     * instance is replaced, so that the MBean always shows the latest run.
+     *
+     * @throws JMException If registering the MBean fails.
+     */
+    public void registerMBean() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(MBEAN_NAME);
+
+        synchronized (ExtractionMetrics.class) {
+            try {
+                server.unregisterMBean(name);
+            } catch (InstanceNotFoundException e) {
+                // nothing registered yet
+            }
+            try {
+                server.registerMBean(this, name);
+            } catch (InstanceAlreadyExistsException e) {
+                // can only happen if someone else registered in the meantime; ignore
+            }
+        }
+    }
+
+}
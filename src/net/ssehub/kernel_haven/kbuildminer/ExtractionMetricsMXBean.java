@@ -0,0 +1,84 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.util.Map;
+
+/**
+ * The JMX view on the {@link ExtractionMetrics} of the last run of the {@link KbuildMinerExtractor}.
+ *
+ * @author Adam
+ */
+public interface ExtractionMetricsMXBean {
+
+    /**
+     * Returns the wall time spent in each phase, in milliseconds.
+     *
+     * @return A map of phase name to milliseconds.
+     */
+    public Map<String, Long> getPhaseMillis();
+
+    /**
+     * Returns the number of lines read from the KbuildMiner output.
+     *
+     * @return The number of lines read.
+     */
+    public long getLinesRead();
+
+    /**
+     * Returns the number of presence conditions that were successfully parsed.
+     *
+     * @return The number of parsed presence conditions.
+     */
+    public long getPcsParsed();
+
+    /**
+     * Returns the number of InvalidExpression() lines in the KbuildMiner output.
+     *
+     * @return The number of invalid expressions.
+     */
+    public long getInvalidExpressions();
+
+    /**
+     * Returns the number of presence conditions that could not be parsed.
+     *
+     * @return The number of parse failures.
+     */
+    public long getParseFailures();
+
+    /**
+     * Returns the number of _MODULE variables that were replaced because they are not tristate.
+     *
+     * @return The number of _MODULE rewrites.
+     */
+    public long getModuleRewrites();
+
+    /**
+     * Returns the largest output file of KbuildMiner that was seen, in bytes.
+     *
+     * @return The peak output size in bytes.
+     */
+    public long getPeakOutputBytes();
+
+    /**
+     * Returns the number of entries in the created build model.
+     *
+     * @return The build model size.
+     */
+    public long getBuildModelSize();
+
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.False;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * A compact binary encoding of {@link Formula}s. Each node is written in prefix order as a single tag byte;
+ * variables are followed by a variable-length id. The variable names are kept in a table in this codec (and not
+ * in the encoded bytes), so a formula can only be decoded by the codec instance that encoded it. Decoded formulas
+ * share a single {@link Variable} instance per name.
+ *
+ * @author Adam
+ */
+final class FormulaCodec {
+
+    private static final int TAG_FALSE = 0;
+
+    private static final int TAG_TRUE = 1;
+
+    private static final int TAG_VARIABLE = 2;
+
+    private static final int TAG_NEGATION = 3;
+
+    private static final int TAG_CONJUNCTION = 4;
+
+    private static final int TAG_DISJUNCTION = 5;
+
+    private final @NonNull Map<String, Integer> ids = new HashMap<>();
+
+    private final @NonNull List<@NonNull Variable> variables = new ArrayList<>();
+
+    /**
+     * Writes the given formula.
+     *
+     * @param formula The formula to encode.
+     * @param out The output to write to.
+     *
+     * @throws IOException If writing fails.
+     */
+    void write(@NonNull Formula formula, @NonNull DataOutput out) throws IOException {
+        if (formula instanceof Variable) {
+            out.writeByte(TAG_VARIABLE);
+            writeVarInt(getId((Variable) formula), out);
+
+        } else if (formula instanceof Negation) {
+            out.writeByte(TAG_NEGATION);
+            write(((Negation) formula).getFormula(), out);
+
+        } else if (formula instanceof Conjunction) {
+            out.writeByte(TAG_CONJUNCTION);
+            write(((Conjunction) formula).getLeft(), out);
+            write(((Conjunction) formula).getRight(), out);
+
+        } else if (formula instanceof Disjunction) {
+            out.writeByte(TAG_DISJUNCTION);
+            write(((Disjunction) formula).getLeft(), out);
+            write(((Disjunction) formula).getRight(), out);
+
+        } else if (formula instanceof True) {
+            out.writeByte(TAG_TRUE);
+
+        } else if (formula instanceof False) {
+            out.writeByte(TAG_FALSE);
+
+        } else {
+            throw new IllegalArgumentException("Unknown formula type " + formula.getClass().getName());
+        }
+    }
+
+    /**
+     * Reads a formula that was written by {@link #write(Formula, DataOutput)} of this codec.
+     *
+     * @param in The input to read from.
+     * @return The decoded formula.
+     *
+     * @throws IOException If reading fails or the input is not a valid encoding.
+     */
+    @NonNull Formula read(@NonNull DataInput in) throws IOException {
+        Formula result;
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+        case TAG_FALSE:
+            result = False.INSTANCE;
+            break;
+        case TAG_TRUE:
+            result = True.INSTANCE;
+            break;
+        case TAG_VARIABLE:
+            int id = readVarInt(in);
+            if (id >= variables.size()) {
+                throw new IOException("Unknown variable id " + id);
+            }
+            result = variables.get(id);
+            break;
+        case TAG_NEGATION:
+            result = new Negation(read(in));
+            break;
+        case TAG_CONJUNCTION:
+            result = new Conjunction(read(in), read(in));
+            break;
+        case TAG_DISJUNCTION:
+            result = new Disjunction(read(in), read(in));
+            break;
+        default:
+            throw new IOException("Invalid formula tag " + tag);
+        }
+        return result;
+    }
+
+    /**
+     * Writes the variable table of this codec, so that {@link #readTable(DataInput)} can create a codec that decodes
+     * the formulas encoded by this one.
+     *
+     * @param out The output to write to.
+     *
+     * @throws IOException If writing fails.
+     */
+    void writeTable(@NonNull DataOutput out) throws IOException {
+        writeVarInt(variables.size(), out);
+        for (Variable variable : variables) {
+            out.writeUTF(variable.getName());
+        }
+    }
+
+    /**
+     * Creates a codec with a variable table that was written by {@link #writeTable(DataOutput)}.
+     *
+     * @param in The input to read from.
+     * @return The codec.
+     *
+     * @throws IOException If reading fails.
+     */
+    static @NonNull FormulaCodec readTable(@NonNull DataInput in) throws IOException {
+        FormulaCodec result = new FormulaCodec();
+        int size = readVarInt(in);
+        for (int i = 0; i < size; i++) {
+            result.getId(new Variable(in.readUTF()));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the id of the given variable, adding it to the table if necessary.
+     *
+     * @param variable The variable.
+     * @return The id of the variable.
+     */
+    private int getId(@NonNull Variable variable) {
+        Integer result = ids.get(variable.getName());
+        if (result == null) {
+            result = variables.size();
+            ids.put(variable.getName(), result);
+            variables.add(new Variable(variable.getName()));
+        }
+        return result;
+    }
+
+    /**
+     * Writes a non-negative int with 7 bits per byte.
+     *
+     * @param value The value to write.
+     * @param out The output to write to.
+     *
+     * @throws IOException If writing fails.
+     */
+    private static void writeVarInt(int value, @NonNull DataOutput out) throws IOException {
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0) {
+            out.writeByte((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        out.writeByte(remaining);
+    }
+
+    /**
+     * Reads an int written by {@link #writeVarInt(int, DataOutput)}.
+     *
+     * @param in The input to read from.
+     * @return The value.
+     *
+     * @throws IOException If reading fails.
+     */
+    private static int readVarInt(@NonNull DataInput in) throws IOException {
+        int result = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            result |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0 && shift < 35);
+        return result;
+    }
+
+    /**
+     * Estimates the number of heap bytes that the given formula occupies. Variables are assumed to be shared (e.g.
+     * by a {@link net.ssehub.kernel_haven.util.logic.parser.VariableCache}), so they only count as a reference.
+     *
+     * @param formula The formula.
+     * @return The estimated size in bytes.
+     */
+    static long estimateHeapSize(@NonNull Formula formula) {
+        long result = 0;
+        List<@NonNull Formula> stack = new ArrayList<>();
+        stack.add(formula);
+        while (!stack.isEmpty()) {
+            Formula current = stack.remove(stack.size() - 1);
+            if (current instanceof Negation) {
+                result += 16;
+                stack.add(((Negation) current).getFormula());
+            } else if (current instanceof Conjunction) {
+                result += 24;
+                stack.add(((Conjunction) current).getLeft());
+                stack.add(((Conjunction) current).getRight());
+            } else if (current instanceof Disjunction) {
+                result += 24;
+                stack.add(((Disjunction) current).getLeft());
+                stack.add(((Disjunction) current).getRight());
+            } else {
+                result += 8;
+            }
+        }
+        return result;
+    }
+
+}
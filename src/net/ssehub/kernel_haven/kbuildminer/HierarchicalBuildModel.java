@@ -0,0 +1,357 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * A build model that stores presence conditions in a directory tree. Kbuild presence conditions are hierarchical:
+ * the condition of a file is the condition of its directory conjoined with its own condition. This model factors
+ * out the top-level conjuncts that all files below a directory share and stores them once at that directory;
+ * each file only keeps its residual conjuncts.
+ *
+ * <p>
+ * {@link #getPc(File)} re-assembles the full presence condition. The result is logically equivalent to the
+ * original presence condition, but the conjuncts of the directories come first.
+ * </p>
+ *
+ * @author Adam
+ */
+public class HierarchicalBuildModel implements Iterable<@NonNull File>, Serializable {
+
+    private static final long serialVersionUID = 4620851137478006563L;
+
+    /**
+     * A directory in the tree.
+     */
+    private static final class DirectoryNode implements Serializable {
+
+        private static final long serialVersionUID = -3591587683390049232L;
+
+        /**
+         * The conjuncts shared by all files below this directory, that are not already stored at a parent.
+         */
+        private @NonNull Formula @NonNull [] conjuncts = new @NonNull Formula[0];
+
+        private final @NonNull Map<String, DirectoryNode> directories = new TreeMap<>();
+
+        /**
+         * The residual presence conditions of the files directly in this directory.
+         */
+        private final @NonNull Map<String, @NonNull Formula> files = new TreeMap<>();
+
+        /**
+         * The number of files below this directory, including subdirectories.
+         */
+        private int numFiles;
+
+    }
+
+    private final @NonNull DirectoryNode root = new DirectoryNode();
+
+    private int size;
+
+    /**
+     * Creates an empty model. Files are added with {@link #add(File, Formula)}, so <code>model::add</code> can be
+     * used as a {@link PcSink}.
+     */
+    public HierarchicalBuildModel() {
+    }
+
+    /**
+     * Creates a hierarchical model from the given flat build model.
+     *
+     * @param buildModel The flat build model.
+     * @return The hierarchical model containing the same files.
+     */
+    public static @NonNull HierarchicalBuildModel create(@NonNull BuildModel buildModel) {
+        HierarchicalBuildModel result = new HierarchicalBuildModel();
+        for (File file : buildModel) {
+            Formula pc = buildModel.getPc(file);
+            if (pc != null) {
+                result.add(file, pc);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds a file with its full presence condition. The factoring is updated incrementally: on the path to the file,
+     * each directory keeps only those of its conjuncts that the new presence condition contains, too; the others are
+     * pushed down to the other subdirectories and files of that directory. The file itself only stores the
+     * conjuncts that are not stored at its directories. If the file was added before, its presence condition is
+     * replaced.
+     *
+     * @param file The file, relative to the source tree.
+     * @param pc The full presence condition.
+     */
+    public void add(@NonNull File file, @NonNull Formula pc) {
+        String[] parts = file.getPath().replace('\\', '/').split("/");
+        String name = parts[parts.length - 1];
+        boolean isNew = getPc(file) == null;
+        Set<@NonNull Formula> conjuncts = conjuncts(pc);
+        Set<@NonNull Formula> inherited = new HashSet<>();
+
+        DirectoryNode node = root;
+        for (int i = 0; i < parts.length; i++) {
+            if (node.numFiles == 0) {
+                // the first file below this directory: everything that is not inherited is shared
+                List<@NonNull Formula> shared = difference(conjuncts, inherited);
+                node.conjuncts = shared.toArray(new @NonNull Formula[shared.size()]);
+            } else {
+                keepShared(node, conjuncts);
+            }
+            addAll(inherited, node.conjuncts);
+            if (isNew) {
+                node.numFiles++;
+            }
+            if (i < parts.length - 1) {
+                node = node.directories.computeIfAbsent(parts[i], key -> new DirectoryNode());
+            }
+        }
+
+        node.files.put(name, conjoin(difference(conjuncts, inherited), True.INSTANCE));
+        if (isNew) {
+            size++;
+        }
+    }
+
+    /**
+     * Removes the conjuncts from a directory that the given presence condition does not contain, and pushes them
+     * down to all subdirectories and files of the directory.
+     *
+     * @param node The directory on the path to the new file.
+     * @param conjuncts The conjuncts of the presence condition of the new file.
+     */
+    private static void keepShared(@NonNull DirectoryNode node, @NonNull Set<@NonNull Formula> conjuncts) {
+        List<@NonNull Formula> kept = new ArrayList<>(node.conjuncts.length);
+        List<@NonNull Formula> removed = new ArrayList<>();
+        for (Formula conjunct : node.conjuncts) {
+            if (conjuncts.contains(conjunct)) {
+                kept.add(conjunct);
+            } else {
+                removed.add(conjunct);
+            }
+        }
+
+        if (!removed.isEmpty()) {
+            node.conjuncts = kept.toArray(new @NonNull Formula[kept.size()]);
+            // the directory conjuncts come first in getPc(), so prepend them to keep the order
+            for (DirectoryNode child : node.directories.values()) {
+                List<@NonNull Formula> pushed = new ArrayList<>(removed);
+                addAll(pushed, child.conjuncts);
+                child.conjuncts = pushed.toArray(new @NonNull Formula[pushed.size()]);
+            }
+            for (Map.Entry<String, @NonNull Formula> entry : node.files.entrySet()) {
+                entry.setValue(conjoin(removed, entry.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Returns the full presence condition of the given file.
+     *
+     * @param file The file, relative to the source tree.
+     * @return The presence condition, or <code>null</code> if the file is not in this model.
+     */
+    public @Nullable Formula getPc(@NonNull File file) {
+        String[] parts = file.getPath().replace('\\', '/').split("/");
+
+        List<@NonNull Formula> conjuncts = new ArrayList<>();
+        DirectoryNode node = root;
+        addAll(conjuncts, node.conjuncts);
+        for (int i = 0; node != null && i < parts.length - 1; i++) {
+            node = node.directories.get(parts[i]);
+            if (node != null) {
+                addAll(conjuncts, node.conjuncts);
+            }
+        }
+
+        Formula result = null;
+        if (node != null) {
+            Formula residual = node.files.get(parts[parts.length - 1]);
+            if (residual != null) {
+                result = conjuncts.isEmpty() ? residual : conjoin(conjuncts, residual);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the conjuncts that are stored at the given directory, i.e. that all files below this directory
+     * share, but that are not already shared by all files below the parent directory.
+     *
+     * @param directory The directory, relative to the source tree.
+     * @return The conjuncts stored at this directory; <code>null</code> if the directory is not in this model.
+     */
+    public @Nullable List<@NonNull Formula> getDirectoryConjuncts(@NonNull File directory) {
+        DirectoryNode node = root;
+        if (!directory.getPath().isEmpty()) {
+            for (String part : directory.getPath().replace('\\', '/').split("/")) {
+                node = node != null ? node.directories.get(part) : null;
+            }
+        }
+
+        List<@NonNull Formula> result = null;
+        if (node != null) {
+            result = new ArrayList<>();
+            addAll(result, node.conjuncts);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of files in this model.
+     *
+     * @return The number of files.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Converts this model back to a flat {@link BuildModel}.
+     *
+     * @return A flat build model with the full presence conditions.
+     */
+    public @NonNull BuildModel toBuildModel() {
+        BuildModel result = new BuildModel();
+        for (File file : this) {
+            Formula pc = getPc(file);
+            if (pc != null) {
+                result.add(file, pc);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public @NonNull Iterator<@NonNull File> iterator() {
+        List<@NonNull File> files = new ArrayList<>(size);
+        collectFiles(root, null, files);
+        return files.iterator();
+    }
+
+    /**
+     * Collects all files below the given directory.
+     *
+     * @param node The directory.
+     * @param path The path of the directory; <code>null</code> for the root.
+     * @param result The list to add the files to.
+     */
+    private static void collectFiles(@NonNull DirectoryNode node, @Nullable File path,
+            @NonNull List<@NonNull File> result) {
+
+        for (String name : node.files.keySet()) {
+            result.add(path != null ? new File(path, name) : new File(name));
+        }
+        for (Map.Entry<String, DirectoryNode> entry : node.directories.entrySet()) {
+            collectFiles(entry.getValue(), path != null ? new File(path, entry.getKey()) : new File(entry.getKey()),
+                    result);
+        }
+    }
+
+    /**
+     * Returns the top-level conjuncts of the given formula. {@link True} has no conjuncts.
+     *
+     * @param formula The formula.
+     * @return The conjuncts, without duplicates and in their original order.
+     */
+    private static @NonNull Set<@NonNull Formula> conjuncts(@NonNull Formula formula) {
+        Set<@NonNull Formula> result = new LinkedHashSet<>();
+        List<@NonNull Formula> stack = new ArrayList<>();
+        stack.add(formula);
+        while (!stack.isEmpty()) {
+            Formula current = stack.remove(stack.size() - 1);
+            if (current instanceof Conjunction) {
+                stack.add(((Conjunction) current).getRight());
+                stack.add(((Conjunction) current).getLeft());
+            } else if (!(current instanceof True)) {
+                result.add(current);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the conjuncts that are not in the given set.
+     *
+     * @param conjuncts The conjuncts.
+     * @param excluded The conjuncts to leave out.
+     * @return The remaining conjuncts, in their original order.
+     */
+    private static @NonNull List<@NonNull Formula> difference(@NonNull Set<@NonNull Formula> conjuncts,
+            @NonNull Set<@NonNull Formula> excluded) {
+        List<@NonNull Formula> result = new ArrayList<>(conjuncts.size());
+        for (Formula conjunct : conjuncts) {
+            if (!excluded.contains(conjunct)) {
+                result.add(conjunct);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Builds a right-leaning conjunction of the given conjuncts, followed by the given last element.
+     *
+     * @param conjuncts The conjuncts.
+     * @param last The last conjunct; ignored if it is {@link True} and other conjuncts are given.
+     * @return The conjunction.
+     */
+    private static @NonNull Formula conjoin(@NonNull List<@NonNull Formula> conjuncts, @NonNull Formula last) {
+        Formula result = last;
+        int end = conjuncts.size() - 1;
+        if (last instanceof True && end >= 0) {
+            result = conjuncts.get(end);
+            end--;
+        }
+        for (int i = end; i >= 0; i--) {
+            result = new Conjunction(conjuncts.get(i), result);
+        }
+        return result;
+    }
+
+    /**
+     * Adds all elements of the array to the collection.
+     *
+     * @param list The collection to add to.
+     * @param array The elements to add.
+     */
+    private static void addAll(@NonNull Collection<@NonNull Formula> list, @NonNull Formula @NonNull [] array) {
+        for (Formula formula : array) {
+            list.add(formula);
+        }
+    }
+
+}
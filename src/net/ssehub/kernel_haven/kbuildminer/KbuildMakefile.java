@@ -0,0 +1,401 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * The Kbuild-relevant content of a single <code>Makefile</code> or <code>Kbuild</code> file. This only understands
+ * the subset of make that Kbuild uses to select objects:
+ * <ul>
+ *      <li><code>obj-y</code>, <code>obj-m</code> and <code>obj-$(CONFIG_X)</code> assignments (and the same for
+ *          <code>lib-</code>, <code>core-</code>, <code>drivers-</code>, etc. lists of arch Makefiles)</li>
+ *      <li>composite objects (<code>foo-y</code>, <code>foo-objs</code>, <code>foo-$(CONFIG_X)</code>)</li>
+ *      <li>subdirectories (entries ending in <code>/</code> and <code>subdir-</code> lists)</li>
+ *      <li><code>ifdef</code>, <code>ifndef</code>, <code>ifeq</code> and <code>ifneq</code> on
+ *          <code>CONFIG_</code> variables</li>
+ * </ul>
+ * Conditions that can't be expressed in terms of <code>CONFIG_</code> variables are over-approximated with
+ * {@link True}. The conditions use the same variables as the {@link KbuildMinerPcGrammar}: <code>CONFIG_X</code>
+ * for <code>y</code> and <code>CONFIG_X_MODULE</code> for <code>m</code>.
+ *
+ * @author Adam
+ */
+class KbuildMakefile {
+
+    private static final Logger LOGGER = Logger.get();
+
+    /**
+     * The lists that select objects or directories to be built.
+     */
+    private static final @NonNull Set<String> GOAL_LISTS = new HashSet<>(Arrays.asList(
+            "obj", "lib", "core", "drivers", "libs", "net", "init", "head", "subdir"));
+
+    private static final @NonNull Pattern ASSIGNMENT
+            = Pattern.compile("^([A-Za-z0-9_.\\-]+)-(\\S*)\\s*(?:\\+=|:=|\\?=|=)\\s*(.*)$");
+
+    private static final @NonNull Pattern CONFIG_REFERENCE = Pattern.compile("CONFIG_[A-Za-z0-9_]+");
+
+    private static final @NonNull Pattern IF_EQUALS = Pattern.compile("^(ifeq|ifneq)\\s*\\(([^,]*),([^)]*)\\)$");
+
+    /**
+     * A conditional entry of a list.
+     */
+    static final class Entry {
+
+        private final @NonNull String name;
+
+        private final @NonNull Formula condition;
+
+        /**
+         * Creates an entry.
+         *
+         * @param name The name of the object or directory, relative to the directory of the Makefile.
+         * @param condition The condition under which the entry is added to the list.
+         */
+        Entry(@NonNull String name, @NonNull Formula condition) {
+            this.name = name;
+            this.condition = condition;
+        }
+
+        /**
+         * Returns the name of the object or directory.
+         *
+         * @return The name, relative to the directory of the Makefile.
+         */
+        @NonNull String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the condition of this entry.
+         *
+         * @return The condition under which the entry is added to the list.
+         */
+        @NonNull Formula getCondition() {
+            return condition;
+        }
+
+    }
+
+    /**
+     * An empty Makefile, for directories that don't have one.
+     */
+    static final @NonNull KbuildMakefile EMPTY = new KbuildMakefile();
+
+    private final @NonNull List<@NonNull Entry> objects = new ArrayList<>();
+
+    private final @NonNull List<@NonNull Entry> directories = new ArrayList<>();
+
+    private final @NonNull Map<String, List<@NonNull Entry>> composites = new LinkedHashMap<>();
+
+    /**
+     * Creates an empty Makefile. Use {@link #parse(File)}.
+     */
+    private KbuildMakefile() {
+    }
+
+    /**
+     * Parses the Kbuild file of the given directory. <code>Kbuild</code> takes precedence over
+     * <code>Makefile</code>, like in Kbuild itself.
+     *
+     * @param directory The directory to parse the Kbuild file of.
+     * @return The parsed file; {@link #EMPTY} if the directory has no Kbuild file.
+     *
+     * @throws IOException If reading the file fails.
+     */
+    static @NonNull KbuildMakefile parse(@NonNull File directory) throws IOException {
+        File file = new File(directory, "Kbuild");
+        if (!file.isFile()) {
+            file = new File(directory, "Makefile");
+        }
+
+        KbuildMakefile result = EMPTY;
+        if (file.isFile()) {
+            result = new KbuildMakefile();
+            // ISO 8859-1 maps every byte to a char, so this never fails on odd encodings
+            result.parseLines(joinContinuations(Files.readAllLines(file.toPath(), StandardCharsets.ISO_8859_1)));
+        }
+        return result;
+    }
+
+    /**
+     * Parses the given logical lines.
+     *
+     * @param lines The lines, without comments and with line continuations joined.
+     */
+    private void parseLines(@NonNull List<@NonNull String> lines) {
+        List<@Nullable Formula> conditions = new ArrayList<>();
+        boolean inDefine = false;
+
+        for (String line : lines) {
+            if (inDefine) {
+                inDefine = !line.startsWith("endef");
+
+            } else if (line.startsWith("define ")) {
+                inDefine = true;
+
+            } else if (line.startsWith("ifdef ") || line.startsWith("ifndef ")) {
+                Formula condition = parseDefined(line.substring(line.indexOf(' ') + 1).trim());
+                if (condition != null && line.startsWith("ifndef")) {
+                    condition = new Negation(condition);
+                }
+                conditions.add(condition);
+
+            } else if (line.startsWith("ifeq") || line.startsWith("ifneq")) {
+                conditions.add(parseEquals(line));
+
+            } else if (line.startsWith("else") && !conditions.isEmpty()) {
+                // "else ifeq ..." is over-approximated with the plain else branch
+                Formula condition = conditions.get(conditions.size() - 1);
+                conditions.set(conditions.size() - 1, condition != null ? new Negation(condition) : null);
+
+            } else if (line.startsWith("endif") && !conditions.isEmpty()) {
+                conditions.remove(conditions.size() - 1);
+
+            } else {
+                Matcher matcher = ASSIGNMENT.matcher(line);
+                if (matcher.matches()) {
+                    Formula condition = parseSuffix(matcher.group(2));
+                    if (condition != null) {
+                        for (Formula outer : conditions) {
+                            condition = outer != null ? and(outer, condition) : condition;
+                        }
+                        addAssignment(matcher.group(1), condition, matcher.group(3));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the values of an assignment to the lists.
+     *
+     * @param list The name of the list, e.g. <code>obj</code> or the name of a composite object.
+     * @param condition The condition of the assignment.
+     * @param values The assigned values.
+     */
+    private void addAssignment(@NonNull String list, @NonNull Formula condition, @NonNull String values) {
+        boolean goal = GOAL_LISTS.contains(list);
+        for (String value : values.split("\\s+")) {
+            // unexpanded make variables can't be resolved
+            if (value.isEmpty() || value.contains("$")) {
+                LOGGER.logDebug("Ignoring unresolvable Kbuild value " + value);
+            } else if (goal && (value.endsWith("/") || list.equals("subdir"))) {
+                directories.add(new Entry(value.endsWith("/") ? value.substring(0, value.length() - 1) : value,
+                        condition));
+            } else if (goal && value.endsWith(".o")) {
+                objects.add(new Entry(value, condition));
+            } else if (!goal && value.endsWith(".o")) {
+                composites.computeIfAbsent(list, name -> new ArrayList<>()).add(new Entry(value, condition));
+            }
+        }
+    }
+
+    /**
+     * Returns the objects that are selected by this Makefile.
+     *
+     * @return The objects (e.g. <code>foo.o</code>) with their conditions. May contain the same object multiple
+     *      times.
+     */
+    @NonNull List<@NonNull Entry> getObjects() {
+        return Collections.unmodifiableList(objects);
+    }
+
+    /**
+     * Returns the subdirectories that Kbuild descends into.
+     *
+     * @return The subdirectories (without trailing slash) with their conditions. May contain the same directory
+     *      multiple times.
+     */
+    @NonNull List<@NonNull Entry> getDirectories() {
+        return Collections.unmodifiableList(directories);
+    }
+
+    /**
+     * Returns the parts of the given composite object.
+     *
+     * @param object The composite object, without the <code>.o</code> suffix.
+     * @return The parts of the composite object; <code>null</code> if the object is not a composite.
+     */
+    @Nullable List<@NonNull Entry> getParts(@NonNull String object) {
+        return composites.get(object);
+    }
+
+    /**
+     * Removes comments and joins lines ending with a backslash.
+     *
+     * @param physicalLines The lines of the file.
+     * @return The logical lines, trimmed.
+     */
+    private static @NonNull List<@NonNull String> joinContinuations(@NonNull List<String> physicalLines) {
+        List<@NonNull String> result = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String physicalLine : physicalLines) {
+            int comment = physicalLine.indexOf('#');
+            String line = comment >= 0 ? physicalLine.substring(0, comment) : physicalLine;
+            if (line.endsWith("\\")) {
+                current.append(line, 0, line.length() - 1).append(' ');
+            } else {
+                current.append(line);
+                result.add(current.toString().trim());
+                current.setLength(0);
+            }
+        }
+        result.add(current.toString().trim());
+        return result;
+    }
+
+    /**
+     * Converts the suffix of a list name (the part after the dash) to a condition.
+     *
+     * @param suffix The suffix, e.g. <code>y</code> or <code>$(CONFIG_X)</code>.
+     * @return The condition; <code>null</code> if the list is never built (e.g. <code>obj-n</code>).
+     */
+    private static @Nullable Formula parseSuffix(@NonNull String suffix) {
+        Formula result = null;
+        if (suffix.contains("$")) {
+            result = True.INSTANCE;
+            Matcher matcher = CONFIG_REFERENCE.matcher(suffix);
+            while (matcher.find()) {
+                result = and(result, enabled(matcher.group()));
+            }
+        } else if (suffix.equals("y") || suffix.equals("m") || suffix.equals("objs")) {
+            result = True.INSTANCE;
+        }
+        return result;
+    }
+
+    /**
+     * Converts the argument of an <code>ifdef</code> to a condition.
+     *
+     * @param variable The argument.
+     * @return The condition; <code>null</code> if it is unknown.
+     */
+    private static @Nullable Formula parseDefined(@NonNull String variable) {
+        return CONFIG_REFERENCE.matcher(variable).matches() ? enabled(variable) : null;
+    }
+
+    /**
+     * Converts an <code>ifeq</code> or <code>ifneq</code> line to a condition.
+     *
+     * @param line The line.
+     * @return The condition; <code>null</code> if it is unknown.
+     */
+    private static @Nullable Formula parseEquals(@NonNull String line) {
+        Formula result = null;
+        Matcher matcher = IF_EQUALS.matcher(line);
+        if (matcher.matches()) {
+            String left = matcher.group(2).trim();
+            String right = matcher.group(3).trim();
+            if (!left.startsWith("$(")) {
+                String tmp = left;
+                left = right;
+                right = tmp;
+            }
+
+            if (left.startsWith("$(") && left.endsWith(")")
+                    && CONFIG_REFERENCE.matcher(left.substring(2, left.length() - 1)).matches()) {
+                String variable = left.substring(2, left.length() - 1);
+                if (right.equals("y")) {
+                    result = new Variable(variable);
+                } else if (right.equals("m")) {
+                    result = new Variable(variable + "_MODULE");
+                } else if (right.isEmpty() || right.equals("n")) {
+                    result = new Negation(enabled(variable));
+                }
+            }
+
+            if (result != null && matcher.group(1).equals("ifneq")) {
+                result = new Negation(result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates the condition that the given tristate variable is <code>y</code> or <code>m</code>.
+     *
+     * @param variable The name of the variable.
+     * @return The condition.
+     */
+    static @NonNull Formula enabled(@NonNull String variable) {
+        return new Disjunction(new Variable(variable), new Variable(variable + "_MODULE"));
+    }
+
+    /**
+     * Conjoins two formulas, omitting {@link True} operands.
+     *
+     * @param left The left operand.
+     * @param right The right operand.
+     * @return The conjunction.
+     */
+    static @NonNull Formula and(@NonNull Formula left, @NonNull Formula right) {
+        Formula result;
+        if (left instanceof True) {
+            result = right;
+        } else if (right instanceof True) {
+            result = left;
+        } else {
+            result = new Conjunction(left, right);
+        }
+        return result;
+    }
+
+    /**
+     * Disjoins two formulas, short-circuiting {@link True} operands.
+     *
+     * @param left The left operand; <code>null</code> for none.
+     * @param right The right operand.
+     * @return The disjunction.
+     */
+    static @NonNull Formula or(@Nullable Formula left, @NonNull Formula right) {
+        Formula result;
+        if (left == null || right instanceof True) {
+            result = right;
+        } else if (left instanceof True || left.equals(right)) {
+            result = left;
+        } else {
+            result = new Disjunction(left, right);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,423 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiConsumer;
+
+import net.ssehub.kernel_haven.kbuildminer.KbuildMakefile.Entry;
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * A pure Java alternative to KbuildMiner. Parses the <code>Makefile</code> and <code>Kbuild</code> files (see
+ * {@link KbuildMakefile}) starting at the top folders, follows the subdirectory descent and computes the presence
+ * condition of each source file directly as a {@link Formula}.
+ *
+ * <p>
+ * This works in three steps:
+ * <ol>
+ *      <li>All reachable Kbuild files are parsed in parallel.</li>
+ *      <li>The presence condition of each directory is computed in topological order; a directory that is
+ *          referenced by several Kbuild files gets the disjunction of all references.</li>
+ *      <li>The presence conditions of the source files are computed per directory, in parallel, and are streamed
+ *          to the consumer as soon as a directory is finished.</li>
+ * </ol>
+ * </p>
+ *
+ * @author Adam
+ */
+public class KbuildMakefileMiner {
+
+    private static final Logger LOGGER = Logger.get();
+
+    /**
+     * The source file extensions that an object can be compiled from, in order of preference.
+     */
+    private static final @NonNull String @NonNull [] SOURCE_EXTENSIONS = {".c", ".S"};
+
+    private static final int MAX_COMPOSITE_DEPTH = 8;
+
+    /**
+     * A reference from a Kbuild file to a subdirectory.
+     */
+    private static final class Reference {
+
+        private final @NonNull String parent;
+
+        private final @NonNull Formula condition;
+
+        /**
+         * Creates a reference.
+         *
+         * @param parent The directory containing the referencing Kbuild file.
+         * @param condition The condition of the reference.
+         */
+        Reference(@NonNull String parent, @NonNull Formula condition) {
+            this.parent = parent;
+            this.condition = condition;
+        }
+
+    }
+
+    /**
+     * Parses the Kbuild file of a directory and forks tasks for all of its subdirectories that were not parsed
+     * yet.
+     */
+    private final class ParseTask extends RecursiveAction {
+
+        private static final long serialVersionUID = -4307453452167815427L;
+
+        private final @NonNull String directory;
+
+        /**
+         * Creates a task for the given directory.
+         *
+         * @param directory The directory, relative to the source tree.
+         */
+        ParseTask(@NonNull String directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            KbuildMakefile makefile;
+            try {
+                makefile = KbuildMakefile.parse(new File(sourceTree, directory));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            List<@NonNull ParseTask> children = new ArrayList<>();
+            if (makefiles.putIfAbsent(directory, makefile) == null) {
+                for (Entry entry : makefile.getDirectories()) {
+                    String child = resolveDirectory(directory, entry.getName());
+                    if (child != null && !makefiles.containsKey(child)) {
+                        children.add(new ParseTask(child));
+                    }
+                }
+            }
+            invokeAll(children);
+        }
+
+    }
+
+    private final @NonNull File sourceTree;
+
+    private final @NonNull List<@NonNull String> topFolders;
+
+    private final int threads;
+
+    private final @NonNull Map<String, @NonNull KbuildMakefile> makefiles = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a miner for the given source tree.
+     *
+     * @param sourceTree The root of the source tree.
+     * @param topFolders A comma separated list of the folders to start at, relative to the source tree.
+     * @param threads The number of threads to use.
+     */
+    public KbuildMakefileMiner(@NonNull File sourceTree, @NonNull String topFolders, int threads) {
+        this.sourceTree = sourceTree;
+        this.topFolders = new ArrayList<>();
+        for (String folder : topFolders.split(",")) {
+            String normalized = normalize(folder.trim());
+            if (!normalized.isEmpty()) {
+                this.topFolders.add(normalized);
+            }
+        }
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Runs the miner. The consumer is called once for each source file that is found, with the path of the file
+     * relative to the source tree and its presence condition. It is called from the worker threads, but never
+     * concurrently.
+     *
+     * @param consumer The consumer of the results.
+     *
+     * @throws IOException If reading a Kbuild file fails.
+     */
+    public void run(@NonNull BiConsumer<@NonNull File, @NonNull Formula> consumer) throws IOException {
+        makefiles.clear();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<@NonNull ParseTask> tasks = new ArrayList<>();
+            for (String folder : topFolders) {
+                tasks.add(new ParseTask(folder));
+            }
+            pool.invoke(new RecursiveAction() {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+
+            Map<String, @NonNull Formula> directoryPcs = computeDirectoryPcs();
+            LOGGER.logDebug("Parsed " + makefiles.size() + " Kbuild directories");
+
+            Object sinkLock = new Object();
+            pool.submit(() -> directoryPcs.entrySet().parallelStream().forEach(entry -> {
+                Map<String, @NonNull Formula> files = computeFilePcs(entry.getKey(), entry.getValue());
+                synchronized (sinkLock) {
+                    files.forEach((path, pc) -> consumer.accept(new File(path), pc));
+                }
+            })).get();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Computes the presence condition of each parsed directory. The top folders have the presence condition
+     * {@link True}; every other directory gets the disjunction of the conditions of all references to it.
+     *
+     * @return The presence conditions of all reachable directories.
+     */
+    private @NonNull Map<String, @NonNull Formula> computeDirectoryPcs() {
+        Map<String, List<@NonNull Reference>> incoming = new HashMap<>();
+        for (Map.Entry<String, @NonNull KbuildMakefile> makefile : makefiles.entrySet()) {
+            for (Entry entry : makefile.getValue().getDirectories()) {
+                String child = resolveDirectory(makefile.getKey(), entry.getName());
+                if (child != null && !topFolders.contains(child)) {
+                    incoming.computeIfAbsent(child, key -> new ArrayList<>())
+                            .add(new Reference(makefile.getKey(), entry.getCondition()));
+                }
+            }
+        }
+
+        Map<String, @NonNull Formula> result = new LinkedHashMap<>();
+        Deque<String> ready = new ArrayDeque<>(topFolders);
+        Map<String, Integer> remaining = new HashMap<>();
+        incoming.forEach((directory, references) -> remaining.put(directory, references.size()));
+
+        while (!ready.isEmpty()) {
+            String directory = ready.removeFirst();
+            if (!result.containsKey(directory)) {
+                result.put(directory, directoryPc(directory, incoming.get(directory), result));
+                for (Entry entry : makefiles.getOrDefault(directory, KbuildMakefile.EMPTY).getDirectories()) {
+                    String child = resolveDirectory(directory, entry.getName());
+                    if (child != null && remaining.containsKey(child)
+                            && remaining.merge(child, -1, Integer::sum) == 0) {
+                        ready.add(child);
+                    }
+                }
+            }
+        }
+
+        if (result.size() < makefiles.size()) {
+            LOGGER.logWarning("Ignoring " + (makefiles.size() - result.size())
+                    + " Kbuild directories that are part of a cyclic descent");
+        }
+        return result;
+    }
+
+    /**
+     * Computes the presence condition of a single directory from its references.
+     *
+     * @param directory The directory.
+     * @param references The references to this directory; <code>null</code> for top folders.
+     * @param parentPcs The presence conditions of the already finished directories.
+     * @return The presence condition of the directory.
+     */
+    private @NonNull Formula directoryPc(@NonNull String directory, @Nullable List<@NonNull Reference> references,
+            @NonNull Map<String, @NonNull Formula> parentPcs) {
+
+        Formula result = True.INSTANCE;
+        if (references != null && !topFolders.contains(directory)) {
+            Formula disjunction = null;
+            for (Reference reference : references) {
+                Formula parentPc = parentPcs.get(reference.parent);
+                if (parentPc != null) {
+                    disjunction = KbuildMakefile.or(disjunction, KbuildMakefile.and(parentPc, reference.condition));
+                }
+            }
+            result = disjunction != null ? disjunction : result;
+        }
+        return result;
+    }
+
+    /**
+     * Computes the presence conditions of the source files of the objects selected in the given directory.
+     *
+     * @param directory The directory, relative to the source tree.
+     * @param directoryPc The presence condition of the directory.
+     * @return The paths of the source files, relative to the source tree, with their presence conditions.
+     */
+    private @NonNull Map<String, @NonNull Formula> computeFilePcs(@NonNull String directory,
+            @NonNull Formula directoryPc) {
+
+        Map<String, @NonNull Formula> result = new LinkedHashMap<>();
+        KbuildMakefile makefile = makefiles.getOrDefault(directory, KbuildMakefile.EMPTY);
+        for (Entry object : makefile.getObjects()) {
+            addObject(makefile, directory, object.getName(), KbuildMakefile.and(directoryPc, object.getCondition()),
+                    new HashSet<>(), result);
+        }
+        return result;
+    }
+
+    /**
+     * Adds the source file(s) of the given object to the result. Composite objects are resolved to their parts.
+     *
+     * @param makefile The Kbuild file of the directory.
+     * @param directory The directory, relative to the source tree.
+     * @param object The object, e.g. <code>foo.o</code>, relative to the directory.
+     * @param pc The presence condition of the object.
+     * @param visited The composite objects on the current path, to detect cycles.
+     * @param result The map to add the source files to.
+     */
+    private void addObject(@NonNull KbuildMakefile makefile, @NonNull String directory, @NonNull String object,
+            @NonNull Formula pc, @NonNull Set<String> visited, @NonNull Map<String, @NonNull Formula> result) {
+
+        String base = object.substring(0, object.length() - ".o".length());
+        List<@NonNull Entry> parts = makefile.getParts(base);
+
+        if (parts != null && visited.size() < MAX_COMPOSITE_DEPTH && visited.add(base)) {
+            for (Entry part : parts) {
+                if (!part.getName().equals(object)) {
+                    addObject(makefile, directory, part.getName(), KbuildMakefile.and(pc, part.getCondition()),
+                            visited, result);
+                }
+            }
+            visited.remove(base);
+
+        } else {
+            String source = findSource(directory, base);
+            if (source != null) {
+                result.put(source, KbuildMakefile.or(result.get(source), pc));
+            }
+        }
+    }
+
+    /**
+     * Finds the source file for the given object.
+     *
+     * @param directory The directory, relative to the source tree.
+     * @param base The object without the <code>.o</code> suffix, relative to the directory.
+     * @return The path of the source file, relative to the source tree; <code>null</code> if none exists.
+     */
+    private @Nullable String findSource(@NonNull String directory, @NonNull String base) {
+        String result = null;
+        for (int i = 0; result == null && i < SOURCE_EXTENSIONS.length; i++) {
+            String candidate = normalize(directory + "/" + base + SOURCE_EXTENSIONS[i]);
+            if (new File(sourceTree, candidate).isFile()) {
+                result = candidate;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Resolves a subdirectory reference. Kbuild files of the top level and of the architectures may reference
+     * directories relative to the source tree; all others only relative to their own directory.
+     *
+     * @param directory The directory of the Kbuild file.
+     * @param name The referenced directory.
+     * @return The referenced directory relative to the source tree; <code>null</code> if it does not exist.
+     */
+    private @Nullable String resolveDirectory(@NonNull String directory, @NonNull String name) {
+        String result = normalize(directory + "/" + name);
+        if (!new File(sourceTree, result).isDirectory()) {
+            result = isRootRelative(directory) ? normalize(name) : null;
+            if (result != null && !new File(sourceTree, result).isDirectory()) {
+                result = null;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether the Kbuild file of the given directory may reference directories relative to the source tree.
+     * This is the case for the top level and for the architectures, i.e. <code>arch/*</code>.
+     *
+     * @param directory The directory of the Kbuild file, relative to the source tree.
+     * @return Whether references may be relative to the source tree.
+     */
+    private static boolean isRootRelative(@NonNull String directory) {
+        return directory.isEmpty() || (directory.startsWith("arch/") && directory.indexOf('/', "arch/".length()) < 0);
+    }
+
+    /**
+     * Normalizes a relative path: removes <code>.</code> segments, resolves <code>..</code> segments and uses
+     * forward slashes.
+     *
+     * @param path The path to normalize.
+     * @return The normalized path; empty for the root of the source tree.
+     */
+    private static @NonNull String normalize(@NonNull String path) {
+        Deque<String> segments = new ArrayDeque<>();
+        for (String segment : path.replace('\\', '/').split("/")) {
+            if (segment.equals("..")) {
+                segments.pollLast();
+            } else if (!segment.isEmpty() && !segment.equals(".")) {
+                segments.addLast(segment);
+            }
+        }
+        return String.join("/", segments);
+    }
+
+    /**
+     * Unwraps the cause of a failed parallel task.
+     *
+     * @param cause The cause.
+     * @return The {@link IOException} to throw.
+     */
+    private static @NonNull IOException unwrap(@Nullable Throwable cause) {
+        IOException result;
+        if (cause instanceof UncheckedIOException) {
+            result = ((UncheckedIOException) cause).getCause();
+        } else if (cause instanceof IOException) {
+            result = (IOException) cause;
+        } else {
+            result = new IOException(cause);
+        }
+        return result;
+    }
+
+}
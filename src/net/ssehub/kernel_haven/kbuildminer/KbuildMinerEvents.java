@@ -0,0 +1,345 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Custom Java Flight Recorder events emitted by this extractor. When no recording is running, these events are
+ * disabled and creating, beginning and committing them costs next to nothing.
+ *
+ * <p>
+ * The classes in here don't depend on <code>jdk.jfr</code>, which is missing on Java 8 runtimes before 8u262. They
+ * delegate to the actual JFR events in {@link KbuildMinerJfrEvents} if JFR is available, and do nothing
+ * otherwise.
+ * </p>
+ *
+ * @author Adam
+ */
+public final class KbuildMinerEvents {
+
+    private static final boolean AVAILABLE = isJfrPresent();
+
+    /**
+     * Don't allow any instances.
+     */
+    private KbuildMinerEvents() {
+    }
+
+    /**
+     * Checks whether the Java Flight Recorder API is present in this runtime.
+     *
+     * @return Whether <code>jdk.jfr.Event</code> can be loaded.
+     */
+    private static boolean isJfrPresent() {
+        boolean result;
+        try {
+            Class.forName("jdk.jfr.Event", false, KbuildMinerEvents.class.getClassLoader());
+            result = true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            result = false;
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether the events are backed by the Java Flight Recorder. If not, all events are no-ops.
+     *
+     * @return Whether JFR is available in this runtime.
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * The common part of all events: the timing and the check whether a recording is interested.
+     */
+    public abstract static class GuardedEvent {
+
+        /**
+         * The JFR event; <code>null</code> if JFR is not available.
+         */
+        protected final @Nullable Object event;
+
+        /**
+         * Creates the event.
+         *
+         * @param event The JFR event created by {@link KbuildMinerJfrEvents}; <code>null</code> if JFR is not
+         *      available.
+         */
+        protected GuardedEvent(@Nullable Object event) {
+            this.event = event;
+        }
+
+        /**
+         * Checks whether a recording is interested in this event.
+         *
+         * @return Whether this event is enabled; always <code>false</code> if JFR is not available.
+         */
+        public boolean isEnabled() {
+            return event != null && KbuildMinerJfrEvents.isEnabled(event);
+        }
+
+        /**
+         * Starts the timing of this event.
+         */
+        public void begin() {
+            if (event != null) {
+                KbuildMinerJfrEvents.begin(event);
+            }
+        }
+
+        /**
+         * Ends the timing of this event.
+         */
+        public void end() {
+            if (event != null) {
+                KbuildMinerJfrEvents.end(event);
+            }
+        }
+
+        /**
+         * Checks whether this (ended) event should be committed.
+         *
+         * @return Whether to commit this event; always <code>false</code> if JFR is not available.
+         */
+        public boolean shouldCommit() {
+            return event != null && KbuildMinerJfrEvents.shouldCommit(event);
+        }
+
+        /**
+         * Commits this event with the values set so far. Does nothing if JFR is not available.
+         */
+        public abstract void commit();
+
+    }
+
+    /**
+     * A full run of {@link KbuildMinerExtractor#runOnFile(java.io.File)}.
+     */
+    public static final class Extraction extends GuardedEvent {
+
+        private String sourceTree;
+
+        private String topFolders;
+
+        private int buildModelSize;
+
+        private boolean failed;
+
+        /**
+         * Creates the event.
+         */
+        public Extraction() {
+            super(AVAILABLE ? KbuildMinerJfrEvents.createExtraction() : null);
+        }
+
+        /**
+         * Sets the source tree that is analyzed.
+         *
+         * @param sourceTree The path to the source tree.
+         */
+        public void setSourceTree(String sourceTree) {
+            this.sourceTree = sourceTree;
+        }
+
+        /**
+         * Sets the top folders that are analyzed.
+         *
+         * @param topFolders The comma separated top folders.
+         */
+        public void setTopFolders(String topFolders) {
+            this.topFolders = topFolders;
+        }
+
+        /**
+         * Sets the number of entries in the resulting build model.
+         *
+         * @param buildModelSize The size of the build model.
+         */
+        public void setBuildModelSize(int buildModelSize) {
+            this.buildModelSize = buildModelSize;
+        }
+
+        /**
+         * Sets whether the extraction failed.
+         *
+         * @param failed Whether the extraction failed with an exception.
+         */
+        public void setFailed(boolean failed) {
+            this.failed = failed;
+        }
+
+        @Override
+        public void commit() {
+            if (event != null) {
+                KbuildMinerJfrEvents.commitExtraction(event, sourceTree, topFolders, buildModelSize, failed);
+            }
+        }
+
+    }
+
+    /**
+     * A single run of the KbuildMiner child process in {@link KbuildMinerWrapper}.
+     */
+    public static final class KbuildMinerRun extends GuardedEvent {
+
+        private String sourceTree;
+
+        private String topFolders;
+
+        private boolean success;
+
+        private long outputBytes;
+
+        /**
+         * Creates the event.
+         */
+        public KbuildMinerRun() {
+            super(AVAILABLE ? KbuildMinerJfrEvents.createKbuildMinerRun() : null);
+        }
+
+        /**
+         * Sets the source tree that is analyzed.
+         *
+         * @param sourceTree The path to the source tree.
+         */
+        public void setSourceTree(String sourceTree) {
+            this.sourceTree = sourceTree;
+        }
+
+        /**
+         * Sets the top folders that are analyzed.
+         *
+         * @param topFolders The comma separated top folders.
+         */
+        public void setTopFolders(String topFolders) {
+            this.topFolders = topFolders;
+        }
+
+        /**
+         * Sets whether the child process exited successfully.
+         *
+         * @param success Whether the exit code was 0.
+         */
+        public void setSuccess(boolean success) {
+            this.success = success;
+        }
+
+        /**
+         * Sets the size of the output file of KbuildMiner.
+         *
+         * @param outputBytes The size in bytes.
+         */
+        public void setOutputBytes(long outputBytes) {
+            this.outputBytes = outputBytes;
+        }
+
+        @Override
+        public void commit() {
+            if (event != null) {
+                KbuildMinerJfrEvents.commitKbuildMinerRun(event, sourceTree, topFolders, success, outputBytes);
+            }
+        }
+
+    }
+
+    /**
+     * A batch of lines converted by {@link Converter}.
+     */
+    public static final class ConversionBatch extends GuardedEvent {
+
+        private int firstLine;
+
+        private int lines;
+
+        private long parseFailures;
+
+        private long invalidExpressions;
+
+        /**
+         * Creates the event.
+         */
+        public ConversionBatch() {
+            super(AVAILABLE ? KbuildMinerJfrEvents.createConversionBatch() : null);
+        }
+
+        /**
+         * Sets the line number of the first line in this batch.
+         *
+         * @param firstLine The first line number (1-based).
+         */
+        public void setFirstLine(int firstLine) {
+            this.firstLine = firstLine;
+        }
+
+        /**
+         * Sets the number of lines in this batch.
+         *
+         * @param lines The number of lines.
+         */
+        public void setLines(int lines) {
+            this.lines = lines;
+        }
+
+        /**
+         * Sets the number of presence conditions that could not be parsed in this batch.
+         *
+         * @param parseFailures The number of parse failures.
+         */
+        public void setParseFailures(long parseFailures) {
+            this.parseFailures = parseFailures;
+        }
+
+        /**
+         * Returns the number of parse failures stored in this event.
+         *
+         * @return The number of parse failures.
+         */
+        public long getParseFailures() {
+            return parseFailures;
+        }
+
+        /**
+         * Sets the number of InvalidExpression() lines in this batch.
+         *
+         * @param invalidExpressions The number of invalid expressions.
+         */
+        public void setInvalidExpressions(long invalidExpressions) {
+            this.invalidExpressions = invalidExpressions;
+        }
+
+        /**
+         * Returns the number of invalid expressions stored in this event.
+         *
+         * @return The number of invalid expressions.
+         */
+        public long getInvalidExpressions() {
+            return invalidExpressions;
+        }
+
+        @Override
+        public void commit() {
+            if (event != null) {
+                KbuildMinerJfrEvents.commitConversionBatch(event, firstLine, lines, parseFailures,
+                        invalidExpressions);
+            }
+        }
+
+    }
+
+}
@@ -28,18 +28,25 @@ import java.nio.file.FileVisitOption;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import javax.management.JMException;
+
 import net.ssehub.kernel_haven.PipelineConfigurator;
 import net.ssehub.kernel_haven.SetUpException;
 import net.ssehub.kernel_haven.build_model.AbstractBuildModelExtractor;
 import net.ssehub.kernel_haven.build_model.BuildModel;
 import net.ssehub.kernel_haven.config.Configuration;
 import net.ssehub.kernel_haven.config.DefaultSettings;
+import net.ssehub.kernel_haven.config.EnumSetting;
 import net.ssehub.kernel_haven.config.Setting;
 import net.ssehub.kernel_haven.util.ExtractorException;
 import net.ssehub.kernel_haven.util.Logger;
@@ -60,9 +67,139 @@ public class KbuildMinerExtractor extends AbstractBuildModelExtractor {
             = new Setting<>("build.extractor.top_folders", Setting.Type.STRING, false, null, "List of top-folders to "
                     + "analyze in the product line. If this is not specfied, it is automatically generated from the "
                     + "arch setting."); 
+    
+    public static final @NonNull Setting<@NonNull Boolean> TOP_FOLDERS_CACHE
+            = new Setting<>("build.extractor.top_folders_cache", Setting.Type.BOOLEAN, true, "false", "Whether the "
+                    + "automatically determined top-folders should be cached in the resource directory. The cache is "
+                    + "invalidated when the modification time of the source tree or of one of its direct "
+                    + "subdirectories changes. A top-level directory that gets its first Kbuild file deeper inside is "
+                    + "not detected, so only enable this for source trees that don't change in this way.");
+    
+    public static final @NonNull Setting<@Nullable File> METRICS_FILE
+            = new Setting<>("build.extractor.metrics_file", Setting.Type.PATH, false, null, "If specified, a JSON "
+                    + "summary of the phase timings and counters of each extraction run is written to this file.");
+    
+    public static final @NonNull Setting<@NonNull Boolean> METRICS_JMX
+            = new Setting<>("build.extractor.metrics_jmx", Setting.Type.BOOLEAN, true, "false", "Whether the "
+                    + "metrics of the last extraction run should be exposed as an MBean via JMX.");
+
+    public static final @NonNull EnumSetting<PcSimplifier.@NonNull Level> SIMPLIFICATION
+            = new EnumSetting<>("build.extractor.simplification", PcSimplifier.Level.class, true,
+                    PcSimplifier.Level.MINIMAL, "How the presence conditions are simplified after the tristate "
+                    + "rewriting. MINIMAL (the default) only removes False from disjunctions with replaced _MODULE "
+                    + "variables, CONSTANTS additionally folds constants and double negations, FULL additionally "
+                    + "flattens chains and applies idempotence, complementation and absorption.");
+
+    public static final @NonNull Setting<@NonNull Boolean> CANONICALIZE
+            = new Setting<>("build.extractor.canonicalize", Setting.Type.BOOLEAN, true, "false", "Whether logically "
+                    + "equivalent presence conditions should be mapped to a single canonical formula instance. This "
+                    + "builds each presence condition as a BDD with the variable order of the variability model.");
+
+    public static final @NonNull Setting<@NonNull Boolean> TRISTATE_LITERALS
+            = new Setting<>("build.extractor.tristate_literals", Setting.Type.BOOLEAN, true, "false", "Whether "
+                    + "tristate comparisons should be represented as single three-valued literals: CONFIG_X={y,m} "
+                    + "instead of CONFIG_X || CONFIG_X_MODULE, and CONFIG_X={m} instead of CONFIG_X_MODULE. See "
+                    + "TristateLiterals.expand() for the conversion back.");
+
+    public static final @NonNull Setting<@NonNull Boolean> BALANCE
+            = new Setting<>("build.extractor.balance", Setting.Type.BOOLEAN, true, "false", "Whether chains of "
+                    + "conjunctions and disjunctions in the presence conditions should be rebuilt as balanced trees. "
+                    + "This reduces their depth from linear to logarithmic in the number of operands, which makes "
+                    + "later traversals cheaper.");
+
+    public static final @NonNull Setting<@Nullable File> VARIABLE_INDEX_FILE
+            = new Setting<>("build.extractor.variable_index_file", Setting.Type.PATH, false, null, "If specified, "
+                    + "an index from each variable to the files whose presence condition contains it is built during "
+                    + "conversion and serialized to this file. See VariableIndex.read().");
+
+    public static final @NonNull Setting<@Nullable File> FINGERPRINT_FILE
+            = new Setting<>("build.extractor.fingerprint_file", Setting.Type.PATH, false, null, "If specified, a "
+                    + "structural hash of each presence condition is computed during conversion and serialized to "
+                    + "this file. See BuildModelFingerprint.read().");
+
+    public static final @NonNull Setting<@Nullable File> CHANGE_SET_FILE
+            = new Setting<>("build.extractor.change_set_file", Setting.Type.PATH, false, null, "If specified "
+                    + "together with build.extractor.fingerprint_file, and the fingerprint file already exists from a "
+                    + "previous extraction, the files that were added, removed or changed since then are written to "
+                    + "this file before the fingerprint file is overwritten. If the previous fingerprint can't be read "
+                    + "or was created with different conversion options, no change set is written. See "
+                    + "BuildModelDiff.read().");
+
+    public static final @NonNull Setting<@Nullable File> CNF_FILE
+            = new Setting<>("build.extractor.cnf_file", Setting.Type.PATH, false, null, "If specified, all "
+                    + "presence conditions are encoded into a single CNF (Tseitin transformation, with one auxiliary "
+                    + "variable per distinct sub-formula) and written to this file in DIMACS format.");
+
+    public static final @NonNull Setting<@Nullable File> CNF_MAPPING_FILE
+            = new Setting<>("build.extractor.cnf_mapping_file", Setting.Type.PATH, false, null, "The file to write "
+                    + "the DIMACS literal of each source file's presence condition to, one '<literal> <path>' per "
+                    + "line. Defaults to build.extractor.cnf_file with the suffix .map.");
+
+    public static final @NonNull Setting<@Nullable File> SHARD_DIR
+            = new Setting<>("build.extractor.shard_dir", Setting.Type.PATH, false, null, "If specified, the "
+                    + "extracted build model is additionally written to this directory as independently loadable "
+                    + "shard files with a manifest. See ShardedBuildModel.read().");
+
+    public static final @NonNull Setting<@NonNull Integer> SHARD_DEPTH
+            = new Setting<>("build.extractor.shard_depth", Setting.Type.INTEGER, true, "0", "How the shards in "
+                    + "build.extractor.shard_dir are partitioned: 0 means one shard per top folder, a positive number "
+                    + "n means one shard per distinct first n directories of the file paths.");
+
+    public static final @NonNull Setting<@Nullable List<@NonNull String>> INCLUDE_PATHS
+            = new Setting<>("build.extractor.include_paths", Setting.Type.STRING_LIST, false, null, "Comma "
+                    + "separated path globs relative to the source tree, e.g. drivers/net/**. If specified, only "
+                    + "files matching at least one of them are converted, and top folders that can't contain such "
+                    + "files are not mined.");
+
+    public static final @NonNull Setting<@Nullable List<@NonNull String>> EXCLUDE_PATHS
+            = new Setting<>("build.extractor.exclude_paths", Setting.Type.STRING_LIST, false, null, "Comma "
+                    + "separated path globs relative to the source tree. Files matching one of them are not "
+                    + "converted; top folders excluded completely (e.g. sound/**) are not mined.");
+
+    public static final @NonNull Setting<@NonNull Integer> HEAP_BUDGET
+            = new Setting<>("build.extractor.heap_budget_mb", Setting.Type.INTEGER, true, "0", "The heap budget in "
+                    + "megabytes for the converted presence conditions. Presence conditions beyond this budget are "
+                    + "written to spill files in the resource directory and read back on access. The build model is "
+                    + "then a SpillingBuildModel. On POSIX systems, a spill file is unlinked from the resource "
+                    + "directory as soon as it is opened, and its space is freed when the model is closed or the JVM "
+                    + "dies. Elsewhere, the file is deleted when the model is closed, or by a shutdown hook. 0 means "
+                    + "no budget.");
+
+    public static final @NonNull EnumSetting<@NonNull Backend> BACKEND
+            = new EnumSetting<>("build.extractor.backend", Backend.class, true, Backend.KBUILDMINER, "Which "
+                    + "implementation is used to mine the Kbuild files. KBUILDMINER runs the bundled kbuildminer.jar "
+                    + "in a separate JVM, JAVA uses the built-in parallel Kbuild parser. Both are expected to produce "
+                    + "the same presence conditions for obj-y, obj-$(CONFIG_X) and subdirectory references. Known "
+                    + "divergences of JAVA: ifdef/ifndef/ifeq/ifneq blocks are translated into conditions on the "
+                    + "CONFIG_ variables, conditions that can't be expressed this way (make functions, else ifeq, "
+                    + "non-CONFIG_ variables) are over-approximated with true, and objects are only resolved to .c "
+                    + "and .S sources. For these constructs, the presence conditions may differ from those of "
+                    + "KbuildMiner.");
+
+    public static final @NonNull Setting<@NonNull Boolean> EAGER_START
+            = new Setting<>("build.extractor.eager_start", Setting.Type.BOOLEAN, true, "false", "Whether "
+                    + "kbuildminer.jar should be started in the background as soon as this extractor is initialized, "
+                    + "instead of when the pipeline starts the extraction. This hides the runtime of KbuildMiner "
+                    + "behind the setup of the rest of the pipeline. Only used with the KBUILDMINER backend.");
 
     private static final Logger LOGGER = Logger.get();
 
+    /**
+     * The implementations that can mine the presence conditions from the Kbuild files.
+     */
+    public static enum Backend {
+        
+        /**
+         * Runs the bundled kbuildminer.jar in a separate JVM (see {@link KbuildMinerWrapper}).
+         */
+        KBUILDMINER,
+        
+        /**
+         * Uses the built-in {@link KbuildMakefileMiner}.
+         */
+        JAVA;
+    }
+
     /**
      * The path to the linux source tree.
      */
@@ -77,11 +214,161 @@ public class KbuildMinerExtractor extends AbstractBuildModelExtractor {
      * The directory where this extractor can store its resources. Not null.
      */
     private @NonNull File resourceDir = new File("will be initialized in init()");
+    
+    /**
+     * Whether the automatically determined top folders are cached in the resource directory.
+     */
+    private boolean useTopFolderCache;
+    
+    /**
+     * The file to write the JSON metrics summary to. <code>null</code> if not desired.
+     */
+    private @Nullable File metricsFile;
+    
+    /**
+     * The metrics of the current run.
+     */
+    private @NonNull ExtractionMetrics metrics = new ExtractionMetrics();
+    
+    /**
+     * Whether a {@link #runOnFile(File)} finished since the last {@link #init(Configuration)}. The next run then
+     * starts with fresh {@link #metrics}; the first run keeps the metrics that were recorded during the
+     * initialization (top folders and an eager KbuildMiner run).
+     */
+    private boolean metricsReported;
+    
+    /**
+     * The simplification that is applied to the presence conditions.
+     */
+    private PcSimplifier.@NonNull Level simplification = PcSimplifier.Level.MINIMAL;
+    
+    /**
+     * Whether equivalent presence conditions are mapped to canonical instances.
+     */
+    private boolean canonicalize;
+    
+    /**
+     * Whether tristate comparisons are represented as three-valued literals.
+     */
+    private boolean tristateLiterals;
+    
+    /**
+     * Whether conjunction and disjunction chains are balanced.
+     */
+    private boolean balance;
+    
+    /**
+     * The heap budget for the converted presence conditions in bytes; 0 for no budget.
+     */
+    private long heapBudget;
+    
+    /**
+     * The implementation that mines the Kbuild files.
+     */
+    private @NonNull Backend backend = Backend.KBUILDMINER;
+    
+    /**
+     * The file to serialize the {@link VariableIndex} to. <code>null</code> if not desired.
+     */
+    private @Nullable File variableIndexFile;
+    
+    /**
+     * The file to serialize the {@link BuildModelFingerprint} to. <code>null</code> if not desired.
+     */
+    private @Nullable File fingerprintFile;
+    
+    /**
+     * The file to write the {@link BuildModelDiff} to the previous fingerprint to. <code>null</code> if not desired.
+     */
+    private @Nullable File changeSetFile;
+    
+    /**
+     * The file to write the DIMACS CNF of the presence conditions to. <code>null</code> if not desired.
+     */
+    private @Nullable File cnfFile;
+    
+    /**
+     * The file to write the literals of the files in the CNF to.
+     */
+    private @Nullable File cnfMappingFile;
+    
+    /**
+     * The directory to write the {@link ShardedBuildModel} to. <code>null</code> if not desired.
+     */
+    private @Nullable File shardDir;
+    
+    /**
+     * The partitioning of the shards; see {@link #SHARD_DEPTH}.
+     */
+    private int shardDepth;
+    
+    /**
+     * The filter for the files to extract.
+     */
+    private @NonNull PathFilter pathFilter = PathFilter.ACCEPT_ALL;
+    
+    /**
+     * The run of kbuildminer.jar started during {@link #init(Configuration)}. <code>null</code> if
+     * {@link #EAGER_START} is not enabled, or if the result was already taken by {@link #runOnFile(File)}.
+     */
+    private @Nullable Future<@NonNull File> eagerRun;
+    
+    /**
+     * The shutdown hook that cancels the {@link #eagerRun} if its output is never taken. <code>null</code> if there
+     * is no eager run.
+     */
+    private @Nullable Thread eagerCleanup;
    
     @Override
     protected void init(@NonNull Configuration config) throws SetUpException {
         sourceTree = config.getValue(DefaultSettings.SOURCE_TREE);
+        resourceDir = Util.getExtractorResourceDir(config, getClass());
+        
+        metrics.reset();
+        metricsReported = false;
+        config.registerSetting(METRICS_FILE);
+        config.registerSetting(METRICS_JMX);
+        metricsFile = config.getValue(METRICS_FILE);
+        if (config.getValue(METRICS_JMX)) {
+            try {
+                metrics.registerMBean();
+            } catch (JMException e) {
+                LOGGER.logException("Can't register metrics MBean", e);
+            }
+        }
+        
+        config.registerSetting(SIMPLIFICATION);
+        simplification = config.getValue(SIMPLIFICATION);
+        config.registerSetting(CANONICALIZE);
+        canonicalize = config.getValue(CANONICALIZE);
+        config.registerSetting(TRISTATE_LITERALS);
+        tristateLiterals = config.getValue(TRISTATE_LITERALS);
+        config.registerSetting(BALANCE);
+        balance = config.getValue(BALANCE);
+        config.registerSetting(HEAP_BUDGET);
+        heapBudget = config.getValue(HEAP_BUDGET) * 1024L * 1024L;
+        config.registerSetting(BACKEND);
+        backend = config.getValue(BACKEND);
+        config.registerSetting(VARIABLE_INDEX_FILE);
+        variableIndexFile = config.getValue(VARIABLE_INDEX_FILE);
+        config.registerSetting(FINGERPRINT_FILE);
+        fingerprintFile = config.getValue(FINGERPRINT_FILE);
+        config.registerSetting(CHANGE_SET_FILE);
+        changeSetFile = config.getValue(CHANGE_SET_FILE);
+        config.registerSetting(CNF_FILE);
+        cnfFile = config.getValue(CNF_FILE);
+        config.registerSetting(CNF_MAPPING_FILE);
+        cnfMappingFile = config.getValue(CNF_MAPPING_FILE);
+        config.registerSetting(SHARD_DIR);
+        shardDir = config.getValue(SHARD_DIR);
+        config.registerSetting(SHARD_DEPTH);
+        shardDepth = config.getValue(SHARD_DEPTH);
+        if (shardDepth < 0) {
+            throw new SetUpException(SHARD_DEPTH.getKey() + " must not be negative");
+        }
         
+        config.registerSetting(TOP_FOLDERS_CACHE);
+        useTopFolderCache = config.getValue(TOP_FOLDERS_CACHE);
         config.registerSetting(TOP_FOLDERS);
         String topFolders = config.getValue(TOP_FOLDERS);
         if (topFolders == null) {
@@ -90,67 +377,475 @@ public class KbuildMinerExtractor extends AbstractBuildModelExtractor {
                 throw new SetUpException("Config does not contain 'arch' setting");
             } else {
                 // if no top_folders are specified, then we can use default values for Linux, based on arch 
+                long start = System.nanoTime();
                 try {
-                    topFolders = "arch/" + arch + determineTopFolders();
+                    topFolders = "arch/" + arch + determineTopFoldersCached();
                 } catch (IOException e) {
                     throw new SetUpException(e);
                 }
+                metrics.addPhaseTime(ExtractionMetrics.Phase.TOP_FOLDERS, System.nanoTime() - start);
             }
             
         }
-        LOGGER.logInfo("Top folders: " + topFolders);
-        this.topFolders = topFolders;
+        this.topFolders = applyPathFilter(config, topFolders);
+        LOGGER.logInfo("Top folders: " + this.topFolders);
         
-        resourceDir = Util.getExtractorResourceDir(config, getClass());
+        config.registerSetting(EAGER_START);
+        // a run started by a previous initialization was not used, and its settings may be outdated
+        cancelEagerRun();
+        if (config.getValue(EAGER_START) && backend == Backend.KBUILDMINER) {
+            startEagerRun();
+        }
     }
 
     @Override
     protected @NonNull BuildModel runOnFile(@NonNull File target) throws ExtractorException {
         LOGGER.logDebug("Starting extraction");
+        if (metricsReported) {
+            metrics.reset();
+        }
         
-        BuildModel result;
+        KbuildMinerEvents.Extraction event = new KbuildMinerEvents.Extraction();
+        event.begin();
+        
+        BuildModel result = null;
         
         File output = null;
         try {
-            KbuildMinerWrapper wrapper = new KbuildMinerWrapper(resourceDir);
-            
-            output = wrapper.runKbuildMiner(sourceTree, topFolders);
-            
-            if (output == null) {
-                throw new ExtractorException("KbuildMiner execution not successful");
+            Converter c = createConverter();
+            ParsedBuildModel parsed;
+            long start;
+            if (backend == Backend.JAVA) {
+                start = System.nanoTime();
+                parsed = c.parse(new KbuildMakefileMiner(sourceTree, topFolders,
+                        Runtime.getRuntime().availableProcessors()));
+                
+            } else {
+                output = takeKbuildMinerOutput();
+                start = System.nanoTime();
+                parsed = c.parse(output);
             }
+            metrics.addPhaseTime(ExtractionMetrics.Phase.CONVERSION, System.nanoTime() - start);
             
-            if (output.length() == 0) {
-                throw new ExtractorException("Output of KbuildMiner is an empty file");
-            }
+            // only the second stage needs the variability model; the first stage overlaps with its extraction
+            VariabilityModel varModel = waitForVariabilityModel();
             
-            VariabilityModel varModel = notNull(PipelineConfigurator.instance().getVmProvider()).getResult();
-            if (varModel == null) {
-                throw new ExtractorException("Did not get a variability model");
-            }
-            Converter c = new Converter(varModel);
-            result = c.convert(output);
+            start = System.nanoTime();
+            result = c.finish(parsed, varModel);
+            metrics.addPhaseTime(ExtractionMetrics.Phase.CONVERSION, System.nanoTime() - start);
+            
+            writeVariableIndex(c.getVariableIndex());
+            writeFingerprint(c.getFingerprint());
+            writeCnf(c.getCnf());
+            writeShards(result);
             
         } catch (IOException e) {
             throw new ExtractorException(e);
             
         } finally {
+            writeMetrics();
+            metricsReported = true;
+            
             if (output != null && output.isFile()) {
                 if (!output.delete()) {
                     LOGGER.logWarning("Can't delete kbuildminer output file " + output.getAbsolutePath());
                 }
             }
+            
+            // also commit failed extractions, so that stalls can be correlated with them
+            event.end();
+            if (event.shouldCommit()) {
+                event.setSourceTree(sourceTree.getAbsolutePath());
+                event.setTopFolders(topFolders);
+                event.setBuildModelSize(result != null ? result.getSize() : 0);
+                event.setFailed(result == null);
+                event.commit();
+            }
         }
         
         return result;
     }
 
+    /**
+     * Starts kbuildminer.jar in a background thread. {@link #runOnFile(File)} joins on it. If the pipeline never
+     * reaches {@link #runOnFile(File)}, a shutdown hook destroys the KbuildMiner process and deletes its output.
+     */
+    private void startEagerRun() {
+        KbuildMinerWrapper wrapper = createWrapper();
+        FutureTask<@NonNull File> task = new FutureTask<>(() -> runKbuildMinerJar(wrapper));
+        Thread cleanup = new Thread(wrapper::cancel, "KbuildMiner-eager-cleanup");
+        Runtime.getRuntime().addShutdownHook(cleanup);
+        
+        Thread thread = new Thread(task, "KbuildMiner-eager");
+        // don't keep the JVM alive if the pipeline fails before the extraction starts
+        thread.setDaemon(true);
+        thread.start();
+        eagerRun = task;
+        eagerCleanup = cleanup;
+        LOGGER.logDebug("Started KbuildMiner speculatively");
+    }
+    
+    /**
+     * Cancels the run started by {@link #startEagerRun()}, if there is one: destroys the KbuildMiner process and
+     * deletes its output.
+     */
+    private void cancelEagerRun() {
+        Thread eagerCleanup = this.eagerCleanup;
+        if (eagerCleanup != null) {
+            removeEagerCleanup();
+            eagerRun = null;
+            // runs the cleanup synchronously; the hook is no longer registered
+            eagerCleanup.run();
+            LOGGER.logDebug("Cancelled the unused speculative KbuildMiner run");
+        }
+    }
+    
+    /**
+     * Unregisters the shutdown hook of the run started by {@link #startEagerRun()}, once its output is taken.
+     */
+    private void removeEagerCleanup() {
+        Thread eagerCleanup = this.eagerCleanup;
+        this.eagerCleanup = null;
+        if (eagerCleanup != null) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(eagerCleanup);
+            } catch (IllegalStateException e) {
+                // the JVM is already shutting down, the hook runs anyway
+            }
+        }
+    }
+    
+    /**
+     * Returns the output of kbuildminer.jar. Waits for the run started by {@link #startEagerRun()}, if there is
+     * one; otherwise runs kbuildminer.jar now.
+     * 
+     * @return The non-empty output file of KbuildMiner. The caller is responsible for deleting it.
+     * 
+     * @throws IOException If executing KbuildMiner fails.
+     * @throws ExtractorException If KbuildMiner was not successful or produced no output.
+     */
+    private @NonNull File takeKbuildMinerOutput() throws IOException, ExtractorException {
+        Future<@NonNull File> eagerRun = this.eagerRun;
+        // the eager run is only used once; a further extraction runs KbuildMiner again
+        this.eagerRun = null;
+        
+        File result;
+        if (eagerRun != null) {
+            long start = System.nanoTime();
+            try {
+                result = eagerRun.get();
+            } catch (InterruptedException e) {
+                // nobody takes the output anymore
+                cancelEagerRun();
+                Thread.currentThread().interrupt();
+                throw new ExtractorException("Interrupted while waiting for KbuildMiner", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof ExtractorException) {
+                    throw (ExtractorException) cause;
+                } else {
+                    throw new ExtractorException(cause);
+                }
+            } finally {
+                // from now on, the caller is responsible for the output (a failed run already deleted it)
+                removeEagerCleanup();
+            }
+            LOGGER.logDebug("Waited " + (System.nanoTime() - start) / 1_000_000
+                    + " ms for the speculatively started KbuildMiner");
+        } else {
+            result = runKbuildMinerJar(createWrapper());
+        }
+        return result;
+    }
+    
+    /**
+     * Creates a {@link KbuildMinerWrapper} that records its metrics in the metrics of this extractor.
+     * 
+     * @return The new wrapper.
+     */
+    private @NonNull KbuildMinerWrapper createWrapper() {
+        KbuildMinerWrapper wrapper = new KbuildMinerWrapper(resourceDir);
+        wrapper.setMetrics(metrics);
+        return wrapper;
+    }
+
+    /**
+     * Runs kbuildminer.jar via the given {@link KbuildMinerWrapper}.
+     * 
+     * @param wrapper The wrapper to run KbuildMiner with.
+     * @return The non-empty output file of KbuildMiner. The caller is responsible for deleting it.
+     * 
+     * @throws IOException If executing KbuildMiner fails.
+     * @throws ExtractorException If KbuildMiner was not successful or produced no output.
+     */
+    private @NonNull File runKbuildMinerJar(@NonNull KbuildMinerWrapper wrapper)
+            throws IOException, ExtractorException {
+        
+        File output = wrapper.runKbuildMiner(sourceTree, topFolders);
+        
+        if (output == null) {
+            throw new ExtractorException("KbuildMiner execution not successful");
+        }
+        
+        if (output.length() == 0) {
+            Files.deleteIfExists(output.toPath());
+            throw new ExtractorException("Output of KbuildMiner is an empty file");
+        }
+        
+        return output;
+    }
+    
+    /**
+     * Reads the {@link #INCLUDE_PATHS} and {@link #EXCLUDE_PATHS} settings and removes the top folders that can't
+     * contain any file accepted by them.
+     * 
+     * @param config The configuration.
+     * @param topFolders The comma separated top folders.
+     * @return The top folders to mine.
+     * 
+     * @throws SetUpException If no top folder can contain an accepted file.
+     */
+    private @NonNull String applyPathFilter(@NonNull Configuration config, @NonNull String topFolders)
+            throws SetUpException {
+        
+        config.registerSetting(INCLUDE_PATHS);
+        config.registerSetting(EXCLUDE_PATHS);
+        List<@NonNull String> includes = config.getValue(INCLUDE_PATHS);
+        List<@NonNull String> excludes = config.getValue(EXCLUDE_PATHS);
+        pathFilter = new PathFilter(includes != null ? includes : Collections.emptyList(),
+                excludes != null ? excludes : Collections.emptyList());
+        
+        String result = topFolders;
+        if (!pathFilter.isAcceptAll()) {
+            result = pathFilter.narrowTopFolders(topFolders);
+            if (result.isEmpty()) {
+                throw new SetUpException("None of the top folders " + topFolders + " can contain files accepted by "
+                        + pathFilter);
+            }
+            LOGGER.logInfo("Using " + pathFilter);
+        }
+        return result;
+    }
+    
+    /**
+     * Creates a {@link Converter}, configured with the settings of this extractor. The converter does not have a
+     * variability model; it is passed to {@link Converter#finish(ParsedBuildModel, VariabilityModel)}.
+     * 
+     * @return The converter.
+     */
+    private @NonNull Converter createConverter() {
+        Converter c = new Converter();
+        c.setMetrics(metrics);
+        c.setSimplificationLevel(simplification);
+        c.setCanonicalize(canonicalize);
+        c.setTristateLiterals(tristateLiterals);
+        c.setBalance(balance);
+        c.setBuildVariableIndex(variableIndexFile != null);
+        c.setBuildFingerprint(fingerprintFile != null);
+        c.setBuildCnf(cnfFile != null);
+        c.setHeapBudget(heapBudget, resourceDir);
+        c.setPathFilter(pathFilter);
+        return c;
+    }
+    
+    /**
+     * Waits until the variability model of the pipeline is available.
+     * 
+     * @return The variability model.
+     * 
+     * @throws ExtractorException If the variability model is not available.
+     */
+    private @NonNull VariabilityModel waitForVariabilityModel() throws ExtractorException {
+        long start = System.nanoTime();
+        VariabilityModel varModel = notNull(PipelineConfigurator.instance().getVmProvider()).getResult();
+        if (varModel == null) {
+            throw new ExtractorException("Did not get a variability model");
+        }
+        LOGGER.logDebug("Waited " + (System.nanoTime() - start) / 1_000_000 + " ms for the variability model");
+        return varModel;
+    }
+
+    /**
+     * Writes the metrics to the {@link #METRICS_FILE}, if specified.
+     */
+    private void writeMetrics() {
+        File metricsFile = this.metricsFile;
+        if (metricsFile != null) {
+            try {
+                metrics.writeJson(metricsFile);
+            } catch (IOException e) {
+                LOGGER.logException("Can't write metrics to " + metricsFile, e);
+            }
+        }
+    }
+    
+    /**
+     * Writes the given index to the {@link #VARIABLE_INDEX_FILE}, if specified.
+     * 
+     * @param index The index built by the converter; <code>null</code> if none was built.
+     */
+    private void writeVariableIndex(@Nullable VariableIndex index) {
+        File variableIndexFile = this.variableIndexFile;
+        if (variableIndexFile != null && index != null) {
+            try {
+                index.write(variableIndexFile);
+            } catch (IOException e) {
+                LOGGER.logException("Can't write variable index to " + variableIndexFile, e);
+            }
+        }
+    }
+    
+    /**
+     * Writes the given fingerprint to the {@link #FINGERPRINT_FILE}, if specified. Before that, the change set to
+     * the previous fingerprint in this file is written to the {@link #CHANGE_SET_FILE}, if specified. The new
+     * fingerprint is written even if the change set can't be computed.
+     * 
+     * @param fingerprint The fingerprint computed by the converter; <code>null</code> if none was computed.
+     */
+    private void writeFingerprint(@Nullable BuildModelFingerprint fingerprint) {
+        File fingerprintFile = this.fingerprintFile;
+        File changeSetFile = this.changeSetFile;
+        if (fingerprintFile != null && fingerprint != null) {
+            if (changeSetFile != null && fingerprintFile.isFile()) {
+                writeChangeSet(fingerprintFile, fingerprint, changeSetFile);
+            }
+            try {
+                fingerprint.write(fingerprintFile);
+            } catch (IOException e) {
+                LOGGER.logException("Can't write build model fingerprint to " + fingerprintFile, e);
+            }
+        }
+    }
+    
+    /**
+     * Writes the change set between the previous fingerprint and the given one to the {@link #CHANGE_SET_FILE}. If
+     * the previous fingerprint can't be read or was created with different conversion options, a change set from an
+     * earlier extraction is deleted instead, so that it is not mistaken for the current one.
+     * 
+     * @param fingerprintFile The file that contains the previous fingerprint.
+     * @param fingerprint The new fingerprint.
+     * @param changeSetFile The file to write the change set to.
+     */
+    private static void writeChangeSet(@NonNull File fingerprintFile, @NonNull BuildModelFingerprint fingerprint,
+            @NonNull File changeSetFile) {
+        
+        boolean written = false;
+        try {
+            BuildModelFingerprint previous = BuildModelFingerprint.read(fingerprintFile);
+            if (previous.getOptionsHash() == fingerprint.getOptionsHash()) {
+                BuildModelDiff diff = BuildModelDiff.compare(previous, fingerprint);
+                diff.write(changeSetFile);
+                written = true;
+                LOGGER.logInfo("Build model changes: " + diff.getAdded().size() + " added, "
+                        + diff.getRemoved().size() + " removed, " + diff.getChanged().size() + " changed");
+            } else {
+                LOGGER.logWarning("The previous build model fingerprint in " + fingerprintFile
+                        + " was created with different conversion options; not writing a change set");
+            }
+        } catch (IOException e) {
+            LOGGER.logException("Can't compute the change set to the previous build model fingerprint in "
+                    + fingerprintFile, e);
+        }
+        
+        if (!written && changeSetFile.exists() && !changeSetFile.delete()) {
+            LOGGER.logWarning("Can't delete outdated change set " + changeSetFile);
+        }
+    }
+    
+    /**
+     * Writes the CNF to the {@link #CNF_FILE} and the literals of the files to the {@link #CNF_MAPPING_FILE}, if
+     * specified.
+     * 
+     * @param cnf The CNF built by the converter.
+     */
+    private void writeCnf(@Nullable CnfEncoder cnf) {
+        File cnfFile = this.cnfFile;
+        if (cnfFile != null && cnf != null) {
+            File mappingFile = cnfMappingFile != null ? cnfMappingFile : new File(cnfFile.getPath() + ".map");
+            try {
+                cnf.writeDimacs(cnfFile);
+                cnf.writeMapping(notNull(mappingFile));
+                LOGGER.logInfo("Wrote CNF with " + cnf.getNumVariables() + " variables (" + cnf.getNumGates()
+                        + " auxiliary) and " + cnf.getNumClauses() + " clauses to " + cnfFile);
+            } catch (IOException e) {
+                LOGGER.logException("Can't write CNF to " + cnfFile, e);
+            }
+        }
+    }
+    
+    /**
+     * Writes the build model to the {@link #SHARD_DIR}, if specified.
+     * 
+     * @param buildModel The extracted build model.
+     */
+    private void writeShards(@NonNull BuildModel buildModel) {
+        File shardDir = this.shardDir;
+        if (shardDir != null) {
+            try {
+                ShardedBuildModel shards = shardDepth > 0
+                        ? ShardedBuildModel.writeByDepth(buildModel, shardDir, shardDepth)
+                        : ShardedBuildModel.writeByTopFolder(buildModel, shardDir, topFolders);
+                LOGGER.logInfo("Wrote " + shards.getShards().size() + " build model shards to " + shardDir);
+            } catch (IOException e) {
+                LOGGER.logException("Can't write build model shards to " + shardDir, e);
+            }
+        }
+    }
+    
+    /**
+     * Returns the metrics of the current (or last) extraction run.
+     * 
+     * @return The metrics of this extractor.
+     */
+    public @NonNull ExtractionMetrics getMetrics() {
+        return metrics;
+    }
+
     @Override
     protected @NonNull String getName() {
         return "KbuildMinerExtractor";
     }
 
-    private String determineTopFolders() throws IOException {
+    /**
+     * Determines the top folders via {@link #determineTopFolders(File)}, using the {@link TopFolderCache} in the
+     * resource directory if enabled.
+     * 
+     * @return The top folders, separated (and starting) with a comma.
+     * 
+     * @throws IOException If walking the source tree fails.
+     */
+    private @NonNull String determineTopFoldersCached() throws IOException {
+        TopFolderCache cache = new TopFolderCache(new File(resourceDir, "top_folders.cache"));
+        String result = useTopFolderCache ? cache.get(sourceTree) : null;
+        
+        if (result == null) {
+            result = determineTopFolders(sourceTree);
+            if (useTopFolderCache) {
+                try {
+                    cache.put(sourceTree, result);
+                } catch (IOException e) {
+                    LOGGER.logException("Can't write top folder cache", e);
+                }
+            }
+        } else {
+            LOGGER.logInfo("Using cached top folders for " + sourceTree);
+        }
+        
+        return result;
+    }
+
+    /**
+     * Determines the top folders of the given source tree, i.e. all top-level folders (except <code>arch</code>
+     * and <code>samples</code>) that contain a Kbuild makefile somewhere below.
+     * 
+     * @param sourceTree The source tree to walk.
+     * @return The top folders, separated (and starting) with a comma.
+     * 
+     * @throws IOException If walking the source tree fails.
+     */
+    static String determineTopFolders(@NonNull File sourceTree) throws IOException {
         LOGGER.logInfo("Determining top folders in " + sourceTree);
         try {
             final List<Path> makefiles = Files.find(sourceTree.toPath(),
@@ -177,7 +872,7 @@ public class KbuildMinerExtractor extends AbstractBuildModelExtractor {
         }
     }
 
-    private boolean isMakefileName(String fileName) {
+    private static boolean isMakefileName(String fileName) {
         // TODO: I had removed the last two conditions for some reason, but I cannot remember why. Removing them caused problems for Busybox, so I put them back in
         return fileName.equals("Makefile") || fileName.equals("Kbuild") || fileName.equals("Kbuild.src");
     }
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The Java Flight Recorder events behind {@link KbuildMinerEvents}. This is the only class that references
+ * <code>jdk.jfr</code>; it is only loaded if {@link KbuildMinerEvents#isAvailable()}, so that the extractor also
+ * runs on Java 8 runtimes without JFR. The events are passed around as {@link Object}, so that the callers don't
+ * reference the event types either.
+ *
+ * @author Adam
+ */
+final class KbuildMinerJfrEvents {
+
+    private static final String CATEGORY = "KernelHaven";
+
+    /**
+     * A full run of {@link KbuildMinerExtractor#runOnFile(java.io.File)}.
+     */
+    @Name("net.ssehub.kernel_haven.kbuildminer.Extraction")
+    @Label("KbuildMiner Extraction")
+    @Category({CATEGORY, "KbuildMiner"})
+    @Description("A full build model extraction with KbuildMiner")
+    static final class Extraction extends Event {
+
+        @Label("Source Tree")
+        private String sourceTree;
+
+        @Label("Top Folders")
+        private String topFolders;
+
+        @Label("Build Model Size")
+        private int buildModelSize;
+
+        @Label("Failed")
+        @Description("Whether the extraction failed with an exception")
+        private boolean failed;
+
+    }
+
+    /**
+     * A single run of the KbuildMiner child process in {@link KbuildMinerWrapper}.
+     */
+    @Name("net.ssehub.kernel_haven.kbuildminer.KbuildMinerRun")
+    @Label("KbuildMiner Run")
+    @Category({CATEGORY, "KbuildMiner"})
+    @Description("Execution of the KbuildMiner child JVM")
+    static final class KbuildMinerRun extends Event {
+
+        @Label("Source Tree")
+        private String sourceTree;
+
+        @Label("Top Folders")
+        private String topFolders;
+
+        @Label("Success")
+        @Description("Whether the child process terminated with exit code 0")
+        private boolean success;
+
+        @Label("Output Size")
+        private long outputBytes;
+
+    }
+
+    /**
+     * A batch of lines converted by {@link Converter}.
+     */
+    @Name("net.ssehub.kernel_haven.kbuildminer.ConversionBatch")
+    @Label("Conversion Batch")
+    @Category({CATEGORY, "KbuildMiner"})
+    @Description("A batch of KbuildMiner output lines converted to presence conditions")
+    static final class ConversionBatch extends Event {
+
+        @Label("First Line")
+        private int firstLine;
+
+        @Label("Lines")
+        private int lines;
+
+        @Label("Parse Failures")
+        private long parseFailures;
+
+        @Label("Invalid Expressions")
+        private long invalidExpressions;
+
+    }
+
+    /**
+     * Don't allow any instances.
+     */
+    private KbuildMinerJfrEvents() {
+    }
+
+    /**
+     * Creates an {@link Extraction} event.
+     *
+     * @return The new event.
+     */
+    static Object createExtraction() {
+        return new Extraction();
+    }
+
+    /**
+     * Creates a {@link KbuildMinerRun} event.
+     *
+     * @return The new event.
+     */
+    static Object createKbuildMinerRun() {
+        return new KbuildMinerRun();
+    }
+
+    /**
+     * Creates a {@link ConversionBatch} event.
+     *
+     * @return The new event.
+     */
+    static Object createConversionBatch() {
+        return new ConversionBatch();
+    }
+
+    /**
+     * Checks whether a recording is interested in the given event.
+     *
+     * @param event The event.
+     * @return See {@link Event#isEnabled()}.
+     */
+    static boolean isEnabled(Object event) {
+        return ((Event) event).isEnabled();
+    }
+
+    /**
+     * Starts the timing of the given event.
+     *
+     * @param event The event.
+     */
+    static void begin(Object event) {
+        ((Event) event).begin();
+    }
+
+    /**
+     * Ends the timing of the given event.
+     *
+     * @param event The event.
+     */
+    static void end(Object event) {
+        ((Event) event).end();
+    }
+
+    /**
+     * Checks whether the given (ended) event should be committed.
+     *
+     * @param event The event.
+     * @return See {@link Event#shouldCommit()}.
+     */
+    static boolean shouldCommit(Object event) {
+        return ((Event) event).shouldCommit();
+    }
+
+    /**
+     * Sets the fields of an {@link Extraction} event and commits it.
+     *
+     * @param event The event.
+     * @param sourceTree The path to the source tree.
+     * @param topFolders The comma separated top folders.
+     * @param buildModelSize The size of the build model.
+     * @param failed Whether the extraction failed.
+     */
+    static void commitExtraction(Object event, String sourceTree, String topFolders, int buildModelSize,
+            boolean failed) {
+        Extraction extraction = (Extraction) event;
+        extraction.sourceTree = sourceTree;
+        extraction.topFolders = topFolders;
+        extraction.buildModelSize = buildModelSize;
+        extraction.failed = failed;
+        extraction.commit();
+    }
+
+    /**
+     * Sets the fields of a {@link KbuildMinerRun} event and commits it.
+     *
+     * @param event The event.
+     * @param sourceTree The path to the source tree.
+     * @param topFolders The comma separated top folders.
+     * @param success Whether the exit code was 0.
+     * @param outputBytes The size of the output file in bytes.
+     */
+    static void commitKbuildMinerRun(Object event, String sourceTree, String topFolders, boolean success,
+            long outputBytes) {
+        KbuildMinerRun run = (KbuildMinerRun) event;
+        run.sourceTree = sourceTree;
+        run.topFolders = topFolders;
+        run.success = success;
+        run.outputBytes = outputBytes;
+        run.commit();
+    }
+
+    /**
+     * Sets the fields of a {@link ConversionBatch} event and commits it.
+     *
+     * @param event The event.
+     * @param firstLine The first line number (1-based).
+     * @param lines The number of lines.
+     * @param parseFailures The number of parse failures.
+     * @param invalidExpressions The number of invalid expressions.
+     */
+    static void commitConversionBatch(Object event, int firstLine, int lines, long parseFailures,
+            long invalidExpressions) {
+        ConversionBatch batch = (ConversionBatch) event;
+        batch.firstLine = firstLine;
+        batch.lines = lines;
+        batch.parseFailures = parseFailures;
+        batch.invalidExpressions = invalidExpressions;
+        batch.commit();
+    }
+
+}
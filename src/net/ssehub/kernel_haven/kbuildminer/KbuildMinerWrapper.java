@@ -19,9 +19,15 @@
  */
 package net.ssehub.kernel_haven.kbuildminer;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
 
 import net.ssehub.kernel_haven.util.Logger;
 import net.ssehub.kernel_haven.util.Util;
@@ -39,12 +45,40 @@ import net.ssehub.kernel_haven.util.null_checks.Nullable;
 public class KbuildMinerWrapper {
     
     private static final Logger LOGGER = Logger.get();
+    
+    /**
+     * Guards the extraction of the resources between threads of this JVM.
+     */
+    private static final @NonNull Object EXTRACTION_LOCK = new Object();
+    
+    /**
+     * How long {@link #cancel()} waits for a destroyed process to terminate.
+     */
+    private static final long CANCEL_TIMEOUT_SECONDS = 5;
 
     /**
      * The directory where this extractor can store its resources. Not null.
      */
     private @NonNull File resourceDir;
     
+    private @NonNull ExtractionMetrics metrics = new ExtractionMetrics();
+    
+    /**
+     * The running KbuildMiner process; <code>null</code> if none is running. Guarded by <code>this</code>.
+     */
+    private @Nullable Process process;
+    
+    /**
+     * The output file of the current or last run; <code>null</code> if there was none. Guarded by
+     * <code>this</code>.
+     */
+    private @Nullable File output;
+    
+    /**
+     * Whether {@link #cancel()} was called. Guarded by <code>this</code>.
+     */
+    private boolean cancelled;
+    
     /**
      * Initializes the KbuildMiner.
      * 
@@ -53,9 +87,19 @@ public class KbuildMinerWrapper {
     public KbuildMinerWrapper(@NonNull File resourceDir) {
         this.resourceDir = resourceDir;
     }
+    
+    /**
+     * Sets the metrics that the phase timings of this wrapper are recorded in.
+     * 
+     * @param metrics The metrics to record to.
+     */
+    public void setMetrics(@NonNull ExtractionMetrics metrics) {
+        this.metrics = metrics;
+    }
 
     /**
-     * Runs KbuildMiner on the specified product line.
+     * Runs KbuildMiner on the specified product line. Each run uses its own scratch working directory inside the
+     * resource directory, so that several runs can share the same resource directory concurrently.
      * 
      * @param sourceTree The path to the source code tree to analyze. Must not be <code>null</code>.
      * @param topFolders A comma separated list of folders to look into relative to sourceTree
@@ -70,18 +114,9 @@ public class KbuildMinerWrapper {
     public @Nullable File runKbuildMiner(@NonNull File sourceTree, @NonNull String topFolders) throws IOException {
         LOGGER.logDebug("runKBuildMiner() called");
 
-        // extract jar to run kconfigreader
-        File kbuildMinerJar = new File(resourceDir, "kbuildminer.jar");
-        if (!kbuildMinerJar.isFile()) {
-            Util.extractJarResourceToFile("net/ssehub/kernel_haven/kbuildminer/res/kbuildminer.jar", kbuildMinerJar);
-        }
-        
-        // logback.xml is the configuration file for the logger of kbuildminer
-        // it is necessary to not spam us with debug messages
-        File logback = new File(resourceDir, "logback.xml");
-        if (!logback.isFile()) {
-            Util.extractJarResourceToFile("net/ssehub/kernel_haven/kbuildminer/res/logback.xml", logback);
-        }
+        long start = System.nanoTime();
+        File kbuildMinerJar = extractResources();
+        metrics.addPhaseTime(ExtractionMetrics.Phase.RESOURCE_EXTRACTION, System.nanoTime() - start);
 
         File output = File.createTempFile("kbuildminer.pcs.txt", "");
         output.delete();
@@ -94,40 +129,183 @@ public class KbuildMinerWrapper {
                 "--topFolders", topFolders,
                 "--pcOutput", output.getAbsolutePath());
 
-        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
-        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
-        
-        processBuilder.directory(resourceDir);
-
-        boolean success = Util.executeProcess(processBuilder, "KbuildMiner", stdout, stderr, 0);
-
-        logOutput(stdout, stderr);
+        // KbuildMiner (annoyingly) always creates an output/ directory in its working directory; use a private
+        // scratch directory for this, so that concurrent runs don't delete each other's files
+        File workingDir = Files.createTempDirectory(resourceDir.toPath(), "run").toFile();
+        processBuilder.directory(workingDir);
+        File stdout = new File(workingDir, "stdout.txt");
+        File stderr = new File(workingDir, "stderr.txt");
+        processBuilder.redirectOutput(stdout);
+        processBuilder.redirectError(stderr);
 
-        // delete output/ directory that is (annoyingly) always created by KbuildMiner in the working dir (resDir)
-        File outputDir = new File(resourceDir, "output");
-        if (outputDir.isDirectory()) {
-            Util.deleteFolder(outputDir);
-        }
-
-        if (!success && output.isFile()) {
-            if (!output.delete()) {
+        KbuildMinerEvents.KbuildMinerRun event = new KbuildMinerEvents.KbuildMinerRun();
+        event.begin();
+        
+        boolean success = false;
+        long outputBytes = 0;
+        start = System.nanoTime();
+        try {
+            boolean finished = execute(processBuilder, output);
+            logOutput(stdout, stderr);
+            outputBytes = output.isFile() ? output.length() : 0;
+            metrics.recordOutputSize(outputBytes);
+            success = finished;
+        } finally {
+            // also clean up if KbuildMiner was interrupted or cancelled
+            metrics.addPhaseTime(ExtractionMetrics.Phase.KBUILDMINER, System.nanoTime() - start);
+            Util.deleteFolder(workingDir);
+            if (!success && output.isFile() && !output.delete()) {
                 LOGGER.logWarning("Can't delete kbuildminer output file " + output.getAbsolutePath());
             }
         }
         
+        event.end();
+        if (event.shouldCommit()) {
+            event.setSourceTree(sourceTree.getAbsolutePath());
+            event.setTopFolders(topFolders);
+            event.setSuccess(success);
+            event.setOutputBytes(outputBytes);
+            event.commit();
+        }
+        
         return success ? output : null;
     }
+    
+    /**
+     * Extracts kbuildminer.jar and logback.xml to the resource directory, if they are not already present. This
+     * is guarded by a lock inside this JVM and by a file lock in the resource directory, so that parallel
+     * extractions (in the same or in different processes) never see a partially written file.
+     * 
+     * @return The extracted kbuildminer.jar.
+     * 
+     * @throws IOException If extracting the resources fails.
+     */
+    private @NonNull File extractResources() throws IOException {
+        File kbuildMinerJar = new File(resourceDir, "kbuildminer.jar");
+        // logback.xml is the configuration file for the logger of kbuildminer
+        // it is necessary to not spam us with debug messages
+        File logback = new File(resourceDir, "logback.xml");
+        
+        if (!kbuildMinerJar.isFile() || !logback.isFile()) {
+            // FileLocks are held by the whole JVM, so threads of this JVM need to synchronize separately
+            synchronized (EXTRACTION_LOCK) {
+                try (FileChannel channel = FileChannel.open(new File(resourceDir, ".kbuildminer.lock").toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                        FileLock lock = channel.lock()) {
+                    
+                    extractAtomically("net/ssehub/kernel_haven/kbuildminer/res/kbuildminer.jar", kbuildMinerJar);
+                    extractAtomically("net/ssehub/kernel_haven/kbuildminer/res/logback.xml", logback);
+                }
+            }
+        }
+        
+        return kbuildMinerJar;
+    }
+    
+    /**
+     * Extracts the given resource to a temporary file and then atomically moves it to the target. Does nothing if
+     * the target already exists. Must only be called while holding the extraction lock.
+     * 
+     * @param resource The resource to extract.
+     * @param target The target file.
+     * 
+     * @throws IOException If extracting or moving the file fails.
+     */
+    private void extractAtomically(@NonNull String resource, @NonNull File target) throws IOException {
+        if (!target.isFile()) {
+            File tmp = File.createTempFile(target.getName(), ".tmp", resourceDir);
+            try {
+                Util.extractJarResourceToFile(resource, tmp);
+                Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tmp.toPath());
+            }
+        }
+    }
 
-    private void logOutput(ByteArrayOutputStream stdout, ByteArrayOutputStream stderr) {
-        String infoString;
-        String errorString;
-        infoString = stdout.toString();
-        errorString = stderr.toString();
+    /**
+     * Starts the KbuildMiner process and waits for it to finish. The process can be destroyed in the meantime by
+     * {@link #cancel()}.
+     * 
+     * @param processBuilder The process to start.
+     * @param output The output file of the process.
+     * @return Whether the process finished successfully.
+     * 
+     * @throws IOException If starting the process fails, the wrapper was cancelled or the thread was interrupted.
+     */
+    private boolean execute(@NonNull ProcessBuilder processBuilder, @NonNull File output) throws IOException {
+        Process process;
+        synchronized (this) {
+            if (cancelled) {
+                throw new IOException("KbuildMiner run was cancelled");
+            }
+            process = processBuilder.start();
+            this.process = process;
+            this.output = output;
+        }
+        
+        boolean result;
+        try {
+            result = process.waitFor() == 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            process.destroyForcibly();
+            InterruptedIOException exc = new InterruptedIOException("Interrupted while waiting for KbuildMiner");
+            exc.initCause(e);
+            throw exc;
+        } finally {
+            synchronized (this) {
+                this.process = null;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Cancels this wrapper: destroys a running KbuildMiner process and deletes the output file of the current or
+     * last run. Further runs fail. This is used for runs whose output is never consumed; it may be called from any
+     * thread, e.g. a shutdown hook.
+     */
+    public void cancel() {
+        Process process;
+        File output;
+        synchronized (this) {
+            cancelled = true;
+            process = this.process;
+            output = this.output;
+        }
+        
+        if (process != null) {
+            process.destroyForcibly();
+            try {
+                // wait until the process releases the output file
+                process.waitFor(CANCEL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (output != null && output.exists() && !output.delete()) {
+            LOGGER.logWarning("Can't delete kbuildminer output file " + output.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Logs the console output of KbuildMiner.
+     * 
+     * @param stdout The file that the standard output was redirected to.
+     * @param stderr The file that the error output was redirected to.
+     * 
+     * @throws IOException If reading the files fails.
+     */
+    private void logOutput(@NonNull File stdout, @NonNull File stderr) throws IOException {
+        String infoString = stdout.isFile() ? new String(Files.readAllBytes(stdout.toPath())) : "";
+        String errorString = stderr.isFile() ? new String(Files.readAllBytes(stderr.toPath())) : "";
         if (infoString.length() > 0) {
-            LOGGER.logInfo(stdout.toString());
+            LOGGER.logInfo(infoString);
         }
         if (errorString.length() > 0) {
-            LOGGER.logError(stderr.toString());
+            LOGGER.logError(errorString);
         }
     }
 
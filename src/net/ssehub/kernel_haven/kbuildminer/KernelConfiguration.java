@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * The option values of a single Linux kernel configuration, as stored in a <code>.config</code> file. Lines of the
+ * form <code>CONFIG_X=value</code> set an option (quotes around string values are removed), and
+ * <code># CONFIG_X is not set</code> sets it to <code>n</code>. All other lines are ignored.
+ *
+ * @author Adam
+ */
+public class KernelConfiguration {
+
+    private static final @NonNull String NOT_SET_PREFIX = "# ";
+
+    private static final @NonNull String NOT_SET_SUFFIX = " is not set";
+
+    private final @NonNull String name;
+
+    private final @NonNull Map<String, @NonNull String> values;
+
+    /**
+     * Creates a configuration with the given option values.
+     *
+     * @param name The name of this configuration, e.g. the path of its <code>.config</code> file.
+     * @param values The option values, by option name (e.g. <code>CONFIG_X</code> to <code>m</code>).
+     */
+    public KernelConfiguration(@NonNull String name, @NonNull Map<String, @NonNull String> values) {
+        this.name = name;
+        this.values = values;
+    }
+
+    /**
+     * Reads a <code>.config</code> file.
+     *
+     * @param file The file to read.
+     * @return The configuration, named after the path of the file.
+     *
+     * @throws IOException If reading the file fails.
+     */
+    public static @NonNull KernelConfiguration read(@NonNull File file) throws IOException {
+        Map<String, @NonNull String> values = new HashMap<>();
+        try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                parseLine(line.trim(), values);
+            }
+        }
+        return new KernelConfiguration(file.getPath(), values);
+    }
+
+    /**
+     * Parses a single line of a <code>.config</code> file.
+     *
+     * @param line The trimmed line.
+     * @param values The map to add the option value to, if the line sets one.
+     */
+    private static void parseLine(@NonNull String line, @NonNull Map<String, @NonNull String> values) {
+        int equals = line.indexOf('=');
+        if (line.startsWith(NOT_SET_PREFIX) && line.endsWith(NOT_SET_SUFFIX)) {
+            values.put(line.substring(NOT_SET_PREFIX.length(), line.length() - NOT_SET_SUFFIX.length()).trim(), "n");
+
+        } else if (!line.startsWith("#") && equals > 0) {
+            String value = line.substring(equals + 1);
+            if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                value = value.substring(1, value.length() - 1);
+            }
+            values.put(line.substring(0, equals), value);
+        }
+    }
+
+    /**
+     * Returns the name of this configuration.
+     *
+     * @return The name, e.g. the path of the <code>.config</code> file.
+     */
+    public @NonNull String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the value of the given option.
+     *
+     * @param option The name of the option, e.g. <code>CONFIG_X</code>.
+     * @return The value, e.g. <code>y</code>, <code>m</code> or <code>n</code>; <code>null</code> if the option is
+     *      not in this configuration.
+     */
+    public @Nullable String getValue(@NonNull String option) {
+        return values.get(option);
+    }
+
+    /**
+     * Returns all option values of this configuration.
+     *
+     * @return The option values, by option name; not modifiable.
+     */
+    public @NonNull Map<String, @NonNull String> getValues() {
+        return notNull(Collections.unmodifiableMap(values));
+    }
+
+    @Override
+    public @NonNull String toString() {
+        return name;
+    }
+
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.parser.Parser;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * A build model that defers parsing until a presence condition is requested. On creation, the output file of
+ * KbuildMiner is only indexed: for each source file, the byte offset of its line is stored in sorted primitive
+ * arrays. {@link #getPc(File)} reads and converts the line on first access and keeps the result in a bounded
+ * least-recently-used cache.
+ *
+ * <p>
+ * Malformed presence conditions are collected in the {@link #getErrorReport()}, which is logged by {@link #close()}.
+ * This keeps the underlying file open; {@link #close()} must be called after use. All methods are thread-safe.
+ * </p>
+ *
+ * @author Adam
+ */
+public class LazyBuildModel implements Iterable<@NonNull File>, Closeable {
+
+    private static final Logger LOGGER = Logger.get();
+
+    private final @NonNull Converter converter;
+
+    private final @NonNull Parser<@NonNull Formula> pcParser;
+
+    private final @NonNull RandomAccessFile in;
+
+    /**
+     * The (normalized) paths of the source files, sorted.
+     */
+    private @NonNull String @NonNull [] paths;
+
+    /**
+     * The byte offset of the line of each entry in {@link #paths}.
+     */
+    private long @NonNull [] offsets;
+
+    /**
+     * The line number of each entry in {@link #paths}.
+     */
+    private int @NonNull [] lineNumbers;
+
+    private final @NonNull Map<String, @NonNull Formula> cache;
+
+    /**
+     * Indexes the given KbuildMiner output. Use {@link Converter#convertLazy(File, int)}.
+     *
+     * @param file The output file of KbuildMiner.
+     * @param converter The converter to convert single lines with. Used only by this model.
+     * @param pcParser The parser to use for the presence conditions.
+     * @param pathFilter The filter for the files; lines of files that are not accepted are not indexed.
+     * @param maxCached The maximum number of converted presence conditions to keep in memory.
+     *
+     * @throws IOException If reading the file fails.
+     */
+    LazyBuildModel(@NonNull File file, @NonNull Converter converter, @NonNull Parser<@NonNull Formula> pcParser,
+            @NonNull PathFilter pathFilter, int maxCached) throws IOException {
+
+        this.converter = converter;
+        this.pcParser = pcParser;
+        this.cache = new LinkedHashMap<String, @NonNull Formula>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 8361386153016565617L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, @NonNull Formula> eldest) {
+                return size() > maxCached;
+            }
+
+        };
+
+        this.paths = new @NonNull String[0];
+        this.offsets = new long[0];
+        this.lineNumbers = new int[0];
+        index(file, pathFilter);
+
+        this.in = new RandomAccessFile(file, "r");
+    }
+
+    /**
+     * Reads the file once and records the offset of each line.
+     *
+     * @param file The file to index.
+     * @param pathFilter The filter for the files to index.
+     *
+     * @throws IOException If reading the file fails.
+     */
+    private void index(@NonNull File file, @NonNull PathFilter pathFilter) throws IOException {
+        List<@NonNull String> unsortedPaths = new ArrayList<>();
+        long[] unsortedOffsets = new long[1024];
+        int[] unsortedLines = new int[1024];
+
+        try (InputStream stream = new BufferedInputStream(new FileInputStream(file))) {
+            ByteArrayOutputStream name = new ByteArrayOutputStream();
+            long offset = 0;
+            long lineStart = 0;
+            int lineNumber = 1;
+            boolean inName = true;
+            int c;
+            while ((c = stream.read()) != -1) {
+                offset++;
+                if (c == '\n') {
+                    inName = true;
+                    lineStart = offset;
+                    lineNumber++;
+                } else if (inName && c == ':') {
+                    inName = false;
+                    String path = name.toString("UTF-8");
+                    if (pathFilter.accepts(path)) {
+                        if (unsortedPaths.size() == unsortedOffsets.length) {
+                            unsortedOffsets = Arrays.copyOf(unsortedOffsets, unsortedOffsets.length * 2);
+                            unsortedLines = Arrays.copyOf(unsortedLines, unsortedLines.length * 2);
+                        }
+                        unsortedOffsets[unsortedPaths.size()] = lineStart;
+                        unsortedLines[unsortedPaths.size()] = lineNumber;
+                        unsortedPaths.add(new File(path).getPath());
+                    }
+                    name.reset();
+                } else if (inName) {
+                    name.write(c);
+                }
+            }
+        }
+
+        sortIndex(unsortedPaths, unsortedOffsets, unsortedLines);
+    }
+
+    /**
+     * Sorts the index by path. If a path occurs multiple times, the last line wins, like in {@link BuildModel}.
+     *
+     * @param unsortedPaths The paths in file order.
+     * @param unsortedOffsets The offsets in file order.
+     * @param unsortedLines The line numbers in file order.
+     */
+    private void sortIndex(@NonNull List<@NonNull String> unsortedPaths, long @NonNull [] unsortedOffsets,
+            int @NonNull [] unsortedLines) {
+        Integer[] order = new Integer[unsortedPaths.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        // stable sort, so that duplicates stay in file order
+        Arrays.sort(order, (i1, i2) -> unsortedPaths.get(i1).compareTo(unsortedPaths.get(i2)));
+
+        List<@NonNull String> sortedPaths = new ArrayList<>(order.length);
+        offsets = new long[order.length];
+        lineNumbers = new int[order.length];
+        for (Integer index : order) {
+            String path = unsortedPaths.get(index);
+            int pos = sortedPaths.size();
+            if (pos > 0 && sortedPaths.get(pos - 1).equals(path)) {
+                pos--;
+            } else {
+                sortedPaths.add(path);
+            }
+            offsets[pos] = unsortedOffsets[index];
+            lineNumbers[pos] = unsortedLines[index];
+        }
+
+        paths = sortedPaths.toArray(new @NonNull String[sortedPaths.size()]);
+        offsets = Arrays.copyOf(offsets, paths.length);
+        lineNumbers = Arrays.copyOf(lineNumbers, paths.length);
+    }
+
+    /**
+     * Returns the presence condition of the given file, parsing it on first access.
+     *
+     * @param file The file, relative to the source tree.
+     * @return The presence condition, or <code>null</code> if the file is not in this model.
+     *
+     * @throws UncheckedIOException If reading the underlying file fails.
+     */
+    public synchronized @Nullable Formula getPc(@NonNull File file) {
+        String path = file.getPath();
+        Formula result = cache.get(path);
+
+        if (result == null) {
+            int index = Arrays.binarySearch(paths, path);
+            if (index >= 0) {
+                try {
+                    String line = readLine(offsets[index]);
+                    result = converter.toPresenceCondition(line, lineNumbers[index], pcParser);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                cache.put(path, result);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Checks whether the given file is in this model. Does not parse its presence condition.
+     *
+     * @param file The file, relative to the source tree.
+     * @return Whether the file is in this model.
+     */
+    public boolean contains(@NonNull File file) {
+        return Arrays.binarySearch(paths, file.getPath()) >= 0;
+    }
+
+    /**
+     * Returns the number of files in this model.
+     *
+     * @return The number of files.
+     */
+    public int getSize() {
+        return paths.length;
+    }
+
+    /**
+     * Returns the report of the malformed presence conditions found so far. Only presence conditions that were
+     * requested via {@link #getPc(File)} are checked.
+     *
+     * @return The error report of this model.
+     */
+    public @NonNull ParseErrorReport getErrorReport() {
+        return converter.getErrorReport();
+    }
+
+    /**
+     * Returns the number of presence conditions that are currently cached.
+     *
+     * @return The number of cached presence conditions.
+     */
+    public synchronized int getNumCached() {
+        return cache.size();
+    }
+
+    /**
+     * Reads a single line at the given offset.
+     *
+     * @param offset The byte offset of the line.
+     * @return The line, without the line terminator.
+     *
+     * @throws IOException If reading fails.
+     */
+    private @NonNull String readLine(long offset) throws IOException {
+        in.seek(offset);
+        ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+        byte[] buffer = new byte[256];
+
+        boolean done = false;
+        while (!done) {
+            int read = in.read(buffer);
+            if (read == -1) {
+                done = true;
+            } else {
+                int end = 0;
+                while (end < read && buffer[end] != '\n') {
+                    end++;
+                }
+                line.write(buffer, 0, end);
+                done = end < read;
+            }
+        }
+
+        String result = new String(line.toByteArray(), StandardCharsets.UTF_8);
+        if (result.endsWith("\r")) {
+            result = result.substring(0, result.length() - 1);
+        }
+        return result;
+    }
+
+    @Override
+    public @NonNull Iterator<@NonNull File> iterator() {
+        return new Iterator<@NonNull File>() {
+
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < paths.length;
+            }
+
+            @Override
+            public @NonNull File next() {
+                return new File(paths[index++]);
+            }
+
+        };
+    }
+
+    /**
+     * Closes the underlying file and logs the {@link #getErrorReport()}.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        converter.getErrorReport().log(LOGGER);
+        in.close();
+    }
+
+}
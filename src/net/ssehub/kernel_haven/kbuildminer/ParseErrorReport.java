@@ -0,0 +1,129 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * Aggregates the malformed presence conditions found during a conversion. Instead of logging every single line,
+ * this counts the errors per {@link PcError} and keeps only a bounded sample of offending lines, which is logged
+ * once at the end of the run.
+ *
+ * @author Adam
+ */
+public class ParseErrorReport {
+
+    /**
+     * The default maximum number of offending lines that are kept as samples.
+     */
+    public static final int DEFAULT_MAX_SAMPLES = 20;
+
+    private final @NonNull Map<PcError, Long> counts = new EnumMap<>(PcError.class);
+
+    private final @NonNull List<@NonNull String> samples = new ArrayList<>();
+
+    private final int maxSamples;
+
+    private long total;
+
+    /**
+     * Creates a report that keeps at most {@link #DEFAULT_MAX_SAMPLES} samples.
+     */
+    public ParseErrorReport() {
+        this(DEFAULT_MAX_SAMPLES);
+    }
+
+    /**
+     * Creates a report that keeps at most the given number of samples.
+     *
+     * @param maxSamples The maximum number of offending lines to keep.
+     */
+    public ParseErrorReport(int maxSamples) {
+        this.maxSamples = maxSamples;
+    }
+
+    /**
+     * Records a malformed presence condition.
+     *
+     * @param error The kind of error. Must not be {@link PcError#NONE}.
+     * @param lineNumber The number of the offending line.
+     * @param line The offending line.
+     */
+    public void record(@NonNull PcError error, int lineNumber, @NonNull String line) {
+        counts.merge(error, 1L, Long::sum);
+        total++;
+        if (samples.size() < maxSamples) {
+            samples.add("line " + lineNumber + " (" + error + "): " + line);
+        }
+    }
+
+    /**
+     * Returns the number of recorded errors of the given kind.
+     *
+     * @param error The kind of error.
+     * @return The number of errors of this kind.
+     */
+    public long getCount(@NonNull PcError error) {
+        Long count = counts.get(error);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Returns the total number of recorded errors.
+     *
+     * @return The number of errors.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Returns the sample of offending lines.
+     *
+     * @return The first offending lines, at most as many as configured.
+     */
+    public @NonNull List<@NonNull String> getSamples() {
+        return samples;
+    }
+
+    /**
+     * Logs a summary of this report as a single warning. Does nothing if no errors were recorded.
+     *
+     * @param logger The logger to log to.
+     */
+    public void log(@NonNull Logger logger) {
+        if (total > 0) {
+            List<String> lines = new ArrayList<>(counts.size() + samples.size() + 3);
+            lines.add(total + " presence conditions in the KbuildMiner output are invalid:");
+            for (Map.Entry<PcError, Long> entry : counts.entrySet()) {
+                lines.add("    " + entry.getKey() + ": " + entry.getValue());
+            }
+            lines.add("First " + samples.size() + " offending lines:");
+            for (String sample : samples) {
+                lines.add("    " + sample);
+            }
+            logger.logWarning(lines.toArray(new String[0]));
+        }
+    }
+
+}
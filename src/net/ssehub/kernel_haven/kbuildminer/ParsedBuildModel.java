@@ -0,0 +1,264 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+
+/**
+ * The result of the first stage of the conversion (see {@link Converter#parse(File)}): the parsed presence
+ * conditions, before the tristate rewriting. This stage does not need the {@link VariabilityModel}. To make the
+ * second stage cheap, the entries whose presence condition contains a <code>_MODULE</code> variable are recorded,
+ * together with the names of all <code>_MODULE</code> variables.
+ *
+ * <p>
+ * If created with a heap budget, presence conditions beyond the budget are written to a {@link SpillFile}, like in
+ * {@link SpillingBuildModel}. {@link #close()} deletes the spill file.
+ * </p>
+ *
+ * @author Adam
+ */
+public class ParsedBuildModel implements Closeable {
+
+    private final @NonNull List<@NonNull File> files = new ArrayList<>();
+
+    /**
+     * The presence conditions kept in memory; <code>null</code> for spilled entries.
+     */
+    private final @NonNull List<@Nullable Formula> pcs = new ArrayList<>();
+
+    /**
+     * The offsets of the spilled entries in the {@link #spillFile}; only valid where {@link #pcs} is
+     * <code>null</code>.
+     */
+    private long @NonNull [] offsets = new long[0];
+
+    private final long heapBudget;
+
+    private final @Nullable File spillDirectory;
+
+    private @Nullable SpillFile spillFile;
+
+    private long heapUsage;
+
+    private final @NonNull BitSet moduleSites = new BitSet();
+
+    private final @NonNull Set<String> moduleVariables = new HashSet<>();
+
+    /**
+     * The entries whose presence condition was released by {@link #takePc(int)}.
+     */
+    private final @NonNull BitSet taken = new BitSet();
+
+    /**
+     * Creates an empty model that keeps all presence conditions in memory.
+     */
+    ParsedBuildModel() {
+        this(Long.MAX_VALUE, null);
+    }
+
+    /**
+     * Creates an empty model with a heap budget.
+     *
+     * @param heapBudget The maximum number of (estimated) heap bytes for the presence conditions kept in memory.
+     * @param spillDirectory The directory to create the spill file in; <code>null</code> if the budget is
+     *      {@link Long#MAX_VALUE}.
+     */
+    ParsedBuildModel(long heapBudget, @Nullable File spillDirectory) {
+        this.heapBudget = heapBudget;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Adds a parsed presence condition.
+     *
+     * @param file The file, relative to the source tree.
+     * @param pc The parsed presence condition, before the tristate rewriting.
+     *
+     * @throws UncheckedIOException If writing to the spill file fails.
+     */
+    void add(@NonNull File file, @NonNull Formula pc) {
+        int index = pcs.size();
+        if (collectModuleVariables(pc)) {
+            moduleSites.set(index);
+        }
+        files.add(file);
+
+        long size = FormulaCodec.estimateHeapSize(pc);
+        File spillDirectory = this.spillDirectory;
+        if (heapUsage + size <= heapBudget || spillDirectory == null) {
+            pcs.add(pc);
+            heapUsage += size;
+        } else {
+            pcs.add(null);
+            if (index >= offsets.length) {
+                offsets = Arrays.copyOf(offsets, Math.max(1024, index * 2));
+            }
+            try {
+                SpillFile spillFile = this.spillFile;
+                if (spillFile == null) {
+                    spillFile = new SpillFile(spillDirectory);
+                    this.spillFile = spillFile;
+                }
+                offsets[index] = spillFile.append(pc);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of entries (including duplicate files).
+     *
+     * @return The number of entries.
+     */
+    public int getSize() {
+        return files.size();
+    }
+
+    /**
+     * Returns the file of the given entry.
+     *
+     * @param index The index of the entry.
+     * @return The file.
+     */
+    @NonNull File getFile(int index) {
+        return files.get(index);
+    }
+
+    /**
+     * Returns the parsed presence condition of the given entry.
+     *
+     * @param index The index of the entry.
+     * @return The presence condition, before the tristate rewriting.
+     *
+     * @throws UncheckedIOException If reading from the spill file fails.
+     */
+    @NonNull Formula getPc(int index) {
+        if (taken.get(index)) {
+            throw new IllegalStateException("Presence condition read after takePc()");
+        }
+        Formula result = pcs.get(index);
+        SpillFile spillFile = this.spillFile;
+        if (result == null && spillFile != null) {
+            try {
+                result = spillFile.read(offsets[index]);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        if (result == null) {
+            throw new IllegalStateException("Spilled presence condition read after close()");
+        }
+        return result;
+    }
+
+    /**
+     * Returns the parsed presence condition of the given entry and releases it: this model no longer references the
+     * formula, so it can be garbage collected as soon as the caller is done with it. The presence condition can't
+     * be read again afterwards.
+     *
+     * @param index The index of the entry.
+     * @return The presence condition, before the tristate rewriting.
+     *
+     * @throws UncheckedIOException If reading from the spill file fails.
+     */
+    @NonNull Formula takePc(int index) {
+        Formula result = getPc(index);
+        pcs.set(index, null);
+        taken.set(index);
+        return result;
+    }
+
+    /**
+     * Returns whether the presence condition of the given entry contains a <code>_MODULE</code> variable.
+     *
+     * @param index The index of the entry.
+     * @return Whether the tristate rewriting may change this presence condition.
+     */
+    boolean hasModuleVariable(int index) {
+        return moduleSites.get(index);
+    }
+
+    /**
+     * Returns the names of all <code>_MODULE</code> variables in the parsed presence conditions.
+     *
+     * @return An unmodifiable view of the variable names.
+     */
+    public @NonNull Set<String> getModuleVariables() {
+        return Collections.unmodifiableSet(moduleVariables);
+    }
+
+    @Override
+    public void close() throws IOException {
+        SpillFile spillFile = this.spillFile;
+        if (spillFile != null) {
+            spillFile.close();
+        }
+        this.spillFile = null;
+    }
+
+    /**
+     * Collects the <code>_MODULE</code> variables of the given formula.
+     *
+     * @param formula The formula to search.
+     * @return Whether the formula contains at least one <code>_MODULE</code> variable.
+     */
+    private boolean collectModuleVariables(@NonNull Formula formula) {
+        boolean result = false;
+        List<@NonNull Formula> stack = new ArrayList<>();
+        stack.add(formula);
+        while (!stack.isEmpty()) {
+            Formula current = stack.remove(stack.size() - 1);
+            if (current instanceof Variable) {
+                String name = ((Variable) current).getName();
+                if (name.endsWith("_MODULE")) {
+                    moduleVariables.add(name);
+                    result = true;
+                }
+            } else if (current instanceof Negation) {
+                stack.add(((Negation) current).getFormula());
+            } else if (current instanceof Conjunction) {
+                stack.add(((Conjunction) current).getLeft());
+                stack.add(((Conjunction) current).getRight());
+            } else if (current instanceof Disjunction) {
+                stack.add(((Disjunction) current).getLeft());
+                stack.add(((Disjunction) current).getRight());
+            }
+        }
+        return result;
+    }
+
+}
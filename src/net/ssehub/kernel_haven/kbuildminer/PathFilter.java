@@ -0,0 +1,268 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * Filters source files by include and exclude path globs, relative to the source tree. A path is accepted if it
+ * matches at least one include glob (or no include globs are given) and no exclude glob.
+ *
+ * <p>
+ * Globs use <code>/</code> as separator: <code>*</code> and <code>?</code> match within a single path segment,
+ * <code>**</code> matches across segments, e.g. <code>drivers/net/**</code> or <code>**&#47;*.S</code>.
+ * </p>
+ *
+ * @author Adam
+ */
+public class PathFilter {
+
+    /**
+     * A filter that accepts every path.
+     */
+    public static final @NonNull PathFilter ACCEPT_ALL = new PathFilter(Collections.emptyList(),
+            Collections.emptyList());
+
+    private final @NonNull List<@NonNull String> includes;
+
+    private final @NonNull List<@NonNull String> excludes;
+
+    private final @NonNull List<@NonNull Pattern> includePatterns;
+
+    private final @NonNull List<@NonNull Pattern> excludePatterns;
+
+    /**
+     * Creates a filter. Blank globs are ignored.
+     *
+     * @param includes The include globs. If empty, all paths not excluded are accepted.
+     * @param excludes The exclude globs.
+     */
+    public PathFilter(@NonNull List<@NonNull String> includes, @NonNull List<@NonNull String> excludes) {
+        this.includes = normalizeGlobs(includes);
+        this.excludes = normalizeGlobs(excludes);
+        this.includePatterns = compile(this.includes);
+        this.excludePatterns = compile(this.excludes);
+    }
+
+    /**
+     * Checks whether this filter accepts all paths.
+     *
+     * @return Whether no include or exclude globs are given.
+     */
+    public boolean isAcceptAll() {
+        return includes.isEmpty() && excludes.isEmpty();
+    }
+
+    /**
+     * Checks whether the given path is accepted by this filter.
+     *
+     * @param path The path, relative to the source tree.
+     * @return Whether the path is accepted.
+     */
+    public boolean accepts(@NonNull String path) {
+        String normalized = normalize(path);
+        boolean result = includePatterns.isEmpty() || matchesAny(includePatterns, normalized);
+        return result && !matchesAny(excludePatterns, normalized);
+    }
+
+    /**
+     * Removes the top folders below which this filter can't accept any file. The remaining top folders are not
+     * changed, since passing a deeper directory as a top folder would lose the condition of that directory.
+     *
+     * @param topFolders The comma separated top folders.
+     * @return The comma separated top folders that may contain accepted files.
+     */
+    public @NonNull String narrowTopFolders(@NonNull String topFolders) {
+        List<@NonNull String> result = new ArrayList<>();
+        for (String folder : topFolders.split(",")) {
+            String normalized = normalize(folder.trim());
+            if (!normalized.isEmpty() && canMatchBelow(normalized)) {
+                result.add(folder.trim());
+            }
+        }
+        return String.join(",", result);
+    }
+
+    /**
+     * Checks whether this filter may accept a file below the given directory. This is conservative: it may
+     * return <code>true</code> for directories that don't contain an accepted file.
+     *
+     * @param directory The normalized directory.
+     * @return Whether a file below the directory may be accepted.
+     */
+    private boolean canMatchBelow(@NonNull String directory) {
+        boolean included = includes.isEmpty();
+        for (String glob : includes) {
+            String prefix = literalPrefix(glob);
+            if (prefix.isEmpty() || isSameOrBelow(prefix, directory) || isSameOrBelow(directory, prefix)) {
+                included = true;
+            }
+        }
+
+        boolean excluded = false;
+        for (String glob : excludes) {
+            // only "dir/**" excludes a complete directory
+            if (glob.endsWith("/**")) {
+                String excludedDir = glob.substring(0, glob.length() - 3);
+                if (literalPrefix(glob).equals(excludedDir) && isSameOrBelow(directory, excludedDir)) {
+                    excluded = true;
+                }
+            }
+        }
+
+        return included && !excluded;
+    }
+
+    /**
+     * Returns the directory part of the glob before the first wildcard, e.g. <code>drivers/net</code> for
+     * <code>drivers/net/*.c</code> or for <code>drivers/net/e1000.c</code>.
+     *
+     * @param glob The normalized glob.
+     * @return The literal directory prefix; empty if the glob starts with a wildcard.
+     */
+    private static @NonNull String literalPrefix(@NonNull String glob) {
+        int wildcard = glob.length();
+        for (int i = 0; i < glob.length() && wildcard == glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                wildcard = i;
+            }
+        }
+        int end = glob.lastIndexOf('/', wildcard - 1);
+        return end > 0 ? glob.substring(0, end) : "";
+    }
+
+    /**
+     * Checks whether a path is equal to or below a directory.
+     *
+     * @param path The normalized path.
+     * @param directory The normalized directory.
+     * @return Whether the path is the directory or below it.
+     */
+    private static boolean isSameOrBelow(@NonNull String path, @NonNull String directory) {
+        return path.equals(directory) || path.startsWith(directory + "/");
+    }
+
+    /**
+     * Checks whether any of the patterns matches the path.
+     *
+     * @param patterns The patterns.
+     * @param path The normalized path.
+     * @return Whether one of the patterns matches.
+     */
+    private static boolean matchesAny(@NonNull List<@NonNull Pattern> patterns, @NonNull String path) {
+        boolean result = false;
+        for (int i = 0; i < patterns.size() && !result; i++) {
+            result = patterns.get(i).matcher(path).matches();
+        }
+        return result;
+    }
+
+    /**
+     * Normalizes a path: forward slashes, no leading <code>./</code> or <code>/</code>, no trailing <code>/</code>.
+     *
+     * @param path The path.
+     * @return The normalized path.
+     */
+    private static @NonNull String normalize(@NonNull String path) {
+        String result = path.replace('\\', '/');
+        while (result.startsWith("./")) {
+            result = result.substring(2);
+        }
+        while (result.startsWith("/")) {
+            result = result.substring(1);
+        }
+        while (result.endsWith("/")) {
+            result = result.substring(0, result.length() - 1);
+        }
+        return result;
+    }
+
+    /**
+     * Normalizes the given globs and removes blank ones.
+     *
+     * @param globs The globs.
+     * @return The normalized, non-blank globs.
+     */
+    private static @NonNull List<@NonNull String> normalizeGlobs(@NonNull List<@NonNull String> globs) {
+        List<@NonNull String> result = new ArrayList<>();
+        for (String glob : globs) {
+            String normalized = normalize(glob.trim());
+            if (!normalized.isEmpty()) {
+                result.add(normalized);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compiles the given globs to regular expressions.
+     *
+     * @param globs The normalized globs.
+     * @return The compiled patterns.
+     */
+    private static @NonNull List<@NonNull Pattern> compile(@NonNull List<@NonNull String> globs) {
+        List<@NonNull Pattern> result = new ArrayList<>();
+        for (String glob : globs) {
+            result.add(Pattern.compile(toRegex(glob)));
+        }
+        return result;
+    }
+
+    /**
+     * Converts a glob to a regular expression.
+     *
+     * @param glob The normalized glob.
+     * @return The regular expression.
+     */
+    static @NonNull String toRegex(@NonNull String glob) {
+        StringBuilder result = new StringBuilder();
+        int i = 0;
+        while (i < glob.length()) {
+            char c = glob.charAt(i);
+            if (glob.startsWith("**/", i)) {
+                // zero or more directories
+                result.append("(?:.*/)?");
+                i += 3;
+            } else if (glob.startsWith("**", i)) {
+                result.append(".*");
+                i += 2;
+            } else {
+                if (c == '*') {
+                    result.append("[^/]*");
+                } else if (c == '?') {
+                    result.append("[^/]");
+                } else {
+                    result.append(Pattern.quote(String.valueOf(c)));
+                }
+                i++;
+            }
+        }
+        return result.toString();
+    }
+
+    @Override
+    public @NonNull String toString() {
+        return "PathFilter[includes=" + includes + ", excludes=" + excludes + "]";
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * Rebuilds chains of {@link Conjunction}s and {@link Disjunction}s as balanced trees. The presence conditions of
+ * KbuildMiner are long left- or right-leaning chains that mirror the directory nesting; their depth grows linearly
+ * with the number of operands. After balancing, a chain of <i>n</i> operands has a depth of
+ * <i>ceil(log2(n))</i>, which makes recursive evaluation, hashing and <code>toString()</code> cheaper.
+ *
+ * <p>
+ * The result is logically equivalent to the input and keeps the order of the operands; only the grouping
+ * changes. KernelHaven's formulas are binary only, so there are no n-ary nodes to rebuild the chains as.
+ * </p>
+ *
+ * @author Adam
+ */
+public final class PcBalancer {
+
+    /**
+     * Don't allow any instances.
+     */
+    private PcBalancer() {
+    }
+
+    /**
+     * Balances all conjunction and disjunction chains in the given formula.
+     *
+     * @param formula The formula to balance.
+     * @return The balanced formula; the same instance if it contains no chain of more than two operands.
+     */
+    public static @NonNull Formula balance(@NonNull Formula formula) {
+        Formula result = formula;
+        if (formula instanceof Conjunction || formula instanceof Disjunction) {
+            boolean conjunction = formula instanceof Conjunction;
+            List<@NonNull Formula> operands = flatten(formula, conjunction);
+
+            boolean changed = operands.size() > 2;
+            for (int i = 0; i < operands.size(); i++) {
+                Formula balanced = balance(operands.get(i));
+                changed |= balanced != operands.get(i);
+                operands.set(i, balanced);
+            }
+
+            if (changed) {
+                result = build(operands, 0, operands.size(), conjunction);
+            }
+
+        } else if (formula instanceof Negation) {
+            Formula nested = balance(((Negation) formula).getFormula());
+            if (nested != ((Negation) formula).getFormula()) {
+                result = new Negation(nested);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the depth of the given formula, i.e. the number of nodes on the longest path from the root to a leaf.
+     *
+     * @param formula The formula.
+     * @return The depth; 1 for a single variable or constant.
+     */
+    public static int getDepth(@NonNull Formula formula) {
+        int result = 1;
+        if (formula instanceof Conjunction) {
+            result += Math.max(getDepth(((Conjunction) formula).getLeft()),
+                    getDepth(((Conjunction) formula).getRight()));
+        } else if (formula instanceof Disjunction) {
+            result += Math.max(getDepth(((Disjunction) formula).getLeft()),
+                    getDepth(((Disjunction) formula).getRight()));
+        } else if (formula instanceof Negation) {
+            result += getDepth(((Negation) formula).getFormula());
+        }
+        return result;
+    }
+
+    /**
+     * Collects the operands of the chain of conjunctions or disjunctions starting at the given formula, in order.
+     * Iterative, so that arbitrarily deep chains don't overflow the stack.
+     *
+     * @param formula The root of the chain.
+     * @param conjunction Whether the chain consists of conjunctions (<code>true</code>) or disjunctions.
+     * @return The operands of the chain; none of them is a node of the same type.
+     */
+    private static @NonNull List<@NonNull Formula> flatten(@NonNull Formula formula, boolean conjunction) {
+        List<@NonNull Formula> result = new ArrayList<>();
+        List<@NonNull Formula> stack = new ArrayList<>();
+        stack.add(formula);
+        while (!stack.isEmpty()) {
+            Formula current = stack.remove(stack.size() - 1);
+            if (conjunction && current instanceof Conjunction) {
+                stack.add(((Conjunction) current).getRight());
+                stack.add(((Conjunction) current).getLeft());
+            } else if (!conjunction && current instanceof Disjunction) {
+                stack.add(((Disjunction) current).getRight());
+                stack.add(((Disjunction) current).getLeft());
+            } else {
+                result.add(current);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Builds a balanced tree of the given operands.
+     *
+     * @param operands The operands.
+     * @param from The index of the first operand (inclusive).
+     * @param to The index of the last operand (exclusive); greater than <code>from</code>.
+     * @param conjunction Whether to build conjunctions (<code>true</code>) or disjunctions.
+     * @return The balanced tree.
+     */
+    private static @NonNull Formula build(@NonNull List<@NonNull Formula> operands, int from, int to,
+            boolean conjunction) {
+
+        Formula result;
+        if (to - from == 1) {
+            result = operands.get(from);
+        } else {
+            int middle = (from + to + 1) >>> 1;
+            Formula left = build(operands, from, middle, conjunction);
+            Formula right = build(operands, middle, to, conjunction);
+            result = conjunction ? new Conjunction(left, right) : new Disjunction(left, right);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.False;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+
+/**
+ * Maps logically equivalent presence conditions to a single canonical {@link Formula} instance. Each presence
+ * condition is built in a shared {@link Bdd}; since reduced ordered BDDs are canonical, equivalent formulas end up
+ * in the same BDD node. The first formula seen for a node becomes the canonical instance for all later ones, so
+ * that equivalent presence conditions in the build model are identical objects.
+ *
+ * <p>
+ * The variable order is taken from the {@link VariabilityModel}: variables are sorted by name, with each
+ * <code>_MODULE</code> variable directly after its base variable. Variables not in the variability model are
+ * appended in the order they are encountered.
+ * </p>
+ *
+ * @author Adam
+ */
+public class PcCanonicalizer {
+
+    /**
+     * The default maximum number of BDD nodes.
+     */
+    public static final int DEFAULT_MAX_NODES = 4_000_000;
+
+    private static final Logger LOGGER = Logger.get();
+
+    private final @NonNull Bdd bdd;
+
+    private final @NonNull Map<String, Integer> levels = new HashMap<>();
+
+    private final @NonNull Map<Integer, @NonNull Formula> canonical = new HashMap<>();
+
+    private boolean disabled;
+
+    private long lookups;
+
+    /**
+     * Creates a canonicalizer with the variable order of the given variability model.
+     *
+     * @param varModel The variability model to take the variable order from.
+     * @param maxNodes The maximum number of BDD nodes. If this is exceeded, canonicalization is disabled for all
+     *      further formulas.
+     */
+    public PcCanonicalizer(@NonNull VariabilityModel varModel, int maxNodes) {
+        this.bdd = new Bdd(maxNodes);
+
+        List<String> names = new ArrayList<>(varModel.getVariableMap().keySet());
+        Collections.sort(names);
+        for (String name : names) {
+            levels.put(name, levels.size());
+            levels.put(name + "_MODULE", levels.size());
+        }
+    }
+
+    /**
+     * Returns the canonical instance for the given formula.
+     *
+     * @param formula The formula to canonicalize.
+     * @return The first formula that was passed to this method that is equivalent to the given one; this is the
+     *      given formula itself if no equivalent formula was seen before.
+     */
+    public @NonNull Formula canonicalize(@NonNull Formula formula) {
+        Formula result = formula;
+
+        if (!disabled) {
+            try {
+                int node = build(formula);
+                lookups++;
+                Formula existing = canonical.putIfAbsent(node, formula);
+                if (existing != null) {
+                    result = existing;
+                }
+            } catch (Bdd.BddOverflowException e) {
+                LOGGER.logWarning("Disabling canonicalization of presence conditions: " + e.getMessage());
+                disabled = true;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the number of distinct (non-equivalent) presence conditions seen so far.
+     *
+     * @return The number of canonical formulas.
+     */
+    public int getNumCanonical() {
+        return canonical.size();
+    }
+
+    /**
+     * Returns the number of formulas that were canonicalized so far.
+     *
+     * @return The number of canonicalized formulas.
+     */
+    public long getNumLookups() {
+        return lookups;
+    }
+
+    /**
+     * Returns the BDD node of the given formula.
+     *
+     * @param formula The formula to build.
+     * @return The BDD node.
+     */
+    private int build(@NonNull Formula formula) {
+        int result;
+
+        if (formula instanceof Variable) {
+            result = bdd.variable(getLevel(((Variable) formula).getName()));
+
+        } else if (formula instanceof Negation) {
+            result = bdd.not(build(((Negation) formula).getFormula()));
+
+        } else if (formula instanceof Conjunction) {
+            Conjunction conjunction = (Conjunction) formula;
+            result = bdd.and(build(conjunction.getLeft()), build(conjunction.getRight()));
+
+        } else if (formula instanceof Disjunction) {
+            Disjunction disjunction = (Disjunction) formula;
+            result = bdd.or(build(disjunction.getLeft()), build(disjunction.getRight()));
+
+        } else if (formula instanceof True) {
+            result = Bdd.TRUE;
+
+        } else if (formula instanceof False) {
+            result = Bdd.FALSE;
+
+        } else {
+            throw new IllegalArgumentException("Unknown formula type " + formula.getClass().getName());
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the level of the given variable in the variable order, adding it at the end if it is unknown.
+     *
+     * @param name The name of the variable.
+     * @return The level of the variable.
+     */
+    private int getLevel(@NonNull String name) {
+        @Nullable Integer level = levels.get(name);
+        if (level == null) {
+            level = levels.size();
+            levels.put(name, level);
+        }
+        return level;
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+/**
+ * The result codes of {@link PcValidator}. Each code except {@link #NONE} describes a kind of malformed presence
+ * condition in the output of KbuildMiner.
+ * 
+ * @author Adam
+ */
+public enum PcError {
+
+    /**
+     * The presence condition is well-formed.
+     */
+    NONE,
+    
+    /**
+     * The presence condition is empty.
+     */
+    EMPTY,
+    
+    /**
+     * KbuildMiner marked the presence condition with InvalidExpression().
+     */
+    INVALID_EXPRESSION,
+    
+    /**
+     * An opening or closing parenthesis has no counterpart.
+     */
+    UNBALANCED_PARENTHESES,
+    
+    /**
+     * An operator is missing one of its operands.
+     */
+    MISSING_OPERAND,
+    
+    /**
+     * An identifier or comparison is malformed, e.g. <code>A = "y"</code>.
+     */
+    INVALID_IDENTIFIER,
+    
+    /**
+     * A constant other than <code>[TRUE]</code> was found.
+     */
+    INVALID_CONSTANT,
+    
+    /**
+     * A variable is compared to a value other than <code>"y"</code>, <code>"yes"</code> or <code>"m"</code>.
+     */
+    INVALID_VALUE,
+    
+    /**
+     * There is unexpected input after a complete expression.
+     */
+    UNEXPECTED_INPUT,
+    
+    /**
+     * {@link PcValidator} accepted the presence condition, but the parser still rejected it.
+     */
+    REJECTED_BY_PARSER;
+    
+}
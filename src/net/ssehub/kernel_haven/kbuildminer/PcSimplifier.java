@@ -0,0 +1,458 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.False;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Simplifies the presence conditions after the tristate rewriting in {@link Converter}. The simplification is a
+ * single bottom-up pass over the formula; all rules only look at the direct (flattened) operands of a node.
+ *
+ * <p>
+ * During the pass, each distinct sub-formula is mapped to a single instance (hash-consing), keyed by its type and
+ * the identity of its already mapped operands. Equal operands are thus detected by identity, instead of the
+ * recursive {@link Formula#equals(Object)} and {@link Formula#hashCode()} at every nesting level, which keeps the
+ * pass linear in the size of the formula.
+ * </p>
+ *
+ * @author Adam
+ */
+public class PcSimplifier {
+
+    /**
+     * The different levels of simplification.
+     */
+    public static enum Level {
+
+        /**
+         * Only removes {@link False} from disjunctions that directly contain a replaced _MODULE variable. This is
+         * the behavior of the {@link Converter} without a simplification pass.
+         */
+        MINIMAL,
+
+        /**
+         * Folds {@link True} and {@link False} constants and removes double negations.
+         */
+        CONSTANTS,
+
+        /**
+         * Additionally flattens nested conjunctions and disjunctions, removes duplicate operands (idempotence),
+         * detects complementary operands (<code>A &amp;&amp; !A</code>) and applies absorption
+         * (<code>A || (A &amp;&amp; B)</code> to <code>A</code>).
+         */
+        FULL;
+    }
+
+    /**
+     * The key of a sub-formula in the {@link Interner}. Leaves are compared with {@link Formula#equals(Object)};
+     * other nodes by their type and the identity of their (already interned) operands.
+     */
+    private static final class Key {
+
+        private final @NonNull Class<?> type;
+
+        private final @NonNull Object left;
+
+        private final @Nullable Object right;
+
+        private final boolean leaf;
+
+        private final int hash;
+
+        /**
+         * Creates a key.
+         *
+         * @param type The type of the formula.
+         * @param left The leaf itself, or the interned (left) operand.
+         * @param right The interned right operand; <code>null</code> for leaves and negations.
+         * @param leaf Whether the formula is a leaf.
+         */
+        private Key(@NonNull Class<?> type, @NonNull Object left, @Nullable Object right, boolean leaf) {
+            this.type = type;
+            this.left = left;
+            this.right = right;
+            this.leaf = leaf;
+            int hash = leaf ? left.hashCode() : System.identityHashCode(left);
+            this.hash = 31 * (31 * type.hashCode() + hash) + System.identityHashCode(right);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            boolean result = false;
+            if (obj instanceof Key) {
+                Key other = (Key) obj;
+                result = type == other.type && hash == other.hash
+                        && (leaf ? left.equals(other.left) : left == other.left && right == other.right);
+            }
+            return result;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+    }
+
+    /**
+     * The hash-consing table of a single simplification pass. All formulas returned by this table only have
+     * operands that were returned by this table, too.
+     */
+    private static final class Interner {
+
+        private final @NonNull Map<Key, @NonNull Formula> table = new HashMap<>();
+
+        /**
+         * Returns the single instance of a leaf (e.g. a variable).
+         *
+         * @param leaf The leaf.
+         * @return The interned leaf.
+         */
+        private @NonNull Formula leaf(@NonNull Formula leaf) {
+            return table.computeIfAbsent(new Key(leaf.getClass(), leaf, null, true), key -> leaf);
+        }
+
+        /**
+         * Returns the single instance of the negation of an interned formula.
+         *
+         * @param original The original negation; re-used if it already negates the given instance.
+         * @param inner The interned formula to negate.
+         * @return The interned negation.
+         */
+        private @NonNull Formula negation(@Nullable Negation original, @NonNull Formula inner) {
+            return table.computeIfAbsent(new Key(Negation.class, inner, null, false),
+                    key -> original != null && original.getFormula() == inner ? original : new Negation(inner));
+        }
+
+        /**
+         * Returns the single instance of the conjunction or disjunction of two interned formulas.
+         *
+         * @param left The interned left operand.
+         * @param right The interned right operand.
+         * @param isAnd Whether to create a conjunction or a disjunction.
+         * @return The interned formula.
+         */
+        private @NonNull Formula binary(@NonNull Formula left, @NonNull Formula right, boolean isAnd) {
+            return table.computeIfAbsent(new Key(isAnd ? Conjunction.class : Disjunction.class, left, right, false),
+                    key -> isAnd ? new Conjunction(left, right) : new Disjunction(left, right));
+        }
+
+    }
+
+    private final @NonNull Level level;
+
+    /**
+     * Creates a simplifier for the given level. The simplifier is stateless and may be used by multiple threads.
+     *
+     * @param level The level of simplification to apply.
+     */
+    public PcSimplifier(@NonNull Level level) {
+        this.level = level;
+    }
+
+    /**
+     * Returns the level of simplification that this simplifier applies.
+     *
+     * @return The level.
+     */
+    public @NonNull Level getLevel() {
+        return level;
+    }
+
+    /**
+     * Simplifies the given formula. The result is logically equivalent to the input.
+     *
+     * @param formula The formula to simplify.
+     * @return The simplified formula; the same instance if the level is {@link Level#MINIMAL}.
+     */
+    public @NonNull Formula simplify(@NonNull Formula formula) {
+        Formula result = formula;
+        if (level != Level.MINIMAL) {
+            result = simplify(formula, new Interner());
+        }
+        return result;
+    }
+
+    /**
+     * Simplifies and interns the given formula.
+     *
+     * @param formula The formula to simplify.
+     * @param interner The hash-consing table of this pass.
+     * @return The simplified, interned formula.
+     */
+    private @NonNull Formula simplify(@NonNull Formula formula, @NonNull Interner interner) {
+        Formula result;
+        if (formula instanceof Negation) {
+            result = simplifyNegation((Negation) formula, interner);
+
+        } else if (formula instanceof Conjunction || formula instanceof Disjunction) {
+            result = level == Level.FULL ? simplifyChain(formula, interner) : simplifyBinary(formula, interner);
+
+        } else if (formula instanceof True || formula instanceof False) {
+            result = formula;
+
+        } else {
+            result = interner.leaf(formula);
+        }
+        return result;
+    }
+
+    /**
+     * Simplifies a negation: folds constants and removes double negations.
+     *
+     * @param negation The negation to simplify.
+     * @param interner The hash-consing table of this pass.
+     * @return The simplified formula.
+     */
+    private @NonNull Formula simplifyNegation(@NonNull Negation negation, @NonNull Interner interner) {
+        Formula inner = simplify(negation.getFormula(), interner);
+        Formula result;
+
+        if (inner instanceof True) {
+            result = False.INSTANCE;
+        } else if (inner instanceof False) {
+            result = True.INSTANCE;
+        } else if (inner instanceof Negation) {
+            // the operand of an interned negation is interned, too
+            result = ((Negation) inner).getFormula();
+        } else {
+            result = interner.negation(negation, inner);
+        }
+
+        return result;
+    }
+
+    /**
+     * Simplifies a single binary conjunction or disjunction by folding constants and equal operands.
+     *
+     * @param formula The {@link Conjunction} or {@link Disjunction}.
+     * @param interner The hash-consing table of this pass.
+     * @return The simplified formula.
+     */
+    private @NonNull Formula simplifyBinary(@NonNull Formula formula, @NonNull Interner interner) {
+        boolean isAnd = formula instanceof Conjunction;
+        Formula left = simplify(isAnd ? ((Conjunction) formula).getLeft() : ((Disjunction) formula).getLeft(),
+                interner);
+        Formula right = simplify(isAnd ? ((Conjunction) formula).getRight() : ((Disjunction) formula).getRight(),
+                interner);
+
+        // the neutral element of the operation (True for AND, False for OR) can be dropped,
+        // the dominant element (False for AND, True for OR) absorbs the whole operation
+        Formula result;
+        if (isDominant(left, isAnd) || isDominant(right, isAnd)) {
+            result = isAnd ? False.INSTANCE : True.INSTANCE;
+        } else if (isNeutral(left, isAnd)) {
+            result = right;
+        } else if (isNeutral(right, isAnd) || left == right) {
+            result = left;
+        } else {
+            result = interner.binary(left, right, isAnd);
+        }
+
+        return result;
+    }
+
+    /**
+     * Flattens and simplifies a chain of conjunctions or disjunctions.
+     *
+     * @param formula The {@link Conjunction} or {@link Disjunction}.
+     * @param interner The hash-consing table of this pass.
+     * @return The simplified formula.
+     */
+    private @NonNull Formula simplifyChain(@NonNull Formula formula, @NonNull Interner interner) {
+        boolean isAnd = formula instanceof Conjunction;
+
+        List<@NonNull Formula> raw = new ArrayList<>();
+        flatten(formula, isAnd, raw);
+
+        // the operands are interned, so duplicates are found by identity
+        List<@NonNull Formula> operands = new ArrayList<>(raw.size());
+        Set<@NonNull Formula> contained = Collections.newSetFromMap(new IdentityHashMap<>());
+        boolean dominant = false;
+        for (int i = 0; i < raw.size() && !dominant; i++) {
+            Formula operand = simplify(raw.get(i), interner);
+            if (isDominant(operand, isAnd)) {
+                dominant = true;
+            } else if (operand.getClass() == formula.getClass()) {
+                // simplification created a nested chain of the same operator; flatten it, too
+                List<@NonNull Formula> nested = new ArrayList<>();
+                flatten(operand, isAnd, nested);
+                for (Formula nestedOperand : nested) {
+                    addOperand(nestedOperand, operands, contained);
+                }
+            } else if (!isNeutral(operand, isAnd)) {
+                addOperand(operand, operands, contained);
+            }
+        }
+
+        if (!dominant) {
+            dominant = containsComplement(operands, contained);
+        }
+
+        Formula result;
+        if (dominant) {
+            result = isAnd ? False.INSTANCE : True.INSTANCE;
+        } else {
+            result = rebuild(absorb(operands, contained, isAnd), isAnd, interner);
+        }
+        return result;
+    }
+
+    /**
+     * Adds an interned operand to the operands of a chain, unless it is already contained.
+     *
+     * @param operand The interned operand.
+     * @param operands The operands of the chain, in their original order.
+     * @param contained The operands of the chain, as identity set.
+     */
+    private static void addOperand(@NonNull Formula operand, @NonNull List<@NonNull Formula> operands,
+            @NonNull Set<@NonNull Formula> contained) {
+        if (contained.add(operand)) {
+            operands.add(operand);
+        }
+    }
+
+    /**
+     * Collects the operands of a chain of the same operator.
+     *
+     * @param formula The formula to flatten.
+     * @param isAnd Whether to flatten conjunctions (<code>true</code>) or disjunctions (<code>false</code>).
+     * @param result The list to add the operands to.
+     */
+    private static void flatten(@NonNull Formula formula, boolean isAnd, @NonNull List<@NonNull Formula> result) {
+        // iterative with an explicit stack, since KbuildMiner chains can be long
+        List<@NonNull Formula> stack = new ArrayList<>();
+        stack.add(formula);
+        while (!stack.isEmpty()) {
+            Formula current = stack.remove(stack.size() - 1);
+            if (isAnd && current instanceof Conjunction) {
+                stack.add(((Conjunction) current).getRight());
+                stack.add(((Conjunction) current).getLeft());
+            } else if (!isAnd && current instanceof Disjunction) {
+                stack.add(((Disjunction) current).getRight());
+                stack.add(((Disjunction) current).getLeft());
+            } else {
+                result.add(current);
+            }
+        }
+    }
+
+    /**
+     * Checks whether the operands contain both a formula and its negation.
+     *
+     * @param operands The interned operands of a chain.
+     * @param contained The operands of the chain, as identity set.
+     * @return Whether a complementary pair exists.
+     */
+    private static boolean containsComplement(@NonNull List<@NonNull Formula> operands,
+            @NonNull Set<@NonNull Formula> contained) {
+        boolean result = false;
+        for (int i = 0; i < operands.size() && !result; i++) {
+            Formula operand = operands.get(i);
+            result = operand instanceof Negation && contained.contains(((Negation) operand).getFormula());
+        }
+        return result;
+    }
+
+    /**
+     * Applies absorption: in a conjunction, a disjunction operand that shares an operand with the conjunction is
+     * redundant (and vice versa).
+     *
+     * @param operands The (duplicate-free, interned) operands of the chain.
+     * @param contained The operands of the chain, as identity set.
+     * @param isAnd Whether the chain is a conjunction.
+     * @return The operands without absorbed ones, in their original order.
+     */
+    private static @NonNull List<@NonNull Formula> absorb(@NonNull List<@NonNull Formula> operands,
+            @NonNull Set<@NonNull Formula> contained, boolean isAnd) {
+        List<@NonNull Formula> result = new ArrayList<>(operands.size());
+        for (Formula operand : operands) {
+            boolean absorbed = false;
+            if (isAnd ? operand instanceof Disjunction : operand instanceof Conjunction) {
+                List<@NonNull Formula> inner = new ArrayList<>();
+                flatten(operand, !isAnd, inner);
+                for (int i = 0; i < inner.size() && !absorbed; i++) {
+                    absorbed = contained.contains(inner.get(i));
+                }
+            }
+            if (!absorbed) {
+                result.add(operand);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Builds a right-leaning chain from the given operands, which is the same shape that the parser creates.
+     *
+     * @param operands The interned operands.
+     * @param isAnd Whether to build a conjunction or a disjunction.
+     * @param interner The hash-consing table of this pass.
+     * @return The chain, or the neutral element if no operands are given.
+     */
+    private static @NonNull Formula rebuild(@NonNull List<@NonNull Formula> operands, boolean isAnd,
+            @NonNull Interner interner) {
+        Formula result;
+        if (operands.isEmpty()) {
+            result = isAnd ? True.INSTANCE : False.INSTANCE;
+        } else {
+            result = operands.get(operands.size() - 1);
+            for (int i = operands.size() - 2; i >= 0; i--) {
+                result = interner.binary(operands.get(i), result, isAnd);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether the given formula is the neutral element of the operation.
+     *
+     * @param formula The formula to check.
+     * @param isAnd Whether the operation is a conjunction.
+     * @return Whether the formula is {@link True} for conjunctions or {@link False} for disjunctions.
+     */
+    private static boolean isNeutral(@NonNull Formula formula, boolean isAnd) {
+        return isAnd ? formula instanceof True : formula instanceof False;
+    }
+
+    /**
+     * Checks whether the given formula is the dominant element of the operation.
+     *
+     * @param formula The formula to check.
+     * @param isAnd Whether the operation is a conjunction.
+     * @return Whether the formula is {@link False} for conjunctions or {@link True} for disjunctions.
+     */
+    private static boolean isDominant(@NonNull Formula formula, boolean isAnd) {
+        return isAnd ? formula instanceof False : formula instanceof True;
+    }
+
+}
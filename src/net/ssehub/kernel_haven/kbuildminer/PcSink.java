@@ -0,0 +1,59 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * Receives the converted presence conditions from the {@link Converter} one by one, as soon as each is ready.
+ * This allows processing the presence conditions without holding the whole build model in memory. Collecting
+ * them into a {@link net.ssehub.kernel_haven.build_model.BuildModel} is just one implementation, see
+ * {@link BuildModelSink}.
+ *
+ * <p>
+ * The converter calls {@link #accept(File, Formula)} synchronously and never concurrently, so a slow sink slows
+ * down the conversion instead of letting results pile up in memory. {@link AsyncPcSink} decouples a sink with a
+ * bounded queue.
+ * </p>
+ *
+ * @author Adam
+ */
+public interface PcSink {
+
+    /**
+     * Receives the presence condition of a single file.
+     *
+     * @param file The file, relative to the source tree.
+     * @param pc The presence condition of the file.
+     *
+     * @throws IOException If the sink fails; this aborts the conversion.
+     */
+    public void accept(@NonNull File file, @NonNull Formula pc) throws IOException;
+
+    /**
+     * Called once after the last presence condition of a conversion. Does nothing by default.
+     *
+     * @throws IOException If the sink fails.
+     */
+    public default void end() throws IOException {
+    }
+
+}
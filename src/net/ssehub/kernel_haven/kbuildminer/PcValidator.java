@@ -0,0 +1,258 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * A light-weight validator for the presence conditions generated by KbuildMiner. It accepts the same language as
+ * {@link KbuildMinerPcGrammar}, but reports malformed input as a {@link PcError} instead of throwing an
+ * exception. This allows to skip malformed lines without the cost of creating (and logging) stack traces.
+ *
+ * @author Adam
+ */
+public final class PcValidator {
+
+    private final char @NonNull [] str;
+
+    private int pos;
+
+    /**
+     * Creates a validator for a single presence condition.
+     *
+     * @param pc The presence condition to validate.
+     */
+    private PcValidator(@NonNull String pc) {
+        this.str = pc.toCharArray();
+    }
+
+    /**
+     * Validates the given presence condition.
+     *
+     * @param pc The presence condition, as written by KbuildMiner.
+     * @return {@link PcError#NONE} if the presence condition is well-formed; otherwise the kind of error.
+     */
+    public static @NonNull PcError validate(@NonNull String pc) {
+        PcError result;
+        if (pc.contains("InvalidExpression()")) {
+            result = PcError.INVALID_EXPRESSION;
+        } else {
+            result = new PcValidator(pc).validateFully();
+        }
+        return result;
+    }
+
+    /**
+     * Validates the complete string.
+     *
+     * @return The result code.
+     */
+    private @NonNull PcError validateFully() {
+        PcError result;
+        skipWhitespace();
+        if (pos >= str.length) {
+            result = PcError.EMPTY;
+        } else {
+            result = expression();
+            skipWhitespace();
+            if (result == PcError.NONE && pos < str.length) {
+                result = str[pos] == ')' ? PcError.UNBALANCED_PARENTHESES : PcError.UNEXPECTED_INPUT;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Validates a sequence of terms connected by binary operators.
+     *
+     * @return The result code.
+     */
+    private @NonNull PcError expression() {
+        PcError result = term();
+
+        boolean more = true;
+        while (result == PcError.NONE && more) {
+            skipWhitespace();
+            if (isAt("&&") || isAt("||")) {
+                pos += 2;
+                result = term();
+            } else {
+                more = false;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Validates a single negation, parenthesis, constant or identifier.
+     *
+     * @return The result code.
+     */
+    private @NonNull PcError term() {
+        PcError result;
+        skipWhitespace();
+
+        if (pos >= str.length || str[pos] == ')' || isAt("&&") || isAt("||")) {
+            result = PcError.MISSING_OPERAND;
+
+        } else if (str[pos] == '!' && !isAt("!=")) {
+            pos++;
+            result = term();
+
+        } else if (str[pos] == '(') {
+            pos++;
+            result = expression();
+            skipWhitespace();
+            if (result == PcError.NONE) {
+                if (pos < str.length && str[pos] == ')') {
+                    pos++;
+                } else {
+                    result = PcError.UNBALANCED_PARENTHESES;
+                }
+            }
+
+        } else if (str[pos] == '[') {
+            result = constant();
+
+        } else if (isNameChar(str[pos])) {
+            result = identifier();
+
+        } else {
+            result = PcError.INVALID_IDENTIFIER;
+        }
+
+        return result;
+    }
+
+    /**
+     * Validates a constant; only <code>[TRUE]</code> is allowed.
+     *
+     * @return The result code.
+     */
+    private @NonNull PcError constant() {
+        PcError result = PcError.INVALID_CONSTANT;
+        if (isAt("[TRUE]")) {
+            pos += "[TRUE]".length();
+            if (pos >= str.length || !isNameChar(str[pos]) && str[pos] != '[' && str[pos] != ']') {
+                result = PcError.NONE;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Validates a plain variable name, or a comparison of a variable with a value.
+     *
+     * @return The result code.
+     */
+    private @NonNull PcError identifier() {
+        while (pos < str.length && isNameChar(str[pos])) {
+            pos++;
+        }
+        int afterName = pos;
+
+        PcError result = PcError.NONE;
+        skipWhitespace();
+
+        if (isAt("==") || isAt("!=")) {
+            pos += 2;
+            skipWhitespace();
+            result = value();
+
+        } else if (pos < str.length && isIdentifierOnlyChar(str[pos])) {
+            // e.g. A = "y" or A ! "y": the parser reads this as a single malformed identifier
+            result = PcError.INVALID_IDENTIFIER;
+
+        } else {
+            pos = afterName;
+        }
+
+        return result;
+    }
+
+    /**
+     * Validates the quoted value on the right side of a comparison.
+     *
+     * @return The result code.
+     */
+    private @NonNull PcError value() {
+        PcError result = PcError.INVALID_VALUE;
+        if (isAt("\"y\"") || isAt("\"m\"")) {
+            pos += 3;
+            result = PcError.NONE;
+        } else if (isAt("\"yes\"")) {
+            pos += 5;
+            result = PcError.NONE;
+        }
+
+        if (result == PcError.NONE && pos < str.length && isNameChar(str[pos])) {
+            result = PcError.INVALID_VALUE;
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether the given text is at the current position.
+     *
+     * @param text The text to check.
+     * @return Whether the input at the current position starts with the given text.
+     */
+    private boolean isAt(@NonNull String text) {
+        boolean result = pos + text.length() <= str.length;
+        for (int i = 0; result && i < text.length(); i++) {
+            result = str[pos + i] == text.charAt(i);
+        }
+        return result;
+    }
+
+    /**
+     * Skips all whitespace characters at the current position.
+     */
+    private void skipWhitespace() {
+        while (pos < str.length && (str[pos] == ' ' || str[pos] == '\t')) {
+            pos++;
+        }
+    }
+
+    /**
+     * Checks whether the given character may be part of a variable name.
+     *
+     * @param c The character to check.
+     * @return Whether the character is a letter, a digit or an underscore.
+     */
+    private static boolean isNameChar(char c) {
+        // CHECKSTYLE:OFF
+        // checkstyle thinks that this boolean formula is too complex; but this is called for every character
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_';
+        // CHECKSTYLE:ON
+    }
+
+    /**
+     * Checks whether the given character is only valid inside an identifier of {@link KbuildMinerPcGrammar},
+     * but not after a complete variable name.
+     *
+     * @param c The character to check.
+     * @return Whether the character is one of <code>= ! " [ ]</code> or a name character.
+     */
+    private static boolean isIdentifierOnlyChar(char c) {
+        // CHECKSTYLE:OFF
+        return c == '=' || c == '!' || c == '"' || c == '[' || c == ']' || isNameChar(c);
+        // CHECKSTYLE:ON
+    }
+
+}
@@ -0,0 +1,436 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * A build model that is stored as independently loadable shard files in a directory. The files are partitioned
+ * either by the top folder that contains them, or by the first <i>n</i> directories of their path. A text manifest
+ * lists the partitioning and the shards, so that a consumer can load only the shards it needs via
+ * {@link #load(Collection)}.
+ *
+ * <p>
+ * Each shard file contains its own variable table and the paths and presence conditions of its files, encoded with
+ * a {@link FormulaCodec}.
+ * </p>
+ *
+ * @author Adam
+ */
+public final class ShardedBuildModel {
+
+    /**
+     * The name of the manifest file in the shard directory.
+     */
+    public static final @NonNull String MANIFEST_FILE = "manifest.txt";
+
+    /**
+     * The key of the shard of files that are in no top folder, or directly in the source tree.
+     */
+    public static final @NonNull String ROOT_KEY = ".";
+
+    private static final int MAGIC = 0x4B485348;
+
+    private static final int VERSION = 1;
+
+    private static final @NonNull String DEPTH_PREFIX = "partition depth=";
+
+    private static final @NonNull String TOP_FOLDERS_PREFIX = "partition top_folders=";
+
+    private final @NonNull File directory;
+
+    /**
+     * The number of directories in the shard keys; 0 if partitioned by {@link #topFolders}.
+     */
+    private final int depth;
+
+    /**
+     * The top folders to partition by, longest first.
+     */
+    private final @NonNull List<@NonNull String> topFolders;
+
+    private final @NonNull Map<String, @NonNull Shard> shards = new TreeMap<>();
+
+    /**
+     * A single shard file.
+     */
+    public final class Shard {
+
+        private final @NonNull String key;
+
+        private final @NonNull String fileName;
+
+        private final int numFiles;
+
+        /**
+         * Creates a shard.
+         *
+         * @param key The key of the shard, e.g. <code>drivers</code>.
+         * @param fileName The name of the shard file in the directory.
+         * @param numFiles The number of files in the shard.
+         */
+        private Shard(@NonNull String key, @NonNull String fileName, int numFiles) {
+            this.key = key;
+            this.fileName = fileName;
+            this.numFiles = numFiles;
+        }
+
+        /**
+         * Returns the key of this shard, i.e. the top folder or directory prefix of its files.
+         *
+         * @return The key; {@link ShardedBuildModel#ROOT_KEY} for the files that are in no top folder.
+         */
+        public @NonNull String getKey() {
+            return key;
+        }
+
+        /**
+         * Returns the shard file.
+         *
+         * @return The shard file.
+         */
+        public @NonNull File getFile() {
+            return new File(directory, fileName);
+        }
+
+        /**
+         * Returns the number of files in this shard.
+         *
+         * @return The number of files.
+         */
+        public int getNumFiles() {
+            return numFiles;
+        }
+
+        /**
+         * Reads the files of this shard into the given build model.
+         *
+         * @param result The build model to add the files to.
+         *
+         * @throws IOException If reading the shard file fails or it is malformed.
+         */
+        public void loadInto(@NonNull BuildModel result) throws IOException {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(getFile())))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("Not a build model shard: " + getFile());
+                }
+                int size = in.readInt();
+                FormulaCodec codec = FormulaCodec.readTable(in);
+                for (int i = 0; i < size; i++) {
+                    File file = new File(in.readUTF());
+                    result.add(file, codec.read(in));
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Creates an empty sharded model.
+     *
+     * @param directory The directory of the shard files.
+     * @param depth The number of directories in the shard keys; 0 to partition by the top folders.
+     * @param topFolders The top folders; ignored if <code>depth</code> is not 0.
+     */
+    private ShardedBuildModel(@NonNull File directory, int depth, @NonNull List<@NonNull String> topFolders) {
+        this.directory = directory;
+        this.depth = depth;
+        this.topFolders = new ArrayList<>(topFolders);
+        // longest first, so that nested top folders (arch/x86 in arch) win
+        this.topFolders.sort((f1, f2) -> Integer.compare(f2.length(), f1.length()));
+    }
+
+    /**
+     * Writes the given build model as shards, partitioned by top folder.
+     *
+     * @param model The build model to write.
+     * @param directory The directory to write the shards and the manifest to; created if necessary.
+     * @param topFolders The comma separated top folders, like in {@link KbuildMinerExtractor#TOP_FOLDERS}.
+     * @return The written sharded model.
+     *
+     * @throws IOException If writing fails.
+     */
+    public static @NonNull ShardedBuildModel writeByTopFolder(@NonNull BuildModel model, @NonNull File directory,
+            @NonNull String topFolders) throws IOException {
+
+        List<@NonNull String> folders = new ArrayList<>();
+        for (String folder : topFolders.split(",")) {
+            String normalized = normalize(folder.trim());
+            while (normalized.endsWith("/")) {
+                normalized = normalized.substring(0, normalized.length() - 1);
+            }
+            if (!normalized.isEmpty()) {
+                folders.add(normalized);
+            }
+        }
+        ShardedBuildModel result = new ShardedBuildModel(directory, 0, folders);
+        result.write(model);
+        return result;
+    }
+
+    /**
+     * Writes the given build model as shards, partitioned by the first directories of each path.
+     *
+     * @param model The build model to write.
+     * @param directory The directory to write the shards and the manifest to; created if necessary.
+     * @param depth The number of directories that make up a shard key; at least 1.
+     * @return The written sharded model.
+     *
+     * @throws IOException If writing fails.
+     */
+    public static @NonNull ShardedBuildModel writeByDepth(@NonNull BuildModel model, @NonNull File directory,
+            int depth) throws IOException {
+
+        if (depth < 1) {
+            throw new IllegalArgumentException("Shard depth must be at least 1, got " + depth);
+        }
+        ShardedBuildModel result = new ShardedBuildModel(directory, depth, Collections.emptyList());
+        result.write(model);
+        return result;
+    }
+
+    /**
+     * Reads the manifest of a sharded model. The shards themselves are only read by {@link #load(Collection)}.
+     *
+     * @param directory The directory that contains the manifest and the shard files.
+     * @return The sharded model.
+     *
+     * @throws IOException If reading the manifest fails or it is malformed.
+     */
+    public static @NonNull ShardedBuildModel read(@NonNull File directory) throws IOException {
+        File manifest = new File(directory, MANIFEST_FILE);
+        ShardedBuildModel result;
+        try (BufferedReader in = Files.newBufferedReader(manifest.toPath(), StandardCharsets.UTF_8)) {
+            String header = in.readLine();
+            if (header != null && header.startsWith(DEPTH_PREFIX)) {
+                result = new ShardedBuildModel(directory, parseInt(header.substring(DEPTH_PREFIX.length()), manifest),
+                        Collections.emptyList());
+            } else if (header != null && header.startsWith(TOP_FOLDERS_PREFIX)) {
+                String folders = header.substring(TOP_FOLDERS_PREFIX.length());
+                result = new ShardedBuildModel(directory, 0,
+                        folders.isEmpty() ? Collections.emptyList() : Arrays.asList(folders.split(",")));
+            } else {
+                throw new IOException("Malformed header in shard manifest " + manifest + ": " + header);
+            }
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] parts = line.split(" ", 3);
+                if (parts.length != 3) {
+                    throw new IOException("Malformed line in shard manifest " + manifest + ": " + line);
+                }
+                result.shards.put(parts[2], result.new Shard(parts[2], parts[0], parseInt(parts[1], manifest)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Partitions the given model and writes the shard files and the manifest. The manifest is written last, so a
+     * directory with an incomplete output has no manifest.
+     *
+     * @param model The build model to write.
+     *
+     * @throws IOException If writing fails.
+     */
+    private void write(@NonNull BuildModel model) throws IOException {
+        Map<String, List<@NonNull File>> partitions = new TreeMap<>();
+        for (File file : model) {
+            partitions.computeIfAbsent(getShardKey(file), key -> new ArrayList<>()).add(file);
+        }
+
+        directory.mkdirs();
+        File manifest = new File(directory, MANIFEST_FILE);
+        Files.deleteIfExists(manifest.toPath());
+
+        for (Map.Entry<String, List<@NonNull File>> partition : partitions.entrySet()) {
+            Shard shard = new Shard(partition.getKey(), "shard-" + shards.size() + ".bin",
+                    partition.getValue().size());
+            writeShard(shard, model, partition.getValue());
+            shards.put(shard.getKey(), shard);
+        }
+
+        try (BufferedWriter out = Files.newBufferedWriter(manifest.toPath(), StandardCharsets.UTF_8)) {
+            out.write(depth > 0 ? DEPTH_PREFIX + depth : TOP_FOLDERS_PREFIX + String.join(",", topFolders));
+            out.write('\n');
+            for (Shard shard : shards.values()) {
+                out.write(shard.fileName + " " + shard.numFiles + " " + shard.key);
+                out.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Writes a single shard file.
+     *
+     * @param shard The shard to write.
+     * @param model The build model that contains the files.
+     * @param files The files of the shard.
+     *
+     * @throws IOException If writing fails.
+     */
+    private static void writeShard(@NonNull Shard shard, @NonNull BuildModel model, @NonNull List<@NonNull File> files)
+            throws IOException {
+
+        // the variable table is only complete after encoding all formulas, but is needed first when reading
+        FormulaCodec codec = new FormulaCodec();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        int size = 0;
+        try (DataOutputStream out = new DataOutputStream(body)) {
+            for (File file : files) {
+                Formula pc = model.getPc(file);
+                if (pc != null) {
+                    out.writeUTF(normalize(file.getPath()));
+                    codec.write(pc, out);
+                    size++;
+                }
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(shard.getFile())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            codec.writeTable(out);
+            body.writeTo(out);
+        }
+    }
+
+    /**
+     * Returns the key of the shard that contains (or would contain) the given file.
+     *
+     * @param file The file, relative to the source tree.
+     * @return The key of the shard; {@link #ROOT_KEY} if the file is in no top folder or directly in the source
+     *      tree.
+     */
+    public @NonNull String getShardKey(@NonNull File file) {
+        String path = normalize(file.getPath());
+        String result = ROOT_KEY;
+        if (depth > 0) {
+            String[] parts = path.split("/");
+            int numDirectories = Math.min(depth, parts.length - 1);
+            if (numDirectories > 0) {
+                result = String.join("/", Arrays.copyOf(parts, numDirectories));
+            }
+        } else {
+            boolean found = false;
+            for (int i = 0; i < topFolders.size() && !found; i++) {
+                if (path.startsWith(topFolders.get(i) + "/")) {
+                    result = topFolders.get(i);
+                    found = true;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns all shards of this model.
+     *
+     * @return The shards, sorted by key.
+     */
+    public @NonNull List<@NonNull Shard> getShards() {
+        return new ArrayList<>(shards.values());
+    }
+
+    /**
+     * Returns the shard with the given key.
+     *
+     * @param key The key of the shard, see {@link #getShardKey(File)}.
+     * @return The shard, or <code>null</code> if this model has no shard with this key.
+     */
+    public @Nullable Shard getShard(@NonNull String key) {
+        return shards.get(key);
+    }
+
+    /**
+     * Loads the shards with the given keys into a single build model. Keys without a shard are ignored.
+     *
+     * @param keys The keys of the shards to load.
+     * @return A build model with the files of the given shards.
+     *
+     * @throws IOException If reading a shard fails.
+     */
+    public @NonNull BuildModel load(@NonNull Collection<String> keys) throws IOException {
+        BuildModel result = new BuildModel();
+        for (String key : keys) {
+            Shard shard = shards.get(key);
+            if (shard != null) {
+                shard.loadInto(result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Normalizes the separators of a path to <code>/</code>.
+     *
+     * @param path The path.
+     * @return The path with <code>/</code> separators.
+     */
+    private static @NonNull String normalize(@NonNull String path) {
+        return path.replace('\\', '/');
+    }
+
+    /**
+     * Parses a non-negative number in the manifest.
+     *
+     * @param value The value to parse.
+     * @param manifest The manifest file, for the error message.
+     * @return The number.
+     *
+     * @throws IOException If the value is not a non-negative number.
+     */
+    private static int parseInt(@NonNull String value, @NonNull File manifest) throws IOException {
+        int result;
+        try {
+            result = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed number in shard manifest " + manifest + ": " + value, e);
+        }
+        if (result < 0) {
+            throw new IOException("Malformed number in shard manifest " + manifest + ": " + value);
+        }
+        return result;
+    }
+
+}
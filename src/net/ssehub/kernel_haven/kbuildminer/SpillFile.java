@@ -0,0 +1,178 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * An append-only temporary file of formulas encoded with a {@link FormulaCodec}. Each formula is addressed by the
+ * offset returned from {@link #append(Formula)}. All methods are thread-safe.
+ *
+ * <p>
+ * The file is unlinked from its directory right after it is opened, if the file system allows this (POSIX): the
+ * open file stays usable, and the operating system frees its space on {@link #close()} or when the JVM dies, even if
+ * it is killed. Otherwise, the file is deleted on {@link #close()}, or by a shutdown hook if it is still open when
+ * the JVM exits. Unlike {@link File#deleteOnExit()}, the shutdown hook only keeps track of the files that are
+ * currently open.
+ * </p>
+ *
+ * @author Adam
+ */
+final class SpillFile implements Closeable {
+
+    /**
+     * The spill files that could not be unlinked and are not closed yet. Guarded by itself.
+     */
+    private static final @NonNull Set<SpillFile> UNDELETED = new HashSet<>();
+
+    /**
+     * Whether the shutdown hook that deletes the {@link #UNDELETED} files is registered. Guarded by
+     * {@link #UNDELETED}.
+     */
+    private static boolean shutdownHookRegistered;
+
+    private final @NonNull File file;
+
+    private final @NonNull RandomAccessFile data;
+
+    private final @NonNull FormulaCodec codec = new FormulaCodec();
+
+    private final @NonNull ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    private long size;
+
+    /**
+     * Creates a new, empty spill file.
+     *
+     * @param directory The directory to create the file in.
+     *
+     * @throws IOException If creating the file fails.
+     */
+    SpillFile(@NonNull File directory) throws IOException {
+        file = File.createTempFile("kbuildminer", ".spill", directory);
+        data = new RandomAccessFile(file, "rw");
+        if (!file.delete()) {
+            // e.g. on Windows, open files can't be deleted
+            synchronized (UNDELETED) {
+                UNDELETED.add(this);
+                if (!shutdownHookRegistered) {
+                    Runtime.getRuntime().addShutdownHook(new Thread(SpillFile::closeUndeleted, "SpillFile-cleanup"));
+                    shutdownHookRegistered = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes and deletes all spill files that are still open. Called by the shutdown hook.
+     */
+    private static void closeUndeleted() {
+        List<SpillFile> files;
+        synchronized (UNDELETED) {
+            files = new ArrayList<>(UNDELETED);
+        }
+        for (SpillFile file : files) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                // the JVM is shutting down; nothing left to do about it
+            }
+        }
+    }
+
+    /**
+     * Appends a formula to this file.
+     *
+     * @param formula The formula to store.
+     * @return The offset to read the formula back with {@link #read(long)}.
+     *
+     * @throws IOException If writing fails.
+     */
+    synchronized long append(@NonNull Formula formula) throws IOException {
+        buffer.reset();
+        codec.write(formula, new DataOutputStream(buffer));
+
+        long offset = size;
+        data.seek(offset);
+        data.writeInt(buffer.size());
+        data.write(buffer.toByteArray());
+        size = data.getFilePointer();
+        return offset;
+    }
+
+    /**
+     * Reads a formula from this file.
+     *
+     * @param offset The offset returned by {@link #append(Formula)}.
+     * @return The decoded formula.
+     *
+     * @throws IOException If reading fails.
+     */
+    synchronized @NonNull Formula read(long offset) throws IOException {
+        data.seek(offset);
+        byte[] bytes = new byte[data.readInt()];
+        data.readFully(bytes);
+        return codec.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    /**
+     * Returns the number of bytes that the formula at the given offset occupies in this file.
+     *
+     * @param offset The offset returned by {@link #append(Formula)}.
+     * @return The size of the entry in bytes, including its length prefix.
+     *
+     * @throws IOException If reading fails.
+     */
+    synchronized long getEntrySize(long offset) throws IOException {
+        data.seek(offset);
+        return Integer.BYTES + data.readInt();
+    }
+
+    /**
+     * Returns the number of bytes written to this file.
+     *
+     * @return The size of this file.
+     */
+    synchronized long getSize() {
+        return size;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        synchronized (UNDELETED) {
+            UNDELETED.remove(this);
+        }
+        data.close();
+        Files.deleteIfExists(file.toPath());
+    }
+
+}
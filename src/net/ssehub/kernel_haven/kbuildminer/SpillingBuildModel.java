@@ -0,0 +1,313 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * A {@link BuildModel} with a bounded heap budget for its presence conditions. Entries are kept on the heap until
+ * the (estimated) size of their presence conditions exceeds the budget; all further entries are encoded with a
+ * {@link FormulaCodec} and written to a {@link SpillFile}. Spilled presence conditions are decoded transparently
+ * on each {@link #getPc(File)}.
+ *
+ * <p>
+ * This overrides all accessors of {@link BuildModel}, so it can be passed to the rest of the pipeline as a normal
+ * build model. All methods are thread-safe.
+ * </p>
+ *
+ * <p>
+ * Replacing a spilled entry via {@link #add(File, Formula)} leaves the old bytes in the spill file as garbage. Once
+ * the garbage exceeds half of the spill file, the live entries are copied to a new spill file.
+ * </p>
+ *
+ * <p>
+ * Consumers that know when they no longer need the model should {@link #close()} it; this frees the disk space of
+ * the spill file immediately. Otherwise, the space is freed when the JVM exits (see {@link SpillFile} for
+ * details), so no spill files are left behind in the spill directory. After {@link #close()}, the model is
+ * unusable: all accessors throw an {@link IllegalStateException}.
+ * </p>
+ *
+ * @author Adam
+ */
+public class SpillingBuildModel extends BuildModel implements Closeable {
+
+    /**
+     * Rough heap size of a map entry with its {@link File} key, excluding the characters of the path.
+     */
+    private static final long ENTRY_OVERHEAD = 96;
+
+    private final long heapBudget;
+
+    private final @NonNull File spillDirectory;
+
+    private final @NonNull Map<File, @NonNull Formula> inMemory = new HashMap<>();
+
+    private final @NonNull Map<File, Long> spilled = new HashMap<>();
+
+    private @Nullable SpillFile spillFile;
+
+    private long heapUsage;
+
+    /**
+     * The number of bytes in the {@link #spillFile} that belong to replaced entries.
+     */
+    private long garbageBytes;
+
+    private boolean closed;
+
+    /**
+     * Creates an empty model.
+     *
+     * @param heapBudget The maximum number of (estimated) heap bytes for the presence conditions kept in memory.
+     * @param spillDirectory The directory to create the spill file in.
+     */
+    public SpillingBuildModel(long heapBudget, @NonNull File spillDirectory) {
+        this.heapBudget = heapBudget;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UncheckedIOException If writing to the spill file fails.
+     * @throws IllegalStateException If this model is closed.
+     */
+    @Override
+    public synchronized void add(@NonNull File file, @NonNull Formula pc) {
+        checkOpen();
+        Formula old = inMemory.remove(file);
+        if (old != null) {
+            heapUsage -= estimate(file, old);
+        }
+
+        try {
+            Long oldOffset = spilled.remove(file);
+            SpillFile spillFile = this.spillFile;
+            if (oldOffset != null && spillFile != null) {
+                garbageBytes += spillFile.getEntrySize(oldOffset);
+            }
+
+            long size = estimate(file, pc);
+            if (heapUsage + size <= heapBudget) {
+                inMemory.put(file, pc);
+                heapUsage += size;
+            } else {
+                spilled.put(file, getSpillFile().append(pc));
+            }
+
+            spillFile = this.spillFile;
+            if (spillFile != null && garbageBytes > spillFile.getSize() / 2) {
+                compact(spillFile);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Copies the live spilled entries to a new spill file and deletes the old one, which contains more garbage than
+     * live entries. If there are no live spilled entries, no new spill file is created.
+     *
+     * @param old The current spill file.
+     *
+     * @throws IOException If reading or writing the spill files fails.
+     */
+    private void compact(@NonNull SpillFile old) throws IOException {
+        SpillFile compacted = null;
+        if (!spilled.isEmpty()) {
+            compacted = new SpillFile(spillDirectory);
+            // only switch to the new offsets once all entries are copied, so a failure leaves the model intact
+            Map<File, Long> offsets = new HashMap<>();
+            try {
+                for (Map.Entry<File, Long> entry : spilled.entrySet()) {
+                    offsets.put(entry.getKey(), compacted.append(old.read(entry.getValue())));
+                }
+            } catch (IOException e) {
+                compacted.close();
+                throw e;
+            }
+            spilled.putAll(offsets);
+        }
+        spillFile = compacted;
+        garbageBytes = 0;
+        old.close();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UncheckedIOException If reading from the spill file fails.
+     * @throws IllegalStateException If this model is closed.
+     */
+    @Override
+    public synchronized @Nullable Formula getPc(@NonNull File file) {
+        checkOpen();
+        Formula result = inMemory.get(file);
+        if (result == null) {
+            Long offset = spilled.get(file);
+            SpillFile spillFile = this.spillFile;
+            if (offset != null && spillFile != null) {
+                try {
+                    result = spillFile.read(offset);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException If this model is closed.
+     */
+    @Override
+    public synchronized boolean contains(@NonNull File file) {
+        checkOpen();
+        return inMemory.containsKey(file) || spilled.containsKey(file);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException If this model is closed.
+     */
+    @Override
+    public synchronized int getSize() {
+        checkOpen();
+        return inMemory.size() + spilled.size();
+    }
+
+    /**
+     * Returns the number of entries that were written to disk.
+     *
+     * @return The number of spilled entries.
+     *
+     * @throws IllegalStateException If this model is closed.
+     */
+    public synchronized int getNumSpilled() {
+        checkOpen();
+        return spilled.size();
+    }
+
+    /**
+     * Returns the estimated heap usage of the entries kept in memory.
+     *
+     * @return The estimated heap usage in bytes.
+     */
+    public synchronized long getHeapUsage() {
+        return heapUsage;
+    }
+
+    /**
+     * Returns the number of bytes in the spill file, including the garbage of replaced entries.
+     *
+     * @return The size of the spill file; 0 if there is none.
+     */
+    synchronized long getSpillFileSize() {
+        SpillFile spillFile = this.spillFile;
+        return spillFile != null ? spillFile.getSize() : 0;
+    }
+
+    /**
+     * Returns an iterator over a snapshot of the files in this model.
+     *
+     * @return An iterator over all files.
+     *
+     * @throws IllegalStateException If this model is closed.
+     */
+    @Override
+    public synchronized @NonNull Iterator<@NonNull File> iterator() {
+        checkOpen();
+        List<@NonNull File> files = new ArrayList<>(getSize());
+        files.addAll(inMemory.keySet());
+        files.addAll(spilled.keySet());
+        return files.iterator();
+    }
+
+    /**
+     * Deletes the spill file and releases the presence conditions kept in memory. The model can't be used
+     * afterwards. Closing an already closed model has no effect.
+     *
+     * @throws IOException If deleting the spill file fails.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        inMemory.clear();
+        spilled.clear();
+        heapUsage = 0;
+        SpillFile spillFile = this.spillFile;
+        this.spillFile = null;
+        if (spillFile != null) {
+            spillFile.close();
+        }
+    }
+
+    /**
+     * Checks that this model is not closed.
+     *
+     * @throws IllegalStateException If this model is closed.
+     */
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("SpillingBuildModel is closed");
+        }
+    }
+
+    /**
+     * Returns the spill file, creating it on first use.
+     *
+     * @return The spill file.
+     *
+     * @throws IOException If creating the spill file fails.
+     */
+    private @NonNull SpillFile getSpillFile() throws IOException {
+        SpillFile result = spillFile;
+        if (result == null) {
+            result = new SpillFile(spillDirectory);
+            spillFile = result;
+        }
+        return result;
+    }
+
+    /**
+     * Estimates the heap size of an entry.
+     *
+     * @param file The file of the entry.
+     * @param pc The presence condition of the entry.
+     * @return The estimated size in bytes.
+     */
+    private static long estimate(@NonNull File file, @NonNull Formula pc) {
+        return ENTRY_OVERHEAD + 2L * file.getPath().length() + FormulaCodec.estimateHeapSize(pc);
+    }
+
+}
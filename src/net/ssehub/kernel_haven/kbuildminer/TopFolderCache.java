@@ -0,0 +1,143 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Properties;
+
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Persists the top folders determined by {@link KbuildMinerExtractor} in the resource directory, so that repeated
+ * runs on the same source tree can skip the recursive walk over the tree.
+ *
+ * <p>
+ * The cache entry is valid as long as the fingerprint of the source tree is unchanged. The fingerprint consists of
+ * the names and modification times of the source tree itself and of all its direct subdirectories. Adding,
+ * removing or renaming a top-level directory, or changing the entries directly inside one, invalidates the cache.
+ * A Kbuild file created deeper inside a top-level directory that did not contain any Kbuild file before is not
+ * detected; delete the cache file (or disable the cache) in this case. Because of this, the cache is disabled by
+ * default (see {@link KbuildMinerExtractor#TOP_FOLDERS_CACHE}).
+ * </p>
+ *
+ * @author Adam
+ */
+public class TopFolderCache {
+
+    private static final @NonNull String KEY_SOURCE_TREE = "sourceTree";
+
+    private static final @NonNull String KEY_FINGERPRINT = "fingerprint";
+
+    private static final @NonNull String KEY_TOP_FOLDERS = "topFolders";
+
+    private final @NonNull File cacheFile;
+
+    /**
+     * Creates a cache that is stored in the given file.
+     *
+     * @param cacheFile The file to store the cache in.
+     */
+    public TopFolderCache(@NonNull File cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    /**
+     * Returns the cached top folders for the given source tree.
+     *
+     * @param sourceTree The source tree.
+     * @return The cached top folders; <code>null</code> if there is no valid cache entry for the source tree.
+     */
+    public @Nullable String get(@NonNull File sourceTree) {
+        String result = null;
+        if (cacheFile.isFile()) {
+            Properties props = new Properties();
+            try (InputStream in = new FileInputStream(cacheFile)) {
+                props.load(in);
+                if (sourceTree.getAbsolutePath().equals(props.getProperty(KEY_SOURCE_TREE))
+                        && fingerprint(sourceTree).equals(props.getProperty(KEY_FINGERPRINT))) {
+                    result = props.getProperty(KEY_TOP_FOLDERS);
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                // a corrupt cache file is treated as a cache miss
+                result = null;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stores the top folders for the given source tree. The cache file is replaced atomically, so that concurrent
+     * runs never read a partially written file.
+     *
+     * @param sourceTree The source tree.
+     * @param topFolders The top folders that were determined for the source tree.
+     *
+     * @throws IOException If writing the cache file fails.
+     */
+    public void put(@NonNull File sourceTree, @NonNull String topFolders) throws IOException {
+        Properties props = new Properties();
+        props.setProperty(KEY_SOURCE_TREE, sourceTree.getAbsolutePath());
+        props.setProperty(KEY_FINGERPRINT, fingerprint(sourceTree));
+        props.setProperty(KEY_TOP_FOLDERS, topFolders);
+
+        File tmp = File.createTempFile("top_folders", ".tmp", cacheFile.getAbsoluteFile().getParentFile());
+        try {
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                props.store(out, "Top folders determined by KbuildMinerExtractor");
+            }
+            Files.move(tmp.toPath(), cacheFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    /**
+     * Computes the fingerprint of the given source tree from the modification times of the tree and of its direct
+     * subdirectories. This only lists a single directory, so it is cheap even for large trees.
+     *
+     * @param sourceTree The source tree.
+     * @return The fingerprint.
+     */
+    static @NonNull String fingerprint(@NonNull File sourceTree) {
+        StringBuilder result = new StringBuilder();
+        result.append(sourceTree.lastModified());
+
+        File[] children = sourceTree.listFiles(File::isDirectory);
+        if (children != null) {
+            Arrays.sort(children);
+            long hash = 1125899906842597L;
+            for (File child : children) {
+                hash = 31 * hash + child.getName().hashCode();
+                hash = 31 * hash + child.lastModified();
+            }
+            result.append('-').append(children.length).append('-').append(Long.toHexString(hash));
+        }
+
+        return result.toString();
+    }
+
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * A compact representation of tristate comparisons as single three-valued literals. By default, KbuildMiner's
+ * <code>(X == "y") || (X == "m")</code> becomes the two variables <code>CONFIG_X || CONFIG_X_MODULE</code>. In the
+ * compact representation, this is the single variable <code>CONFIG_X={y,m}</code>, and a lone
+ * <code>CONFIG_X_MODULE</code> is <code>CONFIG_X={m}</code>. A plain <code>CONFIG_X</code> (i.e. X is
+ * <code>y</code>) stays unchanged.
+ *
+ * <p>
+ * {@link #expand(Formula)} losslessly converts back to the two-variable encoding.
+ * </p>
+ *
+ * @author Adam
+ */
+public class TristateLiterals {
+
+    private static final @NonNull String MODULE_SUFFIX = "_MODULE";
+
+    private static final @NonNull String YES_OR_MODULE = "={y,m}";
+
+    private static final @NonNull String YES = "={y}";
+
+    private static final @NonNull String MODULE = "={m}";
+
+    /**
+     * The literal variables created by this instance, so that each literal exists only once.
+     */
+    private final @NonNull Map<String, @NonNull Variable> literals = new HashMap<>();
+
+    /**
+     * The compacted form of the formulas seen so far, keyed by identity; <code>null</code> if not caching.
+     */
+    private final @Nullable Map<Formula, @NonNull Formula> compacted;
+
+    /**
+     * Creates an instance.
+     *
+     * @param cache Whether to remember the compacted form of each formula instance. This keeps canonical formula
+     *      instances (see {@link PcCanonicalizer}) shared, but holds a reference to each formula.
+     */
+    public TristateLiterals(boolean cache) {
+        this.compacted = cache ? new IdentityHashMap<>() : null;
+    }
+
+    /**
+     * Replaces all tristate comparisons in the given formula by three-valued literals.
+     *
+     * @param formula The formula in the two-variable encoding.
+     * @return The compact formula. The same instance if nothing was replaced.
+     */
+    public @NonNull Formula compact(@NonNull Formula formula) {
+        Map<Formula, @NonNull Formula> compacted = this.compacted;
+        Formula result = compacted != null ? compacted.get(formula) : null;
+        if (result == null) {
+            result = compactRecursive(formula);
+            if (compacted != null) {
+                compacted.put(formula, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Replaces all tristate comparisons in the given formula by three-valued literals.
+     *
+     * @param formula The formula in the two-variable encoding.
+     * @return The compact formula.
+     */
+    private @NonNull Formula compactRecursive(@NonNull Formula formula) {
+        Formula result = formula;
+        if (formula instanceof Variable) {
+            String name = ((Variable) formula).getName();
+            if (name.endsWith(MODULE_SUFFIX)) {
+                result = getLiteral(name.substring(0, name.length() - MODULE_SUFFIX.length()) + MODULE);
+            }
+
+        } else if (formula instanceof Negation) {
+            Formula nested = compactRecursive(((Negation) formula).getFormula());
+            if (nested != ((Negation) formula).getFormula()) {
+                result = new Negation(nested);
+            }
+
+        } else if (formula instanceof Disjunction) {
+            Disjunction disjunction = (Disjunction) formula;
+            String base = getTristateBase(disjunction);
+            if (base != null) {
+                result = getLiteral(base + YES_OR_MODULE);
+            } else {
+                Formula left = compactRecursive(disjunction.getLeft());
+                Formula right = compactRecursive(disjunction.getRight());
+                if (left != disjunction.getLeft() || right != disjunction.getRight()) {
+                    result = new Disjunction(left, right);
+                }
+            }
+
+        } else if (formula instanceof Conjunction) {
+            Conjunction conjunction = (Conjunction) formula;
+            Formula left = compactRecursive(conjunction.getLeft());
+            Formula right = compactRecursive(conjunction.getRight());
+            if (left != conjunction.getLeft() || right != conjunction.getRight()) {
+                result = new Conjunction(left, right);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether the given disjunction is <code>CONFIG_X || CONFIG_X_MODULE</code> (in any order).
+     *
+     * @param disjunction The disjunction.
+     * @return The name of <code>CONFIG_X</code>; <code>null</code> if the disjunction has a different form.
+     */
+    private static @Nullable String getTristateBase(@NonNull Disjunction disjunction) {
+        String result = null;
+        if (disjunction.getLeft() instanceof Variable && disjunction.getRight() instanceof Variable) {
+            String left = ((Variable) disjunction.getLeft()).getName();
+            String right = ((Variable) disjunction.getRight()).getName();
+            if (right.equals(left + MODULE_SUFFIX)) {
+                result = left;
+            } else if (left.equals(right + MODULE_SUFFIX)) {
+                result = right;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the shared literal variable with the given name.
+     *
+     * @param name The name of the literal.
+     * @return The literal variable.
+     */
+    private @NonNull Variable getLiteral(@NonNull String name) {
+        return literals.computeIfAbsent(name, Variable::new);
+    }
+
+    /**
+     * Checks whether the given variable name is a three-valued literal.
+     *
+     * @param name The variable name.
+     * @return Whether the name is a literal created by {@link #compact(Formula)}.
+     */
+    public static boolean isLiteral(@NonNull String name) {
+        return name.endsWith(YES_OR_MODULE) || name.endsWith(YES) || name.endsWith(MODULE);
+    }
+
+    /**
+     * Returns the names of the variables in the two-variable encoding that the given variable stands for.
+     *
+     * @param name The variable name; a literal or a normal variable.
+     * @return The names in the two-variable encoding; only the name itself if it is not a literal.
+     */
+    public static @NonNull List<@NonNull String> getExpandedNames(@NonNull String name) {
+        List<@NonNull String> result;
+        if (name.endsWith(YES_OR_MODULE)) {
+            String base = name.substring(0, name.length() - YES_OR_MODULE.length());
+            result = new ArrayList<>(2);
+            result.add(base);
+            result.add(base + MODULE_SUFFIX);
+        } else if (name.endsWith(YES)) {
+            result = Collections.singletonList(name.substring(0, name.length() - YES.length()));
+        } else if (name.endsWith(MODULE)) {
+            result = Collections.singletonList(name.substring(0, name.length() - MODULE.length()) + MODULE_SUFFIX);
+        } else {
+            result = Collections.singletonList(name);
+        }
+        return result;
+    }
+
+    /**
+     * Converts all three-valued literals in the given formula back to the two-variable encoding.
+     *
+     * @param formula The (possibly) compact formula.
+     * @return The formula in the two-variable encoding. The same instance if it contains no literals.
+     */
+    public static @NonNull Formula expand(@NonNull Formula formula) {
+        Formula result = formula;
+        if (formula instanceof Variable) {
+            String name = ((Variable) formula).getName();
+            if (isLiteral(name)) {
+                List<@NonNull String> names = getExpandedNames(name);
+                result = names.size() == 1 ? new Variable(names.get(0))
+                        : new Disjunction(new Variable(names.get(0)), new Variable(names.get(1)));
+            }
+
+        } else if (formula instanceof Negation) {
+            Formula nested = expand(((Negation) formula).getFormula());
+            if (nested != ((Negation) formula).getFormula()) {
+                result = new Negation(nested);
+            }
+
+        } else if (formula instanceof Disjunction) {
+            Disjunction disjunction = (Disjunction) formula;
+            Formula left = expand(disjunction.getLeft());
+            Formula right = expand(disjunction.getRight());
+            if (left != disjunction.getLeft() || right != disjunction.getRight()) {
+                result = new Disjunction(left, right);
+            }
+
+        } else if (formula instanceof Conjunction) {
+            Conjunction conjunction = (Conjunction) formula;
+            Formula left = expand(conjunction.getLeft());
+            Formula right = expand(conjunction.getRight());
+            if (left != conjunction.getLeft() || right != conjunction.getRight()) {
+                result = new Conjunction(left, right);
+            }
+        }
+        return result;
+    }
+
+}
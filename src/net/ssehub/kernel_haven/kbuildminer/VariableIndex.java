@@ -0,0 +1,218 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * An inverted index from variable names to the files whose presence condition contains that variable. Each file
+ * gets a dense integer id; for each variable, the ids of its files are stored in a {@link BitSet}. This answers
+ * "which files can be affected by <code>CONFIG_X</code>?" without walking the presence conditions.
+ *
+ * <p>
+ * The index is built by {@link Converter} during conversion (see {@link Converter#setBuildVariableIndex(boolean)})
+ * and can be stored next to the build model via {@link #write(File)}.
+ * </p>
+ *
+ * @author Adam
+ */
+public class VariableIndex implements Serializable {
+
+    private static final long serialVersionUID = -6418553272981316409L;
+
+    private final @NonNull List<@NonNull String> files = new ArrayList<>();
+
+    private final @NonNull Map<String, Integer> fileIds = new HashMap<>();
+
+    private final @NonNull Map<String, @NonNull BitSet> variables = new HashMap<>();
+
+    /**
+     * Adds a file with its presence condition to this index. If the file was already added, its previous entries
+     * are replaced.
+     *
+     * @param file The file, relative to the source tree.
+     * @param pc The presence condition of the file.
+     */
+    public void add(@NonNull File file, @NonNull Formula pc) {
+        String path = file.getPath();
+        Integer existing = fileIds.get(path);
+        int id;
+        if (existing == null) {
+            id = files.size();
+            files.add(path);
+            fileIds.put(path, id);
+        } else {
+            id = existing;
+            // rare: KbuildMiner listed the file twice; the last entry wins, like in the build model
+            for (BitSet bits : variables.values()) {
+                bits.clear(id);
+            }
+        }
+
+        List<@NonNull Formula> stack = new ArrayList<>();
+        stack.add(pc);
+        while (!stack.isEmpty()) {
+            Formula current = stack.remove(stack.size() - 1);
+            if (current instanceof Variable) {
+                // index three-valued literals under the names of the two-variable encoding
+                for (String name : TristateLiterals.getExpandedNames(((Variable) current).getName())) {
+                    variables.computeIfAbsent(name, key -> new BitSet()).set(id);
+                }
+            } else if (current instanceof Negation) {
+                stack.add(((Negation) current).getFormula());
+            } else if (current instanceof Conjunction) {
+                stack.add(((Conjunction) current).getLeft());
+                stack.add(((Conjunction) current).getRight());
+            } else if (current instanceof Disjunction) {
+                stack.add(((Disjunction) current).getLeft());
+                stack.add(((Disjunction) current).getRight());
+            }
+        }
+    }
+
+    /**
+     * Returns the files whose presence condition contains exactly the given variable.
+     *
+     * @param variable The name of the variable, e.g. <code>CONFIG_X</code> or <code>CONFIG_X_MODULE</code>.
+     * @return The files, in the order they were added. Empty if the variable does not occur.
+     */
+    public @NonNull List<@NonNull File> getFiles(@NonNull String variable) {
+        return toFiles(getFileIds(variable));
+    }
+
+    /**
+     * Returns the files that can be affected by the given Kconfig variable, i.e. whose presence condition contains
+     * the variable or its <code>_MODULE</code> variant.
+     *
+     * @param variable The name of the variable, without <code>_MODULE</code>.
+     * @return The files, in the order they were added. Empty if neither variable occurs.
+     */
+    public @NonNull List<@NonNull File> getAffectedFiles(@NonNull String variable) {
+        BitSet ids = getFileIds(variable);
+        ids.or(getFileIds(variable + "_MODULE"));
+        return toFiles(ids);
+    }
+
+    /**
+     * Returns the ids of the files whose presence condition contains the given variable.
+     *
+     * @param variable The name of the variable.
+     * @return A copy of the bitmap of file ids; may be modified by the caller.
+     */
+    public @NonNull BitSet getFileIds(@NonNull String variable) {
+        BitSet bits = variables.get(variable);
+        return bits != null ? (BitSet) bits.clone() : new BitSet();
+    }
+
+    /**
+     * Returns the file with the given id.
+     *
+     * @param id The id of the file, as used in {@link #getFileIds(String)}.
+     * @return The file.
+     *
+     * @throws IndexOutOfBoundsException If no file with this id exists.
+     */
+    public @NonNull File getFile(int id) {
+        return new File(files.get(id));
+    }
+
+    /**
+     * Returns the names of all variables in this index.
+     *
+     * @return An unmodifiable view of the variable names.
+     */
+    public @NonNull Set<String> getVariables() {
+        return Collections.unmodifiableSet(variables.keySet());
+    }
+
+    /**
+     * Returns the number of files in this index.
+     *
+     * @return The number of files.
+     */
+    public int getNumFiles() {
+        return files.size();
+    }
+
+    /**
+     * Converts a bitmap of file ids to files.
+     *
+     * @param ids The file ids.
+     * @return The files.
+     */
+    private @NonNull List<@NonNull File> toFiles(@NonNull BitSet ids) {
+        List<@NonNull File> result = new ArrayList<>(ids.cardinality());
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            result.add(new File(files.get(id)));
+        }
+        return result;
+    }
+
+    /**
+     * Serializes this index to the given file.
+     *
+     * @param file The file to write to.
+     *
+     * @throws IOException If writing fails.
+     */
+    public void write(@NonNull File file) throws IOException {
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeObject(this);
+        }
+    }
+
+    /**
+     * Reads an index that was written by {@link #write(File)}.
+     *
+     * @param file The file to read from.
+     * @return The index.
+     *
+     * @throws IOException If reading fails or the file does not contain an index.
+     */
+    public static @NonNull VariableIndex read(@NonNull File file) throws IOException {
+        VariableIndex result;
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            result = (VariableIndex) in.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("File does not contain a variable index: " + file, e);
+        }
+        return result;
+    }
+
+}
@@ -25,10 +25,33 @@ import org.junit.runners.Suite.SuiteClasses;
  */
 @RunWith(Suite.class)
 @SuiteClasses({
+    AsyncPcSinkTest.class,
+    BatchExtractorTest.class,
+    BddTest.class,
+    BuildModelDiffTest.class,
+    CnfEncoderTest.class,
+    CompactFormulaStoreTest.class,
+    ConfigurationEvaluatorTest.class,
     ConverterTest.class,
+    ExtractionMetricsTest.class,
+    HierarchicalBuildModelTest.class,
+    KbuildMakefileMinerTest.class,
+    KbuildMinerEventsTest.class,
     KbuildMinerExtractorTest.class,
     KbuildMinerPcGrammarTest.class,
     KbuildMinerWrapperTest.class,
+    LazyBuildModelTest.class,
+    PathFilterTest.class,
+    PcBalancerTest.class,
+    PcCanonicalizerTest.class,
+    PcSimplifierTest.class,
+    PcValidatorTest.class,
+    ShardedBuildModelTest.class,
+    SpillingBuildModelTest.class,
+    SyntheticKbuildTreeTest.class,
+    TopFolderCacheTest.class,
+    TristateLiteralsTest.class,
+    VariableIndexTest.class,
     })
 public class AllTests {
     // runs tests defined in SuiteClasses
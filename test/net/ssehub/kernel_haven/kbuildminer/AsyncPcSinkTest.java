@@ -0,0 +1,185 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * Tests the {@link AsyncPcSink} and the {@link BuildModelSink}.
+ *
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class AsyncPcSinkTest {
+
+    /**
+     * Tests that all presence conditions arrive at the downstream sink in order.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testOrder() throws IOException {
+        BuildModelSink downstream = new BuildModelSink();
+        List<File> order = new ArrayList<>();
+        AsyncPcSink sink = new AsyncPcSink((file, pc) -> {
+            order.add(file);
+            downstream.accept(file, pc);
+        }, 4);
+
+        List<File> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            File file = new File("file" + i + ".c");
+            expected.add(file);
+            sink.accept(file, new Variable("CONFIG_" + i));
+        }
+        sink.end();
+
+        assertThat(order, is(expected));
+        BuildModel model = downstream.getBuildModel();
+        assertThat(model.getSize(), is(100));
+        assertThat(model.getPc(new File("file42.c")), is(new Variable("CONFIG_42")));
+    }
+
+    /**
+     * Tests that the producer is blocked while the queue is full.
+     *
+     * @throws IOException unwanted.
+     * @throws InterruptedException unwanted.
+     */
+    @Test
+    public void testBackpressure() throws IOException, InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        AsyncPcSink sink = new AsyncPcSink(new PcSink() {
+
+            @Override
+            public void accept(File file, Formula pc) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+        }, 2);
+
+        // the worker takes the first entry and blocks; the next two fill the queue
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 4; i++) {
+                    sink.accept(new File("file" + i + ".c"), new Variable("A"));
+                }
+            } catch (IOException e) {
+                // fails the test below, since the producer terminates early
+            }
+        });
+        producer.start();
+        producer.join(500);
+
+        assertThat(producer.isAlive(), is(true));
+        assertThat(sink.getQueueSize(), is(2));
+
+        release.countDown();
+        producer.join();
+        sink.end();
+        assertThat(sink.getQueueSize(), is(0));
+    }
+
+    /**
+     * Tests that a failure of the downstream sink is reported to the producer.
+     *
+     * @throws IOException wanted.
+     */
+    @Test(expected = IOException.class)
+    public void testFailure() throws IOException {
+        AsyncPcSink sink = new AsyncPcSink((file, pc) -> {
+            throw new IOException("downstream failure");
+        }, 4);
+
+        sink.accept(new File("a.c"), new Variable("A"));
+        sink.end();
+    }
+
+    /**
+     * Tests that an unchecked exception of the downstream sink is reported to the producer, and that the producer
+     * does not block on the full queue afterwards.
+     *
+     * @throws IOException wanted.
+     */
+    @Test(expected = IOException.class, timeout = 10000)
+    public void testUncheckedFailure() throws IOException {
+        AsyncPcSink sink = new AsyncPcSink((file, pc) -> {
+            throw new UncheckedIOException(new IOException("downstream failure"));
+        }, 1);
+
+        try {
+            for (int i = 0; i < 100; i++) {
+                sink.accept(new File("file" + i + ".c"), new Variable("A"));
+            }
+        } finally {
+            sink.end();
+        }
+    }
+
+    /**
+     * Tests that the downstream sink is not ended after it failed, since it did not receive all presence
+     * conditions.
+     */
+    @Test(timeout = 10000)
+    public void testNoEndAfterFailure() {
+        AtomicBoolean ended = new AtomicBoolean();
+        AsyncPcSink sink = new AsyncPcSink(new PcSink() {
+
+            @Override
+            public void accept(@NonNull File file, @NonNull Formula pc) throws IOException {
+                throw new IOException("downstream failure");
+            }
+
+            @Override
+            public void end() {
+                ended.set(true);
+            }
+
+        }, 4);
+
+        try {
+            sink.accept(new File("a.c"), new Variable("A"));
+            sink.end();
+            fail("Failure of the downstream sink was not reported");
+        } catch (IOException e) {
+            // expected
+        }
+
+        assertThat(ended.get(), is(false));
+    }
+
+}
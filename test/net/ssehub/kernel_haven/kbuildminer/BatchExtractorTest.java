@@ -0,0 +1,142 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
+
+/**
+ * Tests the {@link BatchExtractor}.
+ *
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class BatchExtractorTest {
+
+    /**
+     * Creates a job for the Java backend.
+     *
+     * @param name The name of the job.
+     * @param sourceTree The source tree.
+     * @param topFolders The top folders.
+     * @return The job.
+     */
+    private static BatchJob createJob(String name, String sourceTree, String topFolders) {
+        BatchJob job = new BatchJob(name, new File(sourceTree),
+                new VariabilityModel(null, new HashSet<VariabilityVariable>()));
+        job.setTopFolders(topFolders);
+        job.setBackend(KbuildMinerExtractor.Backend.JAVA);
+        return job;
+    }
+
+    /**
+     * Tests that all jobs are run and their build models are passed to the sink.
+     *
+     * @throws InterruptedException unwanted.
+     */
+    @Test
+    public void testRun() throws InterruptedException {
+        BatchJob linux = createJob("linux", "testdata/pseudo_linux", "arch/x86,drivers,kernel");
+        BatchJob features = createJob("features", "testdata/kbuild_features", "drivers");
+
+        Map<String, BuildModel> models = new HashMap<>();
+        // a budget smaller than a single job: jobs run one after another
+        BatchExtractor extractor = new BatchExtractor(new File("testdata"), 1, 2);
+        List<BatchExtractor.Result> results = extractor.run(Arrays.asList(linux, features),
+                (job, model) -> models.put(job.getName(), model));
+
+        assertThat(results.size(), is(2));
+        assertThat(results.get(0).getJob(), is(linux));
+        assertThat(results.get(0).isSuccess(), is(true));
+        assertThat(results.get(0).getNumFiles(), is(3));
+        assertThat(results.get(1).isSuccess(), is(true));
+        assertThat(results.get(1).getNumFiles(), is(8));
+
+        assertThat(models.get("linux").getSize(), is(3));
+        assertThat(models.get("features").getSize(), is(8));
+    }
+
+    /**
+     * Tests that a failing job does not affect the other jobs.
+     *
+     * @throws InterruptedException unwanted.
+     */
+    @Test
+    public void testFailingJob() throws InterruptedException {
+        BatchJob broken = createJob("broken", "testdata/pseudo_linux", null);
+        BatchJob linux = createJob("linux", "testdata/pseudo_linux", "arch/x86,drivers,kernel");
+
+        BatchExtractor extractor = new BatchExtractor(new File("testdata"), Long.MAX_VALUE, 2);
+        List<BatchExtractor.Result> results = extractor.run(Arrays.asList(broken, linux), (job, model) -> { });
+
+        assertThat(results.get(0).isSuccess(), is(false));
+        assertThat(results.get(0).getError(), notNullValue());
+        assertThat(results.get(1).isSuccess(), is(true));
+    }
+
+    /**
+     * Tests that an unchecked exception of a single job only fails this job, and does not abort the batch.
+     *
+     * @throws InterruptedException unwanted.
+     */
+    @Test
+    public void testUncheckedFailure() throws InterruptedException {
+        BatchJob features = createJob("features", "testdata/kbuild_features", "drivers");
+        BatchJob linux = createJob("linux", "testdata/pseudo_linux", "arch/x86,drivers,kernel");
+
+        BatchExtractor extractor = new BatchExtractor(new File("testdata"), Long.MAX_VALUE, 2);
+        List<BatchExtractor.Result> results = extractor.run(Arrays.asList(features, linux), (job, model) -> {
+            if (job == features) {
+                throw new IllegalArgumentException("sink failure");
+            }
+        });
+
+        assertThat(results.size(), is(2));
+        assertThat(results.get(0).isSuccess(), is(false));
+        assertThat(results.get(0).getError(), is("sink failure"));
+        assertThat(results.get(1).isSuccess(), is(true));
+        assertThat(results.get(1).getNumFiles(), is(3));
+    }
+
+    /**
+     * Tests the memory estimate of jobs.
+     */
+    @Test
+    public void testMemoryEstimate() {
+        BatchJob job = createJob("linux", "testdata/pseudo_linux", null);
+        job.setHeapEstimate(100);
+        assertThat(job.getMemoryEstimate(), is(100L));
+
+        job.setBackend(KbuildMinerExtractor.Backend.KBUILDMINER);
+        assertThat(job.getMemoryEstimate(), is(100L + BatchJob.KBUILDMINER_PROCESS_MEMORY));
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link Bdd}.
+ * 
+ * @author Adam
+ */
+public class BddTest {
+
+    /**
+     * Tests that equivalent formulas result in the same node.
+     */
+    @Test
+    public void testCanonical() {
+        Bdd bdd = new Bdd(1000);
+        int a = bdd.variable(0);
+        int b = bdd.variable(1);
+        int c = bdd.variable(2);
+        
+        // (a || b) && c == (c && b) || (a && c)
+        int f1 = bdd.and(bdd.or(a, b), c);
+        int f2 = bdd.or(bdd.and(c, b), bdd.and(a, c));
+        assertThat(f1, is(f2));
+        
+        // De Morgan
+        assertThat(bdd.not(bdd.and(a, b)), is(bdd.or(bdd.not(a), bdd.not(b))));
+        
+        assertThat(bdd.and(a, bdd.not(a)), is(Bdd.FALSE));
+        assertThat(bdd.or(a, bdd.not(a)), is(Bdd.TRUE));
+        assertThat(bdd.not(bdd.not(c)), is(c));
+        assertThat(f1, not(bdd.or(a, b)));
+    }
+    
+    /**
+     * Tests that exceeding the maximum number of nodes is reported.
+     */
+    @Test(expected = Bdd.BddOverflowException.class)
+    public void testOverflow() {
+        Bdd bdd = new Bdd(10);
+        int f = Bdd.FALSE;
+        for (int i = 0; i < 20; i++) {
+            f = bdd.or(f, bdd.and(bdd.variable(2 * i), bdd.variable(2 * i + 1)));
+        }
+    }
+    
+    /**
+     * Tests that the node table grows beyond its initial capacity.
+     */
+    @Test
+    public void testGrow() {
+        Bdd bdd = new Bdd(Integer.MAX_VALUE);
+        int f = Bdd.TRUE;
+        // build from the bottom of the variable order, so that each step adds exactly one node
+        for (int i = 4999; i >= 0; i--) {
+            f = bdd.and(bdd.variable(i), f);
+        }
+        assertThat(bdd.getNodeCount() > 5000, is(true));
+        assertThat(bdd.and(f, bdd.variable(0)), is(f));
+    }
+    
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+
+/**
+ * Tests the {@link BuildModelDiff} and the {@link BuildModelFingerprint}.
+ *
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class BuildModelDiffTest {
+
+    private static final Variable A = new Variable("CONFIG_A");
+
+    private static final Variable B = new Variable("CONFIG_B");
+
+    /**
+     * Tests that structurally equal formulas have equal hashes, and different formulas different ones.
+     */
+    @Test
+    public void testHash() {
+        assertThat(BuildModelFingerprint.hash(new Conjunction(A, B)),
+                is(BuildModelFingerprint.hash(new Conjunction(new Variable("CONFIG_A"), new Variable("CONFIG_B")))));
+        assertThat(BuildModelFingerprint.hash(new Conjunction(A, B)),
+                not(BuildModelFingerprint.hash(new Conjunction(B, A))));
+        assertThat(BuildModelFingerprint.hash(new Conjunction(A, B)),
+                not(BuildModelFingerprint.hash(new Disjunction(A, B))));
+        assertThat(BuildModelFingerprint.hash(new Negation(A)), not(BuildModelFingerprint.hash(A)));
+    }
+
+    /**
+     * Tests that added, removed and changed files are detected.
+     */
+    @Test
+    public void testCompare() {
+        BuildModel oldModel = new BuildModel();
+        oldModel.add(new File("a.c"), A);
+        oldModel.add(new File("b.c"), new Conjunction(A, B));
+        oldModel.add(new File("c.c"), True.INSTANCE);
+
+        BuildModel newModel = new BuildModel();
+        newModel.add(new File("a.c"), A);
+        newModel.add(new File("b.c"), new Conjunction(A, new Negation(B)));
+        newModel.add(new File("d.c"), B);
+
+        BuildModelDiff diff = BuildModelDiff.compare(oldModel, newModel);
+
+        assertThat(diff.getAdded(), is(Arrays.asList(new File("d.c"))));
+        assertThat(diff.getRemoved(), is(Arrays.asList(new File("c.c"))));
+        assertThat(diff.getChanged(), is(Arrays.asList(new File("b.c"))));
+        assertThat(diff.isEmpty(), is(false));
+        assertThat(BuildModelDiff.compare(oldModel, oldModel).isEmpty(), is(true));
+    }
+
+    /**
+     * Tests writing and reading the change set and the fingerprint.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testWriteRead() throws IOException {
+        BuildModelFingerprint oldFingerprint = new BuildModelFingerprint();
+        oldFingerprint.add(new File("a.c"), A);
+        oldFingerprint.add(new File("dir/b.c"), B);
+
+        File fingerprintFile = File.createTempFile("fingerprint", ".ser");
+        fingerprintFile.deleteOnExit();
+        oldFingerprint.write(fingerprintFile);
+        BuildModelFingerprint read = BuildModelFingerprint.read(fingerprintFile);
+        assertThat(read.getSize(), is(2));
+        assertThat(read.getHash(new File("a.c")), is(BuildModelFingerprint.hash(A)));
+        assertThat(read.getHash(new File("c.c")), nullValue());
+
+        BuildModelFingerprint newFingerprint = new BuildModelFingerprint();
+        newFingerprint.add(new File("a.c"), B);
+        newFingerprint.add(new File("c.c"), A);
+
+        File changeSetFile = File.createTempFile("change_set", ".txt");
+        changeSetFile.deleteOnExit();
+        BuildModelDiff.compare(read, newFingerprint).write(changeSetFile);
+        BuildModelDiff diff = BuildModelDiff.read(changeSetFile);
+
+        assertThat(diff.getAdded(), is(Arrays.asList(new File("c.c"))));
+        assertThat(diff.getRemoved(), is(Arrays.asList(new File("dir/b.c"))));
+        assertThat(diff.getChanged(), is(Arrays.asList(new File("a.c"))));
+    }
+
+    /**
+     * Tests that the hash of the conversion options is stored in the fingerprint file.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testOptionsHash() throws IOException {
+        BuildModelFingerprint fingerprint = new BuildModelFingerprint();
+        assertThat(fingerprint.getOptionsHash(), is(0L));
+
+        fingerprint.setOptions("simplification=MINIMAL");
+        File fingerprintFile = File.createTempFile("fingerprint", ".ser");
+        fingerprintFile.deleteOnExit();
+        fingerprint.write(fingerprintFile);
+        long readHash = BuildModelFingerprint.read(fingerprintFile).getOptionsHash();
+
+        BuildModelFingerprint other = new BuildModelFingerprint();
+        other.setOptions("simplification=FULL");
+
+        assertThat(readHash, is(fingerprint.getOptionsHash()));
+        assertThat(readHash, not(0L));
+        assertThat(readHash, not(other.getOptionsHash()));
+    }
+
+}
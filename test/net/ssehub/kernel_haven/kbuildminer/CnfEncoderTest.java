@@ -0,0 +1,229 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.False;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+
+/**
+ * Tests the {@link CnfEncoder}.
+ *
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class CnfEncoderTest {
+
+    /**
+     * Tests that structurally identical sub-formulas share one auxiliary variable, also if their operands are
+     * swapped or they are written as a negated conjunction.
+     */
+    @Test
+    public void testSharedGates() {
+        CnfEncoder cnf = new CnfEncoder();
+        int a = cnf.add(new File("a.c"), new Conjunction(
+                new Disjunction(new Variable("CONFIG_A"), new Variable("CONFIG_A_MODULE")), new Variable("CONFIG_B")));
+        cnf.add(new File("b.c"), new Conjunction(
+                new Disjunction(new Variable("CONFIG_A_MODULE"), new Variable("CONFIG_A")), new Variable("CONFIG_C")));
+        int c = cnf.add(new File("c.c"), new Negation(new Conjunction(
+                new Negation(new Variable("CONFIG_A")), new Negation(new Variable("CONFIG_A_MODULE")))));
+
+        // CONFIG_A || CONFIG_A_MODULE, and the conjunctions with CONFIG_B and CONFIG_C
+        assertThat(cnf.getNumGates(), is(3));
+        assertThat(cnf.getNumVariables(), is(7));
+        assertThat(cnf.getNumClauses(), is(9));
+        assertThat(cnf.getLiteral(new File("a.c")), is(a));
+        assertThat(c < 0, is(true));
+        assertThat(cnf.getLiteral(new File("unknown.c")), is(0));
+    }
+
+    /**
+     * Tests that a single variable is mapped to its own literal, without clauses.
+     */
+    @Test
+    public void testVariable() {
+        CnfEncoder cnf = new CnfEncoder();
+
+        assertThat(cnf.add(new File("a.c"), new Variable("CONFIG_A")), is(1));
+        assertThat(cnf.add(new File("b.c"), new Negation(new Variable("CONFIG_A"))), is(-1));
+        assertThat(cnf.getNumClauses(), is(0));
+        assertThat(cnf.getVariable("CONFIG_A"), is(1));
+    }
+
+    /**
+     * Tests that constants are folded into a single true variable.
+     */
+    @Test
+    public void testConstants() {
+        CnfEncoder cnf = new CnfEncoder();
+        int t = cnf.add(new File("a.c"), True.INSTANCE);
+
+        assertThat(cnf.add(new File("b.c"), False.INSTANCE), is(-t));
+        assertThat(cnf.add(new File("c.c"), new Conjunction(True.INSTANCE, new Variable("CONFIG_A"))),
+                is(cnf.getVariable("CONFIG_A")));
+        assertThat(cnf.add(new File("d.c"), new Disjunction(True.INSTANCE, new Variable("CONFIG_A"))), is(t));
+        assertThat(cnf.add(new File("e.c"), new Conjunction(new Variable("CONFIG_B"),
+                new Negation(new Variable("CONFIG_B")))), is(-t));
+        // only the unit clause of the true variable
+        assertThat(cnf.getClauses(), is(new int[] {t, 0}));
+    }
+
+    /**
+     * Tests that the encoding is equivalent to the presence condition for every assignment of the variables, by
+     * propagating the gates in the order they were created.
+     */
+    @Test
+    public void testSemantics() {
+        Formula pc = new Disjunction(new Conjunction(new Variable("A"), new Negation(new Variable("B"))),
+                new Conjunction(new Negation(new Variable("A")), new Variable("C")));
+        CnfEncoder cnf = new CnfEncoder();
+        int literal = cnf.add(new File("a.c"), pc);
+        int[] clauses = cnf.getClauses();
+
+        for (int assignment = 0; assignment < 8; assignment++) {
+            boolean a = (assignment & 1) != 0;
+            boolean b = (assignment & 2) != 0;
+            boolean c = (assignment & 4) != 0;
+            boolean expected = a && !b || !a && c;
+
+            // the clauses of each gate are (-g a), (-g b), (g -a -b); each gate only uses earlier variables
+            boolean[] values = new boolean[cnf.getNumVariables() + 1];
+            values[cnf.getVariable("A")] = a;
+            values[cnf.getVariable("B")] = b;
+            values[cnf.getVariable("C")] = c;
+            for (int i = 0; i < clauses.length; i += 10) {
+                int gate = -clauses[i];
+                values[gate] = value(values, clauses[i + 1]) && value(values, clauses[i + 4]);
+            }
+            assertThat(Arrays.toString(new boolean[] {a, b, c}), value(values, literal), is(expected));
+            assertThat(isSatisfied(values, clauses), is(true));
+        }
+    }
+
+    /**
+     * Tests that three-valued literals are encoded in terms of the two-variable encoding, so that they are linked
+     * to the plain tristate variables.
+     */
+    @Test
+    public void testTristateLiterals() {
+        Formula yesOrModule = new Disjunction(new Variable("CONFIG_X"), new Variable("CONFIG_X_MODULE"));
+        // CONFIG_X && !(CONFIG_X || CONFIG_X_MODULE) is not satisfiable
+        Formula pc = new TristateLiterals(false).compact(
+                new Conjunction(new Variable("CONFIG_X"), new Negation(yesOrModule)));
+        Formula module = new TristateLiterals(false).compact(new Variable("CONFIG_X_MODULE"));
+        CnfEncoder cnf = new CnfEncoder();
+        int literal = cnf.add(new File("a.c"), pc);
+        int moduleLiteral = cnf.add(new File("b.c"), module);
+        int plainLiteral = cnf.add(new File("c.c"), yesOrModule);
+        int[] clauses = cnf.getClauses();
+
+        assertThat(cnf.getVariable("CONFIG_X={y,m}"), is(0));
+        assertThat(moduleLiteral, is(cnf.getVariable("CONFIG_X_MODULE")));
+        assertThat(cnf.getNumVariables(), is(4));
+
+        for (int assignment = 0; assignment < 4; assignment++) {
+            boolean x = (assignment & 1) != 0;
+            boolean xModule = (assignment & 2) != 0;
+
+            boolean[] values = new boolean[cnf.getNumVariables() + 1];
+            values[cnf.getVariable("CONFIG_X")] = x;
+            values[cnf.getVariable("CONFIG_X_MODULE")] = xModule;
+            for (int i = 0; i < clauses.length; i += 10) {
+                int gate = -clauses[i];
+                values[gate] = value(values, clauses[i + 1]) && value(values, clauses[i + 4]);
+            }
+            assertThat(value(values, literal), is(false));
+            assertThat(value(values, plainLiteral), is(x || xModule));
+            assertThat(isSatisfied(values, clauses), is(true));
+        }
+    }
+
+    /**
+     * Tests the DIMACS and mapping output.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testWrite() throws IOException {
+        CnfEncoder cnf = new CnfEncoder();
+        cnf.add(new File("a.c"), new Conjunction(new Variable("CONFIG_A"), new Variable("CONFIG_B")));
+        cnf.add(new File("b.c"), new Variable("CONFIG_A"));
+
+        File dimacs = File.createTempFile("cnf", ".dimacs");
+        File mapping = File.createTempFile("cnf", ".map");
+        try {
+            cnf.writeDimacs(dimacs);
+            cnf.writeMapping(mapping);
+
+            assertThat(Files.readAllLines(dimacs.toPath(), StandardCharsets.UTF_8), is(Arrays.asList(
+                    "c 1 CONFIG_A", "c 2 CONFIG_B", "p cnf 3 3", "-3 1 0", "-3 2 0", "3 -1 -2 0")));
+            assertThat(Files.readAllLines(mapping.toPath(), StandardCharsets.UTF_8), is(Arrays.asList(
+                    "3 a.c", "1 b.c")));
+        } finally {
+            dimacs.delete();
+            mapping.delete();
+        }
+    }
+
+    /**
+     * Returns the value of a literal.
+     *
+     * @param values The values of the variables.
+     * @param literal The literal.
+     * @return The value of the literal.
+     */
+    private static boolean value(boolean[] values, int literal) {
+        return literal > 0 ? values[literal] : !values[-literal];
+    }
+
+    /**
+     * Checks whether all clauses are satisfied.
+     *
+     * @param values The values of the variables.
+     * @param clauses The clauses, each terminated by 0.
+     * @return Whether all clauses are satisfied.
+     */
+    private static boolean isSatisfied(boolean[] values, int[] clauses) {
+        boolean result = true;
+        boolean clause = false;
+        for (int literal : clauses) {
+            if (literal == 0) {
+                result &= clause;
+                clause = false;
+            } else {
+                clause |= value(values, literal);
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.False;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+
+/**
+ * Tests the {@link CompactFormulaStore} and the {@link CompactBuildModel}.
+ * 
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class CompactFormulaStoreTest {
+    
+    private static final Variable A = new Variable("CONFIG_A");
+    
+    private static final Variable B = new Variable("CONFIG_B");
+    
+    private static final Variable C = new Variable("CONFIG_C");
+    
+    /**
+     * Tests that formulas are converted back to equal {@link Formula}s.
+     */
+    @Test
+    public void testRoundTrip() {
+        CompactFormulaStore store = new CompactFormulaStore();
+        Formula f1 = new Conjunction(A, new Disjunction(new Negation(B), C));
+        Formula f2 = new Disjunction(True.INSTANCE, new Negation(False.INSTANCE));
+        Formula f3 = A;
+        
+        int h1 = store.add(f1);
+        int h2 = store.add(f2);
+        int h3 = store.add(f3);
+        
+        assertThat(store.getNumFormulas(), is(3));
+        assertThat(store.toFormula(h1), is(f1));
+        assertThat(store.toFormula(h2), is(f2));
+        assertThat(store.toFormula(h3), is(f3));
+        assertThat(store.getLength(h1), is(6));
+        assertThat(store.getNumVariables(), is(3));
+    }
+    
+    /**
+     * Tests evaluation directly on the encoding.
+     */
+    @Test
+    public void testEvaluate() {
+        CompactFormulaStore store = new CompactFormulaStore();
+        int handle = store.add(new Conjunction(A, new Disjunction(new Negation(B), C)));
+        int a = store.getVariableId("CONFIG_A");
+        int b = store.getVariableId("CONFIG_B");
+        int c = store.getVariableId("CONFIG_C");
+        
+        BitSet config = new BitSet();
+        assertThat(store.evaluate(handle, config::get), is(false));
+        config.set(a);
+        assertThat(store.evaluate(handle, config::get), is(true));
+        config.set(b);
+        assertThat(store.evaluate(handle, config::get), is(false));
+        config.set(c);
+        assertThat(store.evaluate(handle, config::get), is(true));
+    }
+    
+    /**
+     * Tests the traversal over the variables of a formula.
+     */
+    @Test
+    public void testForEachVariable() {
+        CompactFormulaStore store = new CompactFormulaStore();
+        store.add(B);
+        int handle = store.add(new Disjunction(new Conjunction(A, B), new Negation(A)));
+        
+        List<String> names = new ArrayList<>();
+        store.forEachVariable(handle, id -> names.add(store.getVariableName(id)));
+        
+        assertThat(names, is(Arrays.asList("CONFIG_A", "CONFIG_B", "CONFIG_A")));
+    }
+    
+    /**
+     * Tests that invalid handles are rejected.
+     */
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testInvalidHandle() {
+        CompactFormulaStore store = new CompactFormulaStore();
+        store.add(A);
+        store.toFormula(1);
+    }
+    
+    /**
+     * Tests the {@link CompactBuildModel}.
+     */
+    @Test
+    public void testBuildModel() {
+        BuildModel original = new BuildModel();
+        original.add(new File("b.c"), new Conjunction(A, B));
+        original.add(new File("a.c"), A);
+        original.add(new File("dir/c.c"), True.INSTANCE);
+        
+        CompactBuildModel model = CompactBuildModel.create(original);
+        
+        assertThat(model.getSize(), is(3));
+        assertThat(model.getPc(new File("b.c")), is(new Conjunction(A, B)));
+        assertThat(model.getPc(new File("dir/c.c")), is(True.INSTANCE));
+        assertThat(model.contains(new File("d.c")), is(false));
+        assertThat(model.getHandle(new File("d.c")), is(-1));
+        
+        BitSet config = new BitSet();
+        config.set(model.getStore().getVariableId("CONFIG_A"));
+        assertThat(model.evaluate(new File("a.c"), config::get), is(true));
+        assertThat(model.evaluate(new File("b.c"), config::get), is(false));
+        assertThat(model.evaluate(new File("d.c"), config::get), is(false));
+        
+        List<File> files = new ArrayList<>();
+        model.forEach(files::add);
+        assertThat(files, is(Arrays.asList(new File("a.c"), new File("b.c"), new File("dir/c.c"))));
+        assertThat(model.toBuildModel().getSize(), is(3));
+    }
+    
+    /**
+     * Tests that the {@link CompactBuildModel.Builder} keeps the last presence condition of duplicate files.
+     */
+    @Test
+    public void testBuilder() {
+        CompactBuildModel.Builder builder = new CompactBuildModel.Builder();
+        builder.accept(new File("b.c"), A);
+        builder.accept(new File("a.c"), B);
+        builder.accept(new File("b.c"), C);
+        
+        CompactBuildModel model = builder.build();
+        
+        assertThat(model.getSize(), is(2));
+        assertThat(model.getPc(new File("a.c")), is(B));
+        assertThat(model.getPc(new File("b.c")), is(C));
+    }
+    
+    /**
+     * Tests that a formula that fails to encode does not corrupt the previously added formula.
+     */
+    @Test
+    public void testAddFailure() {
+        CompactFormulaStore store = new CompactFormulaStore();
+        int handle = store.add(new Conjunction(A, B));
+        
+        // too deep for the recursive encoding
+        Formula deep = C;
+        for (int i = 0; i < 1000000; i++) {
+            deep = new Negation(deep);
+        }
+        boolean failed = false;
+        try {
+            store.add(new Disjunction(A, deep));
+        } catch (StackOverflowError e) {
+            failed = true;
+        }
+        
+        assertThat(failed, is(true));
+        assertThat(store.toFormula(handle), is(new Conjunction(A, B)));
+        int next = store.add(B);
+        assertThat(next, is(handle + 1));
+        assertThat(store.toFormula(next), is(B));
+        assertThat(store.toFormula(handle), is(new Conjunction(A, B)));
+    }
+    
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+
+/**
+ * Tests the {@link ConfigurationEvaluator} and {@link KernelConfiguration}.
+ *
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class ConfigurationEvaluatorTest {
+
+    /**
+     * Creates a small build model covering the different kinds of variables.
+     *
+     * @return The build model.
+     */
+    private static BuildModel createBuildModel() {
+        BuildModel bm = new BuildModel();
+        bm.add(new File("a.c"), new Variable("CONFIG_A"));
+        bm.add(new File("b.c"), new Disjunction(new Variable("CONFIG_A"), new Variable("CONFIG_A_MODULE")));
+        bm.add(new File("c.c"), new Conjunction(new Variable("CONFIG_B={y,m}"),
+                new Negation(new Variable("CONFIG_C"))));
+        bm.add(new File("d.c"), True.INSTANCE);
+        bm.add(new File("e.c"), new Variable("CONFIG_S"));
+        return bm;
+    }
+
+    /**
+     * Tests reading a .config file.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testReadConfig() throws IOException {
+        File file = File.createTempFile("config", ".config");
+        try {
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+                out.println("#");
+                out.println("# Automatically generated file; DO NOT EDIT.");
+                out.println("CONFIG_A=m");
+                out.println("# CONFIG_C is not set");
+                out.println("CONFIG_B=y");
+                out.println("CONFIG_S=\"abc\"");
+            }
+            KernelConfiguration config = KernelConfiguration.read(file);
+
+            assertThat(config.getValue("CONFIG_A"), is("m"));
+            assertThat(config.getValue("CONFIG_B"), is("y"));
+            assertThat(config.getValue("CONFIG_C"), is("n"));
+            assertThat(config.getValue("CONFIG_S"), is("abc"));
+            assertThat(config.getValues().size(), is(4));
+            assertThat(config.getName(), is(file.getPath()));
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Tests the compile sets of two configurations.
+     */
+    @Test
+    public void testCompileSets() {
+        Map<String, String> values1 = new HashMap<>();
+        values1.put("CONFIG_A", "m");
+        values1.put("CONFIG_B", "y");
+        values1.put("CONFIG_C", "n");
+        values1.put("CONFIG_S", "abc");
+        Map<String, String> values2 = new HashMap<>();
+        values2.put("CONFIG_A", "y");
+        values2.put("CONFIG_B", "m");
+        values2.put("CONFIG_C", "y");
+        values2.put("CONFIG_S", "");
+
+        ConfigurationEvaluator evaluator = new ConfigurationEvaluator(CompactBuildModel.create(createBuildModel()));
+        ConfigurationEvaluator.Result result = evaluator.evaluate(Arrays.asList(
+                new KernelConfiguration("first", values1), new KernelConfiguration("second", values2)));
+
+        assertThat(result.getNumConfigurations(), is(2));
+        assertThat(result.getFiles(0), is(Arrays.asList(new File("b.c"), new File("c.c"), new File("d.c"),
+                new File("e.c"))));
+        assertThat(result.getFiles(1), is(Arrays.asList(new File("a.c"), new File("b.c"), new File("d.c"))));
+        assertThat(result.isCompiled(1, new File("a.c")), is(true));
+        assertThat(result.isCompiled(1, new File("unknown.c")), is(false));
+    }
+
+    /**
+     * Tests that the bit-parallel evaluation over several blocks and threads matches the evaluation of each
+     * presence condition on its own.
+     */
+    @Test
+    public void testMatchesSingleEvaluation() {
+        Random random = new Random(42);
+        BuildModel bm = new BuildModel();
+        for (int i = 0; i < 200; i++) {
+            Formula pc = randomVariable(random);
+            for (int j = 0; j < 4; j++) {
+                Formula operand = randomVariable(random);
+                if (random.nextInt(4) == 0) {
+                    operand = new Negation(operand);
+                }
+                pc = random.nextBoolean() ? new Conjunction(pc, operand) : new Disjunction(pc, operand);
+            }
+            bm.add(new File("file" + i + ".c"), pc);
+        }
+        List<KernelConfiguration> configs = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            Map<String, String> values = new HashMap<>();
+            for (int j = 0; j < 20; j++) {
+                values.put("CONFIG_V" + j, Arrays.asList("y", "m", "n").get(random.nextInt(3)));
+            }
+            configs.add(new KernelConfiguration("config" + i, values));
+        }
+
+        CompactBuildModel compact = CompactBuildModel.create(bm);
+        ConfigurationEvaluator evaluator = new ConfigurationEvaluator(compact);
+        evaluator.setThreads(3);
+        ConfigurationEvaluator.Result result = evaluator.evaluate(configs);
+
+        CompactFormulaStore store = compact.getStore();
+        for (int i = 0; i < configs.size(); i++) {
+            Map<String, String> values = configs.get(i).getValues();
+            for (File file : bm) {
+                boolean expected = compact.evaluate(file, id -> {
+                    String name = store.getVariableName(id);
+                    return name.endsWith("_MODULE") ? "m".equals(values.get(name.replace("_MODULE", "")))
+                            : "y".equals(values.get(name));
+                });
+                assertThat(file + " in config " + i, result.isCompiled(i, file), is(expected));
+            }
+        }
+    }
+
+    /**
+     * Tests evaluating no configurations.
+     */
+    @Test
+    public void testNoConfigurations() {
+        ConfigurationEvaluator evaluator = new ConfigurationEvaluator(CompactBuildModel.create(createBuildModel()));
+        ConfigurationEvaluator.Result result = evaluator.evaluate(Collections.emptyList());
+
+        assertThat(result.getNumConfigurations(), is(0));
+    }
+
+    /**
+     * Creates a random variable of the two-variable encoding.
+     *
+     * @param random The random generator.
+     * @return A random <code>CONFIG_V*</code> or <code>CONFIG_V*_MODULE</code> variable.
+     */
+    private static Formula randomVariable(Random random) {
+        return new Variable("CONFIG_V" + random.nextInt(20) + (random.nextBoolean() ? "_MODULE" : ""));
+    }
+
+}
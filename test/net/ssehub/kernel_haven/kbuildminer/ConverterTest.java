@@ -18,21 +18,30 @@ package net.ssehub.kernel_haven.kbuildminer;
 
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.junit.Test;
 
 import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
 import net.ssehub.kernel_haven.util.logic.False;
 import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
 import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
 import net.ssehub.kernel_haven.variability_model.VariabilityModel;
 import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
 
@@ -81,6 +90,68 @@ public class ConverterTest {
         assertThat(model.getPc(new File("notExisting.c")), nullValue());
     }
     
+    /**
+     * Tests the two-stage conversion: parsing without a variability model, then finishing with it.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testTwoStageConversion() throws IOException {
+        Converter c = new Converter();
+        
+        ParsedBuildModel parsed = c.parse(new File("testdata/pcs.txt"));
+        assertThat(parsed.getSize(), is(4));
+        assertThat(parsed.getModuleVariables(),
+                is(new HashSet<>(Arrays.asList("CONFIG_ALPHA_MODULE", "CONFIG_BETA_MODULE"))));
+        
+        Set<VariabilityVariable> vars = new HashSet<>();
+        vars.add(new VariabilityVariable("CONFIG_ALPHA", "bool"));
+        vars.add(new VariabilityVariable("CONFIG_BETA", "tristate"));
+        BuildModel model = c.finish(parsed, new VariabilityModel(null, vars));
+        
+        assertThat(model.getSize(), is(4));
+        assertThat(model.getPc(new File("file1.c")).toString(), is("CONFIG_ALPHA"));
+        assertThat(model.getPc(new File("file2.c")), instanceOf(True.class));
+        assertThat(model.getPc(new File("dir/file1.c")).toString(), is("CONFIG_BETA || CONFIG_BETA_MODULE"));
+        assertThat(model.getPc(new File("dir/file2.c")).toString(),
+                is("(CONFIG_BETA || CONFIG_BETA_MODULE) && CONFIG_ALPHA"));
+    }
+    
+    /**
+     * Tests that the second stage releases the parsed presence conditions, so that they don't stay reachable
+     * through the {@link ParsedBuildModel} while the rewritten ones are built.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testFinishReleasesParsedPcs() throws IOException {
+        Converter c = new Converter();
+        ParsedBuildModel parsed = c.parse(new File("testdata/pcs.txt"));
+        assertThat(parsed.getPc(0), notNullValue());
+        
+        c.finish(parsed, new VariabilityModel(null, new HashSet<VariabilityVariable>()));
+        
+        assertThat(parsed.getSize(), is(4));
+        for (int i = 0; i < parsed.getSize(); i++) {
+            try {
+                parsed.getPc(i);
+                fail("Presence condition " + i + " is still held by the parsed model");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        }
+    }
+    
+    /**
+     * Tests that the one-stage conversion requires a variability model.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testConvertWithoutVarModel() throws IOException {
+        new Converter().convert(new File("testdata/pcs.txt"));
+    }
+    
     /**
      * Tests that the InvalidExpression() parts produced by KbuildMiner are correctly handled.
      * 
@@ -111,4 +182,165 @@ public class ConverterTest {
         assertThat(f4, instanceOf(False.class));
     }
     
+    /**
+     * Tests that invalid presence conditions are summarized in the error report.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testErrorReport() throws IOException {
+        Converter c = new Converter(new VariabilityModel(null, new HashSet<VariabilityVariable>()));
+        
+        c.convert(new File("testdata/invalid_pcs.txt"));
+        
+        ParseErrorReport report = c.getErrorReport();
+        assertThat(report.getTotal(), is(3L));
+        assertThat(report.getCount(PcError.INVALID_EXPRESSION), is(2L));
+        assertThat(report.getCount(PcError.INVALID_IDENTIFIER), is(1L));
+        assertThat(report.getSamples().size(), is(3));
+        assertThat(report.getSamples().get(2),
+                is("line 4 (INVALID_IDENTIFIER): file4.c: this is not a valid formula."));
+    }
+    
+    /**
+     * Tests that the streaming conversion pushes the same presence conditions as the normal conversion, and ends
+     * the sink.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testStreamingConversion() throws IOException {
+        Set<VariabilityVariable> vars = new HashSet<>();
+        vars.add(new VariabilityVariable("CONFIG_ALPHA", "bool"));
+        vars.add(new VariabilityVariable("CONFIG_BETA", "tristate"));
+        Converter c = new Converter(new VariabilityModel(null, vars));
+        
+        BuildModel expected = c.convert(new File("testdata/pcs.txt"));
+        
+        List<File> order = new ArrayList<>();
+        boolean[] ended = {false};
+        BuildModel streamed = new BuildModel();
+        c.convert(new File("testdata/pcs.txt"), new PcSink() {
+            
+            @Override
+            public void accept(File file, Formula pc) {
+                order.add(file);
+                streamed.add(file, pc);
+            }
+            
+            @Override
+            public void end() {
+                ended[0] = true;
+            }
+        });
+        
+        assertThat(ended[0], is(true));
+        assertThat(order, is(Arrays.asList(new File("file1.c"), new File("file2.c"), new File("dir/file1.c"),
+                new File("dir/file2.c"))));
+        for (File file : expected) {
+            assertThat(file.getPath(), streamed.getPc(file), is(expected.getPc(file)));
+        }
+    }
+    
+    /**
+     * Tests that the direct conversion to a {@link CompactBuildModel} results in the same presence conditions as
+     * the conversion to a {@link BuildModel}.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testConvertCompact() throws IOException {
+        Set<VariabilityVariable> vars = new HashSet<>();
+        vars.add(new VariabilityVariable("CONFIG_ALPHA", "bool"));
+        vars.add(new VariabilityVariable("CONFIG_BETA", "tristate"));
+        Converter c = new Converter(new VariabilityModel(null, vars));
+        
+        BuildModel expected = c.convert(new File("testdata/pcs.txt"));
+        CompactBuildModel compact = c.convertCompact(new File("testdata/pcs.txt"));
+        
+        assertThat(compact.getSize(), is(expected.getSize()));
+        for (File file : expected) {
+            assertThat(file.getPath(), compact.getPc(file), is(expected.getPc(file)));
+        }
+    }
+    
+    /**
+     * Tests that the streaming conversion to a {@link HierarchicalBuildModel} yields the same presence conditions as
+     * the normal conversion.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testConvertHierarchical() throws IOException {
+        Set<VariabilityVariable> vars = new HashSet<>();
+        vars.add(new VariabilityVariable("CONFIG_ALPHA", "bool"));
+        vars.add(new VariabilityVariable("CONFIG_BETA", "tristate"));
+        Converter c = new Converter(new VariabilityModel(null, vars));
+        
+        BuildModel expected = c.convert(new File("testdata/pcs.txt"));
+        HierarchicalBuildModel hierarchical = c.convertHierarchical(new File("testdata/pcs.txt"));
+        
+        assertThat(hierarchical.getSize(), is(expected.getSize()));
+        for (File file : expected) {
+            assertThat(file.getPath(), hierarchical.getPc(file), is(expected.getPc(file)));
+        }
+    }
+    
+    /**
+     * Tests that the fingerprint records the conversion options.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testFingerprintOptions() throws IOException {
+        Converter c = new Converter(new VariabilityModel(null, new HashSet<VariabilityVariable>()));
+        c.setBuildFingerprint(true);
+        c.convert(new File("testdata/pcs.txt"));
+        long minimal = c.getFingerprint().getOptionsHash();
+        
+        c.convert(new File("testdata/pcs.txt"));
+        assertThat(c.getFingerprint().getOptionsHash(), is(minimal));
+        
+        c.setSimplificationLevel(PcSimplifier.Level.FULL);
+        c.convert(new File("testdata/pcs.txt"));
+        assertThat(c.getFingerprint().getOptionsHash(), not(minimal));
+    }
+    
+    /**
+     * Tests that an exception of the sink aborts the streaming conversion.
+     * 
+     * @throws IOException wanted.
+     */
+    @Test(expected = IOException.class)
+    public void testStreamingSinkFailure() throws IOException {
+        Converter c = new Converter(new VariabilityModel(null, new HashSet<VariabilityVariable>()));
+        c.convert(new File("testdata/pcs.txt"), (file, pc) -> {
+            throw new IOException("sink failure");
+        });
+    }
+    
+    /**
+     * Tests that negations survive the tristate rewriting and are only simplified afterwards if the simplification
+     * is enabled.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testNegation() throws IOException {
+        Set<VariabilityVariable> vars = new HashSet<>();
+        vars.add(new VariabilityVariable("CONFIG_ALPHA", "bool"));
+        vars.add(new VariabilityVariable("CONFIG_BETA", "tristate"));
+        Converter c = new Converter(new VariabilityModel(null, vars));
+        
+        BuildModel model = c.convert(new File("testdata/negated_pcs.txt"));
+        assertThat(model.getPc(new File("file1.c")), is(new Negation(False.INSTANCE)));
+        
+        c.setSimplificationLevel(PcSimplifier.Level.FULL);
+        model = c.convert(new File("testdata/negated_pcs.txt"));
+        
+        assertThat(model.getPc(new File("file1.c")), is(True.INSTANCE));
+        assertThat(model.getPc(new File("file2.c")), is(new Conjunction(new Negation(new Variable("CONFIG_ALPHA")),
+                new Disjunction(new Variable("CONFIG_BETA"), new Variable("CONFIG_BETA_MODULE")))));
+    }
+    
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.kbuildminer.ExtractionMetrics.Phase;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
+
+/**
+ * Tests the {@link ExtractionMetrics}.
+ * 
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class ExtractionMetricsTest {
+
+    /**
+     * Tests that the converter records its counters.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testConverterCounters() throws IOException {
+        Converter c = new Converter(new VariabilityModel(null, new HashSet<VariabilityVariable>()));
+        ExtractionMetrics metrics = new ExtractionMetrics();
+        c.setMetrics(metrics);
+        
+        c.convert(new File("testdata/invalid_pcs.txt"));
+        
+        assertThat(metrics.getLinesRead(), is(4L));
+        assertThat(metrics.getInvalidExpressions(), is(2L));
+        assertThat(metrics.getPcsParsed(), is(1L));
+        assertThat(metrics.getParseFailures(), is(1L));
+        assertThat(metrics.getBuildModelSize(), is(4L));
+    }
+    
+    /**
+     * Tests that phase times are accumulated and that only the peak output size is kept.
+     */
+    @Test
+    public void testPhasesAndPeak() {
+        ExtractionMetrics metrics = new ExtractionMetrics();
+        metrics.addPhaseTime(Phase.CONVERSION, 2_000_000);
+        metrics.addPhaseTime(Phase.CONVERSION, 3_000_000);
+        metrics.recordOutputSize(100);
+        metrics.recordOutputSize(50);
+        
+        assertThat(metrics.getPhaseNanos(Phase.CONVERSION), is(5_000_000L));
+        assertThat(metrics.getPhaseMillis().get("CONVERSION"), is(5L));
+        assertThat(metrics.getPhaseMillis().get("KBUILDMINER"), is(0L));
+        assertThat(metrics.getPeakOutputBytes(), is(100L));
+    }
+    
+    /**
+     * Tests that a reset clears all timings and counters, so that a second run doesn't report cumulative values.
+     */
+    @Test
+    public void testReset() {
+        ExtractionMetrics metrics = new ExtractionMetrics();
+        metrics.addPhaseTime(Phase.KBUILDMINER, 2_000_000);
+        metrics.incLinesRead();
+        metrics.incPcsParsed();
+        metrics.recordOutputSize(100);
+        metrics.setBuildModelSize(3);
+        
+        metrics.reset();
+        metrics.incLinesRead();
+        
+        assertThat(metrics.getPhaseNanos(Phase.KBUILDMINER), is(0L));
+        assertThat(metrics.getLinesRead(), is(1L));
+        assertThat(metrics.getPcsParsed(), is(0L));
+        assertThat(metrics.getPeakOutputBytes(), is(0L));
+        assertThat(metrics.getBuildModelSize(), is(0L));
+    }
+    
+    /**
+     * Tests the JSON summary.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testWriteJson() throws IOException {
+        ExtractionMetrics metrics = new ExtractionMetrics();
+        metrics.incLinesRead();
+        metrics.incModuleRewrites();
+        metrics.addPhaseTime(Phase.TOP_FOLDERS, 7_000_000);
+        
+        File file = File.createTempFile("metrics", ".json");
+        file.deleteOnExit();
+        metrics.writeJson(file);
+        
+        String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        assertThat(json, containsString("\"TOP_FOLDERS\": 7"));
+        assertThat(json, containsString("\"linesRead\": 1,"));
+        assertThat(json, containsString("\"moduleRewrites\": 1,"));
+        assertThat(json, containsString("\"buildModelSize\": 0\n}"));
+    }
+    
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+
+/**
+ * Tests the {@link HierarchicalBuildModel}.
+ * 
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class HierarchicalBuildModelTest {
+    
+    private static final Variable DRIVERS = new Variable("CONFIG_DRIVERS");
+    
+    private static final Variable NET = new Variable("CONFIG_NET");
+    
+    private static final Variable A = new Variable("CONFIG_A");
+    
+    private static final Variable B = new Variable("CONFIG_B");
+
+    /**
+     * Creates a small model where drivers/ and drivers/net/ share conditions.
+     * 
+     * @return The hierarchical model.
+     */
+    private static HierarchicalBuildModel createModel() {
+        BuildModel flat = new BuildModel();
+        flat.add(new File("drivers/net/a.c"), new Conjunction(DRIVERS, new Conjunction(NET, A)));
+        flat.add(new File("drivers/net/b.c"), new Conjunction(DRIVERS, new Conjunction(NET, B)));
+        flat.add(new File("drivers/c.c"), DRIVERS);
+        flat.add(new File("init.c"), True.INSTANCE);
+        return HierarchicalBuildModel.create(flat);
+    }
+    
+    /**
+     * Tests that shared conjuncts are stored at the directories.
+     */
+    @Test
+    public void testFactoring() {
+        HierarchicalBuildModel model = createModel();
+        
+        assertThat(model.getSize(), is(4));
+        assertThat(model.getDirectoryConjuncts(new File("")), is(Collections.<Formula>emptyList()));
+        assertThat(model.getDirectoryConjuncts(new File("drivers")), is(Arrays.<Formula>asList(DRIVERS)));
+        assertThat(model.getDirectoryConjuncts(new File("drivers/net")), is(Arrays.<Formula>asList(NET)));
+        assertThat(model.getDirectoryConjuncts(new File("kernel")), nullValue());
+    }
+    
+    /**
+     * Tests that the full presence conditions are re-assembled on lookup.
+     */
+    @Test
+    public void testGetPc() {
+        HierarchicalBuildModel model = createModel();
+        
+        assertThat(model.getPc(new File("drivers/net/a.c")), is(new Conjunction(DRIVERS, new Conjunction(NET, A))));
+        assertThat(model.getPc(new File("drivers/net/b.c")), is(new Conjunction(DRIVERS, new Conjunction(NET, B))));
+        assertThat(model.getPc(new File("drivers/c.c")), is(DRIVERS));
+        assertThat(model.getPc(new File("init.c")), is(True.INSTANCE));
+        assertThat(model.getPc(new File("drivers/net/missing.c")), nullValue());
+        assertThat(model.getPc(new File("missing/a.c")), nullValue());
+    }
+    
+    /**
+     * Tests the conversion back to a flat {@link BuildModel}.
+     */
+    @Test
+    public void testToBuildModel() {
+        BuildModel flat = createModel().toBuildModel();
+        
+        assertThat(flat.getSize(), is(4));
+        assertThat(flat.getPc(new File("drivers/net/b.c")), is(new Conjunction(DRIVERS, new Conjunction(NET, B))));
+        assertThat(flat.getPc(new File("init.c")), is(True.INSTANCE));
+    }
+    
+    /**
+     * Tests that adding the files one by one, in a different order, results in the same factoring.
+     */
+    @Test
+    public void testIncrementalAdd() {
+        HierarchicalBuildModel model = new HierarchicalBuildModel();
+        model.add(new File("init.c"), True.INSTANCE);
+        assertThat(model.getDirectoryConjuncts(new File("")), is(Collections.<Formula>emptyList()));
+        
+        model.add(new File("drivers/c.c"), DRIVERS);
+        model.add(new File("drivers/net/b.c"), new Conjunction(DRIVERS, new Conjunction(NET, B)));
+        assertThat(model.getDirectoryConjuncts(new File("drivers/net")), is(Arrays.<Formula>asList(NET, B)));
+        
+        model.add(new File("drivers/net/a.c"), new Conjunction(DRIVERS, new Conjunction(NET, A)));
+        
+        assertThat(model.getSize(), is(4));
+        assertThat(model.getDirectoryConjuncts(new File("")), is(Collections.<Formula>emptyList()));
+        assertThat(model.getDirectoryConjuncts(new File("drivers")), is(Arrays.<Formula>asList(DRIVERS)));
+        assertThat(model.getDirectoryConjuncts(new File("drivers/net")), is(Arrays.<Formula>asList(NET)));
+        assertThat(model.getPc(new File("drivers/net/a.c")), is(new Conjunction(DRIVERS, new Conjunction(NET, A))));
+        assertThat(model.getPc(new File("drivers/net/b.c")), is(new Conjunction(DRIVERS, new Conjunction(NET, B))));
+        assertThat(model.getPc(new File("drivers/c.c")), is(DRIVERS));
+    }
+    
+    /**
+     * Tests that conjuncts that are no longer shared are pushed down to the other files of the directory.
+     */
+    @Test
+    public void testPushDown() {
+        HierarchicalBuildModel model = new HierarchicalBuildModel();
+        model.add(new File("drivers/net/a.c"), new Conjunction(DRIVERS, new Conjunction(NET, A)));
+        assertThat(model.getDirectoryConjuncts(new File("")), is(Arrays.<Formula>asList(DRIVERS, NET, A)));
+        
+        model.add(new File("init.c"), B);
+        
+        assertThat(model.getDirectoryConjuncts(new File("")), is(Collections.<Formula>emptyList()));
+        assertThat(model.getDirectoryConjuncts(new File("drivers")), is(Arrays.<Formula>asList(DRIVERS, NET, A)));
+        assertThat(model.getPc(new File("drivers/net/a.c")), is(new Conjunction(DRIVERS, new Conjunction(NET, A))));
+        assertThat(model.getPc(new File("init.c")), is(B));
+    }
+    
+    /**
+     * Tests that adding a file again replaces its presence condition.
+     */
+    @Test
+    public void testReplace() {
+        HierarchicalBuildModel model = createModel();
+        model.add(new File("drivers/c.c"), new Conjunction(DRIVERS, A));
+        
+        assertThat(model.getSize(), is(4));
+        assertThat(model.getPc(new File("drivers/c.c")), is(new Conjunction(DRIVERS, A)));
+        assertThat(model.getPc(new File("drivers/net/a.c")), is(new Conjunction(DRIVERS, new Conjunction(NET, A))));
+    }
+    
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+
+/**
+ * Tests the {@link KbuildMakefileMiner}.
+ *
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class KbuildMakefileMinerTest {
+
+    /**
+     * Runs the miner and collects its results.
+     *
+     * @param sourceTree The source tree.
+     * @param topFolders The top folders.
+     * @return The presence conditions of the found files.
+     *
+     * @throws IOException unwanted.
+     */
+    private static Map<File, Formula> run(File sourceTree, String topFolders) throws IOException {
+        Map<File, Formula> result = new HashMap<>();
+        new KbuildMakefileMiner(sourceTree, topFolders, 4).run((file, pc) -> result.put(file, pc));
+        return result;
+    }
+
+    /**
+     * Creates the condition that a tristate variable is enabled.
+     *
+     * @param name The name of the variable.
+     * @return The condition.
+     */
+    private static Formula enabled(String name) {
+        return new Disjunction(new Variable(name), new Variable(name + "_MODULE"));
+    }
+
+    /**
+     * Tests the miner on testdata/pseudo_linux.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testPseudoLinux() throws IOException {
+        Map<File, Formula> pcs = run(new File("testdata/pseudo_linux"), "arch/x86,drivers,kernel");
+
+        assertThat(pcs.size(), is(3));
+        assertThat(pcs.get(new File("arch/x86/kernel.c")), is(True.INSTANCE));
+        assertThat(pcs.get(new File("drivers/driver.c")), is(enabled("CONFIG_A")));
+        assertThat(pcs.get(new File("kernel/core/core.c")), is(True.INSTANCE));
+    }
+
+    /**
+     * Tests composite objects, conditional blocks, line continuations and conditional subdirectories.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testKbuildFeatures() throws IOException {
+        Map<File, Formula> pcs = run(new File("testdata/kbuild_features"), "drivers");
+
+        assertThat(pcs.size(), is(8));
+        assertThat(pcs.get(new File("drivers/base.c")), is(True.INSTANCE));
+        assertThat(pcs.get(new File("drivers/snd_core.c")), is(enabled("CONFIG_SND")));
+        assertThat(pcs.get(new File("drivers/snd_pcm.S")),
+                is(new Conjunction(enabled("CONFIG_SND"), enabled("CONFIG_SND_PCM"))));
+        assertThat(pcs.get(new File("drivers/debug.c")), is(enabled("CONFIG_DEBUG")));
+        assertThat(pcs.get(new File("drivers/nodebug.c")), is(new Negation(enabled("CONFIG_DEBUG"))));
+        assertThat(pcs.get(new File("drivers/smp.c")), is(new Variable("CONFIG_SMP")));
+        assertThat(pcs.get(new File("drivers/continued.c")), is(enabled("CONFIG_X")));
+        assertThat(pcs.get(new File("drivers/net/e1000.c")),
+                is(new Conjunction(enabled("CONFIG_NET"), enabled("CONFIG_E1000"))));
+        assertThat(pcs.containsKey(new File("drivers/never.c")), is(false));
+    }
+
+    /**
+     * Tests that only the Kbuild files of the architectures may reference directories relative to the source tree.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testDirectoryResolution() throws IOException {
+        Map<File, Formula> pcs = run(new File("testdata/kbuild_directories"), "arch/x86,drivers");
+
+        assertThat(pcs.size(), is(3));
+        assertThat(pcs.get(new File("arch/x86/kernel.c")), is(True.INSTANCE));
+        assertThat(pcs.get(new File("arch/x86/mm/init.c")), is(enabled("CONFIG_MM")));
+        assertThat(pcs.get(new File("drivers/usb/core/hub.c")),
+                is(new Conjunction(enabled("CONFIG_USB"), enabled("CONFIG_HUB"))));
+        assertThat(pcs.containsKey(new File("net/socket.c")), is(false));
+    }
+
+    /**
+     * Tests that a missing top folder results in no files.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testMissingTopFolder() throws IOException {
+        assertThat(run(new File("testdata/pseudo_linux"), "doesnt_exist").isEmpty(), is(true));
+    }
+
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+import net.ssehub.kernel_haven.PipelineConfigurator;
+import net.ssehub.kernel_haven.SetUpException;
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.config.DefaultSettings;
+import net.ssehub.kernel_haven.test_utils.TestConfiguration;
+import net.ssehub.kernel_haven.util.ExtractorException;
+import net.ssehub.kernel_haven.util.Util;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
+
+/**
+ * End-to-end load benchmark on {@link SyntheticKbuildTree}s of increasing size. For each size tier, this measures
+ * the time and the peak heap of this JVM for determining the top folders, for the {@link Converter} on a
+ * KbuildMiner output file, for the {@link ConfigurationEvaluator} on random configurations of the converted model,
+ * and for the full {@link KbuildMinerExtractor}. The memory of the separate KbuildMiner
+ * JVM is not included. Run via the <code>benchmark</code> target in <code>build.xml</code>.
+ *
+ * @author Adam
+ */
+public class KbuildMinerBenchmark {
+
+    /**
+     * The number of random configurations for the {@link ConfigurationEvaluator} phase. Kept small, since each
+     * configuration holds a map entry for each enabled variable of the tree.
+     */
+    private static final int NUM_CONFIGURATIONS = 256;
+
+    private final PrintWriter out;
+
+    private final KbuildMinerExtractor.Backend backend;
+
+    /**
+     * Creates a benchmark.
+     *
+     * @param out The writer to write the CSV results to.
+     * @param backend The backend to run the extractor with.
+     */
+    public KbuildMinerBenchmark(PrintWriter out, KbuildMinerExtractor.Backend backend) {
+        this.out = out;
+        this.backend = backend;
+        out.println("files,phase,time_ms,peak_heap_mb,result_size");
+    }
+
+    /**
+     * Runs all phases on a tree of the given size.
+     *
+     * @param numFiles The number of files in the tree.
+     * @param workDir The directory to generate the tree in; deleted afterwards.
+     *
+     * @throws IOException If generating the tree or an I/O operation of a phase fails.
+     * @throws SetUpException If setting up the extractor fails.
+     * @throws ExtractorException If the extractor fails.
+     */
+    public void runTier(int numFiles, File workDir) throws IOException, SetUpException, ExtractorException {
+        File sourceTree = new File(workDir, "tree");
+        File pcFile = new File(workDir, "pcs.txt");
+        File resourceDir = new File(workDir, "res");
+        resourceDir.mkdirs();
+
+        SyntheticKbuildTree tree = new SyntheticKbuildTree(numFiles, 4, 0.5, numFiles);
+        tree.write(sourceTree);
+        tree.writePcFile(pcFile);
+
+        try {
+            startMeasurement();
+            long start = System.nanoTime();
+            String topFolders = KbuildMinerExtractor.determineTopFolders(sourceTree);
+            report(numFiles, "top_folders", start, topFolders.split(",").length - 1);
+
+            startMeasurement();
+            start = System.nanoTime();
+            BuildModel converted = new Converter(new VariabilityModel(null, new HashSet<VariabilityVariable>()))
+                    .convert(pcFile);
+            report(numFiles, "converter", start, converted.getSize());
+
+            List<KernelConfiguration> configurations = createConfigurations(tree.getNumVariables(), numFiles);
+            startMeasurement();
+            start = System.nanoTime();
+            ConfigurationEvaluator evaluator = new ConfigurationEvaluator(CompactBuildModel.create(converted));
+            evaluator.setThreads(Runtime.getRuntime().availableProcessors());
+            evaluator.evaluate(configurations);
+            report(numFiles, "evaluator", start, configurations.size());
+            converted = null;
+
+            startMeasurement();
+            start = System.nanoTime();
+            BuildModel extracted = runExtractor(sourceTree, resourceDir, tree.getTopFolders());
+            report(numFiles, "extractor_" + backend.name().toLowerCase(), start, extracted.getSize());
+
+        } finally {
+            Util.deleteFolder(workDir);
+        }
+    }
+
+    /**
+     * Creates {@link #NUM_CONFIGURATIONS} random configurations for the variables of a {@link SyntheticKbuildTree}.
+     *
+     * @param numVariables The number of variables of the tree.
+     * @param seed The seed for the random generator.
+     * @return The configurations.
+     */
+    private static List<KernelConfiguration> createConfigurations(int numVariables, long seed) {
+        Random random = new Random(seed);
+        List<KernelConfiguration> result = new ArrayList<>(NUM_CONFIGURATIONS);
+        for (int i = 0; i < NUM_CONFIGURATIONS; i++) {
+            Map<String, String> config = new HashMap<>();
+            for (int j = 0; j < numVariables; j++) {
+                // a third of the variables each is y, m and not set
+                int value = random.nextInt(3);
+                if (value < 2) {
+                    config.put("CONFIG_SYN_" + j, value == 0 ? "y" : "m");
+                }
+            }
+            result.add(new KernelConfiguration("random" + i, config));
+        }
+        return result;
+    }
+
+    /**
+     * Runs the full extractor, like a KernelHaven pipeline would.
+     *
+     * @param sourceTree The source tree.
+     * @param resourceDir The resource directory.
+     * @param topFolders The top folders.
+     * @return The extracted build model.
+     *
+     * @throws SetUpException If setting up the extractor fails.
+     * @throws ExtractorException If the extractor fails.
+     */
+    private BuildModel runExtractor(File sourceTree, File resourceDir, String topFolders)
+            throws SetUpException, ExtractorException {
+
+        TestConfiguration config = new TestConfiguration(new Properties());
+        config.registerSetting(KbuildMinerExtractor.TOP_FOLDERS);
+        config.setValue(KbuildMinerExtractor.TOP_FOLDERS, topFolders);
+        config.registerSetting(KbuildMinerExtractor.BACKEND);
+        config.setValue(KbuildMinerExtractor.BACKEND, backend);
+        config.setValue(DefaultSettings.RESOURCE_DIR, resourceDir);
+        config.setValue(DefaultSettings.SOURCE_TREE, sourceTree);
+
+        PipelineConfigurator configurator = PipelineConfigurator.instance();
+        configurator.init(config);
+        configurator.instantiateExtractors();
+        configurator.createProviders();
+
+        KbuildMinerExtractor extractor = new KbuildMinerExtractor();
+        extractor.init(config);
+        return extractor.runOnFile(sourceTree);
+    }
+
+    /**
+     * Collects garbage and resets the peak usage of the heap memory pools.
+     */
+    private static void startMeasurement() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Writes a CSV line for a finished phase.
+     *
+     * @param numFiles The size tier.
+     * @param phase The name of the phase.
+     * @param start The {@link System#nanoTime()} at the start of the phase.
+     * @param resultSize The size of the result of the phase, e.g. the number of files in the build model.
+     */
+    private void report(int numFiles, String phase, long start, int resultSize) {
+        long time = (System.nanoTime() - start) / 1_000_000;
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        out.println(numFiles + "," + phase + "," + time + "," + peak / (1024 * 1024) + "," + resultSize);
+        out.flush();
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args The comma separated size tiers (default <code>1000,10000,50000</code>), the CSV file to write the
+     *      results to (default standard output), and the backend (default <code>KBUILDMINER</code>).
+     *
+     * @throws IOException If generating a tree or writing the results fails.
+     * @throws SetUpException If setting up the extractor fails.
+     * @throws ExtractorException If the extractor fails.
+     */
+    public static void main(String[] args) throws IOException, SetUpException, ExtractorException {
+        String tiers = args.length > 0 ? args[0] : "1000,10000,50000";
+        PrintWriter out = args.length > 1 && !args[1].isEmpty()
+                ? new PrintWriter(Files.newBufferedWriter(new File(args[1]).toPath(), StandardCharsets.UTF_8))
+                : new PrintWriter(System.out);
+        KbuildMinerExtractor.Backend backend = args.length > 2
+                ? KbuildMinerExtractor.Backend.valueOf(args[2]) : KbuildMinerExtractor.Backend.KBUILDMINER;
+
+        try {
+            KbuildMinerBenchmark benchmark = new KbuildMinerBenchmark(out, backend);
+            for (String tier : tiers.split(",")) {
+                benchmark.runTier(Integer.parseInt(tier.trim()),
+                        Files.createTempDirectory("kbuild_benchmark").toFile());
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+}
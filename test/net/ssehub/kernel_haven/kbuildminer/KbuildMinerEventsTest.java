@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Tests the {@link KbuildMinerEvents}.
+ *
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class KbuildMinerEventsTest {
+
+    private static final String EXTRACTION = "net.ssehub.kernel_haven.kbuildminer.Extraction";
+
+    /**
+     * Tests that the events are disabled and can be used without a running recording.
+     */
+    @Test
+    public void testWithoutRecording() {
+        KbuildMinerEvents.Extraction event = new KbuildMinerEvents.Extraction();
+        event.begin();
+        event.end();
+
+        assertThat(event.isEnabled(), is(false));
+        assertThat(event.shouldCommit(), is(false));
+        // does nothing
+        event.commit();
+    }
+
+    /**
+     * Tests that committed events end up in a recording, including failed extractions.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testRecording() throws IOException {
+        assertThat(KbuildMinerEvents.isAvailable(), is(true));
+
+        File dump = File.createTempFile("events", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(EXTRACTION).withoutThreshold();
+            recording.start();
+
+            KbuildMinerEvents.Extraction event = new KbuildMinerEvents.Extraction();
+            event.begin();
+            event.end();
+            assertThat(event.shouldCommit(), is(true));
+            event.setSourceTree("linux");
+            event.setTopFolders("kernel");
+            event.setFailed(true);
+            event.commit();
+
+            recording.stop();
+            recording.dump(dump.toPath());
+
+            List<RecordedEvent> events = new ArrayList<>();
+            for (RecordedEvent recorded : RecordingFile.readAllEvents(dump.toPath())) {
+                if (recorded.getEventType().getName().equals(EXTRACTION)) {
+                    events.add(recorded);
+                }
+            }
+            assertThat(events.size(), is(1));
+            assertThat(events.get(0).getString("sourceTree"), is("linux"));
+            assertThat(events.get(0).getBoolean("failed"), is(true));
+            assertThat(events.get(0).getInt("buildModelSize"), is(0));
+        } finally {
+            dump.delete();
+        }
+    }
+
+}
@@ -76,8 +76,43 @@ public class KbuildMinerExtractorTest {
      * @throws SetUpException If creating the configuration or initializing the extractor fails.
      * @throws ExtractorException If the extractor throws an exception.
      */
-    @SuppressWarnings("null")
     private BuildModel run(File sourceTree, String ... topFolders) throws SetUpException, ExtractorException {
+        return run(sourceTree, KbuildMinerExtractor.Backend.KBUILDMINER, topFolders);
+    }
+    
+    /**
+     * Runs the {@link KbuildMinerExtractor} on the given target with the given backend.
+     * 
+     * @param sourceTree The source tree to run on.
+     * @param backend The backend to use.
+     * @param topFolders The top folders in the source tree.
+     * 
+     * @return The build model created by the extractor.
+     * 
+     * @throws SetUpException If creating the configuration or initializing the extractor fails.
+     * @throws ExtractorException If the extractor throws an exception.
+     */
+    private BuildModel run(File sourceTree, KbuildMinerExtractor.Backend backend, String ... topFolders)
+            throws SetUpException, ExtractorException {
+        
+        return run(createConfig(sourceTree, backend, topFolders), sourceTree);
+    }
+    
+    /**
+     * Creates the configuration for running the {@link KbuildMinerExtractor}.
+     * 
+     * @param sourceTree The source tree to run on.
+     * @param backend The backend to use.
+     * @param topFolders The top folders in the source tree.
+     * 
+     * @return The configuration.
+     * 
+     * @throws SetUpException If creating the configuration fails.
+     */
+    @SuppressWarnings("null")
+    private TestConfiguration createConfig(File sourceTree, KbuildMinerExtractor.Backend backend,
+            String ... topFolders) throws SetUpException {
+        
         StringBuilder topFoldersString = new StringBuilder();
         for (int i = 0; i < topFolders.length; i++) {
             topFoldersString.append(topFolders[i]);
@@ -89,9 +124,26 @@ public class KbuildMinerExtractorTest {
         TestConfiguration config = new TestConfiguration(new Properties());
         config.registerSetting(KbuildMinerExtractor.TOP_FOLDERS);
         config.setValue(KbuildMinerExtractor.TOP_FOLDERS, topFoldersString.toString());
+        config.registerSetting(KbuildMinerExtractor.BACKEND);
+        config.setValue(KbuildMinerExtractor.BACKEND, backend);
         config.setValue(DefaultSettings.RESOURCE_DIR, RESOURCE_DIR);
         config.setValue(DefaultSettings.SOURCE_TREE, sourceTree);
-        
+        return config;
+    }
+    
+    /**
+     * Runs the {@link KbuildMinerExtractor} with the given configuration.
+     * 
+     * @param config The configuration, see {@link #createConfig(File, KbuildMinerExtractor.Backend, String...)}.
+     * @param sourceTree The source tree to run on.
+     * 
+     * @return The build model created by the extractor.
+     * 
+     * @throws SetUpException If initializing the extractor fails.
+     * @throws ExtractorException If the extractor throws an exception.
+     */
+    @SuppressWarnings("null")
+    private BuildModel run(TestConfiguration config, File sourceTree) throws SetUpException, ExtractorException {
         PipelineConfigurator configurator = PipelineConfigurator.instance();
         configurator.init(config);
         configurator.instantiateExtractors();
@@ -120,4 +172,74 @@ public class KbuildMinerExtractorTest {
         assertThat(bm.getPc(new File("kernel/core/core.c")), is(True.INSTANCE));
     }
     
+    /**
+     * Asserts that the Java backend produces the same build model as kbuildminer.jar.
+     * 
+     * @param sourceTree The source tree.
+     * @param topFolders The top folders.
+     * 
+     * @throws SetUpException unwanted.
+     * @throws ExtractorException unwanted.
+     */
+    @SuppressWarnings("null")
+    private void assertEquivalentBackends(File sourceTree, String... topFolders)
+            throws SetUpException, ExtractorException {
+        
+        BuildModel jar = run(sourceTree, KbuildMinerExtractor.Backend.KBUILDMINER, topFolders);
+        BuildModel java = run(sourceTree, KbuildMinerExtractor.Backend.JAVA, topFolders);
+        
+        assertThat(java.getSize(), is(jar.getSize()));
+        for (File file : jar) {
+            assertThat(file.getPath(), java.getPc(file), is(jar.getPc(file)));
+        }
+    }
+    
+    /**
+     * Tests that the Java backend produces the same build model as kbuildminer.jar on testdata/pseudo_linux.
+     * 
+     * @throws ExtractorException unwanted. 
+     * @throws SetUpException unwanted.
+     */
+    @Test
+    public void testJavaBackendEquivalence() throws SetUpException, ExtractorException {
+        assertEquivalentBackends(new File("testdata/pseudo_linux"), "arch/x86", "drivers", "kernel");
+    }
+    
+    /**
+     * Tests that the Java backend produces the same build model as kbuildminer.jar on testdata/kbuild_directories,
+     * which covers nested directories and directory references relative to the source tree. This only uses
+     * <code>obj-y</code>, <code>obj-$(CONFIG_X)</code> and subdirectories; the other constructs of
+     * testdata/kbuild_features are handled differently by the two backends (see
+     * {@link KbuildMinerExtractor#BACKEND}).
+     * 
+     * @throws ExtractorException unwanted. 
+     * @throws SetUpException unwanted.
+     */
+    @Test
+    public void testJavaBackendEquivalenceDirectories() throws SetUpException, ExtractorException {
+        assertEquivalentBackends(new File("testdata/kbuild_directories"), "arch/x86", "drivers");
+    }
+    
+    /**
+     * Tests that starting KbuildMiner speculatively in init() produces the same build model.
+     * 
+     * @throws ExtractorException unwanted. 
+     * @throws SetUpException unwanted.
+     */
+    @Test
+    @SuppressWarnings("null")
+    public void testEagerStart() throws SetUpException, ExtractorException {
+        File sourceTree = new File("testdata/pseudo_linux");
+        TestConfiguration config = createConfig(sourceTree, KbuildMinerExtractor.Backend.KBUILDMINER,
+                "arch/x86", "drivers", "kernel");
+        config.registerSetting(KbuildMinerExtractor.EAGER_START);
+        config.setValue(KbuildMinerExtractor.EAGER_START, true);
+        BuildModel bm = run(config, sourceTree);
+        
+        assertThat(bm.getSize(), is(3));
+        assertThat(bm.getPc(new File("arch/x86/kernel.c")), is(True.INSTANCE));
+        assertThat(bm.getPc(new File("drivers/driver.c")), is(or("CONFIG_A", "CONFIG_A_MODULE")));
+        assertThat(bm.getPc(new File("kernel/core/core.c")), is(True.INSTANCE));
+    }
+    
 }
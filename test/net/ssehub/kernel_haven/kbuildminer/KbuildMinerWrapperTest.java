@@ -21,6 +21,7 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -28,6 +29,11 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -121,4 +127,63 @@ public class KbuildMinerWrapperTest {
         assertThat(result, nullValue());
     }
     
+    /**
+     * Tests that two concurrent runs sharing one resource directory don't interfere with each other, and that no
+     * scratch directories are left behind.
+     * 
+     * @throws InterruptedException unwanted.
+     * @throws ExecutionException unwanted.
+     */
+    @Test
+    @SuppressWarnings("null")
+    public void testConcurrentRuns() throws InterruptedException, ExecutionException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Callable<File> run = () -> new KbuildMinerWrapper(RESOURCE_DIR)
+                .runKbuildMiner(new File("testdata/pseudo_linux"), "arch/x86,drivers,kernel");
+        
+        Future<File> result1 = executor.submit(run);
+        Future<File> result2 = executor.submit(run);
+        File output1 = result1.get();
+        File output2 = result2.get();
+        executor.shutdown();
+        
+        assertThat(output1, notNullValue());
+        assertThat(output2, notNullValue());
+        assertThat(output1.length(), is(output2.length()));
+        output1.delete();
+        output2.delete();
+        
+        assertThat(new File(RESOURCE_DIR, "output").exists(), is(false));
+        assertThat(RESOURCE_DIR.list((dir, name) -> name.startsWith("run")).length, is(0));
+    }
+    
+    /**
+     * Tests that a cancelled wrapper doesn't start KbuildMiner anymore.
+     * 
+     * @throws IOException wanted.
+     */
+    @Test(expected = IOException.class)
+    public void testCancel() throws IOException {
+        wrapper.cancel();
+        wrapper.runKbuildMiner(new File("testdata/pseudo_linux"), "arch/x86,drivers,kernel");
+    }
+    
+    /**
+     * Tests that a cancelled run doesn't leave its scratch directory behind.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testCancelCleansUp() throws IOException {
+        wrapper.cancel();
+        try {
+            wrapper.runKbuildMiner(new File("testdata/pseudo_linux"), "arch/x86,drivers,kernel");
+            fail("Cancelled wrapper started KbuildMiner");
+        } catch (IOException e) {
+            // expected
+        }
+        
+        assertThat(RESOURCE_DIR.list((dir, name) -> name.startsWith("run")).length, is(0));
+    }
+    
 }
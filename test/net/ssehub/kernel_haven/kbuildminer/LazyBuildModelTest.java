@@ -0,0 +1,164 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.util.logic.False;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
+
+/**
+ * Tests the {@link LazyBuildModel}.
+ *
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class LazyBuildModelTest {
+
+    /**
+     * Creates a converter for the test data.
+     *
+     * @return The converter.
+     */
+    private static Converter createConverter() {
+        Set<VariabilityVariable> vars = new HashSet<>();
+        vars.add(new VariabilityVariable("CONFIG_ALPHA", "bool"));
+        vars.add(new VariabilityVariable("CONFIG_BETA", "tristate"));
+        return new Converter(new VariabilityModel(null, vars));
+    }
+
+    /**
+     * Tests that the lazy model returns the same presence conditions as the eager conversion.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testGetPc() throws IOException {
+        try (LazyBuildModel model = createConverter().convertLazy(new File("testdata/pcs.txt"), 10)) {
+            assertThat(model.getSize(), is(4));
+            assertThat(model.getNumCached(), is(0));
+
+            assertThat(model.getPc(new File("file1.c")).toString(), is("CONFIG_ALPHA"));
+            assertThat(model.getPc(new File("file2.c")), instanceOf(True.class));
+            assertThat(model.getPc(new File("dir/file1.c")).toString(), is("CONFIG_BETA || CONFIG_BETA_MODULE"));
+            assertThat(model.getPc(new File("dir/file2.c")).toString(),
+                    is("(CONFIG_BETA || CONFIG_BETA_MODULE) && CONFIG_ALPHA"));
+
+            assertThat(model.getPc(new File("notExisting.c")), nullValue());
+            assertThat(model.contains(new File("notExisting.c")), is(false));
+            assertThat(model.getNumCached(), is(4));
+        }
+    }
+
+    /**
+     * Tests that the number of cached presence conditions is bounded.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testCacheBounded() throws IOException {
+        try (LazyBuildModel model = createConverter().convertLazy(new File("testdata/pcs.txt"), 2)) {
+            Formula first = model.getPc(new File("file1.c"));
+            assertThat(first, notNullValue());
+            assertThat(model.getPc(new File("file1.c")), sameInstance(first));
+
+            for (File file : model) {
+                assertThat(model.getPc(file), notNullValue());
+            }
+            assertThat(model.getNumCached(), is(2));
+            assertThat(model.getPc(new File("file1.c")).toString(), is("CONFIG_ALPHA"));
+        }
+    }
+
+    /**
+     * Tests that iteration returns all files without parsing them.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testIterator() throws IOException {
+        try (LazyBuildModel model = createConverter().convertLazy(new File("testdata/pcs.txt"), 10)) {
+            Set<File> files = new HashSet<>();
+            for (File file : model) {
+                files.add(file);
+            }
+            assertThat(files.size(), is(4));
+            assertThat(files.contains(new File("dir/file2.c")), is(true));
+            assertThat(model.getNumCached(), is(0));
+        }
+    }
+
+    /**
+     * Tests that the lazy model is not affected by later conversions of its converter, and that it respects the
+     * path filter.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testIndependentOfConverter() throws IOException {
+        Converter converter = createConverter();
+        converter.setPathFilter(new PathFilter(Arrays.asList("dir/**"), Collections.emptyList()));
+        try (LazyBuildModel model = converter.convertLazy(new File("testdata/pcs.txt"), 10)) {
+            converter.setPathFilter(PathFilter.ACCEPT_ALL);
+            converter.convert(new File("testdata/pcs.txt"));
+
+            assertThat(model.getSize(), is(2));
+            assertThat(model.contains(new File("file1.c")), is(false));
+            assertThat(model.getPc(new File("file1.c")), nullValue());
+            assertThat(model.getPc(new File("dir/file1.c")).toString(), is("CONFIG_BETA || CONFIG_BETA_MODULE"));
+            assertThat(model.getErrorReport(), not(sameInstance(converter.getErrorReport())));
+            assertThat(model.getErrorReport().getTotal(), is(0L));
+        }
+    }
+
+    /**
+     * Tests that malformed presence conditions are recorded in the error report of the lazy model.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testErrorReport() throws IOException {
+        Converter converter = createConverter();
+        try (LazyBuildModel model = converter.convertLazy(new File("testdata/invalid_pcs.txt"), 10)) {
+            assertThat(model.getPc(new File("file4.c")), instanceOf(False.class));
+            assertThat(model.getPc(new File("file3.c")), not(instanceOf(False.class)));
+
+            assertThat(model.getErrorReport().getTotal(), is(1L));
+            assertThat(model.getErrorReport().getSamples().get(0).startsWith("line 4 "), is(true));
+            assertThat(converter.getErrorReport().getTotal(), is(0L));
+        }
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
+
+/**
+ * Tests the {@link PathFilter}.
+ *
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class PathFilterTest {
+
+    /**
+     * Tests matching of the glob wildcards.
+     */
+    @Test
+    public void testAccepts() {
+        PathFilter filter = new PathFilter(Arrays.asList("drivers/net/**", "kernel/*.c", "**/*.S"),
+                Arrays.asList("drivers/net/wireless/**"));
+
+        assertThat(filter.accepts("drivers/net/e1000/main.c"), is(true));
+        assertThat(filter.accepts("drivers/net/wireless/ath.c"), is(false));
+        assertThat(filter.accepts("drivers/usb/core.c"), is(false));
+        assertThat(filter.accepts("kernel/fork.c"), is(true));
+        assertThat(filter.accepts("kernel/sched/core.c"), is(false));
+        assertThat(filter.accepts("arch/x86/entry.S"), is(true));
+        assertThat(filter.accepts("entry.S"), is(true));
+        assertThat(filter.accepts("./kernel/fork.c"), is(true));
+    }
+
+    /**
+     * Tests that a filter without includes accepts everything that is not excluded.
+     */
+    @Test
+    public void testExcludesOnly() {
+        PathFilter filter = new PathFilter(Collections.emptyList(), Arrays.asList("sound/**", ""));
+
+        assertThat(filter.isAcceptAll(), is(false));
+        assertThat(filter.accepts("drivers/a.c"), is(true));
+        assertThat(filter.accepts("sound/core.c"), is(false));
+        assertThat(PathFilter.ACCEPT_ALL.accepts("sound/core.c"), is(true));
+        assertThat(PathFilter.ACCEPT_ALL.isAcceptAll(), is(true));
+    }
+
+    /**
+     * Tests that only top folders that can't contain accepted files are removed.
+     */
+    @Test
+    public void testNarrowTopFolders() {
+        String topFolders = "arch/x86,drivers,kernel,sound";
+
+        assertThat(new PathFilter(Arrays.asList("drivers/net/**"), Collections.emptyList())
+                .narrowTopFolders(topFolders), is("drivers"));
+        assertThat(new PathFilter(Arrays.asList("arch/**", "kernel/fork.c"), Collections.emptyList())
+                .narrowTopFolders(topFolders), is("arch/x86,kernel"));
+        assertThat(new PathFilter(Arrays.asList("**/*.S"), Collections.emptyList())
+                .narrowTopFolders(topFolders), is(topFolders));
+        assertThat(new PathFilter(Collections.emptyList(), Arrays.asList("sound/**", "drivers/net/**"))
+                .narrowTopFolders(topFolders), is("arch/x86,drivers,kernel"));
+        assertThat(new PathFilter(Arrays.asList("fs/**"), Collections.emptyList())
+                .narrowTopFolders(topFolders), is(""));
+    }
+
+    /**
+     * Tests that the converter skips lines outside of the filter.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testConverter() throws IOException {
+        Converter c = new Converter(new VariabilityModel(null, new HashSet<VariabilityVariable>()));
+        c.setPathFilter(new PathFilter(Arrays.asList("dir/**"), Collections.emptyList()));
+
+        BuildModel model = c.convert(new File("testdata/pcs.txt"));
+
+        assertThat(model.getSize(), is(2));
+        assertThat(model.getPc(new File("dir/file1.c")) != null, is(true));
+        assertThat(model.getPc(new File("file1.c")) == null, is(true));
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.Variable;
+
+/**
+ * Tests the {@link PcBalancer}.
+ *
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class PcBalancerTest {
+
+    /**
+     * Tests that a left-deep conjunction chain becomes a balanced tree with the operands in the same order.
+     */
+    @Test
+    public void testLeftDeepChain() {
+        Formula pc = new Conjunction(new Conjunction(new Conjunction(
+                new Variable("A"), new Variable("B")), new Variable("C")), new Variable("D"));
+
+        Formula balanced = PcBalancer.balance(pc);
+
+        assertThat(balanced, is(new Conjunction(new Conjunction(new Variable("A"), new Variable("B")),
+                new Conjunction(new Variable("C"), new Variable("D")))));
+        assertThat(PcBalancer.getDepth(pc), is(4));
+        assertThat(PcBalancer.getDepth(balanced), is(3));
+    }
+
+    /**
+     * Tests that a long right-deep disjunction chain gets a logarithmic depth and keeps its operand order.
+     */
+    @Test
+    public void testLongChain() {
+        Formula pc = new Variable("V1023");
+        for (int i = 1022; i >= 0; i--) {
+            pc = new Disjunction(new Variable("V" + i), pc);
+        }
+
+        Formula balanced = PcBalancer.balance(pc);
+
+        assertThat(PcBalancer.getDepth(pc), is(1024));
+        assertThat(PcBalancer.getDepth(balanced), is(11));
+        // same operands in the same order, only grouped differently
+        assertThat(balanced.toString().replaceAll("[()]", ""), is(pc.toString().replaceAll("[()]", "")));
+    }
+
+    /**
+     * Tests that chains nested in other operators are balanced too.
+     */
+    @Test
+    public void testNested() {
+        Formula chain = new Disjunction(new Disjunction(new Variable("A"), new Variable("B")), new Variable("C"));
+        Formula pc = new Conjunction(new Negation(chain), new Variable("D"));
+
+        Formula balanced = PcBalancer.balance(pc);
+
+        assertThat(balanced, is(new Conjunction(new Negation(new Disjunction(new Disjunction(
+                new Variable("A"), new Variable("B")), new Variable("C"))), new Variable("D"))));
+    }
+
+    /**
+     * Tests that formulas without chains of more than two operands are returned as-is.
+     */
+    @Test
+    public void testUnchanged() {
+        Formula pc = new Conjunction(new Disjunction(new Variable("A"), new Variable("B")),
+                new Negation(new Variable("C")));
+
+        assertThat(PcBalancer.balance(pc), sameInstance(pc));
+    }
+
+}
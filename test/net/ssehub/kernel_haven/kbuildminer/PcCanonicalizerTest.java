@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
+
+/**
+ * Tests the {@link PcCanonicalizer}.
+ * 
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class PcCanonicalizerTest {
+
+    /**
+     * Tests that equivalent formulas are mapped to the first instance.
+     */
+    @Test
+    public void testEquivalent() {
+        Set<VariabilityVariable> vars = new HashSet<>();
+        vars.add(new VariabilityVariable("CONFIG_A", "tristate"));
+        vars.add(new VariabilityVariable("CONFIG_B", "bool"));
+        PcCanonicalizer canonicalizer = new PcCanonicalizer(new VariabilityModel(null, vars), 1000);
+        
+        Variable a = new Variable("CONFIG_A");
+        Variable aModule = new Variable("CONFIG_A_MODULE");
+        Variable b = new Variable("CONFIG_B");
+        
+        Formula f1 = new Conjunction(new Disjunction(a, aModule), b);
+        Formula f2 = new Conjunction(b, new Disjunction(aModule, a));
+        Formula f3 = new Negation(new Disjunction(new Negation(b), new Conjunction(new Negation(a),
+                new Negation(aModule))));
+        Formula other = new Disjunction(a, b);
+        
+        assertThat(canonicalizer.canonicalize(f1), sameInstance(f1));
+        assertThat(canonicalizer.canonicalize(f2), sameInstance(f1));
+        assertThat(canonicalizer.canonicalize(f3), sameInstance(f1));
+        assertThat(canonicalizer.canonicalize(other), sameInstance(other));
+        
+        assertThat(canonicalizer.getNumCanonical(), is(2));
+        assertThat(canonicalizer.getNumLookups(), is(4L));
+    }
+    
+    /**
+     * Tests that formulas are returned unchanged once the BDD overflows.
+     */
+    @Test
+    public void testOverflow() {
+        PcCanonicalizer canonicalizer = new PcCanonicalizer(new VariabilityModel(null, new HashSet<>()), 4);
+        
+        Formula f1 = new Conjunction(new Variable("A"), new Variable("B"));
+        Formula f2 = new Conjunction(new Variable("B"), new Variable("A"));
+        
+        assertThat(canonicalizer.canonicalize(f1), sameInstance(f1));
+        assertThat(canonicalizer.canonicalize(f2), sameInstance(f2));
+    }
+    
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.kbuildminer.PcSimplifier.Level;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.False;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+
+/**
+ * Tests the {@link PcSimplifier}.
+ * 
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class PcSimplifierTest {
+    
+    private static final Variable A = new Variable("A");
+    
+    private static final Variable B = new Variable("B");
+    
+    private static final Variable C = new Variable("C");
+
+    /**
+     * Tests that {@link Level#MINIMAL} doesn't change anything.
+     */
+    @Test
+    public void testMinimal() {
+        Formula f = new Conjunction(A, True.INSTANCE);
+        assertThat(new PcSimplifier(Level.MINIMAL).simplify(f), sameInstance(f));
+    }
+    
+    /**
+     * Tests constant folding and double negation removal with {@link Level#CONSTANTS}.
+     */
+    @Test
+    public void testConstants() {
+        PcSimplifier simplifier = new PcSimplifier(Level.CONSTANTS);
+        
+        assertThat(simplifier.simplify(new Conjunction(A, True.INSTANCE)), is(A));
+        assertThat(simplifier.simplify(new Conjunction(False.INSTANCE, A)), is(False.INSTANCE));
+        assertThat(simplifier.simplify(new Disjunction(A, False.INSTANCE)), is(A));
+        assertThat(simplifier.simplify(new Disjunction(True.INSTANCE, A)), is(True.INSTANCE));
+        assertThat(simplifier.simplify(new Negation(new Negation(A))), is(A));
+        assertThat(simplifier.simplify(new Negation(False.INSTANCE)), is(True.INSTANCE));
+        assertThat(simplifier.simplify(new Conjunction(B, new Negation(True.INSTANCE))), is(False.INSTANCE));
+        assertThat(simplifier.simplify(new Disjunction(A, A)), is(A));
+    }
+    
+    /**
+     * Tests flattening, idempotence, complementation and absorption with {@link Level#FULL}.
+     */
+    @Test
+    public void testFull() {
+        PcSimplifier simplifier = new PcSimplifier(Level.FULL);
+        
+        // (A || B) || A -> A || B
+        assertThat(simplifier.simplify(new Disjunction(new Disjunction(A, B), A)), is(new Disjunction(A, B)));
+        
+        // (A && True) && (B && A) -> A && B
+        assertThat(simplifier.simplify(new Conjunction(new Conjunction(A, True.INSTANCE), new Conjunction(B, A))),
+                is(new Conjunction(A, B)));
+        
+        // A && (B && !A) -> False
+        assertThat(simplifier.simplify(new Conjunction(A, new Conjunction(B, new Negation(A)))),
+                is(False.INSTANCE));
+        
+        // A || (A && B) -> A
+        assertThat(simplifier.simplify(new Disjunction(A, new Conjunction(A, B))), is(A));
+        
+        // C && (A || C) && B -> C && B
+        assertThat(simplifier.simplify(new Conjunction(C, new Conjunction(new Disjunction(A, C), B))),
+                is(new Conjunction(C, B)));
+        
+        // (A || False) && !!B -> A && B
+        assertThat(simplifier.simplify(new Conjunction(new Disjunction(A, False.INSTANCE),
+                new Negation(new Negation(B)))), is(new Conjunction(A, B)));
+        
+        // (A || B) || (C || A) keeps order: A || (B || C)
+        assertThat(simplifier.simplify(new Disjunction(new Disjunction(A, B), new Disjunction(C, A))),
+                is(new Disjunction(A, new Disjunction(B, C))));
+    }
+    
+    /**
+     * Tests that equal sub-formulas are detected by the hash-consing, also if they are different instances.
+     */
+    @Test
+    public void testEqualSubFormulas() {
+        PcSimplifier simplifier = new PcSimplifier(Level.FULL);
+        
+        // (A && (B || C)) || !(A && (B || C)) -> True
+        assertThat(simplifier.simplify(new Disjunction(new Conjunction(A, new Disjunction(B, C)),
+                new Negation(new Conjunction(new Variable("A"), new Disjunction(new Variable("B"), C))))),
+                is(True.INSTANCE));
+        
+        // (!(A || B) || C) && (C || !(A || B)): both negations become a single instance
+        Formula result = simplifier.simplify(new Conjunction(
+                new Disjunction(new Negation(new Disjunction(A, B)), C),
+                new Disjunction(C, new Negation(new Disjunction(new Variable("A"), new Variable("B"))))));
+        Formula[] operands = {((Disjunction) ((Conjunction) result).getLeft()).getLeft(),
+            ((Disjunction) ((Conjunction) result).getRight()).getRight()};
+        assertThat(operands[0], sameInstance(operands[1]));
+    }
+    
+    /**
+     * Tests a deeply nested formula with alternating operators.
+     */
+    @Test
+    public void testAlternatingNesting() {
+        Formula formula = A;
+        for (int i = 0; i < 2000; i++) {
+            Variable var = new Variable("V" + i);
+            formula = i % 2 == 0 ? new Conjunction(var, new Disjunction(formula, var))
+                    : new Disjunction(var, new Conjunction(formula, new Variable("V" + i)));
+        }
+        
+        // V1999 || (... && V1999) -> V1999, by absorption
+        assertThat(new PcSimplifier(Level.FULL).simplify(formula), is(new Variable("V1999")));
+    }
+    
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.util.logic.parser.ExpressionFormatException;
+import net.ssehub.kernel_haven.util.logic.parser.Parser;
+import net.ssehub.kernel_haven.util.logic.parser.VariableCache;
+
+/**
+ * Tests the {@link PcValidator}.
+ * 
+ * @author Adam
+ */
+public class PcValidatorTest {
+
+    /**
+     * Tests that well-formed presence conditions are accepted.
+     */
+    @Test
+    public void testValid() {
+        assertThat(PcValidator.validate("A == \"y\""), is(PcError.NONE));
+        assertThat(PcValidator.validate("A==\"m\""), is(PcError.NONE));
+        assertThat(PcValidator.validate("A != \"yes\""), is(PcError.NONE));
+        assertThat(PcValidator.validate("A"), is(PcError.NONE));
+        assertThat(PcValidator.validate("[TRUE]"), is(PcError.NONE));
+        assertThat(PcValidator.validate("!(X86_32 == \"y\")"), is(PcError.NONE));
+        assertThat(PcValidator.validate("!A == \"y\" && B == \"y\""), is(PcError.NONE));
+        assertThat(PcValidator.validate("(A == \"m\")||B"), is(PcError.NONE));
+        assertThat(PcValidator.validate("((64BIT == \"y\") && ((CRYPTO == \"y\") || (CRYPTO == \"m\")))"),
+                is(PcError.NONE));
+    }
+    
+    /**
+     * Tests that malformed presence conditions are reported with the correct result code.
+     */
+    @Test
+    public void testMalformed() {
+        assertThat(PcValidator.validate(""), is(PcError.EMPTY));
+        assertThat(PcValidator.validate("(InvalidExpression() && A)"), is(PcError.INVALID_EXPRESSION));
+        assertThat(PcValidator.validate("A = \"y\""), is(PcError.INVALID_IDENTIFIER));
+        assertThat(PcValidator.validate("A=\"y\""), is(PcError.INVALID_IDENTIFIER));
+        assertThat(PcValidator.validate("A ! \"y\""), is(PcError.INVALID_IDENTIFIER));
+        assertThat(PcValidator.validate("A == \"ja\""), is(PcError.INVALID_VALUE));
+        assertThat(PcValidator.validate("A == yes"), is(PcError.INVALID_VALUE));
+        assertThat(PcValidator.validate("[TREU]"), is(PcError.INVALID_CONSTANT));
+        assertThat(PcValidator.validate("[TRUE"), is(PcError.INVALID_CONSTANT));
+        assertThat(PcValidator.validate("TRUE]"), is(PcError.INVALID_IDENTIFIER));
+        assertThat(PcValidator.validate("(A && B"), is(PcError.UNBALANCED_PARENTHESES));
+        assertThat(PcValidator.validate("A && B)"), is(PcError.UNBALANCED_PARENTHESES));
+        assertThat(PcValidator.validate("A &&"), is(PcError.MISSING_OPERAND));
+        assertThat(PcValidator.validate("|| A"), is(PcError.MISSING_OPERAND));
+        assertThat(PcValidator.validate("this is not a valid formula."), is(PcError.INVALID_IDENTIFIER));
+    }
+    
+    /**
+     * Tests that the validator agrees with the {@link KbuildMinerPcGrammar} on all examples.
+     */
+    @Test
+    public void testAgreesWithGrammar() {
+        String[] examples = {
+            "A == \"y\"", "A != \"m\"", "[TRUE]", "!(A == \"y\") && (B || C == \"m\")",
+            "", "A = \"y\"", "A ! \"y\"", "A == \"ja\"", "[FALSE]", "(A", "A)", "A &&", "A B",
+        };
+        
+        Parser<?> parser = new Parser<>(new KbuildMinerPcGrammar(new VariableCache()));
+        for (String example : examples) {
+            boolean parses;
+            try {
+                parser.parse(example);
+                parses = true;
+            } catch (ExpressionFormatException e) {
+                parses = false;
+            }
+            assertThat(example, PcValidator.validate(example) == PcError.NONE, is(parses));
+        }
+    }
+    
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.util.Util;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.False;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+
+/**
+ * Tests the {@link ShardedBuildModel}.
+ *
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class ShardedBuildModelTest {
+
+    private File directory;
+
+    /**
+     * Creates a temporary shard directory.
+     *
+     * @throws IOException If creating the directory fails.
+     */
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("shards").toFile();
+    }
+
+    /**
+     * Deletes the temporary shard directory.
+     *
+     * @throws IOException If deleting fails.
+     */
+    @After
+    public void deleteDirectory() throws IOException {
+        Util.deleteFolder(directory);
+    }
+
+    /**
+     * Creates a build model with files in different top folders.
+     *
+     * @return The build model.
+     */
+    private static BuildModel createBuildModel() {
+        BuildModel bm = new BuildModel();
+        bm.add(new File("arch/x86/kernel/a.c"), new Variable("CONFIG_A"));
+        bm.add(new File("arch/x86/b.c"), True.INSTANCE);
+        bm.add(new File("drivers/net/c.c"), new Conjunction(new Variable("CONFIG_B"),
+                new Negation(new Variable("CONFIG_C"))));
+        bm.add(new File("drivers/d.c"), new Disjunction(new Variable("CONFIG_B"), False.INSTANCE));
+        bm.add(new File("init.c"), new Variable("CONFIG_B"));
+        return bm;
+    }
+
+    /**
+     * Tests partitioning by top folder and loading a single shard.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testByTopFolder() throws IOException {
+        BuildModel bm = createBuildModel();
+        ShardedBuildModel.writeByTopFolder(bm, directory, "arch/x86,drivers,kernel");
+
+        ShardedBuildModel shards = ShardedBuildModel.read(directory);
+        assertThat(shards.getShards().size(), is(3));
+        assertThat(shards.getShard("arch/x86").getNumFiles(), is(2));
+        assertThat(shards.getShard(ShardedBuildModel.ROOT_KEY).getNumFiles(), is(1));
+        assertThat(shards.getShard("kernel"), nullValue());
+        assertThat(shards.getShardKey(new File("arch/x86/kernel/a.c")), is("arch/x86"));
+        assertThat(shards.getShardKey(new File("init.c")), is(ShardedBuildModel.ROOT_KEY));
+
+        BuildModel drivers = shards.load(Arrays.asList("drivers"));
+        assertThat(drivers.getSize(), is(2));
+        assertThat(drivers.getPc(new File("drivers/net/c.c")), is(bm.getPc(new File("drivers/net/c.c"))));
+        assertThat(drivers.getPc(new File("drivers/d.c")), is(bm.getPc(new File("drivers/d.c"))));
+    }
+
+    /**
+     * Tests partitioning by path depth and loading all shards.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testByDepth() throws IOException {
+        BuildModel bm = createBuildModel();
+        ShardedBuildModel.writeByDepth(bm, directory, 2);
+
+        ShardedBuildModel shards = ShardedBuildModel.read(directory);
+        List<String> keys = new ArrayList<>();
+        for (ShardedBuildModel.Shard shard : shards.getShards()) {
+            keys.add(shard.getKey());
+        }
+        assertThat(keys, is(Arrays.asList(".", "arch/x86", "drivers", "drivers/net")));
+
+        BuildModel all = shards.load(keys);
+        assertThat(all.getSize(), is(bm.getSize()));
+        for (File file : bm) {
+            assertThat(file.getPath(), all.getPc(file), is(bm.getPc(file)));
+        }
+    }
+
+    /**
+     * Tests that a directory without a manifest can't be read.
+     *
+     * @throws IOException wanted.
+     */
+    @Test(expected = IOException.class)
+    public void testMissingManifest() throws IOException {
+        ShardedBuildModel.read(directory);
+    }
+
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.util.Util;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.False;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
+
+/**
+ * Tests the {@link SpillingBuildModel}.
+ *
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class SpillingBuildModelTest {
+
+    private static final File TMP_DIR = new File(System.getProperty("java.io.tmpdir"));
+
+    /**
+     * Tests that spilled presence conditions are read back correctly.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testSpill() throws IOException {
+        Formula complex = new Disjunction(new Conjunction(new Variable("A"), new Negation(new Variable("B"))),
+                new Conjunction(True.INSTANCE, False.INSTANCE));
+
+        try (SpillingBuildModel model = new SpillingBuildModel(200, TMP_DIR)) {
+            model.add(new File("a.c"), new Variable("A"));
+            model.add(new File("b.c"), complex);
+            model.add(new File("c.c"), new Variable("B"));
+
+            assertThat(model.getSize(), is(3));
+            assertThat(model.getNumSpilled(), is(2));
+            assertThat(model.getPc(new File("a.c")), is(new Variable("A")));
+            assertThat(model.getPc(new File("b.c")), is(complex));
+            assertThat(model.getPc(new File("c.c")), is(new Variable("B")));
+            assertThat(model.getPc(new File("d.c")), nullValue());
+            assertThat(model.contains(new File("c.c")), is(true));
+
+            Set<File> files = new HashSet<>();
+            for (File file : model) {
+                files.add(file);
+            }
+            assertThat(files.size(), is(3));
+        }
+    }
+
+    /**
+     * Tests that adding a file again replaces its presence condition.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testReplace() throws IOException {
+        try (SpillingBuildModel model = new SpillingBuildModel(0, TMP_DIR)) {
+            model.add(new File("a.c"), new Variable("A"));
+            model.add(new File("a.c"), new Variable("B"));
+
+            assertThat(model.getSize(), is(1));
+            assertThat(model.getPc(new File("a.c")), is(new Variable("B")));
+        }
+    }
+
+    /**
+     * Tests that no spill file is left in the spill directory after the model is closed.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testNoLeftoverFiles() throws IOException {
+        File directory = Files.createTempDirectory("spill").toFile();
+        try {
+            SpillingBuildModel model = new SpillingBuildModel(0, directory);
+            model.add(new File("a.c"), new Variable("A"));
+            assertThat(model.getNumSpilled(), is(1));
+            assertThat(model.getPc(new File("a.c")), is(new Variable("A")));
+
+            model.close();
+            assertThat(directory.list().length, is(0));
+        } finally {
+            Util.deleteFolder(directory);
+        }
+    }
+
+    /**
+     * Tests that repeatedly replacing a spilled entry doesn't grow the spill file without bound.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testCompaction() throws IOException {
+        try (SpillingBuildModel model = new SpillingBuildModel(0, TMP_DIR)) {
+            model.add(new File("a.c"), new Variable("A"));
+            model.add(new File("b.c"), new Variable("B"));
+            long initialSize = model.getSpillFileSize();
+
+            for (int i = 0; i < 1000; i++) {
+                model.add(new File("a.c"), new Variable("A" + i));
+            }
+
+            assertThat(model.getSpillFileSize() <= 3 * initialSize, is(true));
+            assertThat(model.getSize(), is(2));
+            assertThat(model.getPc(new File("a.c")), is(new Variable("A999")));
+            assertThat(model.getPc(new File("b.c")), is(new Variable("B")));
+        }
+    }
+
+    /**
+     * Tests that a closed model can't be used anymore, instead of silently dropping the spilled entries.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testClosed() throws IOException {
+        SpillingBuildModel model = new SpillingBuildModel(200, TMP_DIR);
+        model.add(new File("a.c"), new Variable("A"));
+        model.add(new File("b.c"), new Disjunction(new Variable("B"), new Negation(new Variable("C"))));
+        model.close();
+        model.close();
+
+        List<Runnable> accessors = Arrays.asList(
+                () -> model.getSize(),
+                () -> model.contains(new File("a.c")),
+                () -> model.getPc(new File("a.c")),
+                () -> model.iterator(),
+                () -> model.getNumSpilled(),
+                () -> model.add(new File("c.c"), new Variable("C")));
+        for (Runnable accessor : accessors) {
+            try {
+                accessor.run();
+                fail("Closed model is still usable");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Tests that the converter produces the same model with a tiny heap budget.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testConverterWithBudget() throws IOException {
+        Set<VariabilityVariable> vars = new HashSet<>();
+        vars.add(new VariabilityVariable("CONFIG_ALPHA", "bool"));
+        vars.add(new VariabilityVariable("CONFIG_BETA", "tristate"));
+        Converter c = new Converter(new VariabilityModel(null, vars));
+        c.setHeapBudget(1, TMP_DIR);
+
+        BuildModel model = c.convert(new File("testdata/pcs.txt"));
+        assertThat(model.getSize(), is(4));
+        assertThat(((SpillingBuildModel) model).getNumSpilled(), is(4));
+        assertThat(model.getPc(new File("dir/file2.c")).toString(),
+                is("(CONFIG_BETA || CONFIG_BETA_MODULE) && CONFIG_ALPHA"));
+        ((SpillingBuildModel) model).close();
+    }
+
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Generates synthetic Kbuild source trees of configurable size for tests and benchmarks. The tree consists of
+ * directories with a <code>Makefile</code> each, which adds its source files and sub-directories either
+ * unconditionally (<code>obj-y</code>) or depending on a fresh variable (<code>obj-$(CONFIG_SYN_n)</code>). The
+ * presence condition of each file is therefore the conjunction of the variables on its path.
+ *
+ * <p>
+ * Besides the tree, a matching output file in the format of KbuildMiner can be written, so that the
+ * {@link Converter} can be measured independently of the miner.
+ * </p>
+ *
+ * @author Adam
+ */
+public class SyntheticKbuildTree {
+
+    private final int numFiles;
+
+    private final int depth;
+
+    private final double conditionalDensity;
+
+    private final long seed;
+
+    /**
+     * The variables on the path to each file (without <code>CONFIG_</code> prefix), by path. Filled by
+     * {@link #write(File)}.
+     */
+    private final Map<String, List<String>> pcs = new TreeMap<>();
+
+    private final List<String> topFolders = new ArrayList<>();
+
+    private int numVariables;
+
+    private int remainingFiles;
+
+    private Random random;
+
+    /**
+     * Creates a generator.
+     *
+     * @param numFiles The number of source files to generate.
+     * @param depth The number of directory levels below the source tree (at least 1).
+     * @param conditionalDensity The probability (0 to 1) that a file or directory is added conditionally.
+     * @param seed The seed for the random decisions; equal seeds generate equal trees.
+     */
+    public SyntheticKbuildTree(int numFiles, int depth, double conditionalDensity, long seed) {
+        this.numFiles = numFiles;
+        this.depth = Math.max(1, depth);
+        this.conditionalDensity = conditionalDensity;
+        this.seed = seed;
+    }
+
+    /**
+     * Writes the tree to the given directory.
+     *
+     * @param sourceTree The directory to generate the tree in. Created if it does not exist.
+     *
+     * @throws IOException If writing fails.
+     */
+    public void write(File sourceTree) throws IOException {
+        pcs.clear();
+        topFolders.clear();
+        numVariables = 0;
+        remainingFiles = numFiles;
+        random = new Random(seed);
+
+        // choose a fan-out so that the leaf level of the tree is about as large as the number of files per dir
+        int fanOut = Math.max(2, (int) Math.ceil(Math.pow(numFiles, 1.0 / (depth + 1))));
+        long numDirs = 0;
+        long levelSize = 1;
+        for (int i = 0; i < depth; i++) {
+            levelSize *= fanOut;
+            numDirs += levelSize;
+        }
+        int filesPerDir = (int) Math.max(1, (numFiles + numDirs - 1) / numDirs);
+
+        for (int i = 0; i < fanOut; i++) {
+            String name = "top" + i;
+            topFolders.add(name);
+            writeDirectory(new File(sourceTree, name), name, 1, fanOut, filesPerDir, Collections.emptyList());
+        }
+    }
+
+    /**
+     * Writes a single directory with its Makefile, files and sub-directories.
+     *
+     * @param dir The directory to write.
+     * @param path The path of the directory, relative to the source tree.
+     * @param level The level of the directory; 1 for the top folders.
+     * @param fanOut The number of sub-directories per directory.
+     * @param filesPerDir The number of files per directory.
+     * @param condition The variables of the directory.
+     *
+     * @throws IOException If writing fails.
+     */
+    private void writeDirectory(File dir, String path, int level, int fanOut, int filesPerDir,
+            List<String> condition) throws IOException {
+
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create directory " + dir);
+        }
+
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < filesPerDir && remainingFiles > 0; i++) {
+            String name = "file" + i;
+            List<String> pc = addEntry(lines, condition, name + ".o");
+            Files.createFile(new File(dir, name + ".c").toPath());
+            pcs.put(path + "/" + name + ".c", pc);
+            remainingFiles--;
+        }
+
+        if (level < depth) {
+            for (int i = 0; i < fanOut && remainingFiles > 0; i++) {
+                String name = "dir" + i;
+                List<String> pc = addEntry(lines, condition, name + "/");
+                writeDirectory(new File(dir, name), path + "/" + name, level + 1, fanOut, filesPerDir, pc);
+            }
+        }
+
+        Files.write(new File(dir, "Makefile").toPath(), lines, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Adds an <code>obj-</code> line for a file or directory to the Makefile, randomly conditional.
+     *
+     * @param lines The lines of the Makefile.
+     * @param condition The variables of the containing directory.
+     * @param object The object to add, e.g. <code>file.o</code> or <code>dir/</code>.
+     * @return The variables of the added entry.
+     */
+    private List<String> addEntry(List<String> lines, List<String> condition, String object) {
+        List<String> result = condition;
+        if (random.nextDouble() < conditionalDensity) {
+            String variable = "SYN_" + numVariables++;
+            lines.add("obj-$(CONFIG_" + variable + ") += " + object);
+            result = new ArrayList<>(condition);
+            result.add(variable);
+        } else {
+            lines.add("obj-y += " + object);
+        }
+        return result;
+    }
+
+    /**
+     * Writes the presence conditions of the last generated tree in the output format of KbuildMiner.
+     *
+     * @param file The file to write to.
+     *
+     * @throws IOException If writing fails.
+     */
+    public void writePcFile(File file) throws IOException {
+        try (Writer out = new BufferedWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, List<String>> entry : pcs.entrySet()) {
+                out.write(entry.getKey());
+                out.write(": ");
+                if (entry.getValue().isEmpty()) {
+                    out.write("[TRUE]");
+                } else {
+                    for (int i = 0; i < entry.getValue().size(); i++) {
+                        String variable = entry.getValue().get(i);
+                        out.write(i > 0 ? " && " : "");
+                        out.write("((" + variable + " == \"y\") || (" + variable + " == \"m\"))");
+                    }
+                }
+                out.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Returns the variables on the path of each file of the last generated tree.
+     *
+     * @return The variables (without <code>CONFIG_</code> prefix), by file path relative to the source tree.
+     */
+    public Map<String, List<String>> getPcs() {
+        return Collections.unmodifiableMap(pcs);
+    }
+
+    /**
+     * Returns the top folders of the last generated tree, to pass to the miner.
+     *
+     * @return The comma separated top folders.
+     */
+    public String getTopFolders() {
+        return String.join(",", topFolders);
+    }
+
+    /**
+     * Returns the number of variables in the last generated tree.
+     *
+     * @return The number of variables.
+     */
+    public int getNumVariables() {
+        return numVariables;
+    }
+
+    /**
+     * Generates a tree from the command line.
+     *
+     * @param args The target directory, the number of files, and optionally the depth (default 4), the
+     *      conditional density (default 0.5) and the path of a KbuildMiner output file to write.
+     *
+     * @throws IOException If writing fails.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: SyntheticKbuildTree <dir> <numFiles> [depth] [density] [pcFile]");
+        } else {
+            SyntheticKbuildTree tree = new SyntheticKbuildTree(Integer.parseInt(args[1]),
+                    args.length > 2 ? Integer.parseInt(args[2]) : 4,
+                    args.length > 3 ? Double.parseDouble(args[3]) : 0.5, 0);
+            tree.write(new File(args[0]));
+            if (args.length > 4) {
+                tree.writePcFile(new File(args[4]));
+            }
+            System.out.println("Top folders: " + tree.getTopFolders());
+        }
+    }
+
+}
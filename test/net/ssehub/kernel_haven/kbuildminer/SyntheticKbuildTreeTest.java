@@ -0,0 +1,143 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.build_model.BuildModel;
+import net.ssehub.kernel_haven.util.Util;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
+
+/**
+ * Tests the {@link SyntheticKbuildTree} generator against the {@link KbuildMakefileMiner} and the
+ * {@link Converter}.
+ *
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class SyntheticKbuildTreeTest {
+
+    private File tmpDir;
+
+    /**
+     * Creates a temporary directory.
+     *
+     * @throws IOException unwanted.
+     */
+    @Before
+    public void setUp() throws IOException {
+        tmpDir = Files.createTempDirectory("synthetic_kbuild_test").toFile();
+    }
+
+    /**
+     * Deletes the temporary directory.
+     *
+     * @throws IOException unwanted.
+     */
+    @After
+    public void tearDown() throws IOException {
+        Util.deleteFolder(tmpDir);
+    }
+
+    /**
+     * Collects the names of all variables in the given formula.
+     *
+     * @param formula The formula.
+     * @param result The set to add the names to.
+     */
+    private static void collectVariables(Formula formula, Set<String> result) {
+        if (formula instanceof Variable) {
+            result.add(((Variable) formula).getName());
+        } else if (formula instanceof Negation) {
+            collectVariables(((Negation) formula).getFormula(), result);
+        } else if (formula instanceof Conjunction) {
+            collectVariables(((Conjunction) formula).getLeft(), result);
+            collectVariables(((Conjunction) formula).getRight(), result);
+        } else if (formula instanceof Disjunction) {
+            collectVariables(((Disjunction) formula).getLeft(), result);
+            collectVariables(((Disjunction) formula).getRight(), result);
+        }
+    }
+
+    /**
+     * Tests that the generated tree has the requested size and that the miner finds the expected conditions.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testMinedTree() throws IOException {
+        SyntheticKbuildTree tree = new SyntheticKbuildTree(500, 3, 0.5, 42);
+        tree.write(tmpDir);
+        assertThat(tree.getPcs().size(), is(500));
+
+        Map<File, Formula> mined = new HashMap<>();
+        new KbuildMakefileMiner(tmpDir, tree.getTopFolders(), 4).run((file, pc) -> mined.put(file, pc));
+
+        assertThat(mined.size(), is(500));
+        for (Map.Entry<String, List<String>> entry : tree.getPcs().entrySet()) {
+            Formula pc = mined.get(new File(entry.getKey()));
+            Set<String> expected = new HashSet<>();
+            for (String variable : entry.getValue()) {
+                expected.add("CONFIG_" + variable);
+                expected.add("CONFIG_" + variable + "_MODULE");
+            }
+            Set<String> actual = new HashSet<>();
+            collectVariables(pc, actual);
+            assertThat(entry.getKey(), actual, is(expected));
+        }
+    }
+
+    /**
+     * Tests that the generated KbuildMiner output file can be converted.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testPcFile() throws IOException {
+        SyntheticKbuildTree tree = new SyntheticKbuildTree(200, 2, 0.8, 1);
+        tree.write(new File(tmpDir, "tree"));
+        File pcFile = new File(tmpDir, "pcs.txt");
+        tree.writePcFile(pcFile);
+
+        BuildModel model = new Converter(new VariabilityModel(null, new HashSet<VariabilityVariable>()))
+                .convert(pcFile);
+
+        assertThat(model.getSize(), is(200));
+        assertThat(tree.getNumVariables() > 0, is(true));
+    }
+
+}
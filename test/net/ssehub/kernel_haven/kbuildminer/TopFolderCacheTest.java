@@ -0,0 +1,121 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.util.Util;
+
+/**
+ * Tests the {@link TopFolderCache}.
+ *
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class TopFolderCacheTest {
+
+    private File tmpDir;
+
+    private File sourceTree;
+
+    private TopFolderCache cache;
+
+    /**
+     * Creates a temporary source tree and cache file.
+     *
+     * @throws IOException unwanted.
+     */
+    @Before
+    public void setUp() throws IOException {
+        tmpDir = Files.createTempDirectory("top_folder_cache_test").toFile();
+        sourceTree = new File(tmpDir, "source");
+        new File(sourceTree, "drivers").mkdirs();
+        new File(sourceTree, "kernel").mkdirs();
+        cache = new TopFolderCache(new File(tmpDir, "top_folders.cache"));
+    }
+
+    /**
+     * Deletes the temporary directory.
+     *
+     * @throws IOException If deleting fails.
+     */
+    @After
+    public void tearDown() throws IOException {
+        Util.deleteFolder(tmpDir);
+    }
+
+    /**
+     * Tests that a stored entry is returned for an unchanged source tree.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testHit() throws IOException {
+        assertThat(cache.get(sourceTree), nullValue());
+        cache.put(sourceTree, ",drivers,kernel");
+        assertThat(cache.get(sourceTree), is(",drivers,kernel"));
+    }
+
+    /**
+     * Tests that adding a top-level directory invalidates the entry.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testNewTopLevelDirectory() throws IOException {
+        cache.put(sourceTree, ",drivers,kernel");
+        new File(sourceTree, "fs").mkdir();
+        assertThat(cache.get(sourceTree), nullValue());
+    }
+
+    /**
+     * Tests that the entry is not returned for a different source tree.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testOtherSourceTree() throws IOException {
+        cache.put(sourceTree, ",drivers,kernel");
+        assertThat(cache.get(new File(sourceTree, "drivers")), nullValue());
+    }
+
+    /**
+     * Tests that a corrupt cache file is treated as a miss.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testCorruptFile() throws IOException {
+        try (Writer out = new FileWriter(new File(tmpDir, "top_folders.cache"))) {
+            out.write("\\u12");
+        }
+        assertThat(cache.get(sourceTree), nullValue());
+    }
+
+}
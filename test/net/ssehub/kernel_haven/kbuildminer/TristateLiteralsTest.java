@@ -0,0 +1,112 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.Variable;
+
+/**
+ * Tests the {@link TristateLiterals}.
+ *
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class TristateLiteralsTest {
+
+    /**
+     * Tests that a tristate disjunction becomes a single literal, in either order.
+     */
+    @Test
+    public void testCompactYesOrModule() {
+        TristateLiterals literals = new TristateLiterals(false);
+
+        assertThat(literals.compact(new Disjunction(new Variable("CONFIG_A"), new Variable("CONFIG_A_MODULE"))),
+                is(new Variable("CONFIG_A={y,m}")));
+        assertThat(literals.compact(new Disjunction(new Variable("CONFIG_A_MODULE"), new Variable("CONFIG_A"))),
+                is(new Variable("CONFIG_A={y,m}")));
+    }
+
+    /**
+     * Tests that a lone module variable becomes a literal, and a plain variable stays unchanged.
+     */
+    @Test
+    public void testCompactSingleVariables() {
+        TristateLiterals literals = new TristateLiterals(false);
+        Variable plain = new Variable("CONFIG_A");
+
+        assertThat(literals.compact(new Variable("CONFIG_A_MODULE")), is(new Variable("CONFIG_A={m}")));
+        assertThat(literals.compact(plain), sameInstance(plain));
+    }
+
+    /**
+     * Tests that disjunctions of unrelated variables are not merged.
+     */
+    @Test
+    public void testCompactUnrelated() {
+        TristateLiterals literals = new TristateLiterals(false);
+        Formula pc = new Disjunction(new Variable("CONFIG_A"), new Variable("CONFIG_B"));
+
+        assertThat(literals.compact(pc), sameInstance(pc));
+    }
+
+    /**
+     * Tests compaction in nested formulas and that the expansion restores the original formula.
+     */
+    @Test
+    public void testNestedRoundTrip() {
+        TristateLiterals literals = new TristateLiterals(true);
+        Formula pc = new Conjunction(
+                new Disjunction(new Variable("CONFIG_A"), new Variable("CONFIG_A_MODULE")),
+                new Negation(new Conjunction(new Variable("CONFIG_B_MODULE"), new Variable("CONFIG_C"))));
+
+        Formula compact = literals.compact(pc);
+        assertThat(compact, is(new Conjunction(new Variable("CONFIG_A={y,m}"),
+                new Negation(new Conjunction(new Variable("CONFIG_B={m}"), new Variable("CONFIG_C"))))));
+        assertThat(literals.compact(pc), sameInstance(compact));
+        assertThat(TristateLiterals.expand(compact), is(pc));
+    }
+
+    /**
+     * Tests {@link TristateLiterals#isLiteral(String)} and {@link TristateLiterals#getExpandedNames(String)}.
+     */
+    @Test
+    public void testNames() {
+        assertThat(TristateLiterals.isLiteral("CONFIG_A={y,m}"), is(true));
+        assertThat(TristateLiterals.isLiteral("CONFIG_A={m}"), is(true));
+        assertThat(TristateLiterals.isLiteral("CONFIG_A={y}"), is(true));
+        assertThat(TristateLiterals.isLiteral("CONFIG_A"), is(false));
+
+        assertThat(TristateLiterals.getExpandedNames("CONFIG_A={y,m}"),
+                is(Arrays.asList("CONFIG_A", "CONFIG_A_MODULE")));
+        assertThat(TristateLiterals.getExpandedNames("CONFIG_A={m}"), is(Arrays.asList("CONFIG_A_MODULE")));
+        assertThat(TristateLiterals.getExpandedNames("CONFIG_A={y}"), is(Arrays.asList("CONFIG_A")));
+        assertThat(TristateLiterals.getExpandedNames("CONFIG_A"), is(Arrays.asList("CONFIG_A")));
+        assertThat(TristateLiterals.expand(new Variable("CONFIG_A={y}")), is(new Variable("CONFIG_A")));
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.ssehub.kernel_haven.kbuildminer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
+
+/**
+ * Tests the {@link VariableIndex}.
+ *
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class VariableIndexTest {
+
+    /**
+     * Tests that files are found by all variables in their presence condition.
+     */
+    @Test
+    public void testGetFiles() {
+        VariableIndex index = new VariableIndex();
+        index.add(new File("a.c"), new Variable("A"));
+        index.add(new File("b.c"), new Conjunction(new Variable("A"), new Negation(new Variable("B"))));
+        index.add(new File("c.c"), True.INSTANCE);
+
+        assertThat(index.getNumFiles(), is(3));
+        assertThat(index.getFiles("A"), is(Arrays.asList(new File("a.c"), new File("b.c"))));
+        assertThat(index.getFiles("B"), is(Arrays.asList(new File("b.c"))));
+        assertThat(index.getFiles("C").isEmpty(), is(true));
+        assertThat(index.getVariables(), is(new HashSet<>(Arrays.asList("A", "B"))));
+        assertThat(index.getFile(2), is(new File("c.c")));
+    }
+
+    /**
+     * Tests that the affected files include the files of the _MODULE variant.
+     */
+    @Test
+    public void testAffectedFiles() {
+        VariableIndex index = new VariableIndex();
+        index.add(new File("a.c"), new Variable("A"));
+        index.add(new File("b.c"), new Variable("A_MODULE"));
+        index.add(new File("c.c"), new Variable("B"));
+
+        assertThat(index.getAffectedFiles("A"), is(Arrays.asList(new File("a.c"), new File("b.c"))));
+        assertThat(index.getFiles("A"), is(Arrays.asList(new File("a.c"))));
+    }
+
+    /**
+     * Tests that three-valued literals are indexed under the names of the two-variable encoding.
+     */
+    @Test
+    public void testTristateLiterals() {
+        VariableIndex index = new VariableIndex();
+        index.add(new File("a.c"), new Variable("A={y,m}"));
+        index.add(new File("b.c"), new Variable("A={m}"));
+
+        assertThat(index.getFiles("A"), is(Arrays.asList(new File("a.c"))));
+        assertThat(index.getFiles("A_MODULE"), is(Arrays.asList(new File("a.c"), new File("b.c"))));
+        assertThat(index.getAffectedFiles("A"), is(Arrays.asList(new File("a.c"), new File("b.c"))));
+    }
+
+    /**
+     * Tests that adding a file twice replaces its previous entries.
+     */
+    @Test
+    public void testReplace() {
+        VariableIndex index = new VariableIndex();
+        index.add(new File("a.c"), new Variable("A"));
+        index.add(new File("a.c"), new Variable("B"));
+
+        assertThat(index.getNumFiles(), is(1));
+        assertThat(index.getFiles("A").isEmpty(), is(true));
+        assertThat(index.getFiles("B"), is(Arrays.asList(new File("a.c"))));
+    }
+
+    /**
+     * Tests that the index survives serialization.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testWriteRead() throws IOException {
+        VariableIndex index = new VariableIndex();
+        index.add(new File("dir/a.c"), new Disjunction(new Variable("A"), new Variable("B")));
+
+        File file = File.createTempFile("variable_index", ".ser");
+        file.deleteOnExit();
+        index.write(file);
+
+        VariableIndex read = VariableIndex.read(file);
+        assertThat(read.getFiles("B"), is(Arrays.asList(new File("dir/a.c"))));
+    }
+
+    /**
+     * Tests that the converter builds the index during conversion.
+     *
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testConverter() throws IOException {
+        Set<VariabilityVariable> vars = new HashSet<>();
+        vars.add(new VariabilityVariable("CONFIG_ALPHA", "bool"));
+        vars.add(new VariabilityVariable("CONFIG_BETA", "tristate"));
+        Converter c = new Converter(new VariabilityModel(null, vars));
+        c.setBuildVariableIndex(true);
+        c.convert(new File("testdata/pcs.txt"));
+
+        VariableIndex index = c.getVariableIndex();
+        assertThat(index.getFiles("CONFIG_ALPHA"), is(Arrays.asList(new File("file1.c"), new File("dir/file2.c"))));
+        assertThat(index.getAffectedFiles("CONFIG_BETA"),
+                is(Arrays.asList(new File("dir/file1.c"), new File("dir/file2.c"))));
+        assertThat(index.getFiles("CONFIG_ALPHA_MODULE").isEmpty(), is(true));
+    }
+
+}